@@ -1830,6 +1830,22 @@ suite = {
       "testProject" : True,
     },
 
+    "org.graalvm.compiler.vec.test" : {
+      "subDir" : "src",
+      "sourceDirs" : ["src"],
+      "dependencies" : [
+        "org.graalvm.compiler.core.test",
+        "org.graalvm.compiler.replacements",
+        "truffle:TRUFFLE_API",
+      ],
+      "annotationProcessors" : ["GRAAL_PROCESSOR"],
+      "checkstyle" : "org.graalvm.compiler.graph",
+      "javaCompliance" : "8+",
+      "workingSets" : "Graal,Test",
+      "jacoco" : "exclude",
+      "testProject" : True,
+    },
+
     "org.graalvm.compiler.truffle.common.hotspot" : {
       "subDir" : "src",
       "sourceDirs" : ["src"],
@@ -2079,6 +2095,7 @@ suite = {
         "org.graalvm.compiler.phases.common.test",
         "org.graalvm.compiler.truffle.test",
         "org.graalvm.compiler.truffle.test.jdk11",
+        "org.graalvm.compiler.vec.test",
         "org.graalvm.util.test",
         "org.graalvm.compiler.loop.test",
         "org.graalvm.compiler.replacements.jdk9.test",
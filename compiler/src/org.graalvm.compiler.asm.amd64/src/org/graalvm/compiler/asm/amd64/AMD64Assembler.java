@@ -1031,6 +1031,7 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         BMI2(CPUFeature.BMI2, null, null, null, CPU, CPU, CPU, null),
         FMA(CPUFeature.FMA, null, null, null, XMM, XMM, XMM, null),
         FMA_AVX512F_128ONLY(CPUFeature.FMA, null, null, EVEXFeatureAssertion.AVX512F_128ONLY, XMM, XMM, XMM, null),
+        FMA_AVX512F_VL(CPUFeature.FMA, CPUFeature.FMA, EVEXFeatureAssertion.AVX512F_VL),
 
         XMM_CPU_AVX512F_128ONLY(CPUFeature.AVX, null, null, EVEXFeatureAssertion.AVX512F_128ONLY, XMM, null, CPU, null),
         CPU_XMM_AVX512F_128ONLY(CPUFeature.AVX, null, null, EVEXFeatureAssertion.AVX512F_128ONLY, CPU, null, XMM, null),
@@ -1237,14 +1238,14 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         public static final VexRMOp VCVTTPD2DQ      = new VexRMOp("VCVTTPD2DQ",      P_66, M_0F,   WIG, 0xE6, VEXOpAssertion.AVX1_AVX512F_VL,           EVEXTuple.FVM,       W1);
         public static final VexRMOp VCVTTPD2QQ      = new VexRMOp("VCVTTPD2QQ",      P_66, M_0F,   W1,  0x7A, VEXOpAssertion.AVX512DQ_VL,               EVEXTuple.FVM,       W1);
         public static final VexRMOp VCVTDQ2PD       = new VexRMOp("VCVTDQ2PD",       P_F3, M_0F,   WIG, 0xE6, VEXOpAssertion.AVX1_AVX512F_VL,           EVEXTuple.HVM,       W0);
-        public static final VexRMOp VBROADCASTSS    = new VexRMOp("VBROADCASTSS",    P_66, M_0F38, W0,  0x18, VEXOpAssertion.AVX1_AVX2_AVX512F_VL,      EVEXTuple.FVM,       W0);
-        public static final VexRMOp VBROADCASTSD    = new VexRMOp("VBROADCASTSD",    P_66, M_0F38, W0,  0x19, VEXOpAssertion.AVX1_256ONLY_AVX512F_VL,   EVEXTuple.FVM,       W1);
+        public static final VexRMOp VBROADCASTSS    = new VexRMOp("VBROADCASTSS",    P_66, M_0F38, W0,  0x18, VEXOpAssertion.AVX1_AVX2_AVX512F_VL,      EVEXTuple.T1S_32BIT, W0);
+        public static final VexRMOp VBROADCASTSD    = new VexRMOp("VBROADCASTSD",    P_66, M_0F38, W0,  0x19, VEXOpAssertion.AVX1_256ONLY_AVX512F_VL,   EVEXTuple.T1S_64BIT, W1);
         public static final VexRMOp VBROADCASTF128  = new VexRMOp("VBROADCASTF128",  P_66, M_0F38, W0,  0x1A, VEXOpAssertion.AVX1_256ONLY);
         public static final VexRMOp VPBROADCASTI128 = new VexRMOp("VPBROADCASTI128", P_66, M_0F38, W0,  0x5A, VEXOpAssertion.AVX2_256ONLY);
-        public static final VexRMOp VPBROADCASTB    = new VexRMOp("VPBROADCASTB",    P_66, M_0F38, W0,  0x78, VEXOpAssertion.AVX2_AVX512BW_VL,          EVEXTuple.FVM,       W0);
-        public static final VexRMOp VPBROADCASTW    = new VexRMOp("VPBROADCASTW",    P_66, M_0F38, W0,  0x79, VEXOpAssertion.AVX2_AVX512BW_VL,          EVEXTuple.FVM,       W0);
-        public static final VexRMOp VPBROADCASTD    = new VexRMOp("VPBROADCASTD",    P_66, M_0F38, W0,  0x58, VEXOpAssertion.AVX2_AVX512F_VL,           EVEXTuple.FVM,       W0);
-        public static final VexRMOp VPBROADCASTQ    = new VexRMOp("VPBROADCASTQ",    P_66, M_0F38, W0,  0x59, VEXOpAssertion.AVX2_AVX512F_VL,           EVEXTuple.FVM,       W1);
+        public static final VexRMOp VPBROADCASTB    = new VexRMOp("VPBROADCASTB",    P_66, M_0F38, W0,  0x78, VEXOpAssertion.AVX2_AVX512BW_VL,          EVEXTuple.T1S_8BIT,  W0);
+        public static final VexRMOp VPBROADCASTW    = new VexRMOp("VPBROADCASTW",    P_66, M_0F38, W0,  0x79, VEXOpAssertion.AVX2_AVX512BW_VL,          EVEXTuple.T1S_16BIT, W0);
+        public static final VexRMOp VPBROADCASTD    = new VexRMOp("VPBROADCASTD",    P_66, M_0F38, W0,  0x58, VEXOpAssertion.AVX2_AVX512F_VL,           EVEXTuple.T1S_32BIT, W0);
+        public static final VexRMOp VPBROADCASTQ    = new VexRMOp("VPBROADCASTQ",    P_66, M_0F38, W0,  0x59, VEXOpAssertion.AVX2_AVX512F_VL,           EVEXTuple.T1S_64BIT, W1);
         public static final VexRMOp VPMOVMSKB       = new VexRMOp("VPMOVMSKB",       P_66, M_0F,   WIG, 0xD7, VEXOpAssertion.AVX1_2_CPU_XMM);
         public static final VexRMOp VPMOVB2M        = new VexRMOp("VPMOVB2M",        P_F3, M_0F38, W0,  0x29, VEXOpAssertion.MASK_NULL_XMM_AVX512BW_VL, EVEXTuple.FVM,       W0);
         public static final VexRMOp VPMOVSXBW       = new VexRMOp("VPMOVSXBW",       P_66, M_0F38, WIG, 0x20, VEXOpAssertion.AVX1_AVX2_AVX512BW_VL,     EVEXTuple.HVM,       WIG);
@@ -1348,6 +1349,13 @@ public class AMD64Assembler extends AMD64BaseAssembler {
             asm.emitOperandHelper(src, dst, 0, getDisp8Scale(useEvex, size));
         }
 
+        public void emit(AMD64Assembler asm, AVXSize size, AMD64Address dst, Register src, Register mask) {
+            assert assertion.check((AMD64) asm.target.arch, size, src, null, null);
+            boolean useEvex = asm.vexPrefix(src, Register.None, dst, mask, size, pp, mmmmm, w, wEvex, false, assertion.l128feature, assertion.l256feature, Z0, B0);
+            asm.emitByte(opReverse);
+            asm.emitOperandHelper(src, dst, 0, getDisp8Scale(useEvex, size));
+        }
+
         public void emitReverse(AMD64Assembler asm, AVXSize size, Register dst, Register src) {
             assert assertion.check((AMD64) asm.target.arch, size, src, null, dst);
             asm.vexPrefix(src, Register.None, dst, size, pp, mmmmm, w, wEvex, false, assertion.l128feature, assertion.l256feature);
@@ -1404,6 +1412,7 @@ public class AMD64Assembler extends AMD64BaseAssembler {
     public static final class VexMROp extends VexRROp {
         // @formatter:off
         public static final VexMROp VPCOMPRESSD = new VexMROp("VPCOMPRESSD", P_66, M_0F38, W0, 0x8B, VEXOpAssertion.AVX512F_VL, EVEXTuple.T1S_32BIT, W0);
+        public static final VexMROp VMOVNTPD    = new VexMROp("VMOVNTPD",    P_66, M_0F,   WIG, 0x2B, VEXOpAssertion.AVX1_AVX512F_VL, EVEXTuple.FVM, W1);
         // @formatter:on
 
         private VexMROp(String opcode, int pp, int mmmmm, int w, int op, VEXOpAssertion assertion, EVEXTuple evexTuple, int wEvex) {
@@ -1559,7 +1568,10 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         public static final VexRVMOp VPMULHW         = new VexRVMOp("VPMULHW",     P_66, M_0F,   WIG, 0xE5, VEXOpAssertion.AVX1_AVX2_AVX512BW_VL,        EVEXTuple.FVM,       WIG);
         public static final VexRVMOp VPMULLW         = new VexRVMOp("VPMULLW",     P_66, M_0F,   WIG, 0xD5, VEXOpAssertion.AVX1_AVX2_AVX512BW_VL,        EVEXTuple.FVM,       WIG);
         public static final VexRVMOp VPMULLD         = new VexRVMOp("VPMULLD",     P_66, M_0F38, WIG, 0x40, VEXOpAssertion.AVX1_AVX2_AVX512F_VL,         EVEXTuple.FVM,       W0);
+        public static final VexRVMOp VPMADDWD        = new VexRVMOp("VPMADDWD",    P_66, M_0F,   WIG, 0xF5, VEXOpAssertion.AVX1_AVX2_AVX512BW_VL,        EVEXTuple.FVM,       WIG);
         public static final VexRVMOp VPMULLQ         = new VexRVMOp("VPMULLQ",     P_66, M_0F38, W1,  0x40, VEXOpAssertion.AVX512DQ_VL,                  EVEXTuple.FVM,       W1);
+        public static final VexRVMOp VPMINSD         = new VexRVMOp("VPMINSD",     P_66, M_0F38, WIG, 0x39, VEXOpAssertion.AVX1_AVX2_AVX512F_VL,         EVEXTuple.FVM,       W0);
+        public static final VexRVMOp VPMAXSD         = new VexRVMOp("VPMAXSD",     P_66, M_0F38, WIG, 0x3D, VEXOpAssertion.AVX1_AVX2_AVX512F_VL,         EVEXTuple.FVM,       W0);
         public static final VexRVMOp VPSUBB          = new VexRVMOp("VPSUBB",      P_66, M_0F,   WIG, 0xF8, VEXOpAssertion.AVX1_AVX2_AVX512BW_VL,        EVEXTuple.FVM,       WIG);
         public static final VexRVMOp VPSUBW          = new VexRVMOp("VPSUBW",      P_66, M_0F,   WIG, 0xF9, VEXOpAssertion.AVX1_AVX2_AVX512BW_VL,        EVEXTuple.FVM,       WIG);
         public static final VexRVMOp VPSUBD          = new VexRVMOp("VPSUBD",      P_66, M_0F,   WIG, 0xFA, VEXOpAssertion.AVX1_AVX2_AVX512F_VL,         EVEXTuple.FVM,       W0);
@@ -1589,6 +1601,13 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         public static final VexRVMOp VPCMPGTQ_AVX512 = new VexRVMOp("VPCMPGTQ",    P_66, M_0F38, WIG, 0x37, VEXOpAssertion.MASK_XMM_XMM_AVX512F_VL,      EVEXTuple.FVM,       W1);
         public static final VexRVMOp VFMADD231SS     = new VexRVMOp("VFMADD231SS", P_66, M_0F38, W0,  0xB9, VEXOpAssertion.FMA_AVX512F_128ONLY,          EVEXTuple.T1S_32BIT, W0);
         public static final VexRVMOp VFMADD231SD     = new VexRVMOp("VFMADD231SD", P_66, M_0F38, W1,  0xB9, VEXOpAssertion.FMA_AVX512F_128ONLY,          EVEXTuple.T1S_64BIT, W1);
+        public static final VexRVMOp VFMADD231PS     = new VexRVMOp("VFMADD231PS", P_66, M_0F38, W0,  0xB8, VEXOpAssertion.FMA_AVX512F_VL,               EVEXTuple.FVM,       W0);
+        public static final VexRVMOp VFMADD231PD     = new VexRVMOp("VFMADD231PD", P_66, M_0F38, W1,  0xB8, VEXOpAssertion.FMA_AVX512F_VL,               EVEXTuple.FVM,       W1);
+
+        // AVX512_VNNI is not known to every supported JVMCI version, so callers check it with
+        // GotoIntKernel.supportsVnni before emitting these.
+        public static final VexRVMOp VPDPBUSD        = new VexRVMOp("VPDPBUSD",    P_66, M_0F38, W0,  0x50, VEXOpAssertion.AVX512F_VL,                   EVEXTuple.FVM,       W0);
+        public static final VexRVMOp VPDPWSSD        = new VexRVMOp("VPDPWSSD",    P_66, M_0F38, W0,  0x52, VEXOpAssertion.AVX512F_VL,                   EVEXTuple.FVM,       W0);
 
         public static final VexRVMOp VPERMW          = new VexRVMOp("VPERMW",      P_66, M_0F38, W1,  0x8D, VEXOpAssertion.AVX512BW_VL,                  EVEXTuple.FVM,       W1);
 
@@ -1926,6 +1945,9 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         public static final VexRVMIOp VINSERTF128  = new VexRVMIOp("VINSERTF128",  P_66, M_0F3A, W0,  0x18, VEXOpAssertion.AVX1_256ONLY);
         public static final VexRVMIOp VINSERTI128  = new VexRVMIOp("VINSERTI128",  P_66, M_0F3A, W0,  0x38, VEXOpAssertion.AVX2_256ONLY);
 
+        // AVX lane permute
+        public static final VexRVMIOp VPERM2F128   = new VexRVMIOp("VPERM2F128",   P_66, M_0F3A, W0,  0x06, VEXOpAssertion.AVX1_256ONLY);
+
         // AVX-512 insert
         public static final VexRVMIOp VINSERTF32X4 = new VexRVMIOp("VINSERTF32X4", P_66, M_0F3A, W0,  0x18, VEXOpAssertion.AVX512F_VL_256_512,       EVEXTuple.T4_32BIT, W0);
         public static final VexRVMIOp VINSERTI32X4 = new VexRVMIOp("VINSERTI32X4", P_66, M_0F3A, W0,  0x38, VEXOpAssertion.AVX512F_VL_256_512,       EVEXTuple.T4_32BIT, W0);
@@ -5062,7 +5084,7 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         // Code: EVEX.512.66.0F38.W1 19 /r
         evexPrefix(dst, Register.None, Register.None, src, AVXSize.ZMM, P_66, M_0F38, W1, Z0, B0);
         emitByte(0x19);
-        emitOperandHelper(dst, src, 0, EVEXTuple.FVM.getDisp8ScalingFactor(AVXSize.ZMM));
+        emitOperandHelper(dst, src, 0, EVEXTuple.T1S_64BIT.getDisp8ScalingFactor(AVXSize.ZMM));
     }
 
     // vbroadcastf32x4
@@ -5071,7 +5093,7 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         // Code: EVEX.512.66.0F38.W0 1A /r
         evexPrefix(dst, Register.None, Register.None, src, AVXSize.ZMM, P_66, M_0F38, W0, Z0, B0);
         emitByte(0x1A);
-        emitOperandHelper(dst, src, 0, EVEXTuple.FVM.getDisp8ScalingFactor(AVXSize.ZMM));
+        emitOperandHelper(dst, src, 0, EVEXTuple.T4_32BIT.getDisp8ScalingFactor(AVXSize.ZMM));
     }
 
     // _mm512_i32gather_epi32
@@ -5091,7 +5113,7 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         // Code: EVEX.512.66.0F38.W1 91 /vsib
         evexPrefix(dst, mask, Register.None, src, AVXSize.ZMM, P_66, M_0F38, W1, Z0, B0);
         emitByte(0x91);
-        emitOperandHelper(dst, src, 0, EVEXTuple.T1S_32BIT.getDisp8ScalingFactor(AVXSize.ZMM));
+        emitOperandHelper(dst, src, 0, EVEXTuple.T1S_64BIT.getDisp8ScalingFactor(AVXSize.ZMM));
     }
 
     // _mm512_i32scatter_epi32
@@ -5111,7 +5133,7 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         // Code: EVEX.512.66.0F38.W1 A1 /vsib
         evexPrefix(src, mask, Register.None, dst, AVXSize.ZMM, P_66, M_0F38, W1, Z0, B0);
         emitByte(0xA1);
-        emitOperandHelper(src, dst, 0, EVEXTuple.T1S_32BIT.getDisp8ScalingFactor(AVXSize.ZMM));
+        emitOperandHelper(src, dst, 0, EVEXTuple.T1S_64BIT.getDisp8ScalingFactor(AVXSize.ZMM));
     }
 
     // vscatterqpd
@@ -5121,7 +5143,7 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         // Code: EVEX.512.66.0F38.W1 A3 /vsib
         evexPrefix(src, mask, Register.None, dst, AVXSize.ZMM, P_66, M_0F38, W1, Z0, B0);
         emitByte(0xA3);
-        emitOperandHelper(src, dst, 0, EVEXTuple.T1S_32BIT.getDisp8ScalingFactor(AVXSize.ZMM));
+        emitOperandHelper(src, dst, 0, EVEXTuple.T1S_64BIT.getDisp8ScalingFactor(AVXSize.ZMM));
     }
 
     // _mm512_maskz_permutexvar_epi32, _mm512_mask_permutexvar_epi32
@@ -5152,6 +5174,157 @@ public class AMD64Assembler extends AMD64BaseAssembler {
         emitModRM(dst, src);
     }
 
+    // _mm512_conflict_epi64
+    public final void vpconflictq(Register dst, Register src) {
+        assert supports(CPUFeature.AVX512CD);
+        // Code: EVEX.512.66.0F38.W1 C4 /r
+        evexPrefix(dst, Register.None, Register.None, src, AVXSize.ZMM, P_66, M_0F38, W1, Z0, B0);
+        emitByte(0xC4);
+        emitModRM(dst, src);
+    }
+
+    // _mm512_lzcnt_epi64
+    public final void vplzcntq(Register dst, Register src) {
+        assert supports(CPUFeature.AVX512CD);
+        // Code: EVEX.512.66.0F38.W1 44 /r
+        evexPrefix(dst, Register.None, Register.None, src, AVXSize.ZMM, P_66, M_0F38, W1, Z0, B0);
+        emitByte(0x44);
+        emitModRM(dst, src);
+    }
+
+    // _mm512_maskz_permutexvar_epi64, _mm512_mask_permutexvar_epi64
+    public final void vpermq(Register dst, Register mask, int z, Register nds, Register src) {
+        assert supports(CPUFeature.AVX512F);
+        assert inRC(MASK, mask);
+        // Code: EVEX.512.66.0F38.W1 36 /r
+        evexPrefix(dst, mask, nds, src, AVXSize.ZMM, P_66, M_0F38, W1, z, B0);
+        emitByte(0x36);
+        emitModRM(dst, src);
+    }
+
+    // _mm512_test_epi64_mask
+    public final void vptestmq(Register kdst, Register nds, Register src) {
+        assert supports(CPUFeature.AVX512F);
+        assert inRC(MASK, kdst);
+        // Code: EVEX.512.66.0F38.W1 27 /r
+        evexPrefix(kdst, Register.None, nds, src, AVXSize.ZMM, P_66, M_0F38, W1, Z0, B0);
+        emitByte(0x27);
+        emitModRM(kdst, src);
+    }
+
+    // _mm512_cmp_epi64_mask
+    public final void vpcmpq(Register kdst, Register nds, Register src, int imm8) {
+        assert supports(CPUFeature.AVX512F);
+        assert inRC(MASK, kdst);
+        // Code: EVEX.512.66.0F3A.W1 1F /r ib
+        evexPrefix(kdst, Register.None, nds, src, AVXSize.ZMM, P_66, M_0F3A, W1, Z0, B0);
+        emitByte(0x1F);
+        emitModRM(kdst, src);
+        emitByte(imm8);
+    }
+
+    // _mm512_cmp_epu64_mask
+    public final void vpcmpuq(Register kdst, Register nds, Register src, int imm8) {
+        assert supports(CPUFeature.AVX512F);
+        assert inRC(MASK, kdst);
+        // Code: EVEX.512.66.0F3A.W1 1E /r ib
+        evexPrefix(kdst, Register.None, nds, src, AVXSize.ZMM, P_66, M_0F3A, W1, Z0, B0);
+        emitByte(0x1E);
+        emitModRM(kdst, src);
+        emitByte(imm8);
+    }
+
+    // _mm512_cvtepi32_epi64
+    public final void vpmovsxdq(Register dst, AMD64Address src) {
+        assert supports(CPUFeature.AVX512F);
+        // Code: EVEX.512.66.0F38.W0 25 /r
+        evexPrefix(dst, Register.None, Register.None, src, AVXSize.ZMM, P_66, M_0F38, W0, Z0, B0);
+        emitByte(0x25);
+        emitOperandHelper(dst, src, 0, EVEXTuple.HVM.getDisp8ScalingFactor(AVXSize.ZMM));
+    }
+
+    // _mm512_sub_epi64
+    public final void vpsubq(Register dst, Register nds, Register src) {
+        assert supports(CPUFeature.AVX512F);
+        // Code: EVEX.512.66.0F.W1 FB /r
+        evexPrefix(dst, Register.None, nds, src, AVXSize.ZMM, P_66, M_0F, W1, Z0, B0);
+        emitByte(0xFB);
+        emitModRM(dst, src);
+    }
+
+    // The following reductions take an optional merge mask (Z0); pass Register.None for none.
+
+    // _mm512_mask_add_epi32
+    public final void vpaddd(Register dst, Register nds, Register src, Register mask) {
+        assert supports(CPUFeature.AVX512F);
+        // Code: EVEX.512.66.0F.W0 FE /r
+        evexPrefix(dst, mask, nds, src, AVXSize.ZMM, P_66, M_0F, W0, Z0, B0);
+        emitByte(0xFE);
+        emitModRM(dst, src);
+    }
+
+    // _mm512_mask_add_epi64
+    public final void vpaddq(Register dst, Register nds, Register src, Register mask) {
+        assert supports(CPUFeature.AVX512F);
+        // Code: EVEX.512.66.0F.W1 D4 /r
+        evexPrefix(dst, mask, nds, src, AVXSize.ZMM, P_66, M_0F, W1, Z0, B0);
+        emitByte(0xD4);
+        emitModRM(dst, src);
+    }
+
+    // _mm512_mask_min_epi32
+    public final void vpminsd(Register dst, Register nds, Register src, Register mask) {
+        assert supports(CPUFeature.AVX512F);
+        // Code: EVEX.512.66.0F38.W0 39 /r
+        evexPrefix(dst, mask, nds, src, AVXSize.ZMM, P_66, M_0F38, W0, Z0, B0);
+        emitByte(0x39);
+        emitModRM(dst, src);
+    }
+
+    // _mm512_mask_min_epi64
+    public final void vpminsq(Register dst, Register nds, Register src, Register mask) {
+        assert supports(CPUFeature.AVX512F);
+        // Code: EVEX.512.66.0F38.W1 39 /r
+        evexPrefix(dst, mask, nds, src, AVXSize.ZMM, P_66, M_0F38, W1, Z0, B0);
+        emitByte(0x39);
+        emitModRM(dst, src);
+    }
+
+    // _mm512_mask_max_epi32
+    public final void vpmaxsd(Register dst, Register nds, Register src, Register mask) {
+        assert supports(CPUFeature.AVX512F);
+        // Code: EVEX.512.66.0F38.W0 3D /r
+        evexPrefix(dst, mask, nds, src, AVXSize.ZMM, P_66, M_0F38, W0, Z0, B0);
+        emitByte(0x3D);
+        emitModRM(dst, src);
+    }
+
+    // _mm512_mask_max_epi64
+    public final void vpmaxsq(Register dst, Register nds, Register src, Register mask) {
+        assert supports(CPUFeature.AVX512F);
+        // Code: EVEX.512.66.0F38.W1 3D /r
+        evexPrefix(dst, mask, nds, src, AVXSize.ZMM, P_66, M_0F38, W1, Z0, B0);
+        emitByte(0x3D);
+        emitModRM(dst, src);
+    }
+
+    // _mm512_mask_min_pd
+    public final void vminpd(Register dst, Register nds, Register src, Register mask) {
+        assert supports(CPUFeature.AVX512F);
+        // Code: EVEX.512.66.0F.W1 5D /r
+        evexPrefix(dst, mask, nds, src, AVXSize.ZMM, P_66, M_0F, W1, Z0, B0);
+        emitByte(0x5D);
+        emitModRM(dst, src);
+    }
+
+    // _mm512_mask_max_pd
+    public final void vmaxpd(Register dst, Register nds, Register src, Register mask) {
+        assert supports(CPUFeature.AVX512F);
+        // Code: EVEX.512.66.0F.W1 5F /r
+        evexPrefix(dst, mask, nds, src, AVXSize.ZMM, P_66, M_0F, W1, Z0, B0);
+        emitByte(0x5F);
+        emitModRM(dst, src);
+    }
     // mm512_setzero_pd / vxorpd
     public final void vpxorq(Register dst, Register a, Register b) {
         assert supports(CPUFeature.AVX512F);
@@ -33,6 +33,8 @@ import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.OperandSize.DWOR
 import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.OperandSize.PD;
 import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.OperandSize.PS;
 import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.OperandSize.QWORD;
+import static org.graalvm.compiler.core.amd64.AMD64VecKernelSupport.VEC_ARCH_AVX512;
+import static org.graalvm.compiler.core.amd64.AMD64VecKernelSupport.VEC_ARCH_NONE;
 import static org.graalvm.compiler.core.common.GraalOptions.GeneratePIC;
 import static org.graalvm.compiler.lir.LIRValueUtil.asConstant;
 import static org.graalvm.compiler.lir.LIRValueUtil.asConstantValue;
@@ -41,6 +43,7 @@ import static org.graalvm.compiler.lir.LIRValueUtil.isConstantValue;
 import static org.graalvm.compiler.lir.LIRValueUtil.isIntConstant;
 import static org.graalvm.compiler.lir.LIRValueUtil.isJavaConstant;
 
+import java.util.EnumSet;
 import java.util.Optional;
 
 import org.graalvm.compiler.asm.amd64.AMD64Assembler.AMD64BinaryArithmetic;
@@ -49,11 +52,14 @@ import org.graalvm.compiler.asm.amd64.AMD64Assembler.AMD64RMOp;
 import org.graalvm.compiler.asm.amd64.AMD64Assembler.ConditionFlag;
 import org.graalvm.compiler.asm.amd64.AMD64Assembler.SSEOp;
 import org.graalvm.compiler.asm.amd64.AMD64Assembler.VexRMOp;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler.VexRMIOp;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler.VexRVMOp;
 import org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.OperandSize;
 import org.graalvm.compiler.asm.amd64.AVXKind;
 import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
 import org.graalvm.compiler.core.common.LIRKind;
 import org.graalvm.compiler.core.common.NumUtil;
+import org.graalvm.compiler.core.common.PermanentBailoutException;
 import org.graalvm.compiler.core.common.calc.Condition;
 import org.graalvm.compiler.core.common.memory.MemoryOrderMode;
 import org.graalvm.compiler.core.common.spi.ForeignCallLinkage;
@@ -106,20 +112,27 @@ import org.graalvm.compiler.lir.amd64.AMD64StringUTF16CompressOp;
 import org.graalvm.compiler.lir.amd64.AMD64ZapRegistersOp;
 import org.graalvm.compiler.lir.amd64.AMD64ZapStackOp;
 import org.graalvm.compiler.lir.amd64.AMD64ZeroMemoryOp;
-import org.graalvm.compiler.lir.amd64.vec.AggregateOp;
+import org.graalvm.compiler.lir.amd64.vec.ScatterReduceOp;
 import org.graalvm.compiler.lir.amd64.vec.SimdDoubleFmaddOp;
+import org.graalvm.compiler.lir.amd64.vec.VectorMapOp;
+import org.graalvm.compiler.lir.amd64.vec.VectorReduceOp;
 import org.graalvm.compiler.lir.amd64.vec.MatmulKernel2x8Op;
 import org.graalvm.compiler.lir.amd64.vec.MatmulKernel8x16Op;
 import org.graalvm.compiler.lir.amd64.vec.MatmulKernel1D2x8Op;
 import org.graalvm.compiler.lir.amd64.vec.GotoKernel.GotoKernelOp;
+import org.graalvm.compiler.lir.amd64.vec.GotoProgram;
+import org.graalvm.compiler.lir.amd64.vec.GotoKernel.GotoPackOp;
 import org.graalvm.compiler.lir.amd64.vec.ConvKernel.ConvKernelOp;
+import org.graalvm.compiler.lir.amd64.vector.AMD64VectorBinary;
 import org.graalvm.compiler.lir.amd64.vector.AMD64VectorCompareOp;
+import org.graalvm.compiler.lir.amd64.vector.AMD64VectorShuffle;
 import org.graalvm.compiler.lir.gen.LIRGenerationResult;
 import org.graalvm.compiler.lir.gen.LIRGenerator;
 import org.graalvm.compiler.lir.hashing.IntHasher;
 import org.graalvm.compiler.phases.util.Providers;
 
 import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.amd64.AMD64.CPUFeature;
 import jdk.vm.ci.amd64.AMD64Kind;
 import jdk.vm.ci.code.CallingConvention;
 import jdk.vm.ci.code.Register;
@@ -772,16 +785,6 @@ public abstract class AMD64LIRGenerator extends LIRGenerator {
         append(new AMD64ZeroMemoryOp(asAddressValue(address), lengthReg));
     }
 
-    @Override
-    public void emitVecAggregate(Value inputOffset, Value input, Value output) {
-        append(new AggregateOp(this, asAllocatable(inputOffset), input, output));
-    }
-
-    @Override
-    public void emitSimdDoubleFmadd(Value length, Value multVal, Value input, Value output) {
-        append(new SimdDoubleFmaddOp(this, asAllocatable(length), multVal, input, output));
-    }
-
     @Override
     public void emitMatmulKernel8x16(Value a, Value b, Value result, Value kPanelSize,
                                     Value i, Value k, Value j) {
@@ -800,15 +803,160 @@ public abstract class AMD64LIRGenerator extends LIRGenerator {
         append(new MatmulKernel1D2x8Op(this, a, b, result, constants, i, k, j));
     }
 
+    /**
+     * Returns the widest vector kernel code path (0 = AVX, 1 = AVX2 with FMA, 2 = AVX-512) that the
+     * target supports, or -1 if it has no AVX at all.
+     */
+    protected int getSupportedVecArch() {
+        return new AMD64VecKernelSupport(target()).vecArch();
+    }
+
+    @Override
+    public void emitSimdDoubleFmadd(Value length, Value multVal, Value input, Value output, boolean nonTemporal, boolean offHeap) {
+        // The plugins already asked AMD64VecKernelSupport; this only guards against other callers.
+        int targetArch = getSupportedVecArch();
+        if (!new AMD64VecKernelSupport(target()).supportsSimdDoubleFmadd()) {
+            throw new PermanentBailoutException("simdDoubleFmadd needs AVX2 and FMA, target supports vector arch %d", targetArch);
+        }
+        boolean avx512 = targetArch == VEC_ARCH_AVX512;
+        // The masked tail builds its mask with BZHI.
+        boolean maskedTail = avx512 && ((AMD64) target().arch).getFeatures().contains(CPUFeature.BMI2);
+        append(new SimdDoubleFmaddOp(this, asAllocatable(length), asAllocatable(multVal), asAllocatable(input), asAllocatable(output), avx512, maskedTail, nonTemporal, offHeap));
+    }
+
+    @Override
+    public void emitVecScatterReduce(int op, JavaKind valueKind, Value keys, Value values, Value from, Value to, Value output, boolean offHeap) {
+        // The plugins already asked AMD64VecKernelSupport; this only guards against other callers.
+        if (!new AMD64VecKernelSupport(target()).supportsScatterReduce()) {
+            throw new PermanentBailoutException("Vector scatter-reduce needs AVX512F and AVX512CD");
+        }
+        Value valuesPtr = Value.ILLEGAL.equals(values) ? Value.ILLEGAL : asAllocatable(values);
+        append(new ScatterReduceOp(this, op, valueKind, asAllocatable(keys), valuesPtr, asAllocatable(from), asAllocatable(to), asAllocatable(output), offHeap));
+    }
+
     @Override
     public void emitGotoKernel(Value arrs, Value kPanelSize,
-                                    Value i, Value k, Value j, int arch, int kernelType, int aLength, int bLength, int mLength, int kLength, int nLength, long[] calc, double[] constArgs, int[] varArgProperties, int[] miscArgs) {
-        append(new GotoKernelOp(this, arrs, kPanelSize, i, k, j, arch, kernelType, aLength, bLength, mLength, kLength, nLength, calc, constArgs, varArgProperties, miscArgs));
+                                    Value i, Value k, Value j, int arch, int kernelType, int aLength, int bLength, int mLength, int kLength, int nLength, long[] calc, double[] constArgs, int[] varArgProperties, int[] miscArgs, int[] flatLayout, int[] prefetch, int[] batch,
+                                    JavaKind elementKind, boolean offHeap) {
+        // The plugins already asked AMD64VecKernelSupport; this only guards against other callers.
+        GotoProgram program = GotoProgram.get(calc, getResult().getLIR().getDebug());
+        int targetArch = new AMD64VecKernelSupport(target()).gotoKernelArch(arch, kernelType, aLength, bLength, nLength, program, constArgs.length, varArgProperties, flatLayout != null,
+                        batch != null, elementKind);
+        if (targetArch == VEC_ARCH_NONE) {
+            throw new PermanentBailoutException("Goto kernel type %d with a %dx%d tile cannot be emitted for vector arch %d", kernelType, aLength, bLength, getSupportedVecArch());
+        }
+        Value kernelKPanelSize = kPanelSize;
+        Value kernelI = i;
+        Value kernelK = k;
+        Value kernelJ = j;
+        if (batch != null) {
+            // kPanelSize carries the batch count; the kernel computes the tile positions itself.
+            kernelKPanelSize = asAllocatable(kPanelSize);
+            kernelI = newVariable(LIRKind.value(AMD64Kind.DWORD));
+            kernelK = newVariable(LIRKind.value(AMD64Kind.DWORD));
+            kernelJ = newVariable(LIRKind.value(AMD64Kind.DWORD));
+        }
+        append(new GotoKernelOp(this, arrs, kernelKPanelSize, kernelI, kernelK, kernelJ, targetArch, kernelType, aLength, bLength, mLength, kLength, nLength, calc, constArgs, varArgProperties, miscArgs, flatLayout,
+                        prefetch, batch, elementKind, offHeap));
+    }
+
+    @Override
+    public void emitGotoPack(Value src, Value ld, Value dst, Value dstOffset,
+                                    Value row, Value col, Value depth, int width, boolean transpose, boolean flat) {
+        // The plugins already asked AMD64VecKernelSupport; this only guards against other callers.
+        if (!new AMD64VecKernelSupport(target()).supportsGotoPack()) {
+            throw new PermanentBailoutException("Goto pack needs AVX");
+        }
+        append(new GotoPackOp(this, src, ld, dst, dstOffset, row, col, depth, width, transpose, flat));
     }
 
     @Override
     public void emitConvKernel(Value arrs, Value kPanelSize,
-                                    Value i, Value k, Value j, int kernelType, int aLength, int bLength, int outChannels, int inChannels, int imgLength, int kernelLength, long[] calc, double[] constArgs, int[] varArgProperties) {
-        append(new ConvKernelOp(this, arrs, kPanelSize, i, k, j, kernelType, aLength, bLength, outChannels, inChannels, imgLength, kernelLength, calc, constArgs, varArgProperties));
+                                    Value i, Value k, Value j, int aLength, int bLength, int outChannels, int inChannels, int[] geometry) {
+        // The plugins already asked AMD64VecKernelSupport; this only guards against other callers.
+        if (!new AMD64VecKernelSupport(target()).supportsConvKernel()) {
+            throw new PermanentBailoutException("Conv kernel needs AVX-512 and BMI2");
+        }
+        append(new ConvKernelOp(this, asAllocatable(arrs), asAllocatable(kPanelSize), asAllocatable(i), asAllocatable(k), asAllocatable(j), aLength, bLength, outChannels, inChannels, geometry));
+    }
+
+    @Override
+    public Variable emitVectorMap(JavaKind elementKind, int[] program, Value from, Value to, Value[] arrays, Value[] scalars) {
+        // Must agree with AMD64LoweringProviderMixin.vectorLoopLanes, which the vectorizer asked.
+        EnumSet<CPUFeature> features = ((AMD64) target().arch).getFeatures();
+        if (!features.contains(CPUFeature.AVX2)) {
+            throw new PermanentBailoutException("Vector loops need AVX2");
+        }
+        Value[] arrayPtrs = new Value[arrays.length];
+        for (int a = 0; a < arrays.length; a++) {
+            arrayPtrs[a] = asAllocatable(arrays[a]);
+        }
+        Value[] scalarValues = new Value[scalars.length];
+        for (int s = 0; s < scalars.length; s++) {
+            scalarValues[s] = asAllocatable(scalars[s]);
+        }
+        Variable result = newVariable(LIRKind.value(AMD64Kind.DWORD));
+        append(new VectorMapOp(this, elementKind, program, result, asAllocatable(from), asAllocatable(to), arrayPtrs, scalarValues, features.contains(CPUFeature.AVX512F)));
+        return result;
+    }
+
+    @Override
+    public Variable emitVectorReduce(JavaKind elementKind, int reduceOp, int[] program, Value from, Value end, Value init, Value[] arrays, Value[] scalars) {
+        EnumSet<CPUFeature> features = ((AMD64) target().arch).getFeatures();
+        if (!features.contains(CPUFeature.AVX2)) {
+            throw new PermanentBailoutException("Vector loops need AVX2");
+        }
+        Value[] arrayPtrs = new Value[arrays.length];
+        for (int a = 0; a < arrays.length; a++) {
+            arrayPtrs[a] = asAllocatable(arrays[a]);
+        }
+        Value[] scalarValues = new Value[scalars.length];
+        for (int s = 0; s < scalars.length; s++) {
+            scalarValues[s] = asAllocatable(scalars[s]);
+        }
+        boolean avx512 = features.contains(CPUFeature.AVX512F);
+        AMD64Kind scalarKind = (AMD64Kind) target().arch.getPlatformKind(elementKind);
+        Variable vector = newVariable(LIRKind.value(AVXKind.getAVXKind(scalarKind, avx512 ? AVXSize.ZMM : AVXSize.YMM)));
+        append(new VectorReduceOp(this, elementKind, reduceOp, program, vector, asAllocatable(from), asAllocatable(end), asAllocatable(init), arrayPtrs, scalarValues, avx512));
+
+        // Fold the lanes in halves down to lane 0.
+        VexRVMOp op = VectorMapOp.binaryOp(elementKind, reduceOp);
+        LIRKind ymmKind = LIRKind.value(AVXKind.getAVXKind(scalarKind, AVXSize.YMM));
+        LIRKind xmmKind = LIRKind.value(AVXKind.getAVXKind(scalarKind, AVXSize.XMM));
+        Variable folded = vector;
+        if (avx512) {
+            Variable high = newVariable(ymmKind);
+            append(new AMD64VectorShuffle.Extract256Op(high, folded, 1));
+            folded = foldVector(op, AVXSize.YMM, ymmKind, folded, high);
+        }
+        Variable high = newVariable(xmmKind);
+        append(new AMD64VectorShuffle.Extract128Op(high, folded, 1));
+        folded = foldVector(op, AVXSize.XMM, xmmKind, folded, high);
+        int[] selectors = scalarKind.getSizeInBytes() == 4 ? new int[]{0x4E, 0xB1} : new int[]{0x4E};
+        boolean floatingPoint = elementKind == JavaKind.Float || elementKind == JavaKind.Double;
+        for (int i = 0; i < selectors.length; i++) {
+            Variable swapped = newVariable(xmmKind);
+            append(new AMD64VectorShuffle.ShuffleWordOp(VexRMIOp.VPSHUFD, swapped, folded, selectors[i]));
+            // A floating-point scalar is lane 0 of an XMM register, so the last fold makes it.
+            boolean last = i == selectors.length - 1;
+            folded = foldVector(op, AVXSize.XMM, floatingPoint && last ? LIRKind.value(scalarKind) : xmmKind, folded, swapped);
+        }
+        if (floatingPoint) {
+            return folded;
+        }
+        Variable result = newVariable(LIRKind.value(scalarKind));
+        if (elementKind == JavaKind.Int) {
+            append(new AMD64VectorShuffle.ExtractIntOp(result, folded, 0));
+        } else {
+            append(new AMD64VectorShuffle.ExtractLongOp(result, folded, 0));
+        }
+        return result;
+    }
+
+    /** Appends {@code x op y} on vectors of {@code size}, of which only the low lanes matter. */
+    private Variable foldVector(VexRVMOp op, AVXSize size, LIRKind resultKind, Variable x, Variable y) {
+        Variable result = newVariable(resultKind);
+        append(new AMD64VectorBinary.AVXBinaryOp(op, size, result, x, y));
+        return result;
     }
 }
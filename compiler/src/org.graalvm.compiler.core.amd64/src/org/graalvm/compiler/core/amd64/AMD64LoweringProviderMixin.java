@@ -27,6 +27,9 @@ package org.graalvm.compiler.core.amd64;
 
 import static org.graalvm.compiler.core.common.memory.MemoryOrderMode.VOLATILE;
 
+import java.util.EnumSet;
+
+import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
 import org.graalvm.compiler.graph.Node;
 import org.graalvm.compiler.nodes.FixedNode;
 import org.graalvm.compiler.nodes.FixedWithNextNode;
@@ -40,10 +43,16 @@ import org.graalvm.compiler.nodes.memory.VolatileWriteNode;
 import org.graalvm.compiler.nodes.memory.WriteNode;
 import org.graalvm.compiler.nodes.spi.LoweringProvider;
 import org.graalvm.compiler.nodes.spi.LoweringTool;
+import org.graalvm.compiler.nodes.vec.VecKernelSupport;
 import org.graalvm.compiler.replacements.amd64.AMD64ArrayIndexOfWithMaskNode;
 import org.graalvm.compiler.replacements.amd64.AMD64ArrayRegionEqualsWithMaskNode;
 import org.graalvm.compiler.replacements.amd64.AMD64TruffleArrayUtilsWithMaskSnippets;
 
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.amd64.AMD64.CPUFeature;
+import jdk.vm.ci.code.TargetDescription;
+import jdk.vm.ci.meta.JavaKind;
+
 public interface AMD64LoweringProviderMixin extends LoweringProvider {
 
     @Override
@@ -56,6 +65,31 @@ public interface AMD64LoweringProviderMixin extends LoweringProvider {
         return true;
     }
 
+    TargetDescription getTarget();
+
+    /**
+     * Vector loops use ZMM vectors with AVX-512 and YMM vectors with AVX2, which has the packed
+     * integer ops and the register broadcasts.
+     */
+    @Override
+    default int vectorLoopLanes(JavaKind kind) {
+        if (kind != JavaKind.Int && kind != JavaKind.Long && kind != JavaKind.Float && kind != JavaKind.Double) {
+            return 0;
+        }
+        EnumSet<CPUFeature> features = ((AMD64) getTarget().arch).getFeatures();
+        if (features.contains(CPUFeature.AVX512F)) {
+            return AVXSize.ZMM.getBytes() / kind.getByteCount();
+        } else if (features.contains(CPUFeature.AVX2)) {
+            return AVXSize.YMM.getBytes() / kind.getByteCount();
+        }
+        return 0;
+    }
+
+    @Override
+    default VecKernelSupport getVecKernelSupport() {
+        return new AMD64VecKernelSupport(getTarget());
+    }
+
     /**
      * Performs AMD64-specific lowerings. Returns {@code true} if the given Node {@code n} was
      * lowered, {@code false} otherwise.
@@ -0,0 +1,147 @@
+package org.graalvm.compiler.core.amd64;
+
+import java.util.EnumSet;
+
+import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
+import org.graalvm.compiler.debug.DebugContext;
+import org.graalvm.compiler.lir.amd64.vec.GotoOpCode;
+import org.graalvm.compiler.lir.amd64.vec.GotoProgram;
+import org.graalvm.compiler.lir.amd64.vec.GotoKernel.GotoIntKernel;
+import org.graalvm.compiler.lir.amd64.vec.GotoKernel.GotoKernel;
+import org.graalvm.compiler.lir.amd64.vec.GotoKernel.GotoKernelOp;
+import org.graalvm.compiler.nodes.vec.GotoKernelDescriptor;
+import org.graalvm.compiler.nodes.vec.VecKernelSupport;
+
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.amd64.AMD64.CPUFeature;
+import jdk.vm.ci.code.TargetDescription;
+import jdk.vm.ci.meta.JavaKind;
+
+/**
+ * The vector kernels an AMD64 target can emit. {@link AMD64LIRGenerator} makes the same checks
+ * before it emits a kernel, so a call the invocation plugins intrinsified never bails out there.
+ */
+public final class AMD64VecKernelSupport implements VecKernelSupport {
+    public static final int VEC_ARCH_NONE = -1;
+    public static final int VEC_ARCH_AVX = 0;
+    public static final int VEC_ARCH_AVX2 = 1;
+    public static final int VEC_ARCH_AVX512 = 2;
+
+    private static final int KERNEL_AB = 0;
+    private static final int KERNEL_AB_TRANSPOSED_RESULT = 3;
+    private static final int KERNEL_PACKED = 4;
+    private static final int KERNEL_INTERLEAVE_PACKED = 5;
+    private static final int KERNEL_INT8 = 6;
+    private static final int KERNEL_INT16 = 7;
+
+    private final EnumSet<CPUFeature> features;
+
+    public AMD64VecKernelSupport(TargetDescription target) {
+        this.features = ((AMD64) target.arch).getFeatures();
+    }
+
+    /**
+     * Returns the widest vector kernel code path (0 = AVX, 1 = AVX2 with FMA, 2 = AVX-512) that the
+     * target supports, or -1 if it has no AVX at all.
+     */
+    public int vecArch() {
+        if (features.contains(CPUFeature.AVX512F)) {
+            return VEC_ARCH_AVX512;
+        } else if (features.contains(CPUFeature.AVX2) && features.contains(CPUFeature.FMA)) {
+            return VEC_ARCH_AVX2;
+        } else if (features.contains(CPUFeature.AVX)) {
+            return VEC_ARCH_AVX;
+        }
+        return VEC_ARCH_NONE;
+    }
+
+    @Override
+    public boolean supportsScatterReduce() {
+        // The conflict detection needs AVX512CD on top of AVX-512 gathers and scatters.
+        return vecArch() == VEC_ARCH_AVX512 && features.contains(CPUFeature.AVX512CD);
+    }
+
+    @Override
+    public boolean supportsSimdDoubleFmadd() {
+        // Needs fused multiply-adds on at least ymm.
+        return vecArch() >= VEC_ARCH_AVX2;
+    }
+
+    @Override
+    public boolean supportsGotoPack() {
+        // The transposing copies shuffle ymm registers.
+        return vecArch() >= VEC_ARCH_AVX;
+    }
+
+    @Override
+    public boolean supportsConvKernel() {
+        // The edge masks are built with BZHI.
+        return vecArch() == VEC_ARCH_AVX512 && features.contains(CPUFeature.BMI2);
+    }
+
+    @Override
+    public boolean supportsGotoKernel(GotoKernelDescriptor descriptor, JavaKind elementKind, boolean batched, DebugContext debug) {
+        GotoProgram program = GotoProgram.get(descriptor.getCalc(), debug);
+        return gotoKernelArch(descriptor.getArch(), descriptor.getKernelType(), descriptor.getALength(), descriptor.getBLength(), descriptor.getNLength(), program,
+                        descriptor.getConstArgs().length, descriptor.getVarArgProperties(), descriptor.getFlatLayout() != null, batched, elementKind) != VEC_ARCH_NONE;
+    }
+
+    /**
+     * Returns the vector arch the Goto kernel is emitted for, the arch of its descriptor clamped to
+     * the target, or {@link #VEC_ARCH_NONE} if the target cannot run it. That includes a tile that
+     * does not fit the vector registers of the clamped arch: a descriptor tuned for the 32 zmm
+     * registers of AVX-512 may need more than the 16 ymm registers of AVX2. It also includes a
+     * program the kernel type would not run as written.
+     */
+    public int gotoKernelArch(int arch, int kernelType, int aLength, int bLength, int nLength, GotoProgram program, int constArgCount, int[] varArgProperties, boolean flat, boolean batched,
+                    JavaKind elementKind) {
+        // The arch in the descriptor is an upper bound; never emit instructions the target lacks.
+        int targetArch = Math.min(arch, vecArch());
+        // Only the packed kernel has AVX and AVX2 code paths, the others are AVX-512 only.
+        int requiredArch = kernelType == KERNEL_PACKED ? VEC_ARCH_AVX : VEC_ARCH_AVX512;
+        boolean integer = kernelType == KERNEL_INT8 || kernelType == KERNEL_INT16;
+        boolean narrowBatch = batched && kernelType <= 1 && !program.hasEpilogue();
+        if (narrowBatch) {
+            // Batched AB and ATB kernels without an epilogue also run on ymm, which suits problems
+            // narrower than a zmm; their tiles then have to divide N.
+            requiredArch = VEC_ARCH_AVX2;
+        } else if (integer) {
+            // The integer kernels work on words, so without AVX512BW they fall back to ymm.
+            requiredArch = VEC_ARCH_AVX2;
+            if (targetArch == VEC_ARCH_AVX512 && !features.contains(CPUFeature.AVX512BW)) {
+                targetArch = VEC_ARCH_AVX2;
+            }
+        }
+        if (targetArch < requiredArch) {
+            return VEC_ARCH_NONE;
+        }
+        if (kernelType == KERNEL_INTERLEAVE_PACKED && !program.isFmadd()) {
+            // The interleaved kernel only computes C += A * B.
+            return VEC_ARCH_NONE;
+        }
+        // Only the unpacked flat kernels and the AB kernels over arrays of rows load A and B where
+        // the program says so.
+        boolean loadsOnDemand = kernelType == KERNEL_AB || kernelType == KERNEL_AB_TRANSPOSED_RESULT || (flat && kernelType < KERNEL_PACKED);
+        if ((program.loads(GotoOpCode.A) || program.loads(GotoOpCode.B)) && !loadsOnDemand) {
+            return VEC_ARCH_NONE;
+        }
+        if (targetArch < arch && kernelType != KERNEL_PACKED && nLength % bLength != 0) {
+            // Callers of an AVX-512 descriptor may rely on its masked N tail, which the narrower
+            // code paths lack, and call the kernel on a tile that hangs over the N edge. The
+            // packed kernel covers its last panel by itself.
+            return VEC_ARCH_NONE;
+        }
+        // bLength counts elements; the integer kernels keep 32-bit sums.
+        int lanes = (targetArch == VEC_ARCH_AVX512 ? AVXSize.ZMM : AVXSize.YMM).getBytes() / elementKind.getByteCount();
+        int bVectors = bLength / lanes;
+        if (bVectors == 0 || (narrowBatch && targetArch == VEC_ARCH_AVX2 && nLength % bLength != 0)) {
+            return VEC_ARCH_NONE;
+        }
+        boolean vnni = integer && targetArch == VEC_ARCH_AVX512 && GotoIntKernel.supportsVnni(features);
+        int needed = GotoKernelOp.simdRegistersNeeded(targetArch, kernelType, flat, vnni, program, aLength, bVectors, constArgCount, varArgProperties);
+        if (needed > GotoKernel.simdRegisterBudget(targetArch, program)) {
+            return VEC_ARCH_NONE;
+        }
+        return targetArch;
+    }
+}
@@ -105,6 +105,13 @@ public final class GraalOptions {
     @Option(help = "", type = OptionType.Debug)
     public static final OptionKey<Boolean> PartialUnroll = new OptionKey<>(true);
 
+    @Option(help = "Vectorizes element-wise counted loops over primitive arrays.", type = OptionType.Debug)
+    public static final OptionKey<Boolean> VectorizeLoops = new OptionKey<>(true);
+
+    @Option(help = "Lets the loop vectorizer reorder float and double reductions, which changes their rounding, and " +
+                   "use vector min and max, which differ from Math.min and Math.max for NaN and -0.0.", type = OptionType.Expert)
+    public static final OptionKey<Boolean> VectorizeFloatReductions = new OptionKey<>(false);
+
     @Option(help = "", type = OptionType.Expert)
     public static final OptionKey<Float> MinimumPeelFrequency = new OptionKey<>(0.35f);
 
@@ -31,6 +31,7 @@ import static org.graalvm.compiler.core.common.GraalOptions.OptFloatingReads;
 import static org.graalvm.compiler.core.common.GraalOptions.SpeculativeGuardMovement;
 import static org.graalvm.compiler.core.common.GraalOptions.PartialUnroll;
 import static org.graalvm.compiler.core.common.GraalOptions.ReassociateExpressions;
+import static org.graalvm.compiler.core.common.GraalOptions.VectorizeLoops;
 import static org.graalvm.compiler.core.common.GraalOptions.VerifyHeapAtReturn;
 import static org.graalvm.compiler.core.common.SpectrePHTMitigations.GuardTargets;
 import static org.graalvm.compiler.core.common.SpectrePHTMitigations.NonDeoptGuardTargets;
@@ -40,6 +41,7 @@ import org.graalvm.compiler.loop.phases.LoopPartialUnrollPhase;
 import org.graalvm.compiler.loop.phases.LoopPredicationPhase;
 import org.graalvm.compiler.loop.phases.LoopSafepointEliminationPhase;
 import org.graalvm.compiler.loop.phases.SpeculativeGuardMovementPhase;
+import org.graalvm.compiler.loop.phases.vec.LoopVectorizationPhase;
 import org.graalvm.compiler.nodes.loop.DefaultLoopPolicies;
 import org.graalvm.compiler.nodes.loop.LoopPolicies;
 import org.graalvm.compiler.nodes.spi.LoweringTool;
@@ -106,6 +108,11 @@ public class MidTier extends BaseTier<MidTierContext> {
 
         appendPhase(new FrameStateAssignmentPhase());
 
+        if (VectorizeLoops.getValue(options)) {
+            // Before partial unrolling, which then only unrolls the loops left scalar.
+            appendPhase(new LoopVectorizationPhase());
+        }
+
         if (PartialUnroll.getValue(options)) {
             LoopPolicies loopPolicies = createLoopPolicies(options);
             appendPhase(new LoopPartialUnrollPhase(loopPolicies, canonicalizer));
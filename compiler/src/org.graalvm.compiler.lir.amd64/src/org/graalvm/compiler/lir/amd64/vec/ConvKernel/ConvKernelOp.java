@@ -1,18 +1,20 @@
 package org.graalvm.compiler.lir.amd64.vec.ConvKernel;
 
-import static jdk.vm.ci.amd64.AMD64.rax;
-import static jdk.vm.ci.amd64.AMD64.rdx;
+import static jdk.vm.ci.amd64.AMD64.k2;
+import static jdk.vm.ci.amd64.AMD64.k3;
+import static jdk.vm.ci.amd64.AMD64.k4;
+import static jdk.vm.ci.amd64.AMD64.k5;
+import static jdk.vm.ci.amd64.AMD64.k6;
+import static jdk.vm.ci.amd64.AMD64.k7;
 import static jdk.vm.ci.amd64.AMD64.rsp;
 import static jdk.vm.ci.amd64.AMD64.xmmRegistersAVX512;
 import static jdk.vm.ci.code.ValueUtil.asRegister;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.B0;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.Z1;
 import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.OperandSize.QWORD;
 import static org.graalvm.compiler.lir.LIRInstruction.OperandFlag.REG;
 
-import java.io.FileWriter;
-import java.io.PrintWriter;
-import java.util.HashMap;
 import java.util.Objects;
-import java.util.Stack;
 import jdk.vm.ci.amd64.AMD64Kind;
 import jdk.vm.ci.code.Register;
 import jdk.vm.ci.meta.JavaKind;
@@ -22,6 +24,7 @@ import org.graalvm.compiler.asm.amd64.AMD64Address;
 import org.graalvm.compiler.asm.amd64.AMD64Address.Scale;
 import org.graalvm.compiler.asm.amd64.AMD64Assembler;
 import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
+import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
 import org.graalvm.compiler.core.common.LIRKind;
 import org.graalvm.compiler.lir.LIRInstructionClass;
 import org.graalvm.compiler.lir.Opcode;
@@ -29,11 +32,40 @@ import org.graalvm.compiler.lir.amd64.AMD64LIRInstruction;
 import org.graalvm.compiler.lir.asm.CompilationResultBuilder;
 import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
 
+/**
+ * AVX-512 micro-kernel for a 2D convolution computed as an implicit GEMM: M runs over output
+ * channels, K over {@code (inChannel, kernelRow, kernelCol)} and N over the output pixels of one
+ * output row. See {@code com.oracle.truffle.api.vec.ConvKernelReference} for the exact semantics.
+ *
+ * <p>The prologue splits j and k with reciprocal multiplications instead of IDIV. The loop walks K
+ * with an odometer over {@code (channel, ky, kx)} and only re-resolves the image row when {@code
+ * ky} or the channel changes. Loads of B are masked: lanes past the end of the output row are never
+ * loaded or stored, and with padding the lanes whose image column falls outside the image are zero.
+ * A non-unit column stride gathers B. Rows past the M edge are done one at a time.
+ */
 @Opcode("CONVKERNEL")
 public final class ConvKernelOp extends AMD64LIRInstruction {
   public static final LIRInstructionClass<ConvKernelOp> TYPE =
       LIRInstructionClass.create(ConvKernelOp.class);
 
+  /** One opmask register per B vector; k2 holds the per-step load mask when there is padding. */
+  public static final int MAX_B_VECTORS = 5;
+
+  private static final Register[] N_MASKS = {k3, k4, k5, k6, k7};
+  private static final Register LOAD_MASK = k2;
+
+  // The gather index sits below the tile since the assembler only encodes VSIB indices below
+  // xmm16; the two constants sit above it.
+  private static final int X_INDEX = 1;
+  private static final int LANE_OFFSETS = 31;
+  private static final int IMG_WIDTH = 30;
+
+  /** Largest {@code 1 + bVectors + aLength * bVectors} that leaves the registers above free. */
+  public static final int MAX_TILE_REGISTERS = 29;
+
+  private static final int LANES = 8;
+  private static final int CMP_LT = 1;
+
   protected final int DOUBLE_ARRAY_BASE_OFFSET;
   protected final Scale DOUBLE_ARRAY_INDEX_SCALE;
 
@@ -56,17 +88,23 @@ public final class ConvKernelOp extends AMD64LIRInstruction {
   Value jValue;
 
   @Temp({REG})
-  Value loopIndexValue;
+  Value xBaseValue;
 
   @Temp({REG})
   Value[] remainingRegValues;
 
-  protected final int remainingRegisterNum;
-
-  protected final int kernelType;
   protected final int aLength, bLength;
-  protected final int outChannels, inChannels, imgLength, kernelLength;
+  protected final int outChannels, inChannels;
+  protected final int imgHeight, imgWidth, kernelHeight, kernelWidth;
+  protected final int strideH, strideW, padH, padW, dilationH, dilationW;
+  protected final int outWidth, kLength;
 
+  private Register arrsPtr, kEnd, iPos, kPos, yBase, xBase, channel, ky, kx, scratch, temp, imgRow;
+
+  /**
+   * {@code geometry} is {@code {imgHeight, imgWidth, kernelHeight, kernelWidth, strideH, strideW,
+   * padH, padW, dilationH, dilationW}}; {@code bLength} is in doubles.
+   */
   public ConvKernelOp(
       LIRGeneratorTool tool,
       Value arrs,
@@ -74,16 +112,11 @@ public final class ConvKernelOp extends AMD64LIRInstruction {
       Value i,
       Value k,
       Value j,
-      int kernelType,
       int aLength,
       int bLength,
       int outChannels,
       int inChannels,
-      int imgLength,
-      int kernelLength,
-      long[] calc,
-      double[] constArgs,
-      int[] varArgProperties) {
+      int[] geometry) {
     super(TYPE);
 
     DOUBLE_ARRAY_BASE_OFFSET =
@@ -104,370 +137,336 @@ public final class ConvKernelOp extends AMD64LIRInstruction {
     kValue = k;
     jValue = j;
 
-    loopIndexValue = tool.newVariable(LIRKind.value(AMD64Kind.DWORD));
-
-    remainingRegisterNum = 8;
+    xBaseValue = tool.newVariable(LIRKind.value(AMD64Kind.QWORD));
 
-    remainingRegValues = new Value[remainingRegisterNum];
-    for (int index = 0; index < remainingRegisterNum; index++) {
+    remainingRegValues = new Value[6];
+    for (int index = 0; index < remainingRegValues.length; index++) {
       remainingRegValues[index] = tool.newVariable(LIRKind.value(AMD64Kind.QWORD));
     }
 
-    this.kernelType = kernelType;
     this.aLength = aLength;
-    this.bLength = bLength / 8; // bLength in term of SIMD registers
+    this.bLength = bLength / LANES; // bLength in term of SIMD registers
     this.outChannels = outChannels;
     this.inChannels = inChannels;
-    this.imgLength = imgLength;
-    this.kernelLength = kernelLength;
+    this.imgHeight = geometry[0];
+    this.imgWidth = geometry[1];
+    this.kernelHeight = geometry[2];
+    this.kernelWidth = geometry[3];
+    this.strideH = geometry[4];
+    this.strideW = geometry[5];
+    this.padH = geometry[6];
+    this.padW = geometry[7];
+    this.dilationH = geometry[8];
+    this.dilationW = geometry[9];
+    this.outWidth = (imgWidth + 2 * padW - dilationW * (kernelWidth - 1) - 1) / strideW + 1;
+    this.kLength = inChannels * kernelHeight * kernelWidth;
   }
 
-  private void addToNoDivStack(Stack<Register> stack, Register toPush) {
-    if (!toPush.equals(rax) && !toPush.equals(rdx)) {
-      stack.push(toPush);
-    }
+  private static Register a() {
+    return xmmRegistersAVX512[0];
   }
 
-  @Override
-  public void emitCode(CompilationResultBuilder crb, AMD64MacroAssembler masm) {
-    Register arrsPtr = asRegister(arrsValue);
-    Register kPanelSize = asRegister(kPanelSizeValue);
-    Register iPos = asRegister(iValue);
-    Register kPos = asRegister(kValue);
-    Register jPos = asRegister(jValue);
-    Register loopIndex = asRegister(loopIndexValue);
-
-    Register[] genRegs = new Register[remainingRegisterNum];
-    for (int i = 0; i < remainingRegisterNum; i++) {
-      genRegs[i] = asRegister(remainingRegValues[i]);
-    }
-
-    Stack<Register> notRaxRdxRegs = new Stack<>();
-    for (int i = 0; i < genRegs.length; i++) {
-      addToNoDivStack(notRaxRdxRegs, genRegs[i]);
-    }
+  private static Register b(int j) {
+    return xmmRegistersAVX512[2 + j];
+  }
 
-    // Declare SIMD registers
-    int registerIndex = 0;
-    HashMap<String, Integer> simdRegisters = new HashMap<String, Integer>();
+  private Register c(int i, int j) {
+    return xmmRegistersAVX512[2 + bLength + i * bLength + j];
+  }
 
-    simdRegisters.put("A", registerIndex++);
+  private AMD64Address objectElement(Register array, Register index, int displacement) {
+    return new AMD64Address(
+        array, index, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + displacement);
+  }
 
-    for (int i = 0; i < bLength; i++) {
-      simdRegisters.put("B" + String.valueOf(i), registerIndex++);
-    }
+  @Override
+  public void emitCode(CompilationResultBuilder crb, AMD64MacroAssembler masm) {
+    arrsPtr = asRegister(arrsValue);
+    kEnd = asRegister(kPanelSizeValue);
+    iPos = asRegister(iValue);
+    kPos = asRegister(kValue);
+    yBase = asRegister(jValue);
+    xBase = asRegister(xBaseValue);
+    channel = asRegister(remainingRegValues[0]);
+    ky = asRegister(remainingRegValues[1]);
+    kx = asRegister(remainingRegValues[2]);
+    scratch = asRegister(remainingRegValues[3]);
+    temp = asRegister(remainingRegValues[4]);
+    imgRow = asRegister(remainingRegValues[5]);
+
+    // The arguments are temps; give them back unchanged.
+    masm.push(iPos);
+    masm.push(yBase);
+    masm.push(kPos);
+    masm.push(kEnd);
+
+    Label endLabel = new Label();
+    Label edgeLabel = new Label();
+    masm.movq(scratch, iPos);
+    masm.addq(scratch, aLength);
+    masm.cmpq(scratch, outChannels);
+    masm.jcc(AMD64Assembler.ConditionFlag.Greater, edgeLabel);
+    emitTile(masm, aLength);
+    masm.jmp(endLabel);
+
+    // Fewer than aLength output channels are left.
+    masm.bind(edgeLabel);
+    Label edgeLoopLabel = new Label();
+    masm.cmpq(iPos, outChannels);
+    masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, endLabel);
+    masm.bind(edgeLoopLabel);
+    emitTile(masm, 1);
+    masm.addq(iPos, 1);
+    masm.cmpq(iPos, outChannels);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, edgeLoopLabel);
+
+    masm.bind(endLabel);
+    masm.pop(kEnd);
+    masm.pop(kPos);
+    masm.pop(yBase);
+    masm.pop(iPos);
+  }
 
-    for (int i = 0; i < aLength; i++) {
-      for (int j = 0; j < bLength; j++) {
-        simdRegisters.put("C" + String.valueOf(i) + String.valueOf(j), registerIndex++);
+  /** Computes the {@code rows x bLength} tile at iPos from the arguments saved on the stack. */
+  private void emitTile(AMD64MacroAssembler masm, int rows) {
+    masm.movq(kEnd, new AMD64Address(rsp, 0));
+    masm.movq(kPos, new AMD64Address(rsp, 8));
+    masm.movq(yBase, new AMD64Address(rsp, 16));
+
+    // kEnd = min(kPos + kPanelSize, kLength)
+    masm.addq(kEnd, kPos);
+    masm.cmpq(kEnd, kLength);
+    Label clampedLabel = new Label();
+    masm.jcc(AMD64Assembler.ConditionFlag.LessEqual, clampedLabel);
+    masm.movq(kEnd, kLength);
+    masm.bind(clampedLabel);
+
+    // Output row oy and first column ox0 of the tile; both are needed again to store it.
+    emitDivMod(masm, yBase, outWidth, temp, imgRow);
+    masm.push(temp);
+    masm.push(imgRow);
+
+    emitNMasks(masm);
+
+    // Image coordinates of the tile's first pixel for the kernel tap (0, 0).
+    emitMulAdd(masm, xBase, imgRow, strideW, -padW);
+    emitMulAdd(masm, yBase, temp, strideH, -padH);
+
+    // (channel, ky, kx) of kPos.
+    emitDivMod(masm, kPos, kernelHeight * kernelWidth, channel, imgRow);
+    emitDivMod(masm, imgRow, kernelWidth, ky, kx);
+
+    if (strideW != 1 || padW > 0) {
+      // LANE_OFFSETS = {0, strideW, ..., 7 * strideW}
+      masm.subq(rsp, LANES * 8);
+      for (int lane = 0; lane < LANES; lane++) {
+        masm.movslq(new AMD64Address(rsp, lane * 8), lane * strideW);
       }
+      masm.vmovupd(xmmRegistersAVX512[LANE_OFFSETS], new AMD64Address(rsp));
+      masm.addq(rsp, LANES * 8);
+    }
+    if (padW > 0) {
+      masm.movq(scratch, imgWidth);
+      masm.vpbroadcastq(xmmRegistersAVX512[IMG_WIDTH], scratch);
     }
 
-    AMD64Address resultAddress, aAddress, bAddress;
-
-    // Set subresult regs to zero
-    masm.vpxorq(
-        xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(0) + String.valueOf(0))],
-        xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(0) + String.valueOf(0))],
-        xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(0) + String.valueOf(0))]);
-    for (int i = 0; i < aLength; i++) {
+    for (int i = 0; i < rows; i++) {
       for (int j = 0; j < bLength; j++) {
-        if (i != 0 || j != 0) {
-          masm.vmovupd(
-              xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))],
-              xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(0) + String.valueOf(0))]);
-        }
+        masm.vpxorq(c(i, j), c(i, j), c(i, j));
       }
     }
 
-    Register jTempReg = notRaxRdxRegs.pop(); // temp
-    masm.movq(jTempReg, jPos);
-
-    masm.push(rax);
-    masm.push(rdx);
-
-    Register outLengthReg = notRaxRdxRegs.pop(); // temp
-    masm.movq(rdx, 0);
-    masm.movq(rax, jTempReg);
-    masm.movq(outLengthReg, imgLength - kernelLength + 1);
-    AMD64Assembler.AMD64MOp.IDIV.emit(masm, QWORD, outLengthReg);
-    Register iptlcoReg = notRaxRdxRegs.pop();
-    Register iptlroReg = notRaxRdxRegs.pop();
-    masm.movq(iptlcoReg, rax);
-    masm.movq(iptlroReg, rdx);
-
-    addToNoDivStack(notRaxRdxRegs, outLengthReg);
-    addToNoDivStack(notRaxRdxRegs, jTempReg);
-
-    masm.pop(rdx);
-    masm.pop(rax);
-
-    // jPos not needed during inner loop
-    masm.push(jPos);
-    addToNoDivStack(notRaxRdxRegs, jPos);
-
-    masm.push(rax);
-    masm.push(rdx);
-
-    Register kernelSizeLengthReg = notRaxRdxRegs.pop(); // temp
-    masm.movq(rdx, 0);
-    masm.movq(rax, kPos);
-    masm.movq(kernelSizeLengthReg, kernelLength * kernelLength);
-    AMD64Assembler.AMD64MOp.IDIV.emit(masm, QWORD, kernelSizeLengthReg);
-    Register kernelOffsetReg = notRaxRdxRegs.pop();
-    Register kernelOutChannelReg = notRaxRdxRegs.pop();
-    masm.movq(kernelOffsetReg, rdx);
-    masm.movq(kernelOutChannelReg, rax);
-
-    Register colOffsetReg = notRaxRdxRegs.pop();
-    Register rowOffsetReg = notRaxRdxRegs.pop();
-
-    masm.movq(rdx, 0);
-    masm.movq(rax, kernelOffsetReg);
-    masm.movq(kernelSizeLengthReg, kernelLength);
-    AMD64Assembler.AMD64MOp.IDIV.emit(masm, QWORD, kernelSizeLengthReg);
-    masm.movq(colOffsetReg, rax);
-    masm.movq(rowOffsetReg, rdx);
-
-    addToNoDivStack(notRaxRdxRegs, kernelSizeLengthReg);
-
-    masm.pop(rdx);
-    masm.pop(rax);
-
-    // rax and rdx not needed in inner loop
-    masm.push(rax);
-    masm.push(rdx);
-
-    masm.addq(kPanelSize, kPos);
-
-    // iteration test
-    // masm.movq(kPanelSize, kPos);
-    // masm.addq(kPanelSize, 1);
-
-    masm.push(kPanelSize);
-    addToNoDivStack(notRaxRdxRegs, kPanelSize);
-
-    Register imgReg = notRaxRdxRegs.pop();
-    Register kernelReg = notRaxRdxRegs.pop();
-    masm.movq(loopIndex, 0);
-    masm.movq(
-        imgReg,
-        new AMD64Address(arrsPtr, loopIndex, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET));
-    masm.movq(
-        kernelReg,
-        new AMD64Address(
-            arrsPtr, loopIndex, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + 8));
-
-    // arrsPtr not needed during inner loop
-    masm.push(arrsPtr);
-    addToNoDivStack(notRaxRdxRegs, arrsPtr);
-
-    // kPos not needed during inner loop
-    masm.push(kPos);
-    addToNoDivStack(notRaxRdxRegs, kPos);
-
-    masm.movq(loopIndex, kPos);
-
     Label loopLabel = new Label();
-    Label compStartLabel = new Label();
+    Label nextLabel = new Label();
+    Label newRowLabel = new Label();
+    Label doneLabel = new Label();
+    masm.cmpq(kPos, kEnd);
+    masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, doneLabel);
+    emitImageRow(masm);
 
     masm.bind(loopLabel);
-
-    masm.cmpq(rowOffsetReg, kernelLength);
-    masm.jcc(AMD64Assembler.ConditionFlag.NotEqual, compStartLabel);
-    masm.addq(colOffsetReg, 1);
-    masm.movq(rowOffsetReg, 0);
-
-    masm.cmpq(kernelOffsetReg, kernelLength * kernelLength);
-    masm.jcc(AMD64Assembler.ConditionFlag.NotEqual, compStartLabel);
-    masm.movq(kernelOffsetReg, 0);
-    masm.addq(kernelOutChannelReg, 1);
-
-    masm.bind(compStartLabel);
-
-    masm.movq(
-        rax,
-        new AMD64Address(
-            imgReg, kernelOutChannelReg, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET));
-    masm.movq(rdx, iptlcoReg);
-    masm.addq(rdx, colOffsetReg);
-    masm.movq(rax, new AMD64Address(rax, rdx, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET));
-    masm.movq(rdx, iptlroReg);
-    masm.addq(rdx, rowOffsetReg);
-    for (int j = 0; j < bLength; j++) {
-      masm.vmovupd(
-          xmmRegistersAVX512[simdRegisters.get("B" + String.valueOf(j))],
-          new AMD64Address(
-              rax, rdx, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET + (j * 64)));
+    if (padH > 0) {
+      // The image row lies in the padding and contributes nothing.
+      masm.testq(imgRow, imgRow);
+      masm.jcc(AMD64Assembler.ConditionFlag.Zero, nextLabel);
     }
-
-    for (int i = 0; i < aLength; i++) {
-      masm.movq(
-          rax,
-          new AMD64Address(
-              kernelReg, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (i * 8)));
-      masm.movq(
-          rax,
-          new AMD64Address(
-              rax, kernelOutChannelReg, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET));
-      masm.movq(
-          rax,
-          new AMD64Address(rax, colOffsetReg, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET));
+    emitLoadB(masm);
+    masm.movq(scratch, new AMD64Address(arrsPtr, OBJECT_ARRAY_BASE_OFFSET + 8));
+    for (int i = 0; i < rows; i++) {
+      masm.movq(temp, objectElement(scratch, iPos, i * 8));
+      masm.movq(temp, objectElement(temp, channel, 0));
+      masm.movq(temp, objectElement(temp, ky, 0));
       masm.vbroadcastsd(
-          xmmRegistersAVX512[simdRegisters.get("A")],
-          new AMD64Address(rax, rowOffsetReg, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET));
+          a(), new AMD64Address(temp, kx, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET));
       for (int j = 0; j < bLength; j++) {
-        masm.vfmadd231pd(
-            xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))],
-            xmmRegistersAVX512[simdRegisters.get("A")],
-            xmmRegistersAVX512[simdRegisters.get("B" + String.valueOf(j))]);
-        // masm.vfmadd231pd(xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) +
-        // String.valueOf(j))], xmmRegistersAVX512[simdRegisters.get("A")],
-        // xmmRegistersAVX512[simdRegisters.get("A")]);
-        // masm.vfmadd231pd(xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) +
-        // String.valueOf(j))], xmmRegistersAVX512[simdRegisters.get("B" + String.valueOf(j))],
-        // xmmRegistersAVX512[simdRegisters.get("B" + String.valueOf(j))]);
-        // masm.vmovupd(xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) +
-        // String.valueOf(j))], xmmRegistersAVX512[simdRegisters.get("A")]);
+        masm.vfmadd231pd(c(i, j), a(), b(j));
       }
     }
-    masm.addq(rowOffsetReg, 1);
-    masm.addq(kernelOffsetReg, 1);
-    masm.addq(loopIndex, 1);
-    masm.cmpq(loopIndex, new AMD64Address(rsp, (8 * 2)));
-    masm.jcc(AMD64Assembler.ConditionFlag.Less, loopLabel);
 
-    /*
-    masm.push(rax);
-    masm.push(rdx);
-    masm.movq(rdx, 0);
-    masm.movq(rax, 12);
-    masm.movq(genRegs[3], 7);
-    AMD64Assembler.AMD64MOp.IDIV.emit(masm, QWORD, genRegs[3]);
-    masm.movq(genRegs[2], rdx);
-    debugPrint(genRegs[2].toString());
-    masm.pop(rdx);
-    masm.pop(rax);
-
-    masm.movq(loopIndex, 0);
-    masm.movq(genRegs[0], new AMD64Address(arrsPtr, loopIndex, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET+16));
-    masm.movq(genRegs[0], new AMD64Address(genRegs[0], loopIndex, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET));
-    masm.movq(genRegs[0], new AMD64Address(genRegs[0], loopIndex, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET));
-    masm.movq(genRegs[1], Double.doubleToRawLongBits(67));
-    masm.movq(new AMD64Address(genRegs[0], genRegs[2], DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET), genRegs[1]);
-    */
-
-    masm.pop(kPos);
-    masm.pop(arrsPtr);
-    masm.pop(kPanelSize);
-    masm.pop(rdx);
-    masm.pop(rax);
-    masm.subq(kPanelSize, kPos);
-    masm.pop(jPos);
-
-    notRaxRdxRegs = new Stack<>();
-    for (int i = 0; i < genRegs.length; i++) {
-      addToNoDivStack(notRaxRdxRegs, genRegs[i]);
-    }
-    masm.push(iPos);
-    addToNoDivStack(notRaxRdxRegs, iPos);
-    Register iPosTemp = notRaxRdxRegs.pop();
-    masm.movq(iPosTemp, iPos);
-
-    masm.push(jPos);
-    addToNoDivStack(notRaxRdxRegs, jPos);
-    Register jPosTemp = notRaxRdxRegs.pop();
-    masm.movq(jPosTemp, jPos);
-
-    masm.push(arrsPtr);
-    addToNoDivStack(notRaxRdxRegs, arrsPtr);
-    Register resultPtr = notRaxRdxRegs.pop();
-    masm.movq(loopIndex, 0);
-    masm.movq(
-        resultPtr,
-        new AMD64Address(
-            arrsPtr, loopIndex, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + 16));
-
-    Register resultIindexed = notRaxRdxRegs.pop();
-    Register jIndex = notRaxRdxRegs.pop();
-
-    outLengthReg = notRaxRdxRegs.pop(); // temp
-    masm.movq(outLengthReg, imgLength - kernelLength + 1);
-
-    Register addressTempReg = notRaxRdxRegs.pop();
-
-    masm.push(rax);
-    masm.push(rdx);
-
-    for (int i = 0; i < aLength; i++) {
-      masm.movq(
-          resultIindexed,
-          new AMD64Address(
-              resultPtr, iPosTemp, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (i * 8)));
+    masm.bind(nextLabel);
+    masm.addq(kPos, 1);
+    masm.cmpq(kPos, kEnd);
+    masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, doneLabel);
+    masm.addq(kx, 1);
+    masm.cmpq(kx, kernelWidth);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, loopLabel);
+    masm.movq(kx, 0);
+    masm.addq(ky, 1);
+    masm.cmpq(ky, kernelHeight);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, newRowLabel);
+    masm.movq(ky, 0);
+    masm.addq(channel, 1);
+    masm.bind(newRowLabel);
+    emitImageRow(masm);
+    masm.jmp(loopLabel);
+
+    masm.bind(doneLabel);
+    // result[iPos + i][oy][ox0 + 8 * j + lane] += C(i, j)[lane]
+    Register oy = xBase;
+    masm.pop(imgRow);
+    masm.pop(oy);
+    masm.movq(scratch, new AMD64Address(arrsPtr, OBJECT_ARRAY_BASE_OFFSET + 16));
+    for (int i = 0; i < rows; i++) {
+      masm.movq(temp, objectElement(scratch, iPos, i * 8));
+      masm.movq(temp, objectElement(temp, oy, 0));
       for (int j = 0; j < bLength; j++) {
-        masm.movq(rdx, 0);
-        masm.movq(rax, 0);
-        masm.movq(rax, jPosTemp);
-        masm.addq(rax, 8 * j);
-        AMD64Assembler.AMD64MOp.IDIV.emit(masm, QWORD, outLengthReg);
-        masm.movq(
-            addressTempReg,
-            new AMD64Address(
-                resultIindexed, rax, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET));
-        resultAddress =
+        AMD64Address resultAddress =
             new AMD64Address(
-                addressTempReg, rdx, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET);
-        masm.vaddpd(
-            xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))],
-            xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))],
-            resultAddress);
-        masm.vmovupd(
-            resultAddress,
-            xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))]);
-        /*
-        resultAddress = new AMD64Address(addressTempReg, jPosTemp, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET);
-        masm.movq(rax, Double.doubleToRawLongBits(67));
-        masm.movq(resultAddress, rax);
-        */
+                temp, imgRow, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET + j * LANES * 8);
+        AMD64Assembler.VexRVMOp.VADDPD.emit(
+            masm, AVXSize.ZMM, c(i, j), c(i, j), resultAddress, N_MASKS[j]);
+        AMD64Assembler.VexMoveOp.VMOVUPD.emit(
+            masm, AVXSize.ZMM, resultAddress, c(i, j), N_MASKS[j]);
       }
     }
+  }
 
-    masm.pop(rdx);
-    masm.pop(rax);
-    masm.pop(arrsPtr);
-    masm.pop(jPos);
-    masm.pop(iPos);
+  /** {@code dst = src * factor + offset}. */
+  private static void emitMulAdd(
+      AMD64MacroAssembler masm, Register dst, Register src, int factor, int offset) {
+    if (factor == 1) {
+      masm.movq(dst, src);
+    } else {
+      AMD64Assembler.AMD64RMIOp.IMUL.emit(masm, QWORD, dst, src, factor);
+    }
+    if (offset != 0) {
+      masm.addq(dst, offset);
+    }
+  }
 
-    /*
-
-    debugPrint("^^^^^^");
-    debugPrint(arrsPtr.toString());
-    debugPrint(kPanelSize.toString());
-    debugPrint(iPos.toString());
-    debugPrint(kPos.toString());
-    debugPrint(jPos.toString());
-    debugPrint(loopIndex.toString());
-    debugPrint("$$$$$");
-    for(int i = 0; i < genRegs.length; i++) {
-        debugPrint(genRegs[i].toString());
+  /**
+   * {@code quotient = dividend / divisor} and {@code remainder = dividend % divisor} for a
+   * non-negative int {@code dividend}, by multiplying with a rounded-up reciprocal instead of IDIV.
+   * With {@code l = ceil(log2(divisor))}, {@code m = ceil(2^(31 + l) / divisor)} is exact for all
+   * 31-bit dividends and {@code dividend * m} stays below 2^63.
+   */
+  private static void emitDivMod(
+      AMD64MacroAssembler masm,
+      Register dividend,
+      int divisor,
+      Register quotient,
+      Register remainder) {
+    assert divisor > 0 && !dividend.equals(quotient) && !dividend.equals(remainder);
+    if ((divisor & (divisor - 1)) == 0) {
+      masm.movq(quotient, dividend);
+      masm.shrq(quotient, Integer.numberOfTrailingZeros(divisor));
+      masm.movq(remainder, dividend);
+      masm.andq(remainder, divisor - 1);
+      return;
     }
+    int shift = 31 + 32 - Integer.numberOfLeadingZeros(divisor - 1);
+    long multiplier = ((1L << shift) + divisor - 1) / divisor;
+    masm.movq(quotient, multiplier);
+    masm.imulq(quotient, dividend);
+    masm.shrq(quotient, shift);
+    AMD64Assembler.AMD64RMIOp.IMUL.emit(masm, QWORD, remainder, quotient, divisor);
+    masm.negq(remainder);
+    masm.addq(remainder, dividend);
+  }
 
-    */
+  /** Sets {@code N_MASKS[j]} to the lanes of B vector {@code j} that lie before outWidth. */
+  private void emitNMasks(AMD64MacroAssembler masm) {
+    for (int j = 0; j < bLength; j++) {
+      Label inRangeLabel = new Label();
+      masm.movl(scratch, outWidth - j * LANES);
+      masm.subl(scratch, imgRow);
+      masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, inRangeLabel);
+      masm.movl(scratch, 0);
+      masm.bind(inRangeLabel);
+      // BZHI only reads the low 8 bits of the index, so clamp it to the lane count first.
+      Label clampedLabel = new Label();
+      masm.cmpl(scratch, LANES);
+      masm.jcc(AMD64Assembler.ConditionFlag.LessEqual, clampedLabel);
+      masm.movl(scratch, LANES);
+      masm.bind(clampedLabel);
+      // Keep the low min(columnsLeft, 8) bits.
+      masm.movl(kx, (1 << LANES) - 1);
+      AMD64Assembler.VexGeneralPurposeRMVOp.BZHI.emit(masm, AVXSize.DWORD, kx, kx, scratch);
+      masm.kmovw(N_MASKS[j], kx);
+    }
+  }
 
-    return;
+  /** Points imgRow at {@code img[channel][yBase + ky * dilationH]}, or null in the padding. */
+  private void emitImageRow(AMD64MacroAssembler masm) {
+    Label doneLabel = new Label();
+    emitMulAdd(masm, temp, ky, dilationH, 0);
+    masm.addq(temp, yBase);
+    if (padH > 0) {
+      Label inRangeLabel = new Label();
+      masm.cmpq(temp, imgHeight);
+      // Unsigned, so negative rows are out of range too.
+      masm.jcc(AMD64Assembler.ConditionFlag.Below, inRangeLabel);
+      masm.movq(imgRow, 0);
+      masm.jmp(doneLabel);
+      masm.bind(inRangeLabel);
+    }
+    masm.movq(imgRow, new AMD64Address(arrsPtr, OBJECT_ARRAY_BASE_OFFSET));
+    masm.movq(imgRow, objectElement(imgRow, channel, 0));
+    masm.movq(imgRow, objectElement(imgRow, temp, 0));
+    masm.bind(doneLabel);
   }
 
-  protected static void debugPrint(String msg) {
-    PrintWriter debugLog = null;
-    try {
-      debugLog =
-          new PrintWriter(
-              new FileWriter(
-                  "/home/junyoung2/project/project2/adaptive-code-generation/log.txt", true));
-    } catch (Exception e) {
-      System.out.println(e);
+  /**
+   * Loads {@code B(j)[lane] = imgRow[x0 + (8 * j + lane) * strideW]} with {@code x0 = xBase + kx *
+   * dilationW}. Lanes outside the image or past the output row are zero.
+   */
+  private void emitLoadB(AMD64MacroAssembler masm) {
+    emitMulAdd(masm, temp, kx, dilationW, 0);
+    masm.addq(temp, xBase);
+    for (int j = 0; j < bLength; j++) {
+      Register mask = N_MASKS[j];
+      if (padW > 0 || strideW != 1) {
+        Register xIndex = xmmRegistersAVX512[X_INDEX];
+        masm.leaq(scratch, new AMD64Address(temp, j * LANES * strideW));
+        masm.vpbroadcastq(xIndex, scratch);
+        masm.vpaddq(xIndex, xIndex, xmmRegistersAVX512[LANE_OFFSETS], Register.None);
+        if (padW > 0) {
+          // Unsigned, so negative columns are out of range too.
+          masm.vpcmpuq(LOAD_MASK, xIndex, xmmRegistersAVX512[IMG_WIDTH], CMP_LT);
+          mask = LOAD_MASK;
+        }
+        if (strideW != 1) {
+          if (mask != LOAD_MASK) {
+            // The gather clears its mask.
+            masm.kmovw(LOAD_MASK, mask);
+          }
+          masm.vpxorq(b(j), b(j), b(j));
+          masm.vpgatherqq(
+              b(j),
+              LOAD_MASK,
+              new AMD64Address(imgRow, xIndex, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET));
+          continue;
+        }
+      }
+      AMD64Assembler.VexMoveOp.VMOVUPD.emit(
+          masm,
+          AVXSize.ZMM,
+          b(j),
+          new AMD64Address(
+              imgRow, temp, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET + j * 64),
+          mask,
+          Z1,
+          B0);
     }
-    debugLog.println(msg);
-    debugLog.close();
   }
 }
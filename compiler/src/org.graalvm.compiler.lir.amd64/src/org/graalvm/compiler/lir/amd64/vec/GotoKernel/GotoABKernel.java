@@ -5,20 +5,28 @@ import static jdk.vm.ci.amd64.AMD64.k2;
 import static jdk.vm.ci.amd64.AMD64.rsp;
 import static jdk.vm.ci.amd64.AMD64.xmmRegistersAVX512;
 import static jdk.vm.ci.code.ValueUtil.asRegister;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.B0;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.Z1;
 
 import java.util.HashMap;
 import java.util.Map;
 import jdk.vm.ci.code.Register;
+import jdk.vm.ci.meta.JavaKind;
 import org.graalvm.compiler.asm.Label;
 import org.graalvm.compiler.asm.amd64.AMD64Address;
 import org.graalvm.compiler.asm.amd64.AMD64Assembler;
 import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
+import org.graalvm.compiler.debug.GraalError;
 import org.graalvm.compiler.lir.amd64.vec.GotoOpCode;
+import org.graalvm.compiler.lir.amd64.vec.GotoProgram;
 import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
 
 public final class GotoABKernel extends GotoKernel {
   public Boolean transposeResult;
   private Register[] aTempArrayAddressRegs;
+  // Holds &B[0] while the k loop runs in float mode, where loopIndex is a byte offset into the rows
+  // of A rather than a pointer into B.
+  private Register bArrayReg;
 
   public GotoABKernel(
       LIRGeneratorTool tool,
@@ -34,6 +42,38 @@ public final class GotoABKernel extends GotoKernel {
       int[] varArgProperties,
       GotoKernelOp kernelOp,
       Boolean transpose) {
+    this(
+        tool,
+        arch,
+        kernelType,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        calc,
+        constArgs,
+        varArgProperties,
+        kernelOp,
+        transpose,
+        JavaKind.Double);
+  }
+
+  public GotoABKernel(
+      LIRGeneratorTool tool,
+      int arch,
+      int kernelType,
+      int aLength,
+      int bLength,
+      int mLength,
+      int kLength,
+      int nLength,
+      long[] calc,
+      double[] constArgs,
+      int[] varArgProperties,
+      GotoKernelOp kernelOp,
+      Boolean transpose,
+      JavaKind elementKind) {
     super(
         tool,
         arch,
@@ -46,8 +86,64 @@ public final class GotoABKernel extends GotoKernel {
         calc,
         constArgs,
         varArgProperties,
-        kernelOp);
+        kernelOp,
+        elementKind);
     this.transposeResult = transpose;
+    if (isFloat && (transpose || varArgProperties.length > 0)) {
+      throw GraalError.unimplemented("float GotoABKernel with transposed result or varArgs");
+    }
+  }
+
+  /** Address of the B row {@code offset} rows after the current k. */
+  private AMD64Address bRowAddress(int offset) {
+    if (isFloat) {
+      // loopIndex is k * 4 here, so scale it up to an index into the B row array
+      return new AMD64Address(
+          bArrayReg, loopIndex, AMD64Address.Scale.Times2, OBJECT_ARRAY_BASE_OFFSET + (offset * 8));
+    }
+    return new AMD64Address(loopIndex, OBJECT_ARRAY_BASE_OFFSET + (offset * 8));
+  }
+
+  private AMD64Address bVectorAddress(int jIndex) {
+    return new AMD64Address(
+        tempArrayAddressReg,
+        jPos,
+        ELEMENT_ARRAY_INDEX_SCALE,
+        ELEMENT_ARRAY_BASE_OFFSET + (jIndex * simdSize.getBytes()));
+  }
+
+  @Override
+  protected boolean supportsMaskedNTail() {
+    return arch == 2
+        && !transposeResult
+        && varArgProperties.length == 0
+        && initialBLength <= N_TAIL_MASKS.length;
+  }
+
+  /** Loads B vector {@code jIndex}, zeroing the lanes past the N edge in the N tail. */
+  private void emitBLoad(AMD64MacroAssembler masm, Register dst, int jIndex) {
+    Register mask = nTailMask(jIndex);
+    if (mask.isValid()) {
+      moveOp().emit(masm, simdSize, dst, bVectorAddress(jIndex), mask, Z1, B0);
+    } else {
+      emitVectorLoad(masm, dst, bVectorAddress(jIndex));
+    }
+  }
+
+  private void emitVectorLoad(AMD64MacroAssembler masm, Register dst, AMD64Address src) {
+    if (isFloat) {
+      moveOp().emit(masm, simdSize, dst, src);
+    } else {
+      masm.vmovupd(dst, src);
+    }
+  }
+
+  private void emitVectorStore(AMD64MacroAssembler masm, AMD64Address dst, Register src) {
+    if (isFloat) {
+      moveOp().emit(masm, simdSize, dst, src);
+    } else {
+      masm.vmovupd(dst, src);
+    }
   }
 
   public void subIter(
@@ -57,71 +153,52 @@ public final class GotoABKernel extends GotoKernel {
       int prefetchDistance,
       AMD64MacroAssembler masm,
       Map<String, Integer> simdRegisters) {
-    AMD64Address aAddress, bAddress;
-
     if (prefetchDistance > 0) {
-      bAddress =
-          new AMD64Address(
-              loopIndex, OBJECT_ARRAY_BASE_OFFSET + (offset * 8) + (prefetchDistance * 8));
-      masm.movq(tempArrayAddressReg, bAddress);
+      masm.movq(tempArrayAddressReg, bRowAddress(offset + prefetchDistance));
 
       for (int j = 0; j < bLength; j++) {
-        bAddress =
-            new AMD64Address(
-                tempArrayAddressReg,
-                jPos,
-                DOUBLE_ARRAY_INDEX_SCALE,
-                DOUBLE_ARRAY_BASE_OFFSET + (j * 64));
-        masm.prefetcht0(bAddress);
+        emitPrefetch(masm, bVectorAddress(j));
       }
     }
 
-    if (!toLoad.contains(GotoOpCode.B)) {
-      bAddress = new AMD64Address(loopIndex, OBJECT_ARRAY_BASE_OFFSET + (offset * 8));
-      masm.movq(tempArrayAddressReg, bAddress);
+    if (!program.loads(GotoOpCode.B)) {
+      masm.movq(tempArrayAddressReg, bRowAddress(offset));
 
       for (int j = 0; j < bLength; j++) {
-        bAddress =
-            new AMD64Address(
-                tempArrayAddressReg,
-                jPos,
-                DOUBLE_ARRAY_INDEX_SCALE,
-                DOUBLE_ARRAY_BASE_OFFSET + (j * 64));
-        masm.vmovupd(xmmRegistersAVX512[simdRegisters.get("B" + String.valueOf(j))], bAddress);
+        emitBLoad(masm, xmmRegistersAVX512[simdRegisters.get("B" + String.valueOf(j))], j);
       }
     }
 
-    if (!toLoad.contains(GotoOpCode.A)) {
-      availableValues.put(GotoOpCode.A, simdRegisters.get("A"));
+    if (!program.loads(GotoOpCode.A)) {
+      bind(GotoOpCode.A, simdRegisters.get("A"));
     }
 
     for (int i = 0; i < aLength; i++) {
-      if (!toLoad.contains(GotoOpCode.A)) {
+      if (!program.loads(GotoOpCode.A)) {
         loadA(masm, i, offset, simdRegisters.get("A"));
       }
       for (int k = 0; k < varArgProperties.length; k++) {
         if (varArgProperties[k] == 1) {
           loadVarArg(masm, k, i, -1, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
-          availableValues.put(
-              GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+          bind(
+              GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
               simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
         }
       }
       for (int j = 0; j < bLength; j++) {
-        if (!toLoad.contains(GotoOpCode.B)) {
-          availableValues.put(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
+        if (!program.loads(GotoOpCode.B)) {
+          bind(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
         }
-        availableValues.put(
-            GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
+        bind(GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
         for (int k = 0; k < varArgProperties.length; k++) {
-          if (!toLoad.contains(GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k))) {
+          if (!program.loads(GotoOpCode.operand(GotoOpCode.VARIABLEARG, k))) {
             if (varArgProperties[k] == 2) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k) + "_" + String.valueOf(j)));
             } else if (varArgProperties[k] == 3) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
               loadVarArg(masm, k, i, j, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
             }
@@ -140,7 +217,7 @@ public final class GotoABKernel extends GotoKernel {
               aTempArrayAddressRegs[iIndex],
               loopIndex,
               AMD64Address.Scale.Times1,
-              DOUBLE_ARRAY_BASE_OFFSET + (offset * 8));
+              ELEMENT_ARRAY_BASE_OFFSET + (offset * elementBytes));
     } else {
       // Todo: read from stack
       masm.movq(
@@ -150,22 +227,14 @@ public final class GotoABKernel extends GotoKernel {
               tempArrayAddressReg,
               loopIndex,
               AMD64Address.Scale.Times1,
-              DOUBLE_ARRAY_BASE_OFFSET + (offset * 8));
+              ELEMENT_ARRAY_BASE_OFFSET + (offset * elementBytes));
     }
-    masm.vbroadcastsd(xmmRegistersAVX512[dstRegNum], aAddress);
+    emitBroadcast(masm, xmmRegistersAVX512[dstRegNum], aAddress);
   }
 
   protected void loadB(AMD64MacroAssembler masm, int jIndex, int offset, int dstRegNum) {
-    AMD64Address bAddress = new AMD64Address(loopIndex, OBJECT_ARRAY_BASE_OFFSET + (offset * 8));
-    masm.movq(tempArrayAddressReg, bAddress);
-
-    bAddress =
-        new AMD64Address(
-            tempArrayAddressReg,
-            jPos,
-            DOUBLE_ARRAY_INDEX_SCALE,
-            DOUBLE_ARRAY_BASE_OFFSET + (jIndex * 64));
-    masm.vmovupd(xmmRegistersAVX512[dstRegNum], bAddress);
+    masm.movq(tempArrayAddressReg, bRowAddress(offset));
+    emitBLoad(masm, xmmRegistersAVX512[dstRegNum], jIndex);
   }
 
   protected void loadVarArg(
@@ -194,11 +263,24 @@ public final class GotoABKernel extends GotoKernel {
     }
   }
 
+  /**
+   * Vector registers the kernel needs for an {@code aLength x bVectors} tile: the broadcast of A
+   * and the vectors of B unless the program loads them itself, the tile, the arguments the program
+   * does not load and its scratch registers.
+   */
+  static int simdRegistersNeeded(
+      GotoProgram program, int aLength, int bVectors, int constArgCount, int[] varArgProperties) {
+    return (program.loads(GotoOpCode.A) ? 0 : 1)
+        + (program.loads(GotoOpCode.B) ? 0 : bVectors)
+        + aLength * bVectors
+        + argumentRegisters(program, constArgCount, varArgProperties, bVectors, true)
+        + program.scratchRegisters();
+  }
+
   protected void emitKernelCode(AMD64MacroAssembler masm, int aLength, int bLength) {
-    aTempArrayAddressNumLimit =
-        aLength < remainingRegisterNum + useAsAddressRegs.length
-            ? aLength
-            : remainingRegisterNum + useAsAddressRegs.length;
+    // In float mode tempGenReg keeps &B[0] through the loop, so it cannot hold a row of A.
+    int aAddressRegNum = remainingRegisterNum + useAsAddressRegs.length - (isFloat ? 1 : 0);
+    aTempArrayAddressNumLimit = aLength < aAddressRegNum ? aLength : aAddressRegNum;
     aTempArrayAddressRegs = new Register[aTempArrayAddressNumLimit];
     for (int i = 0; i < aTempArrayAddressNumLimit; i++) {
       if (i < useAsAddressRegs.length) {
@@ -213,10 +295,10 @@ public final class GotoABKernel extends GotoKernel {
     int registerIndex = 0;
     HashMap<String, Integer> simdRegisters = new HashMap<String, Integer>();
 
-    if (!toLoad.contains(GotoOpCode.A)) {
+    if (!program.loads(GotoOpCode.A)) {
       simdRegisters.put("A", registerIndex++);
     }
-    if (!toLoad.contains(GotoOpCode.B)) {
+    if (!program.loads(GotoOpCode.B)) {
       for (int i = 0; i < bLength; i++) {
         simdRegisters.put("B" + String.valueOf(i), registerIndex++);
       }
@@ -227,13 +309,12 @@ public final class GotoABKernel extends GotoKernel {
       }
     }
     for (int i = 0; i < constArgs.length; i++) {
-      if (!toLoad.contains(GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i))) {
-        availableValues.put(
-            GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i), registerIndex++);
+      if (!program.loads(GotoOpCode.operand(GotoOpCode.CONSTARG, i))) {
+        bind(GotoOpCode.operand(GotoOpCode.CONSTARG, i), registerIndex++);
       }
     }
     for (int i = 0; i < varArgProperties.length; i++) {
-      if (!toLoad.contains(GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(i))) {
+      if (!program.loads(GotoOpCode.operand(GotoOpCode.VARIABLEARG, i))) {
         if (varArgProperties[i] == 2) {
           for (int j = 0; j < bLength; j++) {
             simdRegisters.put(
@@ -246,26 +327,30 @@ public final class GotoABKernel extends GotoKernel {
         }
       }
     }
-    int remainingSimdRegisterNum = xmmRegistersAVX512.length - registerIndex;
-    for (int i = 0; i < remainingSimdRegisterNum; i++) {
-      availableValues.put(GotoOpCode.REG + GotoOpCode.toOpLengthBinaryString(i), registerIndex++);
-    }
+    bindScratchRegisters(registerIndex);
 
-    AMD64Address resultAddress, aAddress, bAddress;
+    AMD64Address resultAddress, aAddress;
 
     Register tempGenReg = asRegister(kernelOp.remainingRegValues[remainingRegisterNum - 1]);
 
     // Set subresult regs to zero
-    masm.vpxorq(
-        xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(0) + String.valueOf(0))],
-        xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(0) + String.valueOf(0))],
-        xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(0) + String.valueOf(0))]);
+    Register c00 =
+        xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(0) + String.valueOf(0))];
+    if (isFloat) {
+      AMD64Assembler.VexRVMOp.VPXOR.emit(masm, simdSize, c00, c00, c00);
+    } else {
+      masm.vpxorq(c00, c00, c00);
+    }
     for (int i = 0; i < aLength; i++) {
       for (int j = 0; j < bLength; j++) {
         if (i != 0 || j != 0) {
-          masm.vmovupd(
-              xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))],
-              xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(0) + String.valueOf(0))]);
+          Register c =
+              xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))];
+          if (isFloat) {
+            moveOp().emit(masm, simdSize, c, c00);
+          } else {
+            masm.vmovupd(c, c00);
+          }
         }
       }
     }
@@ -278,15 +363,25 @@ public final class GotoABKernel extends GotoKernel {
         new AMD64Address(
             arrsPtr, loopIndex, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + 8));
 
-    // Store (&B[0] + k*8) in loop index
-    masm.leaq(loopIndex, new AMD64Address(tempGenReg, kPos, OBJECT_ARRAY_INDEX_SCALE, 0));
-    masm.push(loopIndex);
+    if (isFloat) {
+      // A float is narrower than a row pointer, so the loop index cannot walk A and B at once.
+      // Keep &B[0] on the stack and count k * 4 bytes instead.
+      masm.push(tempGenReg);
+      masm.movq(loopIndex, kPos);
+      masm.shlq(loopIndex, 2);
+      masm.push(loopIndex);
+      masm.leaq(kPanelSize, new AMD64Address(loopIndex, kPanelSize, AMD64Address.Scale.Times4, 0));
+    } else {
+      // Store (&B[0] + k*8) in loop index
+      masm.leaq(loopIndex, new AMD64Address(tempGenReg, kPos, OBJECT_ARRAY_INDEX_SCALE, 0));
+      masm.push(loopIndex);
 
-    // Store (&B[k] + k*8 + kPanelSize*8) in kPanelSize register
-    masm.leaq(kPanelSize, new AMD64Address(loopIndex, kPanelSize, OBJECT_ARRAY_INDEX_SCALE, 0));
+      // Store (&B[k] + k*8 + kPanelSize*8) in kPanelSize register
+      masm.leaq(kPanelSize, new AMD64Address(loopIndex, kPanelSize, OBJECT_ARRAY_INDEX_SCALE, 0));
 
-    // Store &B[0] in loopIndex
-    masm.movq(loopIndex, tempGenReg);
+      // Store &B[0] in loopIndex
+      masm.movq(loopIndex, tempGenReg);
+    }
 
     // Push registers to be used for storing addresses of A on stack
     for (int i = 0; i < useAsAddressRegs.length; i++) {
@@ -320,14 +415,18 @@ public final class GotoABKernel extends GotoKernel {
               new AMD64Address(
                   tempGenReg, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (i * 8));
           masm.movq(aTempArrayAddressRegs[i], aAddress);
-          masm.subq(aTempArrayAddressRegs[i], loopIndex);
+          if (!isFloat) {
+            masm.subq(aTempArrayAddressRegs[i], loopIndex);
+          }
         }
       } else {
         aAddress =
             new AMD64Address(
                 tempGenReg, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (i * 8));
         masm.movq(tempArrayAddressReg, aAddress);
-        masm.subq(tempArrayAddressReg, loopIndex);
+        if (!isFloat) {
+          masm.subq(tempArrayAddressReg, loopIndex);
+        }
         masm.push(tempArrayAddressReg);
         numOfAAddressOnStack++;
       }
@@ -338,17 +437,25 @@ public final class GotoABKernel extends GotoKernel {
       masm.pop(aTempArrayAddressRegs[11]);
     }
     // Calculate offset to constant arguments
-    stackOffsetToConstArgs = numOfAAddressOnStack * 8 + useAsAddressRegs.length * 8 + 8;
+    stackOffsetToConstArgs =
+        numOfAAddressOnStack * 8 + useAsAddressRegs.length * 8 + 8 + (isFloat ? 8 : 0);
 
     masm.movq(
         loopIndex,
         new AMD64Address(rsp, (numOfAAddressOnStack * 8) + (useAsAddressRegs.length * 8)));
+    if (isFloat) {
+      bArrayReg = tempGenReg;
+      masm.movq(
+          bArrayReg,
+          new AMD64Address(rsp, (numOfAAddressOnStack * 8) + (useAsAddressRegs.length * 8) + 8));
+    }
 
-    int prefetchDistance = 4;
-    int mult = 8;
+    // A is broadcast from rows that are read one element per k step; only B is prefetched.
+    int prefetchDistance = prefetchDistance(4, PREFETCH_B);
+    int mult = elementBytes;
 
     for (int i = 0; i < varArgProperties.length; i++) {
-      if (!toLoad.contains(GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(i))) {
+      if (!program.loads(GotoOpCode.operand(GotoOpCode.VARIABLEARG, i))) {
         if (varArgProperties[i] == 2) {
           for (int j = 0; j < bLength; j++) {
             loadVarArg(
@@ -363,22 +470,32 @@ public final class GotoABKernel extends GotoKernel {
     }
 
     for (int i = 0; i < constArgs.length; i++) {
-      if (!toLoad.contains(GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i))) {
-        masm.vbroadcastsd(
-            xmmRegistersAVX512[
-                availableValues.get(GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i))],
-            new AMD64Address(rsp, stackOffsetToConstArgs + constArgStackSlotSize * i));
+      if (!program.loads(GotoOpCode.operand(GotoOpCode.CONSTARG, i))) {
+        loadConstArg(
+            masm,
+            xmmRegistersAVX512[registerOf(GotoOpCode.operand(GotoOpCode.CONSTARG, i))],
+            i,
+            tempArrayAddressReg);
       }
     }
 
-    // Subtract prefetchDistance*8 from kPanelSize
+    int unrollFactor = 2;
+    // The unrolled loop stops early enough that the B rows it prefetches exist, and the tail loop
+    // is left at least one k step.
+    int loopReserve = Math.max(prefetchDistance + unrollFactor - 1, unrollFactor);
+
+    // Subtract loopReserve k steps from kPanelSize
     masm.subq(
         new AMD64Address(rsp, (numOfAAddressOnStack * 8) + (8 * kPanelSizeIndexFromBehind)),
-        prefetchDistance * mult);
+        loopReserve * mult);
 
     Label loopLabel = new Label();
+    Label tailLabel = new Label();
 
-    int unrollFactor = 2;
+    masm.cmpq(
+        loopIndex,
+        new AMD64Address(rsp, (numOfAAddressOnStack * 8) + (8 * kPanelSizeIndexFromBehind)));
+    masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, tailLabel);
 
     // Iterate from kPos to kPos + kPanelSize-1 and store partial results in c** registers
     masm.bind(loopLabel);
@@ -391,9 +508,10 @@ public final class GotoABKernel extends GotoKernel {
         new AMD64Address(rsp, (numOfAAddressOnStack * 8) + (8 * kPanelSizeIndexFromBehind)));
     masm.jcc(AMD64Assembler.ConditionFlag.Less, loopLabel);
 
+    masm.bind(tailLabel);
     masm.addq(
         new AMD64Address(rsp, (numOfAAddressOnStack * 8) + (8 * kPanelSizeIndexFromBehind)),
-        prefetchDistance * mult);
+        loopReserve * mult);
 
     loopLabel = new Label();
     masm.bind(loopLabel);
@@ -413,6 +531,9 @@ public final class GotoABKernel extends GotoKernel {
 
     // Pop B
     masm.pop(loopIndex);
+    if (isFloat) {
+      masm.pop(loopIndex);
+    }
 
     // Store partial results in result array
     masm.movl(loopIndex, 0);
@@ -466,19 +587,22 @@ public final class GotoABKernel extends GotoKernel {
                 tempGenReg, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (i * 8));
         masm.movq(tempArrayAddressReg, resultAddress);
         for (int j = 0; j < bLength; j++) {
-          resultAddress =
-              new AMD64Address(
-                  tempArrayAddressReg,
-                  jPos,
-                  DOUBLE_ARRAY_INDEX_SCALE,
-                  DOUBLE_ARRAY_BASE_OFFSET + (j * 64));
-          masm.vaddpd(
-              xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))],
-              xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))],
-              resultAddress);
-          masm.vmovupd(
-              resultAddress,
-              xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))]);
+          resultAddress = bVectorAddress(j);
+          Register c =
+              xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))];
+          Register mask = nTailMask(j);
+          if (mask.isValid()) {
+            // Masked-off lanes are past the end of the row and must not be touched.
+            addOp().emit(masm, simdSize, c, c, resultAddress, mask);
+            moveOp().emit(masm, simdSize, resultAddress, c, mask);
+          } else {
+            if (isFloat) {
+              addOp().emit(masm, simdSize, c, c, resultAddress);
+            } else {
+              masm.vaddpd(c, c, resultAddress);
+            }
+            emitVectorStore(masm, resultAddress, c);
+          }
         }
       }
     }
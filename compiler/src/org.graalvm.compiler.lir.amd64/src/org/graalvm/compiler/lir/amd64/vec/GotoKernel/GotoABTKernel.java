@@ -14,6 +14,7 @@ import org.graalvm.compiler.asm.amd64.AMD64Address;
 import org.graalvm.compiler.asm.amd64.AMD64Assembler;
 import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
 import org.graalvm.compiler.lir.amd64.vec.GotoOpCode;
+import org.graalvm.compiler.lir.amd64.vec.GotoProgram;
 import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
 
 public final class GotoABTKernel extends GotoKernel {
@@ -73,6 +74,19 @@ public final class GotoABTKernel extends GotoKernel {
         masm.vmovupd(xmmRegistersAVX512[simdRegisters.get("B" + String.valueOf(j))], bAddress);
     }
     */
+    if (prefetchDistance > 0) {
+      // B is gathered, so only the rows of A kept in registers are prefetched.
+      for (int i = 0; i < Math.min(aLength, aTempArrayAddressNumLimit); i++) {
+        emitPrefetch(
+            masm,
+            new AMD64Address(
+                aTempArrayAddressRegs[i],
+                loopIndex,
+                AMD64Address.Scale.Times1,
+                DOUBLE_ARRAY_BASE_OFFSET + ((offset + prefetchDistance) * 8)));
+      }
+    }
+
     for (int j = 0; j < bLength; j++) {
       bAddress =
           new AMD64Address(
@@ -84,8 +98,7 @@ public final class GotoABTKernel extends GotoKernel {
       masm.vpgatherqq(xmmRegistersAVX512[simdRegisters.get("B" + String.valueOf(j))], k2, bAddress);
     }
 
-    // HashMap<String, Integer> availableValues = new HashMap<String, Integer>();
-    availableValues.put(GotoOpCode.A, simdRegisters.get("A"));
+    bind(GotoOpCode.A, simdRegisters.get("A"));
 
     for (int i = 0; i < aLength; i++) {
       if (i < aTempArrayAddressNumLimit) {
@@ -110,20 +123,19 @@ public final class GotoABTKernel extends GotoKernel {
       for (int k = 0; k < varArgProperties.length; k++) {
         if (varArgProperties[k] == 1) {
           loadVarArg(masm, k, i, -1, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
-          availableValues.put(
-              GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+          bind(
+              GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
               simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
         }
       }
 
       for (int j = 0; j < bLength; j++) {
-        availableValues.put(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
-        availableValues.put(
-            GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
+        bind(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
+        bind(GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
         for (int k = 0; k < varArgProperties.length; k++) {
           if (varArgProperties[k] == 2) {
-            availableValues.put(
-                GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+            bind(
+                GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                 simdRegisters.get("VARIABLEARG" + String.valueOf(k) + "_" + String.valueOf(j)));
           }
         }
@@ -133,14 +145,14 @@ public final class GotoABTKernel extends GotoKernel {
             xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))];
 
         for (int k = 0; k < varArgProperties.length; k++) {
-          if (!toLoad.contains(GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k))) {
+          if (!program.loads(GotoOpCode.operand(GotoOpCode.VARIABLEARG, k))) {
             if (varArgProperties[k] == 2) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k) + "_" + String.valueOf(j)));
             } else if (varArgProperties[k] == 3) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
               loadVarArg(masm, k, i, j, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
             }
@@ -152,12 +164,6 @@ public final class GotoABTKernel extends GotoKernel {
         // masm.vaddpd(cRegister, bRegister, cRegister);
         // masm.vmovupd(cRegister, bRegister);
         // masm.vfmadd231pd(cRegister, aRegister, bRegister);
-        /*
-        availableValues.put(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
-        availableValues.put(GotoOpCode.VARIABLEARG + "00000", tempRegNums[0]+j);
-        availableValues.put(GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
-        exprDag.createCode(availableValues, new int[]{29, 30, 31}, masm);
-        */
       }
     }
   }
@@ -196,6 +202,20 @@ public final class GotoABTKernel extends GotoKernel {
     }
   }
 
+  /**
+   * Vector registers the kernel needs for an {@code aLength x bVectors} tile: the gather offsets
+   * and vectors of B, the broadcast of A, the tile, the arguments and the program's scratch
+   * registers.
+   */
+  static int simdRegistersNeeded(
+      GotoProgram program, int aLength, int bVectors, int constArgCount, int[] varArgProperties) {
+    return 2 * bVectors
+        + 1
+        + aLength * bVectors
+        + argumentRegisters(program, constArgCount, varArgProperties, bVectors, false)
+        + program.scratchRegisters();
+  }
+
   protected void emitKernelCode(AMD64MacroAssembler masm, int aLength, int bLength) {
     aTempArrayAddressNumLimit =
         aLength < remainingRegisterNum + useAsAddressRegs.length
@@ -229,8 +249,7 @@ public final class GotoABTKernel extends GotoKernel {
       }
     }
     for (int i = 0; i < constArgs.length; i++) {
-      availableValues.put(
-          GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i), registerIndex++);
+      bind(GotoOpCode.operand(GotoOpCode.CONSTARG, i), registerIndex++);
     }
     for (int i = 0; i < varArgProperties.length; i++) {
       if (varArgProperties[i] == 2) {
@@ -242,14 +261,11 @@ public final class GotoABTKernel extends GotoKernel {
         simdRegisters.put("VARIABLEARG" + String.valueOf(i), registerIndex++);
       }
     }
-    int remainingSimdRegisterNum = xmmRegistersAVX512.length - registerIndex;
-    for (int i = 0; i < remainingSimdRegisterNum; i++) {
-      availableValues.put(GotoOpCode.REG + GotoOpCode.toOpLengthBinaryString(i), registerIndex++);
-    }
+    bindScratchRegisters(registerIndex);
 
     /*
     for(int i = 0; i < xmmRegistersAVX512.length - registerIndex; i++) {
-        availableValues.put(GotoOpCode.REG + GotoOpCode.toOpLengthBinaryString(i), registerIndex++);
+        bind(GotoOpCode.operand(GotoOpCode.REG, i), registerIndex++);
     }
 
     tempRegNums = new int[xmmRegistersAVX512.length - registerIndex];
@@ -383,7 +399,7 @@ public final class GotoABTKernel extends GotoKernel {
     // masm.movq(loopIndex, new AMD64Address(rsp,
     // (numOfAAddressOnStack*8)+(useAsAddressRegs.length*8)));
 
-    int prefetchDistance = 0;
+    int prefetchDistance = prefetchDistance(0, PREFETCH_A);
     int mult = 8;
 
     for (int i = 0; i < varArgProperties.length; i++) {
@@ -400,17 +416,15 @@ public final class GotoABTKernel extends GotoKernel {
     }
 
     for (int i = 0; i < constArgs.length; i++) {
-      masm.vbroadcastsd(
-          xmmRegistersAVX512[
-              availableValues.get(GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i))],
-          new AMD64Address(rsp, stackOffsetToConstArgs + constArgStackSlotSize * i));
+      loadConstArg(
+          masm,
+          xmmRegistersAVX512[registerOf(GotoOpCode.operand(GotoOpCode.CONSTARG, i))],
+          i,
+          tempArrayAddressReg);
     }
 
-    // Subtract prefetchDistance*8 from kPanelSize
-    masm.subq(
-        new AMD64Address(rsp, (numOfAAddressOnStack * 8) + (8 * kPanelSizeIndexFromBehind)),
-        prefetchDistance * mult);
-
+    // There is no tail loop, so the loop runs to kPanelSize; prefetching A past the end of its
+    // rows is harmless.
     Label loopLabel = new Label();
 
     int unrollFactor = 1;
@@ -426,10 +440,6 @@ public final class GotoABTKernel extends GotoKernel {
         new AMD64Address(rsp, (numOfAAddressOnStack * 8) + (8 * kPanelSizeIndexFromBehind)));
     masm.jcc(AMD64Assembler.ConditionFlag.Less, loopLabel);
 
-    masm.addq(
-        new AMD64Address(rsp, (numOfAAddressOnStack * 8) + (8 * kPanelSizeIndexFromBehind)),
-        prefetchDistance * mult);
-
     /*
     loopLabel = new Label();
     masm.bind(loopLabel);
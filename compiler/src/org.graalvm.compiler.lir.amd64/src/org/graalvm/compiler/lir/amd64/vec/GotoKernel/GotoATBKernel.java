@@ -12,6 +12,7 @@ import org.graalvm.compiler.asm.amd64.AMD64Address;
 import org.graalvm.compiler.asm.amd64.AMD64Assembler;
 import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
 import org.graalvm.compiler.lir.amd64.vec.GotoOpCode;
+import org.graalvm.compiler.lir.amd64.vec.GotoProgram;
 import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
 
 public final class GotoATBKernel extends GotoKernel {
@@ -57,7 +58,7 @@ public final class GotoATBKernel extends GotoKernel {
       Register aPtr,
       Register bPtr) {
     AMD64Address aAddress, bAddress;
-    if (prefetchDistance > 0) {
+    if (prefetchDistance > 0 && prefetches(PREFETCH_B, true)) {
       bAddress =
           new AMD64Address(
               bPtr,
@@ -72,9 +73,11 @@ public final class GotoATBKernel extends GotoKernel {
                 jPos,
                 DOUBLE_ARRAY_INDEX_SCALE,
                 DOUBLE_ARRAY_BASE_OFFSET + (j * 64));
-        masm.prefetcht0(bAddress);
+        emitPrefetch(masm, bAddress);
       }
+    }
 
+    if (prefetchDistance > 0 && prefetches(PREFETCH_A, true)) {
       aAddress =
           new AMD64Address(
               aPtr,
@@ -89,7 +92,7 @@ public final class GotoATBKernel extends GotoKernel {
                 iPos,
                 DOUBLE_ARRAY_INDEX_SCALE,
                 DOUBLE_ARRAY_BASE_OFFSET + (j * 64));
-        masm.prefetcht0(aAddress);
+        emitPrefetch(masm, aAddress);
       }
     }
 
@@ -124,7 +127,7 @@ public final class GotoATBKernel extends GotoKernel {
             aPtr, loopIndex, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (offset * 8));
     masm.movq(tempArrayAddressReg, aAddress);
 
-    availableValues.put(GotoOpCode.A, simdRegisters.get("A"));
+    bind(GotoOpCode.A, simdRegisters.get("A"));
 
     if (interleave) {
       for (int i = 0; i < aLength; i += 2) {
@@ -145,8 +148,8 @@ public final class GotoATBKernel extends GotoKernel {
             masm.movq(tempArrayAddressReg, new AMD64Address(arrsPtr, zeroReg, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET+24+8*k));
             masm.vbroadcastf32x4(xmmRegistersAVX512[simdRegisters.get("VARIABLEARG" + String.valueOf(k))], new AMD64Address(tempArrayAddressReg, iPos, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET+(i*8)));
             */
-            availableValues.put(
-                GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+            bind(
+                GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                 simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
           }
         }
@@ -154,8 +157,8 @@ public final class GotoATBKernel extends GotoKernel {
         for (int j = 0; j < bLength * 2; j++) {
           // Register aRegister = xmmRegistersAVX512[simdRegisters.get("A")];
           // Register bRegister = xmmRegistersAVX512[simdRegisters.get("B" + String.valueOf(j))];
-          availableValues.put(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
-          availableValues.put(
+          bind(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
+          bind(
               GotoOpCode.C,
               simdRegisters.get("C" + String.valueOf(i + (j % 2)) + String.valueOf(j / 2)));
           // debugLog.println("C" + String.valueOf(i+(j%2)) + String.valueOf(j/2));
@@ -164,12 +167,12 @@ public final class GotoATBKernel extends GotoKernel {
           // masm.vfmadd231pd(cRegister, aRegister, bRegister);
           for (int k = 0; k < varArgProperties.length; k++) {
             if (varArgProperties[k] == 2) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k) + "_" + String.valueOf(j)));
             } else if (varArgProperties[k] == 3) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
               loadVarArg(masm, k, i, j, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
             }
@@ -193,24 +196,23 @@ public final class GotoATBKernel extends GotoKernel {
         for (int k = 0; k < varArgProperties.length; k++) {
           if (varArgProperties[k] == 1) {
             loadVarArg(masm, k, i, -1, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
-            availableValues.put(
-                GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+            bind(
+                GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                 simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
           }
         }
 
         for (int j = 0; j < bLength; j++) {
-          availableValues.put(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
-          availableValues.put(
-              GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
+          bind(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
+          bind(GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
           for (int k = 0; k < varArgProperties.length; k++) {
             if (varArgProperties[k] == 2) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k) + "_" + String.valueOf(j)));
             } else if (varArgProperties[k] == 3) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
               loadVarArg(masm, k, i, j, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
             }
@@ -345,6 +347,33 @@ public final class GotoATBKernel extends GotoKernel {
     }
   }
 
+  /**
+   * Vector registers the kernel needs for an {@code aLength x bVectors} tile: the tile, the
+   * broadcast of A, the vectors of B, twice as many when two rows are interleaved, the arguments
+   * and the program's scratch registers.
+   */
+  static int simdRegistersNeeded(
+      GotoProgram program, int aLength, int bVectors, int constArgCount, int[] varArgProperties) {
+    int bRegisters = interleaves(aLength, varArgProperties) ? 2 * bVectors : bVectors;
+    int constRegisters = argumentRegisters(program, constArgCount, new int[0], 0, true);
+    int varArgRegisters = argumentRegisters(program, 0, varArgProperties, bRegisters, false);
+    return aLength * bVectors
+        + 1
+        + bRegisters
+        + constRegisters
+        + varArgRegisters
+        + program.scratchRegisters();
+  }
+
+  private static boolean interleaves(int aLength, int[] varArgProperties) {
+    for (int property : varArgProperties) {
+      if (property == 3) {
+        return false;
+      }
+    }
+    return aLength % 2 == 0;
+  }
+
   protected void emitKernelCode(AMD64MacroAssembler masm, int aLength, int bLength) {
     // Declare SIMD registers
     if (aLength % 2 == 1) {
@@ -378,9 +407,8 @@ public final class GotoATBKernel extends GotoKernel {
     }
 
     for (int i = 0; i < constArgs.length; i++) {
-      if (!toLoad.contains(GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i))) {
-        availableValues.put(
-            GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i), registerIndex++);
+      if (!program.loads(GotoOpCode.operand(GotoOpCode.CONSTARG, i))) {
+        bind(GotoOpCode.operand(GotoOpCode.CONSTARG, i), registerIndex++);
       }
     }
     for (int i = 0; i < varArgProperties.length; i++) {
@@ -401,14 +429,11 @@ public final class GotoATBKernel extends GotoKernel {
       }
     }
 
-    int remainingSimdRegisterNum = xmmRegistersAVX512.length - registerIndex;
-    for (int i = 0; i < remainingSimdRegisterNum; i++) {
-      availableValues.put(GotoOpCode.REG + GotoOpCode.toOpLengthBinaryString(i), registerIndex++);
-    }
+    bindScratchRegisters(registerIndex);
 
     /*
     for(int i = 0; i < xmmRegistersAVX512.length - registerIndex; i++) {
-        availableValues.put(GotoOpCode.REG + GotoOpCode.toOpLengthBinaryString(i), registerIndex++);
+        bind(GotoOpCode.operand(GotoOpCode.REG, i), registerIndex++);
     }
 
     tempRegNums = new int[xmmRegistersAVX512.length - registerIndex];
@@ -486,26 +511,30 @@ public final class GotoATBKernel extends GotoKernel {
     }
 
     for (int i = 0; i < constArgs.length; i++) {
-      if (!toLoad.contains(GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i))) {
-        masm.vbroadcastsd(
-            xmmRegistersAVX512[
-                availableValues.get(GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i))],
-            new AMD64Address(rsp, stackOffsetToConstArgs + constArgStackSlotSize * i));
+      if (!program.loads(GotoOpCode.operand(GotoOpCode.CONSTARG, i))) {
+        loadConstArg(
+            masm,
+            xmmRegistersAVX512[registerOf(GotoOpCode.operand(GotoOpCode.CONSTARG, i))],
+            i,
+            tempArrayAddressReg);
       }
     }
 
-    int prefetchDistance = 8;
+    int prefetchDistance = prefetchDistance(8, PREFETCH_A | PREFETCH_B);
     int unrollFactor = 8;
-    if (interleave) {
-      prefetchDistance = 8;
-      unrollFactor = 8;
-    }
+    // The unrolled loop stops early enough that the rows it prefetches exist, and the tail loop is
+    // left at least one k step.
+    int loopReserve = Math.max(prefetchDistance + unrollFactor - 1, unrollFactor);
 
     masm.movq(loopIndex, kPos);
     masm.addq(kPanelSize, kPos);
-    masm.subq(kPanelSize, Math.max(prefetchDistance, unrollFactor));
+    masm.subq(kPanelSize, loopReserve);
 
     Label loopLabel = new Label();
+    Label tailLabel = new Label();
+
+    masm.cmpq(loopIndex, kPanelSize);
+    masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, tailLabel);
 
     masm.bind(loopLabel);
 
@@ -516,7 +545,8 @@ public final class GotoATBKernel extends GotoKernel {
     masm.cmpq(loopIndex, kPanelSize);
     masm.jcc(AMD64Assembler.ConditionFlag.Less, loopLabel);
 
-    masm.addq(kPanelSize, Math.max(prefetchDistance, unrollFactor));
+    masm.bind(tailLabel);
+    masm.addq(kPanelSize, loopReserve);
 
     loopLabel = new Label();
     masm.bind(loopLabel);
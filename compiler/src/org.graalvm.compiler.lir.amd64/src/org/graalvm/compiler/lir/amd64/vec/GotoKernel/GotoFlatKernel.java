@@ -0,0 +1,657 @@
+package org.graalvm.compiler.lir.amd64.vec.GotoKernel;
+
+import static jdk.vm.ci.amd64.AMD64.k1;
+import static jdk.vm.ci.amd64.AMD64.rsp;
+import static jdk.vm.ci.amd64.AMD64.xmmRegistersAVX512;
+import static jdk.vm.ci.code.ValueUtil.asRegister;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.B0;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.Z1;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.OperandSize.QWORD;
+
+import java.util.HashMap;
+import java.util.Map;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.MetaAccessProvider;
+import org.graalvm.compiler.asm.Label;
+import org.graalvm.compiler.asm.amd64.AMD64Address;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler;
+import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
+import org.graalvm.compiler.debug.GraalError;
+import org.graalvm.compiler.lir.amd64.vec.GotoOpCode;
+import org.graalvm.compiler.lir.amd64.vec.GotoProgram;
+import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
+
+/**
+ * Kernel types 0 to 3 over flat row-major arrays with constant leading dimensions and offsets
+ * ({@code flatLayout = {lda, ldb, ldc, aOffset, bOffset, cOffset}}).
+ *
+ * <p>Each operand is walked through one pointer with a constant byte stride per row and per step
+ * of k, so rows of A and C are plain displacements from that pointer and no row array is read. B of
+ * the AB^T kernel and C of the transposed-result kernel are not contiguous along N; they are
+ * gathered (and C scattered) through a vector of lane offsets that is kept below xmm16, since the
+ * assembler cannot encode a higher VSIB index register.
+ *
+ * <p>Off heap, {@code arrs} is a {@code long[]} with the native addresses of A, B and C, which are
+ * then addressed without an array base offset.
+ *
+ * <p>Constant arguments are broadcast from immediates, and variable arguments are read in place:
+ * those indexed by j once per call, those indexed by i, or by i and j, through a pointer to their
+ * first row in one of the general purpose registers the kernel leaves free. Only variable
+ * arguments beyond those registers, and constants on AVX, are staged on the stack by {@link
+ * #pushArguments}.
+ *
+ * <p>A batched call advances the operand pointers of every tile to its problem, and shares the
+ * epilogue vectors between the problems.
+ */
+public final class GotoFlatKernel extends GotoKernel {
+  private static final int UNROLL_FACTOR = 2;
+  private static final int PREFETCH_DISTANCE = 4;
+  // remainingRegValues[3] and up are free while the kernel runs.
+  private static final int FIRST_VAR_ARG_POINTER = 3;
+
+  // Byte strides of the operands: A per row i and per k, B per k and per column j, C per row i and
+  // per column j.
+  private final int aRowStride;
+  private final int aKStride;
+  private final int bKStride;
+  private final int bColStride;
+  private final int cRowStride;
+  private final int cColStride;
+  private final boolean gatherB;
+  // Where the operand pointers are read from arrs, and the offset of element 0 from them.
+  private final int operandTableBaseOffset;
+  private final int elementBaseOffset;
+  private final boolean gatherC;
+  // Variable arguments read in place rather than staged on the stack.
+  private final boolean[] inPlaceVarArgs;
+
+  private Register aPtr;
+  private Register bPtr;
+  private Register scratch;
+  private Map<String, Integer> simdRegisters;
+  // Per variable argument indexed by i: its element, or row, at iPos.
+  private Register[] varArgPointers;
+
+  public GotoFlatKernel(
+      LIRGeneratorTool tool,
+      int arch,
+      int kernelType,
+      int aLength,
+      int bLength,
+      int mLength,
+      int kLength,
+      int nLength,
+      long[] calc,
+      double[] constArgs,
+      int[] varArgProperties,
+      GotoKernelOp kernelOp,
+      int[] flatLayout,
+      JavaKind elementKind,
+      boolean offHeap) {
+    super(
+        tool,
+        arch,
+        kernelType,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        calc,
+        constArgs,
+        varArgProperties,
+        kernelOp,
+        elementKind);
+    this.flatLayout = flatLayout;
+    int lda = flatLayout[0] * elementBytes;
+    int ldb = flatLayout[1] * elementBytes;
+    int ldc = flatLayout[2] * elementBytes;
+    boolean transposeA = kernelType == 1;
+    boolean transposeB = kernelType == 2;
+    boolean transposeC = kernelType == 3;
+    this.aRowStride = transposeA ? elementBytes : lda;
+    this.aKStride = transposeA ? lda : elementBytes;
+    this.bKStride = transposeB ? elementBytes : ldb;
+    this.bColStride = transposeB ? ldb : elementBytes;
+    this.cRowStride = transposeC ? elementBytes : ldc;
+    this.cColStride = transposeC ? ldc : elementBytes;
+    this.gatherB = transposeB;
+    this.gatherC = transposeC;
+    MetaAccessProvider metaAccess = tool.getProviders().getMetaAccess();
+    this.operandTableBaseOffset =
+        metaAccess.getArrayBaseOffset(offHeap ? JavaKind.Long : JavaKind.Object);
+    this.elementBaseOffset = offHeap ? 0 : ELEMENT_ARRAY_BASE_OFFSET;
+    if (isFloat && (gatherB || gatherC || hasMainVarArgs())) {
+      throw GraalError.unimplemented("float GotoFlatKernel with strided B or C, or varArgs");
+    }
+    if (offHeap && hasMainVarArgs()) {
+      // The variable arguments are staged from arrs as arrays.
+      throw GraalError.unimplemented("off-heap GotoFlatKernel with varArgs");
+    }
+    this.inPlaceVarArgs = new boolean[varArgProperties.length];
+    int pointers = 0;
+    for (int k = 0; k < varArgProperties.length; k++) {
+      if (varArgProperties[k] == 2) {
+        inPlaceVarArgs[k] = true;
+      } else if ((varArgProperties[k] == 1 || varArgProperties[k] == 3)
+          && FIRST_VAR_ARG_POINTER + pointers < remainingRegisterNum) {
+        inPlaceVarArgs[k] = true;
+        pointers++;
+      }
+    }
+  }
+
+  @Override
+  protected boolean stagesVarArg(int index) {
+    return !inPlaceVarArgs[index];
+  }
+
+  @Override
+  protected boolean supportsMaskedNTail() {
+    return arch == 2
+        && !gatherB
+        && !gatherC
+        && !hasMainVarArgs()
+        && initialBLength <= N_TAIL_MASKS.length;
+  }
+
+  /**
+   * Sets {@code dst} to {@code operand + base + offset * elementBytes + row * rowStride + col *
+   * colStride}, where {@code operand} is {@code arrs[arrayIndex]}, advanced to the current problem
+   * of a batched call.
+   */
+  private void emitOperandPointer(
+      AMD64MacroAssembler masm,
+      Register dst,
+      int arrayIndex,
+      int offset,
+      Register row,
+      int rowStride,
+      Register col,
+      int colStride) {
+    masm.movq(dst, new AMD64Address(arrsPtr, operandTableBaseOffset + arrayIndex * 8));
+    AMD64Assembler.AMD64RMIOp.IMUL.emit(masm, QWORD, scratch, row, rowStride);
+    masm.addq(dst, scratch);
+    AMD64Assembler.AMD64RMIOp.IMUL.emit(masm, QWORD, scratch, col, colStride);
+    masm.addq(dst, scratch);
+    if (batch != null) {
+      AMD64Assembler.AMD64RMIOp.IMUL.emit(
+          masm, QWORD, scratch, batchPos, batch[arrayIndex] * elementBytes);
+      masm.addq(dst, scratch);
+    }
+    long constant = elementBaseOffset + (long) offset * elementBytes;
+    if (constant == (int) constant) {
+      masm.addq(dst, (int) constant);
+    } else {
+      masm.movq(scratch, constant);
+      masm.addq(dst, scratch);
+    }
+  }
+
+  /** Loads {@code {0, stride, 2 * stride, ...}} into the lane offset register. */
+  private void emitLaneOffsets(AMD64MacroAssembler masm, int stride) {
+    for (int lane = lanes - 1; lane >= 0; lane--) {
+      masm.movq(scratch, (long) lane * stride);
+      masm.push(scratch);
+    }
+    masm.vmovupd(laneOffsets(), new AMD64Address(rsp));
+    masm.addq(rsp, lanes * 8);
+  }
+
+  private Register laneOffsets() {
+    return xmmRegistersAVX512[simdRegisters.get("INDEX")];
+  }
+
+  /** B vector {@code jIndex} at {@code offset} steps of k from the current one. */
+  private AMD64Address bAddress(int offset, int jIndex) {
+    if (gatherB) {
+      return new AMD64Address(
+          bPtr,
+          laneOffsets(),
+          AMD64Address.Scale.Times1,
+          offset * bKStride + jIndex * lanes * bColStride);
+    }
+    return new AMD64Address(bPtr, offset * bKStride + jIndex * simdSize.getBytes());
+  }
+
+  private void emitBLoad(AMD64MacroAssembler masm, Register dst, int offset, int jIndex) {
+    if (gatherB) {
+      masm.kxnorw(k1, k1, k1);
+      masm.vpgatherqq(dst, k1, bAddress(offset, jIndex));
+      return;
+    }
+    Register mask = nTailMask(jIndex);
+    if (mask.isValid()) {
+      moveOp().emit(masm, simdSize, dst, bAddress(offset, jIndex), mask, Z1, B0);
+    } else {
+      moveOp().emit(masm, simdSize, dst, bAddress(offset, jIndex));
+    }
+  }
+
+  private void subIter(
+      AMD64MacroAssembler masm, int aLength, int bLength, int offset, int prefetchDistance) {
+    if (prefetchDistance > 0 && !gatherB && prefetches(PREFETCH_B, true)) {
+      for (int j = 0; j < bLength; j++) {
+        emitPrefetch(masm, bAddress(offset + prefetchDistance, j));
+      }
+    }
+    if (prefetchDistance > 0 && prefetches(PREFETCH_A, false)) {
+      emitPrefetchRange(
+          masm,
+          aPtr,
+          Register.None,
+          AMD64Address.Scale.Times1,
+          (offset + prefetchDistance) * aKStride,
+          aLength,
+          aRowStride);
+    }
+
+    if (!program.loads(GotoOpCode.B)) {
+      for (int j = 0; j < bLength; j++) {
+        emitBLoad(masm, xmmRegistersAVX512[simdRegisters.get("B" + String.valueOf(j))], offset, j);
+      }
+    }
+
+    if (!program.loads(GotoOpCode.A)) {
+      bind(GotoOpCode.A, simdRegisters.get("A"));
+    }
+
+    for (int i = 0; i < aLength; i++) {
+      if (!program.loads(GotoOpCode.A)) {
+        loadA(masm, i, offset, simdRegisters.get("A"));
+      }
+      for (int k = 0; k < varArgProperties.length; k++) {
+        if (varArgProperties[k] == 1) {
+          loadVarArg(masm, k, i, -1, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
+          bind(
+              GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
+              simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
+        }
+      }
+      for (int j = 0; j < bLength; j++) {
+        if (!program.loads(GotoOpCode.B)) {
+          bind(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
+        }
+        bind(GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
+        for (int k = 0; k < varArgProperties.length; k++) {
+          if (!program.loads(GotoOpCode.operand(GotoOpCode.VARIABLEARG, k))) {
+            if (varArgProperties[k] == 2) {
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
+                  simdRegisters.get("VARIABLEARG" + String.valueOf(k) + "_" + String.valueOf(j)));
+            } else if (varArgProperties[k] == 3) {
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
+                  simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
+              loadVarArg(masm, k, i, j, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
+            }
+          }
+        }
+        emitSubiterCode(masm, i, j, offset);
+      }
+    }
+  }
+
+  protected void loadA(AMD64MacroAssembler masm, int iIndex, int offset, int dstRegNum) {
+    emitBroadcast(
+        masm,
+        xmmRegistersAVX512[dstRegNum],
+        new AMD64Address(aPtr, iIndex * aRowStride + offset * aKStride));
+  }
+
+  protected void loadB(AMD64MacroAssembler masm, int jIndex, int offset, int dstRegNum) {
+    emitBLoad(masm, xmmRegistersAVX512[dstRegNum], offset, jIndex);
+  }
+
+  protected void loadVarArg(
+      AMD64MacroAssembler masm, int argIndex, int iIndex, int jIndex, int dstRegNum) {
+    if (inPlaceVarArgs[argIndex]) {
+      loadVarArgInPlace(masm, argIndex, iIndex, jIndex, xmmRegistersAVX512[dstRegNum]);
+      return;
+    }
+    // Nothing is pushed on top of the staged arguments while the kernel runs.
+    int varArgOffset = constArgsStackSize + variableArgsStackOffsets.get(argIndex);
+    if (varArgProperties[argIndex] == 2) {
+      masm.vmovupd(
+          xmmRegistersAVX512[dstRegNum], new AMD64Address(rsp, varArgOffset + 64 * jIndex));
+    } else if (varArgProperties[argIndex] == 1) {
+      masm.leaq(tempArrayAddressReg, new AMD64Address(rsp, varArgOffset + 8 * iIndex));
+      masm.vbroadcastsd(xmmRegistersAVX512[dstRegNum], new AMD64Address(tempArrayAddressReg));
+    } else if (varArgProperties[argIndex] == 3) {
+      masm.vmovupd(
+          xmmRegistersAVX512[dstRegNum],
+          new AMD64Address(rsp, varArgOffset + (128 * iIndex) + 64 * jIndex));
+    }
+  }
+
+  private void loadVarArgInPlace(
+      AMD64MacroAssembler masm, int argIndex, int iIndex, int jIndex, Register dst) {
+    if (varArgProperties[argIndex] == 1) {
+      emitBroadcast(masm, dst, new AMD64Address(varArgPointers[argIndex], iIndex * elementBytes));
+      return;
+    }
+    if (varArgProperties[argIndex] == 2) {
+      masm.movq(
+          tempArrayAddressReg,
+          new AMD64Address(arrsPtr, operandTableBaseOffset + (3 + argIndex) * 8));
+    } else {
+      masm.movq(
+          tempArrayAddressReg,
+          new AMD64Address(varArgPointers[argIndex], iIndex * OBJECT_ARRAY_INDEX_SCALE.value));
+    }
+    moveOp()
+        .emit(
+            masm,
+            simdSize,
+            dst,
+            new AMD64Address(
+                tempArrayAddressReg,
+                jPos,
+                ELEMENT_ARRAY_INDEX_SCALE,
+                elementBaseOffset + jIndex * simdSize.getBytes()));
+  }
+
+  /** Points the registers of {@link #varArgPointers} at the elements, or rows, at iPos. */
+  private void emitVarArgPointers(AMD64MacroAssembler masm) {
+    varArgPointers = new Register[varArgProperties.length];
+    int pointer = FIRST_VAR_ARG_POINTER;
+    for (int k = 0; k < varArgProperties.length; k++) {
+      if (!inPlaceVarArgs[k] || varArgProperties[k] == 2) {
+        continue;
+      }
+      Register dst = asRegister(kernelOp.remainingRegValues[pointer++]);
+      masm.movq(dst, new AMD64Address(arrsPtr, operandTableBaseOffset + (3 + k) * 8));
+      if (varArgProperties[k] == 1) {
+        masm.leaq(dst, new AMD64Address(dst, iPos, ELEMENT_ARRAY_INDEX_SCALE, elementBaseOffset));
+      } else {
+        masm.leaq(
+            dst, new AMD64Address(dst, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET));
+      }
+      varArgPointers[k] = dst;
+    }
+  }
+
+  private void emitAdvance(AMD64MacroAssembler masm, int steps) {
+    masm.addq(aPtr, steps * aKStride);
+    masm.addq(bPtr, steps * bKStride);
+  }
+
+  /**
+   * Vector registers the kernel needs for an {@code aLength x bVectors} tile: the gather offsets
+   * of a transposed B or C, the broadcast of A and the vectors of B unless the program loads them
+   * itself, the tile, the arguments the program does not load, the stored C of an epilogue and the
+   * program's scratch registers.
+   */
+  static int simdRegistersNeeded(
+      int kernelType,
+      GotoProgram program,
+      int aLength,
+      int bVectors,
+      int constArgCount,
+      int[] varArgProperties) {
+    return (kernelType == 2 || kernelType == 3 ? 1 : 0)
+        + (program.loads(GotoOpCode.A) ? 0 : 1)
+        + (program.loads(GotoOpCode.B) ? 0 : bVectors)
+        + aLength * bVectors
+        + argumentRegisters(program, constArgCount, varArgProperties, bVectors, true)
+        + (program.hasEpilogue() ? 1 : 0)
+        + program.scratchRegisters();
+  }
+
+  protected void emitKernelCode(AMD64MacroAssembler masm, int aLength, int bLength) {
+    aPtr = asRegister(kernelOp.remainingRegValues[0]);
+    bPtr = asRegister(kernelOp.remainingRegValues[1]);
+    scratch = asRegister(kernelOp.remainingRegValues[2]);
+    stackOffsetToConstArgs = 0;
+
+    // Declare SIMD registers; the lane offsets go first so that they stay below xmm16.
+    int registerIndex = 0;
+    simdRegisters = new HashMap<String, Integer>();
+    if (gatherB || gatherC) {
+      simdRegisters.put("INDEX", registerIndex++);
+    }
+    if (!program.loads(GotoOpCode.A)) {
+      simdRegisters.put("A", registerIndex++);
+    }
+    if (!program.loads(GotoOpCode.B)) {
+      for (int i = 0; i < bLength; i++) {
+        simdRegisters.put("B" + String.valueOf(i), registerIndex++);
+      }
+    }
+    for (int i = 0; i < aLength; i++) {
+      for (int j = 0; j < bLength; j++) {
+        simdRegisters.put("C" + String.valueOf(i) + String.valueOf(j), registerIndex++);
+      }
+    }
+    for (int i = 0; i < constArgs.length; i++) {
+      if (!program.loads(GotoOpCode.operand(GotoOpCode.CONSTARG, i))) {
+        bind(GotoOpCode.operand(GotoOpCode.CONSTARG, i), registerIndex++);
+      }
+    }
+    for (int i = 0; i < varArgProperties.length; i++) {
+      if (!program.loads(GotoOpCode.operand(GotoOpCode.VARIABLEARG, i))) {
+        if (varArgProperties[i] == 2) {
+          for (int j = 0; j < bLength; j++) {
+            simdRegisters.put(
+                "VARIABLEARG" + String.valueOf(i) + "_" + String.valueOf(j), registerIndex++);
+          }
+        } else {
+          simdRegisters.put("VARIABLEARG" + String.valueOf(i), registerIndex++);
+        }
+      }
+    }
+    if (program.hasEpilogue()) {
+      simdRegisters.put("STOREDC", registerIndex++);
+    }
+    int firstScratchRegister = registerIndex;
+    bindScratchRegisters(registerIndex);
+
+    // Set subresult regs to zero
+    Register c00 = xmmRegistersAVX512[simdRegisters.get("C00")];
+    if (isFloat) {
+      AMD64Assembler.VexRVMOp.VPXOR.emit(masm, simdSize, c00, c00, c00);
+    } else {
+      masm.vpxorq(c00, c00, c00);
+    }
+    for (int i = 0; i < aLength; i++) {
+      for (int j = 0; j < bLength; j++) {
+        if (i != 0 || j != 0) {
+          moveOp()
+              .emit(
+                  masm,
+                  simdSize,
+                  xmmRegistersAVX512[
+                      simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))],
+                  c00);
+        }
+      }
+    }
+
+    emitOperandPointer(masm, aPtr, 0, flatLayout[3], iPos, aRowStride, kPos, aKStride);
+    emitOperandPointer(masm, bPtr, 1, flatLayout[4], kPos, bKStride, jPos, bColStride);
+    if (gatherB) {
+      emitLaneOffsets(masm, bColStride);
+    }
+
+    emitVarArgPointers(masm);
+    for (int i = 0; i < varArgProperties.length; i++) {
+      if (varArgProperties[i] == 2
+          && !program.loads(GotoOpCode.operand(GotoOpCode.VARIABLEARG, i))) {
+        for (int j = 0; j < bLength; j++) {
+          loadVarArg(
+              masm,
+              i,
+              -1,
+              j,
+              simdRegisters.get("VARIABLEARG" + String.valueOf(i) + "_" + String.valueOf(j)));
+        }
+      }
+    }
+    for (int i = 0; i < constArgs.length; i++) {
+      if (!program.loads(GotoOpCode.operand(GotoOpCode.CONSTARG, i))) {
+        loadConstArg(
+            masm,
+            xmmRegistersAVX512[registerOf(GotoOpCode.operand(GotoOpCode.CONSTARG, i))],
+            i,
+            scratch);
+      }
+    }
+
+    // kPanelSize counts the k steps left.
+    Label loopLabel = new Label();
+    Label tailLabel = new Label();
+    Label tailLoopLabel = new Label();
+    Label doneLabel = new Label();
+    // Prefetches are plain displacements that cannot fault, so they may run past the panel.
+    int prefetchDistance =
+        prefetchDistance(PREFETCH_DISTANCE, gatherB ? PREFETCH_A : PREFETCH_A | PREFETCH_B);
+    masm.subl(kPanelSize, UNROLL_FACTOR);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, tailLabel);
+    masm.bind(loopLabel);
+    for (int offset = 0; offset < UNROLL_FACTOR; offset++) {
+      subIter(masm, aLength, bLength, offset, prefetchDistance);
+    }
+    emitAdvance(masm, UNROLL_FACTOR);
+    masm.subl(kPanelSize, UNROLL_FACTOR);
+    masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, loopLabel);
+
+    masm.bind(tailLabel);
+    masm.addl(kPanelSize, UNROLL_FACTOR);
+    masm.jcc(AMD64Assembler.ConditionFlag.LessEqual, doneLabel);
+    masm.bind(tailLoopLabel);
+    subIter(masm, aLength, bLength, 0, 0);
+    emitAdvance(masm, 1);
+    masm.subl(kPanelSize, 1);
+    masm.jcc(AMD64Assembler.ConditionFlag.Greater, tailLoopLabel);
+    masm.bind(doneLabel);
+
+    // Add the partial results to C; aPtr is free now and points at C(iPos, jPos).
+    Register cPtr = aPtr;
+    emitOperandPointer(masm, cPtr, 2, flatLayout[5], iPos, cRowStride, jPos, cColStride);
+    if (gatherC) {
+      emitLaneOffsets(masm, cColStride);
+    }
+    // A program that loads A itself keeps it in a scratch register instead.
+    Register temp =
+        xmmRegistersAVX512[
+            program.loads(GotoOpCode.A) ? firstScratchRegister : simdRegisters.get("A")];
+    if (!program.hasEpilogue()) {
+      emitStore(masm, aLength, bLength, cPtr, temp, false);
+      return;
+    }
+    Label notLastLabel = new Label();
+    Label storedLabel = new Label();
+    emitJumpUnlessLastKPanel(masm, scratch, notLastLabel);
+    Register storedC = xmmRegistersAVX512[simdRegisters.get("STOREDC")];
+    emitStore(masm, aLength, bLength, cPtr, storedC, true);
+    masm.jmp(storedLabel);
+    masm.bind(notLastLabel);
+    emitStore(masm, aLength, bLength, cPtr, temp, false);
+    masm.bind(storedLabel);
+  }
+
+  /**
+   * Adds the tile to C at {@code cPtr}. With {@code epilogue} the stored values are read into
+   * {@code storedC} and the epilogue runs on every element of the tile before it is written back;
+   * otherwise {@code storedC} is only used to gather a strided C.
+   */
+  private void emitStore(
+      AMD64MacroAssembler masm,
+      int aLength,
+      int bLength,
+      Register cPtr,
+      Register storedC,
+      boolean epilogue) {
+    if (epilogue) {
+      bind(GotoOpCode.STOREDC, simdRegisters.get("STOREDC"));
+    }
+    for (int i = 0; i < aLength; i++) {
+      for (int j = 0; j < bLength; j++) {
+        Register c =
+            xmmRegistersAVX512[simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j))];
+        Register mask = nTailMask(j);
+        AMD64Address resultAddress;
+        if (gatherC) {
+          resultAddress =
+              new AMD64Address(
+                  cPtr,
+                  laneOffsets(),
+                  AMD64Address.Scale.Times1,
+                  i * cRowStride + j * lanes * cColStride);
+          masm.kxnorw(k1, k1, k1);
+          masm.vpgatherqq(storedC, k1, resultAddress);
+          addOp().emit(masm, simdSize, c, c, storedC);
+        } else {
+          resultAddress = new AMD64Address(cPtr, i * cRowStride + j * simdSize.getBytes());
+          if (epilogue) {
+            // Masked-off lanes are past the N edge and must not be touched.
+            if (mask.isValid()) {
+              moveOp().emit(masm, simdSize, storedC, resultAddress, mask, Z1, B0);
+            } else {
+              moveOp().emit(masm, simdSize, storedC, resultAddress);
+            }
+            addOp().emit(masm, simdSize, c, c, storedC);
+          } else if (mask.isValid()) {
+            addOp().emit(masm, simdSize, c, c, resultAddress, mask);
+          } else {
+            addOp().emit(masm, simdSize, c, c, resultAddress);
+          }
+        }
+        if (epilogue) {
+          bind(GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
+          emitEpilogueVectors(masm, i, j);
+          emitEpilogueCode(masm, i, j);
+        }
+        if (gatherC) {
+          masm.kxnorw(k1, k1, k1);
+          masm.vpscatterqq(resultAddress, k1, c);
+        } else if (mask.isValid()) {
+          moveOp().emit(masm, simdSize, resultAddress, c, mask);
+        } else {
+          moveOp().emit(masm, simdSize, resultAddress, c);
+        }
+      }
+    }
+  }
+
+  /**
+   * Loads the epilogue vectors for tile element {@code (iIndex, jIndex)}: element {@code iPos +
+   * iIndex} of a row vector, broadcast, or the lanes from {@code jPos} of a column vector.
+   */
+  private void emitEpilogueVectors(AMD64MacroAssembler masm, int iIndex, int jIndex) {
+    for (int k = 0; k < varArgProperties.length; k++) {
+      if (!isEpilogueVector(k)) {
+        continue;
+      }
+      int regNum = simdRegisters.get("VARIABLEARG" + String.valueOf(k));
+      Register dst = xmmRegistersAVX512[regNum];
+      // bPtr is free once the k loop is done.
+      masm.movq(bPtr, new AMD64Address(arrsPtr, operandTableBaseOffset + (3 + k) * 8));
+      if (varArgProperties[k] == 4) {
+        emitBroadcast(
+            masm,
+            dst,
+            new AMD64Address(
+                bPtr,
+                iPos,
+                ELEMENT_ARRAY_INDEX_SCALE,
+                elementBaseOffset + iIndex * elementBytes));
+      } else {
+        AMD64Address address =
+            new AMD64Address(
+                bPtr,
+                jPos,
+                ELEMENT_ARRAY_INDEX_SCALE,
+                elementBaseOffset + jIndex * simdSize.getBytes());
+        Register mask = nTailMask(jIndex);
+        if (mask.isValid()) {
+          moveOp().emit(masm, simdSize, dst, address, mask, Z1, B0);
+        } else {
+          moveOp().emit(masm, simdSize, dst, address);
+        }
+      }
+      bind(GotoOpCode.operand(GotoOpCode.VARIABLEARG, k), regNum);
+    }
+  }
+}
@@ -0,0 +1,438 @@
+package org.graalvm.compiler.lir.amd64.vec.GotoKernel;
+
+import static jdk.vm.ci.amd64.AMD64.xmmRegistersAVX512;
+import static jdk.vm.ci.code.ValueUtil.asRegister;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.B0;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.Z1;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.OperandSize.QWORD;
+
+import java.util.EnumSet;
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.amd64.AMD64.CPUFeature;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.MetaAccessProvider;
+import org.graalvm.compiler.asm.Label;
+import org.graalvm.compiler.asm.amd64.AMD64Address;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler;
+import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
+import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
+import org.graalvm.compiler.debug.GraalError;
+import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
+
+/**
+ * Kernel types 6 (unsigned 8-bit A, signed 8-bit B) and 7 (signed 16-bit A and B) over flat
+ * operands, accumulating into an {@code int[]} C ({@code flatLayout = {lda, ldb, ldc, aOffset,
+ * bOffset, cOffset}}).
+ *
+ * <p>B is stored in groups of {@code g} consecutive k per column ({@code g = 4} for int8 and
+ * {@code 2} for int16), so a 32-bit lane of B holds the group of its column, and the group of a row
+ * of A is one 32-bit broadcast. One k group is then one multiply-and-sum per tile element: {@code
+ * vpdpbusd} or {@code vpdpwssd} with AVX512_VNNI, otherwise {@code vpmaddwd} and {@code vpaddd}.
+ * For int8 without VNNI the bytes are first split into the words at even and odd positions, whose
+ * products and pair sums {@code vpmaddwd} computes exactly; {@code vpmaddubsw} would saturate
+ * them. All sums wrap like Java int arithmetic.
+ *
+ * <p>With a constant argument, the call whose K panel ends at kLength also writes {@code (float) C
+ * * constArgs[0]} to the {@code float[]} in {@code arrs[3]}, at the index of C.
+ */
+public final class GotoIntKernel extends GotoKernel {
+  private static final int UNROLL_FACTOR = 2;
+  private static final int PREFETCH_DISTANCE = 4;
+  // Bytes of A and of each column of B per k group.
+  private static final int GROUP_BYTES = 4;
+  // Null if the JVMCI version does not know the feature, which then is never supported.
+  private static final CPUFeature AVX512_VNNI = lookupFeature("AVX512_VNNI");
+
+  private final boolean int8;
+  private final int group;
+  private final int aRowStride;
+  private final int bGroupStride;
+  private final int cRowStride;
+  private final int operandBaseOffset;
+  private final int floatArrayBaseOffset;
+  private final boolean dequantize;
+
+  private Register aPtr;
+  private Register bPtr;
+  private Register scratch;
+  private boolean vnni;
+  // Vector registers of the tile being emitted.
+  private int aReg;
+  private int aOddReg;
+  private int productReg;
+  private int[] bRegs;
+  private int[] bOddRegs;
+  private int[][] cRegs;
+
+  public GotoIntKernel(
+      LIRGeneratorTool tool,
+      int arch,
+      int kernelType,
+      int aLength,
+      int bLength,
+      int mLength,
+      int kLength,
+      int nLength,
+      long[] calc,
+      double[] constArgs,
+      int[] varArgProperties,
+      GotoKernelOp kernelOp,
+      int[] flatLayout) {
+    super(
+        tool,
+        arch,
+        kernelType,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        calc,
+        constArgs,
+        varArgProperties,
+        kernelOp,
+        JavaKind.Int);
+    GraalError.guarantee(arch != 0, "integer Goto kernels need AVX2");
+    GraalError.guarantee(varArgProperties.length == 0, "integer Goto kernels take no varArgs");
+    this.flatLayout = flatLayout;
+    this.int8 = kernelType == 6;
+    this.group = int8 ? 4 : 2;
+    JavaKind operandKind = int8 ? JavaKind.Byte : JavaKind.Short;
+    int operandBytes = operandKind.getByteCount();
+    this.aRowStride = flatLayout[0] * operandBytes;
+    this.bGroupStride = flatLayout[1] * operandBytes;
+    this.cRowStride = flatLayout[2] * elementBytes;
+    MetaAccessProvider metaAccess = tool.getProviders().getMetaAccess();
+    this.operandBaseOffset = metaAccess.getArrayBaseOffset(operandKind);
+    this.floatArrayBaseOffset = metaAccess.getArrayBaseOffset(JavaKind.Float);
+    this.dequantize = constArgs.length == 1;
+  }
+
+  private static CPUFeature lookupFeature(String name) {
+    for (CPUFeature feature : CPUFeature.values()) {
+      if (feature.name().equals(name)) {
+        return feature;
+      }
+    }
+    return null;
+  }
+
+  /** Whether {@code features} include AVX512_VNNI, for {@code vpdpbusd} and {@code vpdpwssd}. */
+  public static boolean supportsVnni(EnumSet<CPUFeature> features) {
+    return AVX512_VNNI != null && features.contains(AVX512_VNNI);
+  }
+
+  /**
+   * Vector registers an integer kernel needs for an {@code aLength x bVectors} tile: the tile, the
+   * B vectors and the broadcast of A, plus without VNNI a product and for int8 the odd halves of A
+   * and B.
+   */
+  public static int simdRegistersNeeded(int kernelType, boolean vnni, int aLength, int bVectors) {
+    if (vnni) {
+      return aLength * bVectors + bVectors + 1;
+    }
+    if (kernelType == 6) {
+      return aLength * bVectors + 2 * bVectors + 3;
+    }
+    return aLength * bVectors + bVectors + 2;
+  }
+
+  @Override
+  protected boolean stagesConstArgs() {
+    return false;
+  }
+
+  @Override
+  protected boolean supportsMaskedNTail() {
+    return arch == 2 && initialBLength <= N_TAIL_MASKS.length;
+  }
+
+  @Override
+  protected void loadA(AMD64MacroAssembler masm, int iIndex, int offset, int dstRegNum) {
+    throw GraalError.shouldNotReachHere("integer Goto kernels run no program");
+  }
+
+  @Override
+  protected void loadB(AMD64MacroAssembler masm, int jIndex, int offset, int dstRegNum) {
+    throw GraalError.shouldNotReachHere("integer Goto kernels run no program");
+  }
+
+  @Override
+  protected void loadVarArg(
+      AMD64MacroAssembler masm, int argIndex, int iIndex, int jIndex, int dstRegNum) {
+    throw GraalError.shouldNotReachHere("integer Goto kernels take no varArgs");
+  }
+
+  /**
+   * Sets {@code dst} to {@code arrs[arrayIndex] + base + offset + row * rowStride}, plus {@code col
+   * * colStride} if {@code col} is valid.
+   */
+  private void emitOperandPointer(
+      AMD64MacroAssembler masm,
+      Register dst,
+      int arrayIndex,
+      int base,
+      long offset,
+      Register row,
+      int rowStride,
+      Register col,
+      int colStride) {
+    masm.movq(dst, new AMD64Address(arrsPtr, OBJECT_ARRAY_BASE_OFFSET + arrayIndex * 8));
+    AMD64Assembler.AMD64RMIOp.IMUL.emit(masm, QWORD, scratch, row, rowStride);
+    masm.addq(dst, scratch);
+    if (col.isValid()) {
+      AMD64Assembler.AMD64RMIOp.IMUL.emit(masm, QWORD, scratch, col, colStride);
+      masm.addq(dst, scratch);
+    }
+    long constant = base + offset;
+    if (constant == (int) constant) {
+      masm.addq(dst, (int) constant);
+    } else {
+      masm.movq(scratch, constant);
+      masm.addq(dst, scratch);
+    }
+  }
+
+  private AMD64Address bAddress(int offset, int jIndex) {
+    return new AMD64Address(bPtr, offset * bGroupStride + jIndex * simdSize.getBytes());
+  }
+
+  private void subIter(
+      AMD64MacroAssembler masm, int aLength, int bLength, int offset, int prefetchDistance) {
+    if (prefetchDistance > 0 && prefetches(PREFETCH_B, true)) {
+      for (int j = 0; j < bLength; j++) {
+        emitPrefetch(masm, bAddress(offset + prefetchDistance, j));
+      }
+    }
+    if (prefetchDistance > 0 && prefetches(PREFETCH_A, false)) {
+      emitPrefetchRange(
+          masm,
+          aPtr,
+          Register.None,
+          AMD64Address.Scale.Times1,
+          (offset + prefetchDistance) * GROUP_BYTES,
+          aLength,
+          aRowStride);
+    }
+
+    for (int j = 0; j < bLength; j++) {
+      // Without VNNI the int8 B is split into its even bytes and its odd bytes, sign-extended.
+      Register b = xmmRegistersAVX512[int8 && !vnni ? bOddRegs[j] : bRegs[j]];
+      Register mask = nTailMask(j);
+      if (mask.isValid()) {
+        AMD64Assembler.VexMoveOp.VMOVDQU32.emit(
+            masm, simdSize, b, bAddress(offset, j), mask, Z1, B0);
+      } else {
+        AMD64Assembler.VexMoveOp.VMOVDQU32.emit(masm, simdSize, b, bAddress(offset, j));
+      }
+      if (int8 && !vnni) {
+        Register even = xmmRegistersAVX512[bRegs[j]];
+        AMD64Assembler.VexShiftOp.VPSLLW.emit(masm, simdSize, even, b, 8);
+        AMD64Assembler.VexShiftOp.VPSRAW.emit(masm, simdSize, even, even, 8);
+        AMD64Assembler.VexShiftOp.VPSRAW.emit(masm, simdSize, b, b, 8);
+      }
+    }
+
+    Register a = xmmRegistersAVX512[int8 && !vnni ? aOddReg : aReg];
+    for (int i = 0; i < aLength; i++) {
+      AMD64Assembler.VexRMOp.VPBROADCASTD.emit(
+          masm, simdSize, a, new AMD64Address(aPtr, i * aRowStride + offset * GROUP_BYTES));
+      if (int8 && !vnni) {
+        // The unsigned bytes of A, zero-extended.
+        Register even = xmmRegistersAVX512[aReg];
+        AMD64Assembler.VexShiftOp.VPSLLW.emit(masm, simdSize, even, a, 8);
+        AMD64Assembler.VexShiftOp.VPSRLW.emit(masm, simdSize, even, even, 8);
+        AMD64Assembler.VexShiftOp.VPSRLW.emit(masm, simdSize, a, a, 8);
+      }
+      for (int j = 0; j < bLength; j++) {
+        emitDotProduct(masm, cRegs[i][j], aReg, bRegs[j]);
+        if (int8 && !vnni) {
+          emitDotProduct(masm, cRegs[i][j], aOddReg, bOddRegs[j]);
+        }
+      }
+    }
+  }
+
+  /** Adds the sums of the products of adjacent lanes of {@code a} and {@code b} to {@code c}. */
+  private void emitDotProduct(AMD64MacroAssembler masm, int c, int a, int b) {
+    Register cReg = xmmRegistersAVX512[c];
+    Register aValue = xmmRegistersAVX512[a];
+    Register bValue = xmmRegistersAVX512[b];
+    if (vnni) {
+      // The unsigned operand of vpdpbusd is the first source.
+      AMD64Assembler.VexRVMOp dotOp =
+          int8 ? AMD64Assembler.VexRVMOp.VPDPBUSD : AMD64Assembler.VexRVMOp.VPDPWSSD;
+      dotOp.emit(masm, simdSize, cReg, aValue, bValue);
+      return;
+    }
+    Register product = xmmRegistersAVX512[productReg];
+    AMD64Assembler.VexRVMOp.VPMADDWD.emit(masm, simdSize, product, aValue, bValue);
+    AMD64Assembler.VexRVMOp.VPADDD.emit(masm, simdSize, cReg, cReg, product);
+  }
+
+  private void emitAdvance(AMD64MacroAssembler masm, int steps) {
+    masm.addq(aPtr, steps * GROUP_BYTES);
+    masm.addq(bPtr, steps * bGroupStride);
+  }
+
+  @Override
+  protected void emitKernelCode(AMD64MacroAssembler masm, int aLength, int bLength) {
+    aPtr = asRegister(kernelOp.remainingRegValues[0]);
+    bPtr = asRegister(kernelOp.remainingRegValues[1]);
+    scratch = asRegister(kernelOp.remainingRegValues[2]);
+    vnni = arch == 2 && supportsVnni(((AMD64) masm.target.arch).getFeatures());
+    GraalError.guarantee(
+        simdRegistersNeeded(kernelType, vnni, aLength, bLength) <= totalSimdRegisterNum,
+        "integer Goto kernel tile %dx%d needs too many registers",
+        aLength,
+        bLength);
+
+    int registerIndex = 0;
+    aReg = registerIndex++;
+    aOddReg = int8 && !vnni ? registerIndex++ : -1;
+    productReg = !vnni ? registerIndex++ : -1;
+    bRegs = new int[bLength];
+    bOddRegs = new int[bLength];
+    for (int j = 0; j < bLength; j++) {
+      bRegs[j] = registerIndex++;
+      bOddRegs[j] = int8 && !vnni ? registerIndex++ : -1;
+    }
+    cRegs = new int[aLength][bLength];
+    for (int i = 0; i < aLength; i++) {
+      for (int j = 0; j < bLength; j++) {
+        cRegs[i][j] = registerIndex++;
+        Register c = xmmRegistersAVX512[cRegs[i][j]];
+        AMD64Assembler.VexRVMOp.VPXOR.emit(masm, simdSize, c, c, c);
+      }
+    }
+
+    int operandBytes = int8 ? 1 : 2;
+    emitOperandPointer(
+        masm,
+        aPtr,
+        0,
+        operandBaseOffset,
+        (long) flatLayout[3] * operandBytes,
+        iPos,
+        aRowStride,
+        kPos,
+        operandBytes);
+    // Column j of B starts at j * group elements of its group row.
+    masm.movl(tempArrayAddressReg, kPos);
+    masm.shrl(tempArrayAddressReg, Integer.numberOfTrailingZeros(group));
+    emitOperandPointer(
+        masm,
+        bPtr,
+        1,
+        operandBaseOffset,
+        (long) flatLayout[4] * operandBytes,
+        tempArrayAddressReg,
+        bGroupStride,
+        jPos,
+        GROUP_BYTES);
+
+    // kPanelSize counts the k groups left.
+    masm.shrl(kPanelSize, Integer.numberOfTrailingZeros(group));
+    Label loopLabel = new Label();
+    Label tailLabel = new Label();
+    Label tailLoopLabel = new Label();
+    Label doneLabel = new Label();
+    int prefetchDistance = prefetchDistance(PREFETCH_DISTANCE, PREFETCH_A | PREFETCH_B);
+    masm.subl(kPanelSize, UNROLL_FACTOR);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, tailLabel);
+    masm.bind(loopLabel);
+    for (int offset = 0; offset < UNROLL_FACTOR; offset++) {
+      subIter(masm, aLength, bLength, offset, prefetchDistance);
+    }
+    emitAdvance(masm, UNROLL_FACTOR);
+    masm.subl(kPanelSize, UNROLL_FACTOR);
+    masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, loopLabel);
+
+    masm.bind(tailLabel);
+    masm.addl(kPanelSize, UNROLL_FACTOR);
+    masm.jcc(AMD64Assembler.ConditionFlag.LessEqual, doneLabel);
+    masm.bind(tailLoopLabel);
+    subIter(masm, aLength, bLength, 0, 0);
+    emitAdvance(masm, 1);
+    masm.subl(kPanelSize, 1);
+    masm.jcc(AMD64Assembler.ConditionFlag.Greater, tailLoopLabel);
+    masm.bind(doneLabel);
+
+    // aPtr is free now and points at C(iPos, jPos), and bPtr at the same element of the
+    // dequantized output.
+    Register cPtr = aPtr;
+    emitOperandPointer(
+        masm,
+        cPtr,
+        2,
+        ELEMENT_ARRAY_BASE_OFFSET,
+        (long) flatLayout[5] * elementBytes,
+        iPos,
+        cRowStride,
+        jPos,
+        elementBytes);
+    if (!dequantize) {
+      emitStore(masm, aLength, bLength, cPtr, Register.None);
+      return;
+    }
+    Label notLastLabel = new Label();
+    Label storedLabel = new Label();
+    emitJumpUnlessLastKPanel(masm, scratch, notLastLabel);
+    Register dPtr = bPtr;
+    emitOperandPointer(
+        masm,
+        dPtr,
+        3,
+        floatArrayBaseOffset,
+        (long) flatLayout[5] * Float.BYTES,
+        iPos,
+        cRowStride,
+        jPos,
+        Float.BYTES);
+    Register scale = xmmRegistersAVX512[aReg];
+    masm.movl(scratch, Float.floatToRawIntBits((float) constArgs[0]));
+    AMD64Assembler.VexMoveOp.VMOVD.emit(masm, AVXSize.XMM, scale, scratch);
+    AMD64Assembler.VexRMOp.VBROADCASTSS.emit(masm, simdSize, scale, scale);
+    emitStore(masm, aLength, bLength, cPtr, dPtr);
+    masm.jmp(storedLabel);
+    masm.bind(notLastLabel);
+    emitStore(masm, aLength, bLength, cPtr, Register.None);
+    masm.bind(storedLabel);
+  }
+
+  /**
+   * Adds the tile to C at {@code cPtr}, and if {@code dPtr} is valid also writes it dequantized
+   * with the scale held in the A register.
+   */
+  private void emitStore(
+      AMD64MacroAssembler masm, int aLength, int bLength, Register cPtr, Register dPtr) {
+    for (int i = 0; i < aLength; i++) {
+      for (int j = 0; j < bLength; j++) {
+        Register c = xmmRegistersAVX512[cRegs[i][j]];
+        Register mask = nTailMask(j);
+        AMD64Address resultAddress =
+            new AMD64Address(cPtr, i * cRowStride + j * simdSize.getBytes());
+        if (mask.isValid()) {
+          AMD64Assembler.VexRVMOp.VPADDD.emit(masm, simdSize, c, c, resultAddress, mask);
+          AMD64Assembler.VexMoveOp.VMOVDQU32.emit(masm, simdSize, resultAddress, c, mask);
+        } else {
+          AMD64Assembler.VexRVMOp.VPADDD.emit(masm, simdSize, c, c, resultAddress);
+          AMD64Assembler.VexMoveOp.VMOVDQU32.emit(masm, simdSize, resultAddress, c);
+        }
+        if (!dPtr.isValid()) {
+          continue;
+        }
+        AMD64Assembler.VexRMOp.VCVTDQ2PS.emit(masm, simdSize, c, c);
+        AMD64Assembler.VexRVMOp.VMULPS.emit(masm, simdSize, c, c, xmmRegistersAVX512[aReg]);
+        AMD64Address dequantizedAddress =
+            new AMD64Address(dPtr, i * cRowStride + j * simdSize.getBytes());
+        if (mask.isValid()) {
+          AMD64Assembler.VexMoveOp.VMOVUPS.emit(masm, simdSize, dequantizedAddress, c, mask);
+        } else {
+          AMD64Assembler.VexMoveOp.VMOVUPS.emit(masm, simdSize, dequantizedAddress, c);
+        }
+      }
+    }
+  }
+}
@@ -63,6 +63,18 @@ public final class GotoInterleavePackedKernel extends GotoKernel {
     this.aAddressOffset = 256;
   }
 
+  /** The kernel reads no variable arguments, so none are staged. */
+  @Override
+  protected boolean stagesVarArg(int index) {
+    return false;
+  }
+
+  /** The kernel binds no constant arguments, so none are staged. */
+  @Override
+  protected boolean stagesConstArgs() {
+    return false;
+  }
+
   public void subIter(
       int aLength,
       int bLength,
@@ -77,7 +89,7 @@ public final class GotoInterleavePackedKernel extends GotoKernel {
       Register temp) {
     AMD64Address aAddress, bAddress;
 
-    if (prefetchDistance > 0) {
+    if (prefetchDistance > 0 && prefetches(PREFETCH_B, true)) {
       for (int j = 0; j < bLength; j++) {
         bAddress =
             new AMD64Address(
@@ -88,9 +100,19 @@ public final class GotoInterleavePackedKernel extends GotoKernel {
                     + (j * 64)
                     + (offset * 8 * bLength * 8)
                     + (prefetchDistance * 8 * bLength * 8));
-        masm.prefetcht0(bAddress);
+        emitPrefetch(masm, bAddress);
       }
     }
+    if (prefetchDistance > 0 && prefetches(PREFETCH_A, false)) {
+      emitPrefetchRange(
+          masm,
+          aPtr,
+          aIndex,
+          DOUBLE_ARRAY_INDEX_SCALE,
+          DOUBLE_ARRAY_BASE_OFFSET - aAddressOffset + ((offset + prefetchDistance) * 8 * aLength),
+          aLength,
+          8);
+    }
 
     if (interleave) {
       for (int j = 0; j < bLength * 2; j++) {
@@ -183,6 +205,14 @@ public final class GotoInterleavePackedKernel extends GotoKernel {
   protected void loadVarArg(
       AMD64MacroAssembler masm, int argIndex, int iIndex, int jIndex, int dstRegNum) {}
 
+  /**
+   * Vector registers the kernel needs for an {@code aLength x bVectors} tile: the broadcast of A,
+   * the vectors of B, twice as many when two rows are interleaved, and the tile.
+   */
+  static int simdRegistersNeeded(int aLength, int bVectors) {
+    return 1 + (aLength % 2 == 0 ? 2 * bVectors : bVectors) + aLength * bVectors;
+  }
+
   protected void emitKernelCode(AMD64MacroAssembler masm, int aLength, int bLength) {
     if (aLength % 2 == 1) {
       interleave = false;
@@ -216,6 +246,7 @@ public final class GotoInterleavePackedKernel extends GotoKernel {
         simdRegisters.put("C" + String.valueOf(i) + String.valueOf(j), registerIndex++);
       }
     }
+    bindScratchRegisters(registerIndex);
 
     AMD64Address resultAddress, aAddress, bAddress;
 
@@ -365,7 +396,7 @@ public final class GotoInterleavePackedKernel extends GotoKernel {
     masm.addq(bPtr, bAlignmentOffset);
 
     int unrollFactor = 4;
-    int prefetchDistance = 0;
+    int prefetchDistance = prefetchDistance(0, PREFETCH_A | PREFETCH_B);
     masm.movq(temp, kernelWidth);
     masm.imull(temp, temp, unrollFactor);
     masm.subq(loopEndReg, temp);
@@ -442,14 +473,8 @@ public final class GotoInterleavePackedKernel extends GotoKernel {
       Register resultPtr0 = notRaxRdxRegs.pop();
       Register resultPtr1 = notRaxRdxRegs.pop();
       for (int i = 0; i < aLength; i += 2) {
-        masm.movq(
-            resultPtr0,
-            new AMD64Address(
-                temp, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (i * 8)));
-        masm.movq(
-            resultPtr1,
-            new AMD64Address(
-                temp, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + ((i + 1) * 8)));
+        emitResultRow(masm, resultPtr0, temp, i);
+        emitResultRow(masm, resultPtr1, temp, i + 1);
         for (int j = 0; j < bLength * 2; j++) {
           if (j % 2 == 0) {
             masm.vunpcklpd(
@@ -487,10 +512,7 @@ public final class GotoInterleavePackedKernel extends GotoKernel {
       }
     } else {
       for (int i = 0; i < aLength; i++) {
-        resultAddress =
-            new AMD64Address(
-                temp, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (i * 8));
-        masm.movq(temp2, resultAddress);
+        emitResultRow(masm, temp2, temp, i);
         for (int j = 0; j < bLength; j++) {
           resultAddress =
               new AMD64Address(
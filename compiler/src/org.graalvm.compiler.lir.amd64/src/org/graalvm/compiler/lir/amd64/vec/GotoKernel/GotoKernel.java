@@ -1,18 +1,21 @@
 package org.graalvm.compiler.lir.amd64.vec.GotoKernel;
 
 import static jdk.vm.ci.amd64.AMD64.k2;
+import static jdk.vm.ci.amd64.AMD64.k3;
+import static jdk.vm.ci.amd64.AMD64.k4;
+import static jdk.vm.ci.amd64.AMD64.k5;
+import static jdk.vm.ci.amd64.AMD64.k6;
+import static jdk.vm.ci.amd64.AMD64.k7;
 import static jdk.vm.ci.amd64.AMD64.r15;
 import static jdk.vm.ci.amd64.AMD64.rsp;
 import static jdk.vm.ci.amd64.AMD64.xmmRegistersAVX512;
 import static jdk.vm.ci.code.ValueUtil.asRegister;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.OperandSize.QWORD;
 
-import java.io.FileWriter;
-import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import jdk.vm.ci.code.Register;
 import jdk.vm.ci.meta.JavaKind;
 import org.graalvm.compiler.asm.Label;
@@ -21,9 +24,9 @@ import org.graalvm.compiler.asm.amd64.AMD64Address.Scale;
 import org.graalvm.compiler.asm.amd64.AMD64Assembler;
 import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
 import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
+import org.graalvm.compiler.debug.GraalError;
 import org.graalvm.compiler.lir.amd64.vec.GotoOpCode;
-import org.graalvm.compiler.lir.amd64.vec.dag.ExprDag;
-import org.graalvm.compiler.lir.amd64.vec.util.ChangeableString;
+import org.graalvm.compiler.lir.amd64.vec.GotoProgram;
 import org.graalvm.compiler.lir.asm.CompilationResultBuilder;
 import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
 
@@ -39,7 +42,14 @@ public abstract class GotoKernel {
   protected final int OBJECT_ARRAY_BASE_OFFSET;
   protected final Scale OBJECT_ARRAY_INDEX_SCALE;
 
-  protected final String opStringRaw;
+  // Element type of the A, B and C matrices: JavaKind.Double or JavaKind.Float.
+  protected final JavaKind elementKind;
+  protected final boolean isFloat;
+  protected final int elementBytes;
+  protected final int ELEMENT_ARRAY_BASE_OFFSET;
+  protected final Scale ELEMENT_ARRAY_INDEX_SCALE;
+
+  protected final GotoProgram program;
   protected final double[] constArgs;
   protected final int[] varArgProperties;
 
@@ -51,6 +61,7 @@ public abstract class GotoKernel {
   protected final int arch;
   protected final int totalSimdRegisterNum;
   protected final AVXSize simdSize;
+  protected final int lanes;
   protected final int kernelType;
   protected final int mLength, kLength, nLength;
   protected final int initialALength;
@@ -58,20 +69,50 @@ public abstract class GotoKernel {
   protected final int remainingRegisterNum;
 
   Register arrsPtr, kPanelSize, iPos, kPos, jPos, loopIndex, tempArrayAddressReg;
+  // Index of the problem being computed by a batched kernel.
+  Register batchPos;
 
   protected int kPanelSizeIndexFromBehind;
   Register useAsAddressRegs[];
   Register[] tempRegs;
   int[] tempRegNums;
-  Map<String, Integer> availableValues;
+  /** Register number of each {@link GotoOpCode#operand} key, or -1; see {@link #bind}. */
+  int[] availableValues;
   Map<Integer, Integer> variableArgsStackOffsets;
-  Set<String> toLoad;
   protected int varArgsStackSize;
-  protected ExprDag exprDag;
 
   protected GotoKernelOp kernelOp;
 
-  public PrintWriter debugLog;
+  /** Opmasks for the vectors of B and C in a tile that hangs over the N edge. */
+  protected static final Register[] N_TAIL_MASKS = {k3, k4, k5, k6, k7};
+
+  /** Set while emitting the kernel copy for a tile that hangs over the N edge. */
+  protected boolean maskNTail;
+
+  /**
+   * {@code lda, ldb, ldc, aOffset, bOffset, cOffset} for flat row-major operands, or null for
+   * arrays of rows. The packed kernels only use it for C.
+   */
+  protected int[] flatLayout;
+
+  /**
+   * {@code operands, level, distance} of an explicit software prefetch policy, or null for the
+   * kernel type's built-in one. {@code operands} is a set of {@link #PREFETCH_A} and {@link
+   * #PREFETCH_B}, {@code level} selects prefetcht0, prefetcht1 or prefetcht2 and {@code distance}
+   * counts k steps.
+   */
+  protected int[] prefetch;
+
+  /**
+   * {@code aStride, bStride, cStride} in elements between the operands of consecutive problems of
+   * a batched call, or null. A batched call gets the problem count in kPanelSize and loops over
+   * every tile of every problem itself, with K in one panel; see {@link #emitBatchedCode}.
+   */
+  protected int[] batch;
+
+  protected static final int PREFETCH_A = 1;
+  protected static final int PREFETCH_B = 2;
+  protected static final int CACHE_LINE_BYTES = 64;
 
   public GotoKernel(
       LIRGeneratorTool tool,
@@ -86,6 +127,36 @@ public abstract class GotoKernel {
       double[] constArgs,
       int[] varArgProperties,
       GotoKernelOp kernelOp) {
+    this(
+        tool,
+        arch,
+        kernelType,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        calc,
+        constArgs,
+        varArgProperties,
+        kernelOp,
+        JavaKind.Double);
+  }
+
+  public GotoKernel(
+      LIRGeneratorTool tool,
+      int arch,
+      int kernelType,
+      int aLength,
+      int bLength,
+      int mLength,
+      int kLength,
+      int nLength,
+      long[] calc,
+      double[] constArgs,
+      int[] varArgProperties,
+      GotoKernelOp kernelOp,
+      JavaKind elementKind) {
     INT_ARRAY_BASE_OFFSET = tool.getProviders().getMetaAccess().getArrayBaseOffset(JavaKind.Int);
     INT_ARRAY_INDEX_SCALE =
         Objects.requireNonNull(
@@ -103,58 +174,25 @@ public abstract class GotoKernel {
         Objects.requireNonNull(
             Scale.fromInt(tool.getProviders().getMetaAccess().getArrayIndexScale(JavaKind.Object)));
 
-    String opStringBuild = "";
-    for (int index = 0; index < calc.length; index++) {
-      opStringBuild +=
-          Long.toBinaryString(calc[index]).substring(1, Long.toBinaryString(calc[index]).length());
-    }
-    this.opStringRaw = opStringBuild;
+    this.elementKind = elementKind;
+    this.isFloat = elementKind == JavaKind.Float;
+    this.elementBytes = elementKind.getByteCount();
+    ELEMENT_ARRAY_BASE_OFFSET = tool.getProviders().getMetaAccess().getArrayBaseOffset(elementKind);
+    ELEMENT_ARRAY_INDEX_SCALE =
+        Objects.requireNonNull(
+            Scale.fromInt(tool.getProviders().getMetaAccess().getArrayIndexScale(elementKind)));
+
+    this.program = GotoProgram.get(calc, tool.getResult().getLIR().getDebug());
 
     this.constArgs = constArgs;
     this.varArgProperties = varArgProperties;
 
-    // Check loads
-    this.toLoad = new HashSet<String>();
-    for (int loadIndex = 0; loadIndex < opStringRaw.length(); loadIndex += GotoOpCode.INDEXLENGTH) {
-      if (opStringRaw
-          .substring(loadIndex, loadIndex + GotoOpCode.INDEXLENGTH)
-          .equals(GotoOpCode.LOAD)) {
-        String loadTarget =
-            opStringRaw.substring(
-                loadIndex + (GotoOpCode.INDEXLENGTH * 3), loadIndex + (GotoOpCode.INDEXLENGTH * 4));
-        if (loadTarget.equals(GotoOpCode.CONSTARG) || loadTarget.equals(GotoOpCode.VARIABLEARG)) {
-          loadTarget +=
-              opStringRaw.substring(
-                  loadIndex + (GotoOpCode.INDEXLENGTH * 4),
-                  loadIndex + (GotoOpCode.INDEXLENGTH * 5));
-        }
-        toLoad.add(loadTarget);
-      }
-    }
-
     this.arch = arch;
-    switch (arch) {
-      case 0: // AVX
-        this.initialBLength = bLength / 4;
-        // Need to reserve one register for multiplication + addition
-        totalSimdRegisterNum = 15;
-        simdSize = AVXSize.YMM;
-        break;
-      case 1: // AVX2
-        this.initialBLength = bLength / 4;
-        totalSimdRegisterNum = 16;
-        simdSize = AVXSize.YMM;
-        break;
-      case 2: // AVX512
-        this.initialBLength = bLength / 8;
-        totalSimdRegisterNum = 32;
-        simdSize = AVXSize.ZMM;
-        break;
-      default:
-        this.initialBLength = bLength / 4;
-        totalSimdRegisterNum = 15;
-        simdSize = AVXSize.YMM;
-    }
+    totalSimdRegisterNum = simdRegisterBudget(arch, program);
+    simdSize = arch == 2 ? AVXSize.ZMM : AVXSize.YMM;
+    // 4/8 doubles or 8/16 floats per YMM/ZMM register; bLength is given in elements.
+    this.lanes = simdSize.getBytes() / elementBytes;
+    this.initialBLength = bLength / lanes;
     this.kernelType = kernelType;
     this.mLength = mLength;
     this.kLength = kLength;
@@ -162,17 +200,91 @@ public abstract class GotoKernel {
     this.initialALength = aLength;
     // this.initialBLength = bLength / 8;
 
-    constArgStackSlotSize = 32; // Causes an error if value if 8 (do not know reason why)
+    // One qword per constant, of which the broadcast reads the low float or double.
+    constArgStackSlotSize = 8;
 
     remainingRegisterNum = 7;
 
     variableArgsStackOffsets = new HashMap<Integer, Integer>();
-    availableValues = new HashMap<String, Integer>();
+    availableValues = new int[GotoOpCode.OPERAND_KEYS];
+    Arrays.fill(availableValues, -1);
     varArgsStackSize = 0;
 
     this.kernelOp = kernelOp;
   }
 
+  /**
+   * Vector registers the kernels may allocate with {@code arch}: all 32 with AVX-512, otherwise
+   * the 16 ymm registers less a temporary for the unfused multiply and add of AVX and, if {@code
+   * program} uses masks, less the compare result and the blend scratch; see {@link #maskVector}.
+   */
+  public static int simdRegisterBudget(int arch, GotoProgram program) {
+    int maskRegisters = arch != 2 && program.usesMask() ? 2 : 0;
+    switch (arch) {
+      case 1: // AVX2
+        return 16 - maskRegisters;
+      case 2: // AVX512
+        return 32;
+      default: // AVX
+        return 16 - Math.max(1, maskRegisters);
+    }
+  }
+
+  /**
+   * Vector registers taken by the constant and variable arguments a kernel keeps in registers: one
+   * per constant and per variable argument, but {@code columnVectors} for an argument indexed by
+   * j. With {@code skipLoaded}, arguments the program loads itself take none.
+   */
+  protected static int argumentRegisters(
+      GotoProgram program,
+      int constArgCount,
+      int[] varArgProperties,
+      int columnVectors,
+      boolean skipLoaded) {
+    int registers = 0;
+    for (int i = 0; i < constArgCount; i++) {
+      if (!skipLoaded || !program.loads(GotoOpCode.operand(GotoOpCode.CONSTARG, i))) {
+        registers++;
+      }
+    }
+    for (int i = 0; i < varArgProperties.length; i++) {
+      if (!skipLoaded || !program.loads(GotoOpCode.operand(GotoOpCode.VARIABLEARG, i))) {
+        registers += varArgProperties[i] == 2 ? columnVectors : 1;
+      }
+    }
+    return registers;
+  }
+
+  /**
+   * Binds the scratch operands of the program to the vector registers from {@code registerIndex}
+   * up to {@link #totalSimdRegisterNum}, which must leave enough of them.
+   */
+  protected void bindScratchRegisters(int registerIndex) {
+    int needed = registerIndex + program.scratchRegisters();
+    GraalError.guarantee(
+        needed <= totalSimdRegisterNum,
+        "Goto kernel type %d needs %d vector registers, vector arch %d has %d",
+        kernelType,
+        needed,
+        arch,
+        totalSimdRegisterNum);
+    for (int i = 0; registerIndex + i < totalSimdRegisterNum; i++) {
+      bind(GotoOpCode.operand(GotoOpCode.REG, i), registerIndex + i);
+    }
+  }
+
+  /** Maps operand {@code key} of the program to vector register {@code regNum}. */
+  protected void bind(int key, int regNum) {
+    availableValues[key] = regNum;
+  }
+
+  /** The vector register bound to operand {@code key}. */
+  protected int registerOf(int key) {
+    int regNum = availableValues[key];
+    GraalError.guarantee(regNum >= 0, "Goto program operand %d is not bound to a register", key);
+    return regNum;
+  }
+
   protected Boolean registerEquals(Register a, Register b) {
     return a.name.equals(b.name);
   }
@@ -194,6 +306,9 @@ public abstract class GotoKernel {
     // Push Variable arguments in reverse order
     masm.movl(loopIndex, 0);
     for (int i = varArgProperties.length - 1; i >= 0; i--) {
+      if (!stagesVarArg(i)) {
+        continue;
+      }
       if (varArgProperties[i] == 2) { // index is j
         for (int varArgIndex : variableArgsStackOffsets.keySet()) {
           variableArgsStackOffsets.put(
@@ -351,14 +466,97 @@ public abstract class GotoKernel {
 
     // Push Constant arguments in reverse order
     constArgsStackSize = 0;
+    if (!stagesConstArgs()) {
+      return;
+    }
     for (int i = constArgs.length - 1; i >= 0; i--) {
-      masm.movq(tempGenReg, Double.doubleToLongBits(constArgs[i]));
+      if (isFloat) {
+        masm.movq(tempGenReg, Float.floatToRawIntBits((float) constArgs[i]));
+      } else {
+        masm.movq(tempGenReg, Double.doubleToLongBits(constArgs[i]));
+      }
       masm.subq(rsp, constArgStackSlotSize);
       masm.movq(new AMD64Address(rsp), tempGenReg);
       constArgsStackSize += constArgStackSlotSize;
     }
   }
 
+  /**
+   * Whether {@link #pushArguments} copies variable argument {@code index} onto the stack for every
+   * call. Kernels that address an argument in place, or never read it, override this.
+   */
+  protected boolean stagesVarArg(int index) {
+    return true;
+  }
+
+  /**
+   * Whether {@link #pushArguments} copies the constant arguments onto the stack, from where the
+   * kernel broadcasts them. Otherwise {@link #loadConstArg} materializes them with {@link
+   * #emitConstArg}, which AVX cannot do.
+   */
+  protected boolean stagesConstArgs() {
+    return arch == 0;
+  }
+
+  /**
+   * Broadcasts constant argument {@code index} to all lanes of {@code dst}, from its stack slot if
+   * {@link #stagesConstArgs} and otherwise from an immediate held in {@code temp}.
+   */
+  protected void loadConstArg(AMD64MacroAssembler masm, Register dst, int index, Register temp) {
+    if (stagesConstArgs()) {
+      emitBroadcast(
+          masm, dst, new AMD64Address(rsp, stackOffsetToConstArgs + constArgStackSlotSize * index));
+    } else {
+      emitConstArg(masm, dst, index, temp);
+    }
+  }
+
+  /**
+   * Broadcasts constant argument {@code index} to all lanes of {@code dst} from an immediate held
+   * in {@code temp}. The broadcast from a register needs AVX2.
+   */
+  protected void emitConstArg(AMD64MacroAssembler masm, Register dst, int index, Register temp) {
+    GraalError.guarantee(arch != 0, "AVX cannot broadcast from a register");
+    if (isFloat) {
+      int bits = Float.floatToRawIntBits((float) constArgs[index]);
+      if (bits == 0) {
+        AMD64Assembler.VexRVMOp.VPXOR.emit(masm, simdSize, dst, dst, dst);
+        return;
+      }
+      masm.movl(temp, bits);
+      AMD64Assembler.VexMoveOp.VMOVD.emit(masm, AVXSize.XMM, dst, temp);
+      AMD64Assembler.VexRMOp.VBROADCASTSS.emit(masm, simdSize, dst, dst);
+    } else {
+      long bits = Double.doubleToRawLongBits(constArgs[index]);
+      if (bits == 0) {
+        AMD64Assembler.VexRVMOp.VPXOR.emit(masm, simdSize, dst, dst, dst);
+        return;
+      }
+      masm.movq(temp, bits);
+      AMD64Assembler.VexMoveOp.VMOVQ.emit(masm, AVXSize.XMM, dst, temp);
+      AMD64Assembler.VexRMOp.VBROADCASTSD.emit(masm, simdSize, dst, dst);
+    }
+  }
+
+  /**
+   * Points {@code dst} at row {@code iPos + row} of the double result held in {@code result}, in
+   * the form of a {@code double[]} row: element {@code j} of the row is at {@code dst +
+   * DOUBLE_ARRAY_BASE_OFFSET + j * 8}. For a flat result that is an interior pointer.
+   */
+  protected void emitResultRow(AMD64MacroAssembler masm, Register dst, Register result, int row) {
+    if (flatLayout == null) {
+      masm.movq(
+          dst,
+          new AMD64Address(
+              result, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (row * 8)));
+      return;
+    }
+    int ldc = flatLayout[2];
+    AMD64Assembler.AMD64RMIOp.IMUL.emit(masm, QWORD, dst, iPos, ldc * 8);
+    masm.addq(dst, result);
+    masm.addq(dst, (flatLayout[5] + row * ldc) * 8);
+  }
+
   protected abstract void loadA(AMD64MacroAssembler masm, int iIndex, int offset, int dstRegNum);
 
   protected abstract void loadB(AMD64MacroAssembler masm, int jIndex, int offset, int dstRegNum);
@@ -366,34 +564,132 @@ public abstract class GotoKernel {
   protected abstract void loadVarArg(
       AMD64MacroAssembler masm, int argIndex, int iIndex, int jIndex, int dstRegNum);
 
+  protected AMD64Assembler.VexRVMOp addOp() {
+    return isFloat ? AMD64Assembler.VexRVMOp.VADDPS : AMD64Assembler.VexRVMOp.VADDPD;
+  }
+
+  protected AMD64Assembler.VexRVMOp subOp() {
+    return isFloat ? AMD64Assembler.VexRVMOp.VSUBPS : AMD64Assembler.VexRVMOp.VSUBPD;
+  }
+
+  protected AMD64Assembler.VexRVMOp mulOp() {
+    return isFloat ? AMD64Assembler.VexRVMOp.VMULPS : AMD64Assembler.VexRVMOp.VMULPD;
+  }
+
+  protected AMD64Assembler.VexRVMOp divOp() {
+    return isFloat ? AMD64Assembler.VexRVMOp.VDIVPS : AMD64Assembler.VexRVMOp.VDIVPD;
+  }
+
+  protected AMD64Assembler.VexRVMOp maxOp() {
+    return isFloat ? AMD64Assembler.VexRVMOp.VMAXPS : AMD64Assembler.VexRVMOp.VMAXPD;
+  }
+
+  protected AMD64Assembler.VexRVMOp minOp() {
+    return isFloat ? AMD64Assembler.VexRVMOp.VMINPS : AMD64Assembler.VexRVMOp.VMINPD;
+  }
+
+  protected AMD64Assembler.VexMoveOp moveOp() {
+    return isFloat ? AMD64Assembler.VexMoveOp.VMOVUPS : AMD64Assembler.VexMoveOp.VMOVUPD;
+  }
+
+  /**
+   * Prefetch distance in k steps for a kernel that can prefetch the operands {@code supported}: 0
+   * if the policy prefetches none of them, and {@code builtIn} without an explicit policy.
+   */
+  protected int prefetchDistance(int builtIn, int supported) {
+    if (prefetch == null) {
+      return builtIn;
+    }
+    return (prefetch[0] & supported) != 0 ? prefetch[2] : 0;
+  }
+
+  /** Whether {@code operand} is prefetched; {@code builtIn} without an explicit policy. */
+  protected boolean prefetches(int operand, boolean builtIn) {
+    return prefetch == null ? builtIn : (prefetch[0] & operand) != 0;
+  }
+
+  /** Prefetches the cache line at {@code address} into the level the policy asks for. */
+  protected void emitPrefetch(AMD64MacroAssembler masm, AMD64Address address) {
+    switch (prefetch == null ? 0 : prefetch[1]) {
+      case 1:
+        masm.prefetcht1(address);
+        break;
+      case 2:
+        masm.prefetcht2(address);
+        break;
+      default:
+        masm.prefetcht0(address);
+        break;
+    }
+  }
+
+  /**
+   * Prefetches the cache lines of {@code count} elements {@code stride} bytes apart, the first at
+   * {@code displacement} from {@code base} (with {@code index} scaled by {@code scale}).
+   */
+  protected void emitPrefetchRange(
+      AMD64MacroAssembler masm,
+      Register base,
+      Register index,
+      Scale scale,
+      int displacement,
+      int count,
+      int stride) {
+    int step = Math.max(1, CACHE_LINE_BYTES / stride);
+    for (int element = 0; element < count; element += step) {
+      emitPrefetch(masm, new AMD64Address(base, index, scale, displacement + element * stride));
+    }
+    if ((count - 1) % step != 0) {
+      emitPrefetch(masm, new AMD64Address(base, index, scale, displacement + (count - 1) * stride));
+    }
+  }
+
+  /** Broadcasts one element of A (or a constant argument) to all lanes. */
+  protected void emitBroadcast(AMD64MacroAssembler masm, Register dst, AMD64Address src) {
+    if (isFloat) {
+      AMD64Assembler.VexRMOp.VBROADCASTSS.emit(masm, simdSize, dst, src);
+    } else {
+      masm.vbroadcastsd(dst, src);
+    }
+  }
+
   protected void emitSubiterCode(AMD64MacroAssembler masm, int iIndex, int jIndex, int offset) {
-    ChangeableString codeString = new ChangeableString(opStringRaw);
-    final int opLength = GotoOpCode.INDEXLENGTH;
-    while (codeString.toString().length() > 0) {
-      String op = codeString.cutOff(opLength);
-      String opType = op.substring(0, 2);
-      if (op.equals(GotoOpCode.LOAD)) {
-        int dstRegNum = availableValues.get(getRegisterString(codeString));
-        String loadType = getRegisterString(codeString);
-        switch (loadType.substring(0, opLength)) {
-          case GotoOpCode.A:
-            loadA(masm, iIndex, offset, dstRegNum);
-            break;
-          case GotoOpCode.B:
-            loadB(masm, jIndex, offset, dstRegNum);
-            break;
-          case GotoOpCode.VARIABLEARG:
-            int argIndex = Integer.parseInt(loadType.substring(opLength, opLength + opLength), 2);
-            loadVarArg(masm, argIndex, iIndex, jIndex, dstRegNum);
-            break;
+    emitInstructions(masm, program.getInstructions(), iIndex, jIndex, offset);
+  }
+
+  /**
+   * Emits the epilogue for tile element {@code (iIndex, jIndex)}. The caller maps {@link
+   * GotoOpCode#C}, {@link GotoOpCode#STOREDC} and the epilogue vectors with {@link #bind} first.
+   */
+  protected void emitEpilogueCode(AMD64MacroAssembler masm, int iIndex, int jIndex) {
+    emitInstructions(masm, program.getEpilogue(), iIndex, jIndex, 0);
+  }
+
+  private void emitInstructions(
+      AMD64MacroAssembler masm,
+      GotoProgram.Instruction[] instructions,
+      int iIndex,
+      int jIndex,
+      int offset) {
+    for (GotoProgram.Instruction inst : instructions) {
+      int op = inst.op;
+      int opType = inst.opType;
+      if (op == GotoOpCode.LOAD) {
+        int dstRegNum = registerOf(inst.dst);
+        if (inst.varArgIndex >= 0) {
+          loadVarArg(masm, inst.varArgIndex, iIndex, jIndex, dstRegNum);
+        } else if (inst.src0 == GotoOpCode.A) {
+          loadA(masm, iIndex, offset, dstRegNum);
+        } else if (inst.src0 == GotoOpCode.B) {
+          loadB(masm, jIndex, offset, dstRegNum);
         }
-      } else if (opType.equals(GotoOpCode.OP)) {
-        int dstRegNum = availableValues.get(getRegisterString(codeString));
-        int src0RegNum = availableValues.get(getRegisterString(codeString));
-        int src1RegNum = availableValues.get(getRegisterString(codeString));
+      } else if (opType == GotoOpCode.OP) {
+        int dstRegNum = registerOf(inst.dst);
+        int src0RegNum = registerOf(inst.src0);
+        int src1RegNum = registerOf(inst.src1);
         switch (op) {
           case GotoOpCode.ADD:
-            AMD64Assembler.VexRVMOp.VADDPD.emit(
+            addOp().emit(
                 masm,
                 simdSize,
                 xmmRegistersAVX512[dstRegNum],
@@ -401,7 +697,7 @@ public abstract class GotoKernel {
                 xmmRegistersAVX512[src1RegNum]);
             break;
           case GotoOpCode.SUB:
-            AMD64Assembler.VexRVMOp.VSUBPD.emit(
+            subOp().emit(
                 masm,
                 simdSize,
                 xmmRegistersAVX512[dstRegNum],
@@ -409,7 +705,19 @@ public abstract class GotoKernel {
                 xmmRegistersAVX512[src1RegNum]);
             break;
           case GotoOpCode.MUL:
-            AMD64Assembler.VexRVMOp.VMULPD.emit(
+            mulOp().emit(
+                masm,
+                simdSize,
+                xmmRegistersAVX512[dstRegNum],
+                xmmRegistersAVX512[src0RegNum],
+                xmmRegistersAVX512[src1RegNum]);
+            break;
+          case GotoOpCode.DIV:
+          case GotoOpCode.MAX:
+          case GotoOpCode.MIN:
+            AMD64Assembler.VexRVMOp rvmOp =
+                op == GotoOpCode.DIV ? divOp() : op == GotoOpCode.MAX ? maxOp() : minOp();
+            rvmOp.emit(
                 masm,
                 simdSize,
                 xmmRegistersAVX512[dstRegNum],
@@ -420,160 +728,224 @@ public abstract class GotoKernel {
             switch (arch) {
               case 1: // AVX2
               case 2: // AVX512
-                masm.vfmadd231pd(
-                    xmmRegistersAVX512[dstRegNum],
-                    xmmRegistersAVX512[src0RegNum],
-                    xmmRegistersAVX512[src1RegNum],
-                    simdSize);
+                if (isFloat) {
+                  AMD64Assembler.VexRVMOp.VFMADD231PS.emit(
+                      masm,
+                      simdSize,
+                      xmmRegistersAVX512[dstRegNum],
+                      xmmRegistersAVX512[src0RegNum],
+                      xmmRegistersAVX512[src1RegNum]);
+                } else {
+                  masm.vfmadd231pd(
+                      xmmRegistersAVX512[dstRegNum],
+                      xmmRegistersAVX512[src0RegNum],
+                      xmmRegistersAVX512[src1RegNum],
+                      simdSize);
+                }
                 break;
               default:
               case 0: // AVX
-                AMD64Assembler.VexRVMOp.VMULPD.emit(
+                mulOp().emit(
                     masm,
                     simdSize,
-                    xmmRegistersAVX512[totalSimdRegisterNum],
+                    scratchVector(),
                     xmmRegistersAVX512[src0RegNum],
                     xmmRegistersAVX512[src1RegNum]);
-                AMD64Assembler.VexRVMOp.VADDPD.emit(
+                addOp().emit(
                     masm,
                     simdSize,
                     xmmRegistersAVX512[dstRegNum],
-                    xmmRegistersAVX512[totalSimdRegisterNum],
+                    scratchVector(),
                     xmmRegistersAVX512[dstRegNum]);
                 break;
             }
             break;
         }
-      } else if (opType.equals(GotoOpCode.CMPOP)) {
-        // int dstRegNum = availableValues.get(getRegisterString(codeString));
-        getRegisterString(codeString);
-        int src0RegNum = availableValues.get(getRegisterString(codeString));
-        int src1RegNum = availableValues.get(getRegisterString(codeString));
-        /*
-        int cmpOperation = 0;
-        switch (op) {
-          case GotoOpCode.LT:
-            cmpOperation = 1;
-            break;
-          case GotoOpCode.GT:
-            cmpOperation = 0x0e;
-            break;
-        }
-        masm.vcmppd(
-            k2, xmmRegistersAVX512[src0RegNum], xmmRegistersAVX512[src1RegNum], cmpOperation);
-        */
-        
-        AMD64Assembler.VexFloatCompareOp.Predicate predicate;
-        switch (op) {
-          case GotoOpCode.LT:
-            predicate = AMD64Assembler.VexFloatCompareOp.Predicate.LT_OS;
-            break;
-          case GotoOpCode.GT:
-            predicate = AMD64Assembler.VexFloatCompareOp.Predicate.GT_OS;
-            break;
-          default:
-            predicate = AMD64Assembler.VexFloatCompareOp.Predicate.LT_OS;
-            break;
-        }
-        if (arch == 2) { // AVX512
-          AMD64Assembler.VexFloatCompareOp.VCMPPD_AVX512.emit(masm, simdSize, k2, 
-          xmmRegistersAVX512[src0RegNum], xmmRegistersAVX512[src1RegNum],
-          predicate);
+      } else if (opType == GotoOpCode.CMPOP) {
+        int src0RegNum = registerOf(inst.src0);
+        int src1RegNum = registerOf(inst.src1);
+        emitCompare(masm, op, xmmRegistersAVX512[src0RegNum], xmmRegistersAVX512[src1RegNum]);
+      } else if (opType == GotoOpCode.MASKOP) {
+        int dstRegNum = registerOf(inst.dst);
+        int src0RegNum = registerOf(inst.src0);
+        int src1RegNum = registerOf(inst.src1);
+        Register dst = xmmRegistersAVX512[dstRegNum];
+        Register src0 = xmmRegistersAVX512[src0RegNum];
+        Register src1 = xmmRegistersAVX512[src1RegNum];
+        if (op == GotoOpCode.SELECT) {
+          // dst = mask ? src0 : src1
+          if (this.arch == 2) {
+            AMD64Assembler.VexRVMOp blendOp =
+                isFloat ? AMD64Assembler.VexRVMOp.VBLENDMPS : AMD64Assembler.VexRVMOp.VBLENDMPD;
+            blendOp.emit(masm, simdSize, dst, src1, src0, k2);
+          } else {
+            blendVOp().emit(masm, simdSize, dst, maskVector(), src1, src0);
+          }
+        } else if (this.arch == 2) {
+          // Merge masking keeps dst in the lanes the mask leaves out.
+          maskedOp(op).emit(masm, simdSize, dst, src0, src1, k2);
         } else {
-          AMD64Assembler.VexFloatCompareOp.VCMPPD.emit(masm, simdSize, xmmRegistersAVX512[totalSimdRegisterNum], 
-          xmmRegistersAVX512[src0RegNum], xmmRegistersAVX512[src1RegNum],
-          predicate);
-        }
-      } else if (opType.equals(GotoOpCode.MASKOP)) {
-        // int maskRegNum = availableValues.get(getRegisterString(codeString));
-        getRegisterString(codeString);
-        int dstRegNum = availableValues.get(getRegisterString(codeString));
-        int src0RegNum = availableValues.get(getRegisterString(codeString));
-        int src1RegNum = availableValues.get(getRegisterString(codeString));
-        // Todo: Parse mask register
-        switch (op) {
-          case GotoOpCode.MASKADD:
-            /*
-            masm.vaddpd(
-                xmmRegistersAVX512[dstRegNum],
-                xmmRegistersAVX512[src0RegNum],
-                xmmRegistersAVX512[src1RegNum],
-                k2);
-            */
-            if (this.arch == 2) {
-              AMD64Assembler.VexRVMOp.VADDPD.emit(
-                  masm,
-                  simdSize,
-                  xmmRegistersAVX512[dstRegNum],
-                  xmmRegistersAVX512[src0RegNum],
-                  xmmRegistersAVX512[src1RegNum], k2);
-            } else {
-              AMD64Assembler.VexRVMOp.VADDPD.emit(
-                  masm,
-                  simdSize,
-                  xmmRegistersAVX512[dstRegNum],
-                  xmmRegistersAVX512[src0RegNum],
-                  xmmRegistersAVX512[src1RegNum]);
-                AMD64Assembler.VexRVMOp.VMULPD.emit(masm, simdSize,
-                  xmmRegistersAVX512[dstRegNum],
-                  xmmRegistersAVX512[dstRegNum],
-                  xmmRegistersAVX512[totalSimdRegisterNum]);
-            }
-            break;
-          case GotoOpCode.MASKSUB:
-            AMD64Assembler.VexRVMOp.VSUBPD.emit(
-                masm,
-                simdSize,
-                xmmRegistersAVX512[dstRegNum],
-                xmmRegistersAVX512[src0RegNum],
-                xmmRegistersAVX512[src1RegNum],
-                k2);
-            break;
+          Register result = scratchVector();
+          if (op == GotoOpCode.MASKFMADD && arch == 1) {
+            moveOp().emit(masm, simdSize, result, dst);
+            fmaddOp().emit(masm, simdSize, result, src0, src1);
+          } else if (op == GotoOpCode.MASKFMADD) {
+            mulOp().emit(masm, simdSize, result, src0, src1);
+            addOp().emit(masm, simdSize, result, result, dst);
+          } else {
+            maskedOp(op).emit(masm, simdSize, result, src0, src1);
+          }
+          blendVOp().emit(masm, simdSize, dst, maskVector(), dst, result);
         }
       }
     }
   }
 
-  private String getRegisterString(ChangeableString dst) {
-    String op = dst.cutOff(GotoOpCode.INDEXLENGTH);
+  /**
+   * Sets the mask from a lane-wise compare of {@code src0} and {@code src1}: opmask k2 with
+   * AVX-512, otherwise {@link #maskVector()}. The ordered predicates are false for NaN lanes and
+   * {@code neq} is true for them, like Java's comparison operators.
+   */
+  private void emitCompare(AMD64MacroAssembler masm, int op, Register src0, Register src1) {
+    AMD64Assembler.VexFloatCompareOp.Predicate predicate;
     switch (op) {
-      case GotoOpCode.A:
-      case GotoOpCode.B:
-      case GotoOpCode.C:
-        return op;
-      case GotoOpCode.REG:
-      case GotoOpCode.MASKREG:
-      case GotoOpCode.CONSTARG:
-      case GotoOpCode.VARIABLEARG:
-        return op + dst.cutOff(GotoOpCode.INDEXLENGTH);
+      case GotoOpCode.GT:
+        predicate = AMD64Assembler.VexFloatCompareOp.Predicate.GT_OS;
+        break;
+      case GotoOpCode.GE:
+        predicate = AMD64Assembler.VexFloatCompareOp.Predicate.GE_OS;
+        break;
+      case GotoOpCode.LE:
+        predicate = AMD64Assembler.VexFloatCompareOp.Predicate.LE_OS;
+        break;
+      case GotoOpCode.EQ:
+        predicate = AMD64Assembler.VexFloatCompareOp.Predicate.EQ_OQ;
+        break;
+      case GotoOpCode.NEQ:
+        predicate = AMD64Assembler.VexFloatCompareOp.Predicate.NEQ_UQ;
+        break;
+      case GotoOpCode.LT:
+        predicate = AMD64Assembler.VexFloatCompareOp.Predicate.LT_OS;
+        break;
+      default:
+        throw GraalError.shouldNotReachHere("unknown Goto compare " + op);
+    }
+    if (arch == 2) { // AVX512
+      AMD64Assembler.VexFloatCompareOp compareOp =
+          isFloat
+              ? AMD64Assembler.VexFloatCompareOp.VCMPPS_AVX512
+              : AMD64Assembler.VexFloatCompareOp.VCMPPD_AVX512;
+      compareOp.emit(masm, simdSize, k2, src0, src1, predicate);
+    } else {
+      AMD64Assembler.VexFloatCompareOp compareOp =
+          isFloat
+              ? AMD64Assembler.VexFloatCompareOp.VCMPPS
+              : AMD64Assembler.VexFloatCompareOp.VCMPPD;
+      compareOp.emit(masm, simdSize, maskVector(), src0, src1, predicate);
     }
-    return "";
+  }
+
+  /** The arithmetic of a masked op; FMA for MASKFMADD. */
+  private AMD64Assembler.VexRVMOp maskedOp(int op) {
+    switch (op) {
+      case GotoOpCode.MASKADD:
+        return addOp();
+      case GotoOpCode.MASKSUB:
+        return subOp();
+      case GotoOpCode.MASKMUL:
+        return mulOp();
+      case GotoOpCode.MASKDIV:
+        return divOp();
+      case GotoOpCode.MASKFMADD:
+        return fmaddOp();
+      default:
+        throw GraalError.shouldNotReachHere("unknown Goto masked op " + op);
+    }
+  }
+
+  private AMD64Assembler.VexRVMOp fmaddOp() {
+    return isFloat ? AMD64Assembler.VexRVMOp.VFMADD231PS : AMD64Assembler.VexRVMOp.VFMADD231PD;
+  }
+
+  private AMD64Assembler.VexRVMROp blendVOp() {
+    return isFloat ? AMD64Assembler.VexRVMROp.VBLENDVPS : AMD64Assembler.VexRVMROp.VBLENDVPD;
+  }
+
+  /**
+   * Scratch register of the AVX multiply and add, and of masked ops without AVX-512. It lies
+   * above the {@link #totalSimdRegisterNum} registers the kernels allocate.
+   */
+  protected Register scratchVector() {
+    return xmmRegistersAVX512[totalSimdRegisterNum];
+  }
+
+  /** Lane mask written by compares without AVX-512; all ones in the selected lanes. */
+  protected Register maskVector() {
+    return xmmRegistersAVX512[totalSimdRegisterNum + 1];
   }
 
   protected abstract void emitKernelCode(AMD64MacroAssembler masm, int aLength, int bLength);
 
-  public void emitCode(CompilationResultBuilder crb, AMD64MacroAssembler masm) {
-    arrsPtr = asRegister(kernelOp.arrsValue);
-    kPanelSize = asRegister(kernelOp.kPanelSizeValue);
-    iPos = asRegister(kernelOp.iValue);
-    kPos = asRegister(kernelOp.kValue);
-    jPos = asRegister(kernelOp.jValue);
-    loopIndex = asRegister(kernelOp.loopIndexValue);
-    tempArrayAddressReg = asRegister(kernelOp.tempArrayAddressRegValue);
+  /**
+   * Whether {@link #emitKernelCode} masks every load and store of B and C with {@link
+   * #nTailMask}, so a tile can hang over the N edge. The masks are AVX-512 opmasks; the AVX and
+   * AVX2 code paths have no masked N tail and need tiles that divide N.
+   */
+  protected boolean supportsMaskedNTail() {
+    return false;
+  }
 
-    // Make sure that iPos is first!
-    useAsAddressRegs = new Register[] {iPos, arrsPtr, kPos, r15, kPanelSize};
-    kPanelSizeIndexFromBehind = 0;
-    for (int i = 0; i < useAsAddressRegs.length; i++) {
-      if (useAsAddressRegs[i] == kPanelSize) {
-        kPanelSizeIndexFromBehind = i;
+  /** Opmask for vector {@code jIndex} of B and C, or {@link Register#None} if not masking. */
+  protected Register nTailMask(int jIndex) {
+    return maskNTail ? N_TAIL_MASKS[jIndex] : Register.None;
+  }
+
+  /**
+   * Whether the M edge can be covered by several smaller tiles run one after another. The packed
+   * layout stores the last row panel with its own height, and variable arguments indexed by i are
+   * staged for the whole tile, so neither works with a moving iPos.
+   */
+  private boolean supportsCompactMTail() {
+    if (kernelType == 4 || kernelType == 5) {
+      return false;
+    }
+    for (int property : varArgProperties) {
+      if (property == 1 || property == 3) {
+        return false;
       }
     }
-    kPanelSizeIndexFromBehind = useAsAddressRegs.length - kPanelSizeIndexFromBehind - 1;
+    return true;
+  }
 
-    masm.push(kPanelSize);
+  /** Whether variable argument {@code index} is a vector read by the epilogue. */
+  protected boolean isEpilogueVector(int index) {
+    return varArgProperties[index] == 4 || varArgProperties[index] == 5;
+  }
 
-    // Check if kPanelSize overflows bounds.
+  /** Whether a variable argument is read for every k step, and so staged by pushArguments. */
+  protected boolean hasMainVarArgs() {
+    for (int index = 0; index < varArgProperties.length; index++) {
+      if (!isEpilogueVector(index)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Jumps to {@code notLastLabel} unless the K panel of this call ends at kLength, i.e. unless the
+   * epilogue is due. Only valid while the stack holds nothing above the staged arguments.
+   */
+  protected void emitJumpUnlessLastKPanel(
+      AMD64MacroAssembler masm, Register temp, Label notLastLabel) {
+    masm.movq(temp, new AMD64Address(rsp, constArgsStackSize + varArgsStackSize));
+    masm.addq(temp, kPos);
+    masm.cmpl(temp, kLength);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, notLastLabel);
+  }
+
+  /** Clamps kPanelSize so that kPos + kPanelSize does not exceed kLength. */
+  private void emitClampKPanelSize(AMD64MacroAssembler masm) {
     masm.addq(kPanelSize, kPos);
     masm.cmpl(kPanelSize, kLength);
     Label kPanelSizeCheckLabel = new Label();
@@ -581,42 +953,138 @@ public abstract class GotoKernel {
     masm.movq(kPanelSize, kLength);
     masm.bind(kPanelSizeCheckLabel);
     masm.subq(kPanelSize, kPos);
+  }
 
-    // Push arguments in reverse order
+  /** Sets {@code N_TAIL_MASKS[j]} to the lanes of B vector {@code j} that lie below nLength. */
+  private void emitNTailMasks(AMD64MacroAssembler masm) {
+    for (int j = 0; j < initialBLength; j++) {
+      Label inRangeLabel = new Label();
+      masm.movl(tempArrayAddressReg, nLength - j * lanes);
+      masm.subl(tempArrayAddressReg, jPos);
+      masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, inRangeLabel);
+      masm.movl(tempArrayAddressReg, 0);
+      masm.bind(inRangeLabel);
+      // Keep the low min(lanesLeft, lanes) bits.
+      masm.movl(loopIndex, (1 << lanes) - 1);
+      AMD64Assembler.VexGeneralPurposeRMVOp.BZHI.emit(
+          masm, AVXSize.DWORD, loopIndex, loopIndex, tempArrayAddressReg);
+      masm.kmovw(N_TAIL_MASKS[j], loopIndex);
+    }
+  }
+
+  /** Emits the kernel for the tile at iPos and jPos, which may hang over the M or N edge. */
+  private void emitTile(AMD64MacroAssembler masm, Label endLabel) {
+    if (supportsMaskedNTail()) {
+      Label nTailLabel = new Label();
+      masm.movq(tempArrayAddressReg, jPos);
+      masm.addq(tempArrayAddressReg, initialBLength * lanes);
+      masm.cmpl(tempArrayAddressReg, nLength);
+      masm.jcc(AMD64Assembler.ConditionFlag.Greater, nTailLabel);
+      emitMEdge(masm, endLabel);
+
+      masm.bind(nTailLabel);
+      emitNTailMasks(masm);
+      maskNTail = true;
+      emitMEdge(masm, endLabel);
+      maskNTail = false;
+    } else {
+      emitMEdge(masm, endLabel);
+    }
+  }
+
+  /**
+   * A batched call: computes all tiles of problems 0 to kPanelSize - 1, each over all of K, with
+   * the arguments staged once. The slot that holds kPanelSize for an unbatched call holds kLength,
+   * so the M edge and the epilogue see a single K panel. The saved iPos and the problem count sit
+   * above it.
+   */
+  private void emitBatchedCode(AMD64MacroAssembler masm) {
+    GraalError.guarantee(
+        supportsMaskedNTail() || nLength % (initialBLength * lanes) == 0,
+        "batched Goto kernel needs a masked N tail or tiles that divide N");
+    batchPos = asRegister(kernelOp.remainingRegValues[remainingRegisterNum - 2]);
+    masm.push(kPanelSize);
+    masm.push(iPos);
+    masm.movl(kPanelSize, kLength);
+    masm.push(kPanelSize);
     pushArguments(masm);
+    AMD64Address batchCount = new AMD64Address(rsp, constArgsStackSize + varArgsStackSize + 16);
+
+    Label batchLabel = new Label();
+    Label rowLabel = new Label();
+    Label columnLabel = new Label();
+    Label doneLabel = new Label();
+    masm.movl(batchPos, 0);
+    masm.cmpl(batchCount, 0);
+    masm.jcc(AMD64Assembler.ConditionFlag.LessEqual, doneLabel);
+    masm.movl(kPos, 0);
+    masm.bind(batchLabel);
+    masm.movl(iPos, 0);
+    masm.bind(rowLabel);
+    masm.movl(jPos, 0);
+    masm.bind(columnLabel);
+    Label tileLabel = new Label();
+    masm.movl(kPanelSize, kLength);
+    emitTile(masm, tileLabel);
+    masm.bind(tileLabel);
+    masm.addl(jPos, initialBLength * lanes);
+    masm.cmpl(jPos, nLength);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, columnLabel);
+    // emitTile leaves iPos where it was, also at the M edge; only this loop advances it.
+    masm.addl(iPos, initialALength);
+    masm.cmpl(iPos, mLength);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, rowLabel);
+    masm.incrementl(batchPos, 1);
+    masm.cmpl(batchPos, batchCount);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, batchLabel);
+    masm.bind(doneLabel);
+
+    masm.addq(rsp, constArgsStackSize + varArgsStackSize + 8);
+    masm.pop(iPos);
+    masm.pop(kPanelSize);
+  }
 
-    /*
+  /**
+   * Emits the kernel for the rows from iPos, handling a partial tile at the M edge. iPos is the
+   * same afterwards; the compact tail saves it in the slot above the saved kPanelSize.
+   */
+  private void emitMEdge(AMD64MacroAssembler masm, Label endLabel) {
+    if (!supportsCompactMTail()) {
+      emitKernelLadder(masm, endLabel);
+      return;
+    }
+    Label tailLabel = new Label();
     masm.movq(tempArrayAddressReg, iPos);
     masm.addq(tempArrayAddressReg, initialALength);
-
-    Label endLabel = new Label();
-    Label loopLabel = new Label();
     masm.cmpl(tempArrayAddressReg, mLength);
-    masm.jcc(AMD64Assembler.ConditionFlag.Greater, loopLabel);
+    masm.jcc(AMD64Assembler.ConditionFlag.Greater, tailLabel);
     emitKernelCode(masm, initialALength, initialBLength);
     masm.jmp(endLabel);
 
-    masm.bind(loopLabel);
-
-    int tempALength = initialALength - 1;
-
-    while (tempALength > 0) {
+    // Fewer than initialALength rows are left. Cover them with tiles of 2^t rows, largest first,
+    // which takes log2(initialALength) kernel copies instead of one per possible row count.
+    masm.bind(tailLabel);
+    AMD64Address savedIPos = new AMD64Address(rsp, constArgsStackSize + varArgsStackSize + 8);
+    masm.movq(savedIPos, iPos);
+    for (int rows = Integer.highestOneBit(initialALength - 1); rows > 0; rows >>= 1) {
+      Label skipLabel = new Label();
       masm.movq(tempArrayAddressReg, iPos);
-      masm.addq(tempArrayAddressReg, tempALength);
-
-      Label loopLabel2 = new Label();
-      // Check if iPos + tempALength > mLength
+      masm.addq(tempArrayAddressReg, rows);
       masm.cmpl(tempArrayAddressReg, mLength);
-      masm.jcc(AMD64Assembler.ConditionFlag.Greater, loopLabel2);
-      emitKernelCode(masm, tempALength, initialBLength);
-      masm.jmp(endLabel);
-      masm.bind(loopLabel2);
-
-      tempALength -= 1;
+      masm.jcc(AMD64Assembler.ConditionFlag.Greater, skipLabel);
+      // The kernel turns kPanelSize into a loop bound; start again from the saved argument.
+      masm.movq(kPanelSize, new AMD64Address(rsp, constArgsStackSize + varArgsStackSize));
+      emitClampKPanelSize(masm);
+      emitKernelCode(masm, rows, initialBLength);
+      masm.addq(iPos, rows);
+      masm.bind(skipLabel);
     }
-    */
+    masm.movq(iPos, savedIPos);
+    masm.jmp(endLabel);
+  }
 
-    Label endLabel = new Label();
+  /** One kernel copy per row count, and on AVX2 per B vector count. */
+  private void emitKernelLadder(AMD64MacroAssembler masm, Label endLabel) {
     for (int emitALength = initialALength; emitALength > 0; emitALength--) {
       masm.movq(tempArrayAddressReg, iPos);
       masm.addq(tempArrayAddressReg, emitALength);
@@ -626,7 +1094,7 @@ public abstract class GotoKernel {
       if (arch == 1) { // AVX2
         for (int emitBlength = initialBLength; emitBlength > 0; emitBlength--) {
           masm.movq(tempArrayAddressReg, jPos);
-          masm.addq(tempArrayAddressReg, emitBlength * (simdSize.getBytes() / 8));
+          masm.addq(tempArrayAddressReg, emitBlength * lanes);
           Label innerLoopLabel = new Label();
           masm.cmpl(tempArrayAddressReg, nLength);
           masm.jcc(AMD64Assembler.ConditionFlag.Greater, innerLoopLabel);
@@ -640,6 +1108,44 @@ public abstract class GotoKernel {
       }
       masm.bind(loopLabel);
     }
+  }
+
+  public void emitCode(CompilationResultBuilder crb, AMD64MacroAssembler masm) {
+    arrsPtr = asRegister(kernelOp.arrsValue);
+    kPanelSize = asRegister(kernelOp.kPanelSizeValue);
+    iPos = asRegister(kernelOp.iValue);
+    kPos = asRegister(kernelOp.kValue);
+    jPos = asRegister(kernelOp.jValue);
+    loopIndex = asRegister(kernelOp.loopIndexValue);
+    tempArrayAddressReg = asRegister(kernelOp.tempArrayAddressRegValue);
+
+    // Make sure that iPos is first!
+    useAsAddressRegs = new Register[] {iPos, arrsPtr, kPos, r15, kPanelSize};
+    kPanelSizeIndexFromBehind = 0;
+    for (int i = 0; i < useAsAddressRegs.length; i++) {
+      if (useAsAddressRegs[i] == kPanelSize) {
+        kPanelSizeIndexFromBehind = i;
+      }
+    }
+    kPanelSizeIndexFromBehind = useAsAddressRegs.length - kPanelSizeIndexFromBehind - 1;
+
+    if (batch != null) {
+      emitBatchedCode(masm);
+      return;
+    }
+
+    // Saved for the compact M tail, which moves iPos from tile to tile.
+    masm.push(iPos);
+    masm.push(kPanelSize);
+
+    // Check if kPanelSize overflows bounds.
+    emitClampKPanelSize(masm);
+
+    // Push arguments in reverse order
+    pushArguments(masm);
+
+    Label endLabel = new Label();
+    emitTile(masm, endLabel);
     masm.bind(endLabel);
 
     // Pop arguments + B
@@ -647,18 +1153,6 @@ public abstract class GotoKernel {
 
     // Restore original value of kPanelSize
     masm.pop(kPanelSize);
-  }
-
-  protected static void debugPrint(String msg) {
-    PrintWriter debugLog = null;
-    try {
-      debugLog =
-          new PrintWriter(
-              new FileWriter("/home/junyoung2/project/adaptive-code-generation/log.txt", true));
-    } catch (Exception e) {
-      System.out.println(e);
-    }
-    debugLog.println(msg);
-    debugLog.close();
+    masm.pop(iPos);
   }
 }
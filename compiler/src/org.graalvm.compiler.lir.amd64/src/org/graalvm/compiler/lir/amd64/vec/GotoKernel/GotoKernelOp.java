@@ -3,12 +3,15 @@ package org.graalvm.compiler.lir.amd64.vec.GotoKernel;
 import static org.graalvm.compiler.lir.LIRInstruction.OperandFlag.REG;
 
 import jdk.vm.ci.amd64.AMD64Kind;
+import jdk.vm.ci.meta.JavaKind;
 import jdk.vm.ci.meta.Value;
 import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
 import org.graalvm.compiler.core.common.LIRKind;
+import org.graalvm.compiler.debug.GraalError;
 import org.graalvm.compiler.lir.LIRInstructionClass;
 import org.graalvm.compiler.lir.Opcode;
 import org.graalvm.compiler.lir.amd64.AMD64LIRInstruction;
+import org.graalvm.compiler.lir.amd64.vec.GotoProgram;
 import org.graalvm.compiler.lir.asm.CompilationResultBuilder;
 import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
 
@@ -60,111 +63,72 @@ public final class GotoKernelOp extends AMD64LIRInstruction {
       long[] calc,
       double[] constArgs,
       int[] varArgProperties,
-      int[] miscArgs) {
+      int[] miscArgs,
+      int[] flatLayout,
+      int[] prefetch,
+      int[] batch,
+      JavaKind elementKind,
+      boolean offHeap) {
     super(TYPE);
 
-    switch (kernelType) {
-      case 0: // AB
-        this.gotoKernel =
-            new GotoABKernel(
-                tool,
-                arch,
-                kernelType,
-                aLength,
-                bLength,
-                mLength,
-                kLength,
-                nLength,
-                calc,
-                constArgs,
-                varArgProperties,
-                this,
-                false);
-        break;
-      case 1: // A^TB
-        this.gotoKernel =
-            new GotoATBKernel(
-                tool,
-                arch,
-                kernelType,
-                aLength,
-                bLength,
-                mLength,
-                kLength,
-                nLength,
-                calc,
-                constArgs,
-                varArgProperties,
-                this);
-        break;
-      case 2: // AB^T
-        this.gotoKernel =
-            new GotoABTKernel(
-                tool,
-                arch,
-                kernelType,
-                aLength,
-                bLength,
-                mLength,
-                kLength,
-                nLength,
-                calc,
-                constArgs,
-                varArgProperties,
-                this);
-        break;
-      case 3: // A^TB^T
-        this.gotoKernel =
-            new GotoABKernel(
-                tool,
-                arch,
-                kernelType,
-                aLength,
-                bLength,
-                mLength,
-                kLength,
-                nLength,
-                calc,
-                constArgs,
-                varArgProperties,
-                this,
-                true);
-        break;
-      case 4: // packed
-        this.gotoKernel =
-            new GotoPackedKernel(
-                tool,
-                arch,
-                kernelType,
-                aLength,
-                bLength,
-                mLength,
-                kLength,
-                nLength,
-                calc,
-                constArgs,
-                varArgProperties,
-                this,
-                miscArgs);
-        break;
-      case 5: // Interleave packed
-        this.gotoKernel =
-            new GotoInterleavePackedKernel(
-                tool,
-                arch,
-                kernelType,
-                aLength,
-                bLength,
-                mLength,
-                kLength,
-                nLength,
-                calc,
-                constArgs,
-                varArgProperties,
-                this,
-                miscArgs);
-        break;
+    if (kernelType == 6 || kernelType == 7) {
+      GraalError.guarantee(
+          flatLayout != null && !offHeap, "integer kernels need flat on-heap operands");
+      this.gotoKernel =
+          new GotoIntKernel(
+              tool,
+              arch,
+              kernelType,
+              aLength,
+              bLength,
+              mLength,
+              kLength,
+              nLength,
+              calc,
+              constArgs,
+              varArgProperties,
+              this,
+              flatLayout);
+    } else if (flatLayout != null && kernelType <= 3) {
+      this.gotoKernel =
+          new GotoFlatKernel(
+              tool,
+              arch,
+              kernelType,
+              aLength,
+              bLength,
+              mLength,
+              kLength,
+              nLength,
+              calc,
+              constArgs,
+              varArgProperties,
+              this,
+              flatLayout,
+              elementKind,
+              offHeap);
+    } else {
+      GraalError.guarantee(!offHeap, "kernel type %d has no off-heap version", kernelType);
+      this.gotoKernel =
+          createKernel(
+              tool,
+              arch,
+              kernelType,
+              aLength,
+              bLength,
+              mLength,
+              kLength,
+              nLength,
+              calc,
+              constArgs,
+              varArgProperties,
+              miscArgs,
+              elementKind);
+      // The packed kernels read A and B from pack buffers, so only their result can be flat.
+      gotoKernel.flatLayout = flatLayout;
     }
+    gotoKernel.prefetch = prefetch;
+    gotoKernel.batch = batch;
 
     arrsValue = arrs;
     kPanelSizeValue = kPanelSize;
@@ -180,6 +144,156 @@ public final class GotoKernelOp extends AMD64LIRInstruction {
     }
   }
 
+  /**
+   * Vector registers the kernel the constructor picks needs for an {@code aLength x bVectors} tile
+   * of {@code program}, to compare with {@link GotoKernel#simdRegisterBudget} for {@code arch}.
+   * {@code vnni} only matters for the integer kernels.
+   */
+  public static int simdRegistersNeeded(
+      int arch,
+      int kernelType,
+      boolean flat,
+      boolean vnni,
+      GotoProgram program,
+      int aLength,
+      int bVectors,
+      int constArgCount,
+      int[] varArgProperties) {
+    if (kernelType == 6 || kernelType == 7) {
+      return GotoIntKernel.simdRegistersNeeded(kernelType, vnni, aLength, bVectors);
+    } else if (flat && kernelType <= 3) {
+      return GotoFlatKernel.simdRegistersNeeded(
+          kernelType, program, aLength, bVectors, constArgCount, varArgProperties);
+    }
+    switch (kernelType) {
+      case 1:
+        return GotoATBKernel.simdRegistersNeeded(
+            program, aLength, bVectors, constArgCount, varArgProperties);
+      case 2:
+        return GotoABTKernel.simdRegistersNeeded(
+            program, aLength, bVectors, constArgCount, varArgProperties);
+      case 4:
+        return GotoPackedKernel.simdRegistersNeeded(
+            arch, program, aLength, bVectors, constArgCount, varArgProperties);
+      case 5:
+        return GotoInterleavePackedKernel.simdRegistersNeeded(aLength, bVectors);
+      default:
+        return GotoABKernel.simdRegistersNeeded(
+            program, aLength, bVectors, constArgCount, varArgProperties);
+    }
+  }
+
+  /** The kernel for operands that are arrays of rows, or packed buffers. */
+  private GotoKernel createKernel(
+      LIRGeneratorTool tool,
+      int arch,
+      int kernelType,
+      int aLength,
+      int bLength,
+      int mLength,
+      int kLength,
+      int nLength,
+      long[] calc,
+      double[] constArgs,
+      int[] varArgProperties,
+      int[] miscArgs,
+      JavaKind elementKind) {
+    switch (kernelType) {
+      case 0: // AB
+        return new GotoABKernel(
+            tool,
+            arch,
+            kernelType,
+            aLength,
+            bLength,
+            mLength,
+            kLength,
+            nLength,
+            calc,
+            constArgs,
+            varArgProperties,
+            this,
+            false,
+            elementKind);
+      case 1: // A^TB
+        return new GotoATBKernel(
+            tool,
+            arch,
+            kernelType,
+            aLength,
+            bLength,
+            mLength,
+            kLength,
+            nLength,
+            calc,
+            constArgs,
+            varArgProperties,
+            this);
+      case 2: // AB^T
+        return new GotoABTKernel(
+            tool,
+            arch,
+            kernelType,
+            aLength,
+            bLength,
+            mLength,
+            kLength,
+            nLength,
+            calc,
+            constArgs,
+            varArgProperties,
+            this);
+      case 3: // A^TB^T
+        return new GotoABKernel(
+            tool,
+            arch,
+            kernelType,
+            aLength,
+            bLength,
+            mLength,
+            kLength,
+            nLength,
+            calc,
+            constArgs,
+            varArgProperties,
+            this,
+            true,
+            elementKind);
+      case 4: // packed
+        return new GotoPackedKernel(
+            tool,
+            arch,
+            kernelType,
+            aLength,
+            bLength,
+            mLength,
+            kLength,
+            nLength,
+            calc,
+            constArgs,
+            varArgProperties,
+            this,
+            miscArgs);
+      case 5: // Interleave packed
+        return new GotoInterleavePackedKernel(
+            tool,
+            arch,
+            kernelType,
+            aLength,
+            bLength,
+            mLength,
+            kLength,
+            nLength,
+            calc,
+            constArgs,
+            varArgProperties,
+            this,
+            miscArgs);
+      default:
+        throw GraalError.shouldNotReachHere("Unknown Goto kernel type " + kernelType);
+    }
+  }
+
   @Override
   public void emitCode(CompilationResultBuilder crb, AMD64MacroAssembler masm) {
     gotoKernel.emitCode(crb, masm);
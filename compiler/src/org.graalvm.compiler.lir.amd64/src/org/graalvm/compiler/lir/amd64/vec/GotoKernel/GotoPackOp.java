@@ -0,0 +1,328 @@
+package org.graalvm.compiler.lir.amd64.vec.GotoKernel;
+
+import static jdk.vm.ci.code.ValueUtil.asRegister;
+import static org.graalvm.compiler.lir.LIRInstruction.OperandFlag.ILLEGAL;
+import static org.graalvm.compiler.lir.LIRInstruction.OperandFlag.REG;
+
+import java.util.Objects;
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.amd64.AMD64Kind;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.Value;
+import org.graalvm.compiler.asm.Label;
+import org.graalvm.compiler.asm.amd64.AMD64Address;
+import org.graalvm.compiler.asm.amd64.AMD64Address.Scale;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler;
+import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
+import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
+import org.graalvm.compiler.core.common.LIRKind;
+import org.graalvm.compiler.lir.LIRInstructionClass;
+import org.graalvm.compiler.lir.Opcode;
+import org.graalvm.compiler.lir.amd64.AMD64LIRInstruction;
+import org.graalvm.compiler.lir.asm.CompilationResultBuilder;
+import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
+
+/**
+ * Copies one {@code depth x width} panel of a {@code double[][]} (or a flat row-major {@code
+ * double[]} with leading dimension {@code ld}) into the k-major layout read by {@link
+ * GotoPackedKernel}: {@code dst[dstOffset + kk * width + w] = src[row + kk][col + w]} for B panels
+ * and {@code src[row + w][col + kk]} for transposed A panels. Transposed panels are moved in 4x4
+ * blocks that are transposed in registers.
+ */
+@Opcode("GOTOPACK")
+public final class GotoPackOp extends AMD64LIRInstruction {
+  public static final LIRInstructionClass<GotoPackOp> TYPE =
+      LIRInstructionClass.create(GotoPackOp.class);
+
+  private static final int BLOCK = 4;
+
+  private final int DOUBLE_ARRAY_BASE_OFFSET;
+  private final Scale DOUBLE_ARRAY_INDEX_SCALE;
+  private final int OBJECT_ARRAY_BASE_OFFSET;
+  private final Scale OBJECT_ARRAY_INDEX_SCALE;
+
+  private final int width;
+  private final boolean transpose;
+  private final boolean flat;
+
+  @Alive({REG})
+  private Value srcValue;
+
+  @Alive({REG})
+  private Value dstValue;
+
+  // The remaining inputs are private copies, the op clobbers them.
+  @Alive({REG, ILLEGAL})
+  private Value ldValue;
+
+  @Alive({REG})
+  private Value dstOffsetValue;
+
+  @Alive({REG})
+  private Value rowValue;
+
+  @Alive({REG})
+  private Value colValue;
+
+  @Alive({REG})
+  private Value depthValue;
+
+  @Temp({REG})
+  private Value[] rowPtrValues;
+
+  @Temp({REG})
+  private Value outPtrValue;
+
+  @Temp({REG})
+  private Value countValue;
+
+  @Temp({REG})
+  private Value[] vectorValues;
+
+  public GotoPackOp(
+      LIRGeneratorTool tool,
+      Value src,
+      Value ld,
+      Value dst,
+      Value dstOffset,
+      Value row,
+      Value col,
+      Value depth,
+      int width,
+      boolean transpose,
+      boolean flat) {
+    super(TYPE);
+    DOUBLE_ARRAY_BASE_OFFSET =
+        tool.getProviders().getMetaAccess().getArrayBaseOffset(JavaKind.Double);
+    DOUBLE_ARRAY_INDEX_SCALE =
+        Objects.requireNonNull(
+            Scale.fromInt(tool.getProviders().getMetaAccess().getArrayIndexScale(JavaKind.Double)));
+    OBJECT_ARRAY_BASE_OFFSET =
+        tool.getProviders().getMetaAccess().getArrayBaseOffset(JavaKind.Object);
+    OBJECT_ARRAY_INDEX_SCALE =
+        Objects.requireNonNull(
+            Scale.fromInt(tool.getProviders().getMetaAccess().getArrayIndexScale(JavaKind.Object)));
+
+    this.width = width;
+    this.transpose = transpose;
+    this.flat = flat;
+
+    srcValue = src;
+    dstValue = dst;
+    ldValue = flat ? tool.emitMove(ld) : Value.ILLEGAL;
+    dstOffsetValue = tool.emitMove(dstOffset);
+    rowValue = tool.emitMove(row);
+    colValue = tool.emitMove(col);
+    depthValue = tool.emitMove(depth);
+
+    rowPtrValues = new Value[transpose ? BLOCK : 1];
+    for (int index = 0; index < rowPtrValues.length; index++) {
+      rowPtrValues[index] = tool.newVariable(LIRKind.value(AMD64Kind.QWORD));
+    }
+    outPtrValue = tool.newVariable(LIRKind.value(AMD64Kind.QWORD));
+    countValue = tool.newVariable(LIRKind.value(AMD64Kind.QWORD));
+
+    // Fixed registers so that the VEX-only lane permutes never see xmm16-31.
+    Register[] xmm = {
+      AMD64.xmm0, AMD64.xmm1, AMD64.xmm2, AMD64.xmm3, AMD64.xmm4, AMD64.xmm5, AMD64.xmm6, AMD64.xmm7
+    };
+    vectorValues = new Value[xmm.length];
+    for (int index = 0; index < xmm.length; index++) {
+      vectorValues[index] = xmm[index].asValue(LIRKind.value(AMD64Kind.V256_DOUBLE));
+    }
+  }
+
+  @Override
+  public void emitCode(CompilationResultBuilder crb, AMD64MacroAssembler masm) {
+    Register dstOffset = asRegister(dstOffsetValue);
+    Register row = asRegister(rowValue);
+    Register col = asRegister(colValue);
+    Register depth = asRegister(depthValue);
+
+    Label doneLabel = new Label();
+
+    masm.movslq(row, row);
+    masm.movslq(col, col);
+    masm.movslq(depth, depth);
+    if (flat) {
+      masm.movslq(asRegister(ldValue), asRegister(ldValue));
+    }
+    masm.testq(depth, depth);
+    masm.jcc(AMD64Assembler.ConditionFlag.LessEqual, doneLabel);
+
+    // dstOffset becomes the address of the first packed element.
+    masm.movslq(dstOffset, dstOffset);
+    masm.leaq(
+        dstOffset,
+        new AMD64Address(
+            asRegister(dstValue), dstOffset, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET));
+
+    if (transpose) {
+      emitTransposedPanel(masm, dstOffset, row, col, depth);
+    } else {
+      emitPanel(masm, dstOffset, row, col, depth);
+    }
+
+    masm.bind(doneLabel);
+  }
+
+  /** Loads the address of {@code src[row + rowDelta][col]} into {@code dst}. */
+  private void emitRowPointer(
+      AMD64MacroAssembler masm, Register dst, Register row, Register col, int rowDelta) {
+    Register src = asRegister(srcValue);
+    if (flat) {
+      masm.movq(dst, row);
+      if (rowDelta != 0) {
+        masm.addq(dst, rowDelta);
+      }
+      masm.imulq(dst, asRegister(ldValue));
+      masm.addq(dst, col);
+      masm.leaq(
+          dst, new AMD64Address(src, dst, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET));
+    } else {
+      masm.movq(
+          dst,
+          new AMD64Address(
+              src,
+              row,
+              OBJECT_ARRAY_INDEX_SCALE,
+              OBJECT_ARRAY_BASE_OFFSET + rowDelta * OBJECT_ARRAY_INDEX_SCALE.value));
+      masm.leaq(
+          dst, new AMD64Address(dst, col, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET));
+    }
+  }
+
+  /** {@code dst[kk * width + w] = src[row + kk][col + w]}, one source row per iteration. */
+  private void emitPanel(
+      AMD64MacroAssembler masm, Register outBase, Register row, Register col, Register depth) {
+    Register rowPtr = asRegister(rowPtrValues[0]);
+    Register outPtr = asRegister(outPtrValue);
+    Register count = asRegister(countValue);
+
+    Label loopLabel = new Label();
+
+    masm.movq(outPtr, outBase);
+    masm.movq(count, depth);
+    masm.bind(loopLabel);
+    emitRowPointer(masm, rowPtr, row, col, 0);
+    int w = 0;
+    for (; w + BLOCK <= width; w += BLOCK) {
+      Register vector = asRegister(vectorValues[(w / BLOCK) % vectorValues.length]);
+      AMD64Assembler.VexMoveOp.VMOVUPD.emit(
+          masm, AVXSize.YMM, vector, new AMD64Address(rowPtr, w * 8));
+      AMD64Assembler.VexMoveOp.VMOVUPD.emit(
+          masm, AVXSize.YMM, new AMD64Address(outPtr, w * 8), vector);
+    }
+    for (; w < width; w++) {
+      Register scalar = asRegister(vectorValues[0]);
+      AMD64Assembler.VexMoveOp.VMOVSD.emit(
+          masm, AVXSize.XMM, scalar, new AMD64Address(rowPtr, w * 8));
+      AMD64Assembler.VexMoveOp.VMOVSD.emit(
+          masm, AVXSize.XMM, new AMD64Address(outPtr, w * 8), scalar);
+    }
+    masm.addq(outPtr, width * 8);
+    masm.addq(row, 1);
+    masm.decq(count);
+    masm.jcc(AMD64Assembler.ConditionFlag.NotZero, loopLabel);
+  }
+
+  /** {@code dst[kk * width + w] = src[row + w][col + kk]}, four source rows at a time. */
+  private void emitTransposedPanel(
+      AMD64MacroAssembler masm, Register outBase, Register row, Register col, Register depth) {
+    Register outPtr = asRegister(outPtrValue);
+    Register count = asRegister(countValue);
+    Register[] rowPtrs = new Register[BLOCK];
+    for (int q = 0; q < BLOCK; q++) {
+      rowPtrs[q] = asRegister(rowPtrValues[q]);
+    }
+    Register[] vectors = new Register[vectorValues.length];
+    for (int index = 0; index < vectors.length; index++) {
+      vectors[index] = asRegister(vectorValues[index]);
+    }
+
+    int w = 0;
+    for (; w + BLOCK <= width; w += BLOCK) {
+      Label blockLoopLabel = new Label();
+      Label tailLabel = new Label();
+      Label tailLoopLabel = new Label();
+      Label nextLabel = new Label();
+
+      for (int q = 0; q < BLOCK; q++) {
+        emitRowPointer(masm, rowPtrs[q], row, col, w + q);
+      }
+      masm.leaq(outPtr, new AMD64Address(outBase, w * 8));
+      masm.movq(count, depth);
+
+      masm.bind(blockLoopLabel);
+      masm.cmpq(count, BLOCK);
+      masm.jcc(AMD64Assembler.ConditionFlag.Less, tailLabel);
+      for (int q = 0; q < BLOCK; q++) {
+        AMD64Assembler.VexMoveOp.VMOVUPD.emit(
+            masm, AVXSize.YMM, vectors[q], new AMD64Address(rowPtrs[q]));
+      }
+      // vectors[4..7] = {r0[0] r1[0] r0[2] r1[2]}, {r0[1] r1[1] r0[3] r1[3]}, same for r2/r3
+      AMD64Assembler.VexRVMIOp.VSHUFPD.emit(
+          masm, AVXSize.YMM, vectors[4], vectors[0], vectors[1], 0b0000);
+      AMD64Assembler.VexRVMIOp.VSHUFPD.emit(
+          masm, AVXSize.YMM, vectors[5], vectors[0], vectors[1], 0b1111);
+      AMD64Assembler.VexRVMIOp.VSHUFPD.emit(
+          masm, AVXSize.YMM, vectors[6], vectors[2], vectors[3], 0b0000);
+      AMD64Assembler.VexRVMIOp.VSHUFPD.emit(
+          masm, AVXSize.YMM, vectors[7], vectors[2], vectors[3], 0b1111);
+      // vectors[c] = column c of the 4x4 block
+      AMD64Assembler.VexRVMIOp.VPERM2F128.emit(
+          masm, AVXSize.YMM, vectors[0], vectors[4], vectors[6], 0x20);
+      AMD64Assembler.VexRVMIOp.VPERM2F128.emit(
+          masm, AVXSize.YMM, vectors[1], vectors[5], vectors[7], 0x20);
+      AMD64Assembler.VexRVMIOp.VPERM2F128.emit(
+          masm, AVXSize.YMM, vectors[2], vectors[4], vectors[6], 0x31);
+      AMD64Assembler.VexRVMIOp.VPERM2F128.emit(
+          masm, AVXSize.YMM, vectors[3], vectors[5], vectors[7], 0x31);
+      for (int c = 0; c < BLOCK; c++) {
+        AMD64Assembler.VexMoveOp.VMOVUPD.emit(
+            masm, AVXSize.YMM, new AMD64Address(outPtr, c * width * 8), vectors[c]);
+      }
+      for (int q = 0; q < BLOCK; q++) {
+        masm.addq(rowPtrs[q], BLOCK * 8);
+      }
+      masm.addq(outPtr, BLOCK * width * 8);
+      masm.subq(count, BLOCK);
+      masm.jmp(blockLoopLabel);
+
+      masm.bind(tailLabel);
+      masm.testq(count, count);
+      masm.jcc(AMD64Assembler.ConditionFlag.Zero, nextLabel);
+      masm.bind(tailLoopLabel);
+      for (int q = 0; q < BLOCK; q++) {
+        AMD64Assembler.VexMoveOp.VMOVSD.emit(
+            masm, AVXSize.XMM, vectors[q], new AMD64Address(rowPtrs[q]));
+        AMD64Assembler.VexMoveOp.VMOVSD.emit(
+            masm, AVXSize.XMM, new AMD64Address(outPtr, q * 8), vectors[q]);
+        masm.addq(rowPtrs[q], 8);
+      }
+      masm.addq(outPtr, width * 8);
+      masm.decq(count);
+      masm.jcc(AMD64Assembler.ConditionFlag.NotZero, tailLoopLabel);
+      masm.bind(nextLabel);
+    }
+
+    // Rows that do not fill a 4x4 block are copied one element at a time.
+    for (; w < width; w++) {
+      Label rowLoopLabel = new Label();
+
+      emitRowPointer(masm, rowPtrs[0], row, col, w);
+      masm.leaq(outPtr, new AMD64Address(outBase, w * 8));
+      masm.movq(count, depth);
+      masm.bind(rowLoopLabel);
+      AMD64Assembler.VexMoveOp.VMOVSD.emit(
+          masm, AVXSize.XMM, vectors[0], new AMD64Address(rowPtrs[0]));
+      AMD64Assembler.VexMoveOp.VMOVSD.emit(
+          masm, AVXSize.XMM, new AMD64Address(outPtr), vectors[0]);
+      masm.addq(rowPtrs[0], 8);
+      masm.addq(outPtr, width * 8);
+      masm.decq(count);
+      masm.jcc(AMD64Assembler.ConditionFlag.NotZero, rowLoopLabel);
+    }
+  }
+}
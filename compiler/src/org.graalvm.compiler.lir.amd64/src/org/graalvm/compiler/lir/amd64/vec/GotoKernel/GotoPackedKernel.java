@@ -18,6 +18,7 @@ import org.graalvm.compiler.asm.amd64.AMD64Address;
 import org.graalvm.compiler.asm.amd64.AMD64Assembler;
 import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
 import org.graalvm.compiler.lir.amd64.vec.GotoOpCode;
+import org.graalvm.compiler.lir.amd64.vec.GotoProgram;
 import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
 
 public final class GotoPackedKernel extends GotoKernel {
@@ -83,7 +84,7 @@ public final class GotoPackedKernel extends GotoKernel {
       Register bIndex) {
     AMD64Address aAddress, bAddress;
 
-    if (prefetchDistance > 0) {
+    if (prefetchDistance > 0 && prefetches(PREFETCH_B, true)) {
       for (int j = 0; j < (simdSize.getBytes() * bLength) / 64; j++) {
         bAddress =
             new AMD64Address(
@@ -94,9 +95,19 @@ public final class GotoPackedKernel extends GotoKernel {
                     + (j * simdSize.getBytes())
                     + (offset * 8 * kernelWidth)
                     + prefetchDistance);
-        masm.prefetcht0(bAddress);
+        emitPrefetch(masm, bAddress);
       }
     }
+    if (prefetchDistance > 0 && prefetches(PREFETCH_A, false)) {
+      emitPrefetchRange(
+          masm,
+          aPtr,
+          aIndex,
+          DOUBLE_ARRAY_INDEX_SCALE,
+          DOUBLE_ARRAY_BASE_OFFSET - aAddressOffset + ((offset + prefetch[2]) * 8 * aLength),
+          aLength,
+          8);
+    }
 
     if (interleave) {
       for (int j = 0; j < bLength * 2; j++) {
@@ -130,7 +141,7 @@ public final class GotoPackedKernel extends GotoKernel {
       }
     }
 
-    availableValues.put(GotoOpCode.A, simdRegisters.get("A"));
+    bind(GotoOpCode.A, simdRegisters.get("A"));
 
     if (interleave) {
       for (int i = 0; i < aLength; i += 2) {
@@ -145,25 +156,25 @@ public final class GotoPackedKernel extends GotoKernel {
         for (int k = 0; k < varArgProperties.length; k++) {
           if (varArgProperties[k] == 1) {
             loadVarArg(masm, k, i, -1, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
-            availableValues.put(
-                GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+            bind(
+                GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                 simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
           }
         }
 
         for (int j = 0; j < bLength * 2; j++) {
-          availableValues.put(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
-          availableValues.put(
+          bind(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
+          bind(
               GotoOpCode.C,
               simdRegisters.get("C" + String.valueOf(i + (j % 2)) + String.valueOf(j / 2)));
           for (int k = 0; k < varArgProperties.length; k++) {
             if (varArgProperties[k] == 2) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k) + "_" + String.valueOf(j)));
             } else if (varArgProperties[k] == 3) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
               loadVarArg(masm, k, i, j, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
             }
@@ -201,24 +212,23 @@ public final class GotoPackedKernel extends GotoKernel {
         for (int k = 0; k < varArgProperties.length; k++) {
           if (varArgProperties[k] == 1) {
             loadVarArg(masm, k, i, -1, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
-            availableValues.put(
-                GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+            bind(
+                GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                 simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
           }
         }
 
         for (int j = 0; j < bLength; j++) {
-          availableValues.put(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
-          availableValues.put(
-              GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
+          bind(GotoOpCode.B, simdRegisters.get("B" + String.valueOf(j)));
+          bind(GotoOpCode.C, simdRegisters.get("C" + String.valueOf(i) + String.valueOf(j)));
           for (int k = 0; k < varArgProperties.length; k++) {
             if (varArgProperties[k] == 2) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k) + "_" + String.valueOf(j)));
             } else if (varArgProperties[k] == 3) {
-              availableValues.put(
-                  GotoOpCode.VARIABLEARG + GotoOpCode.toOpLengthBinaryString(k),
+              bind(
+                  GotoOpCode.operand(GotoOpCode.VARIABLEARG, k),
                   simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
               loadVarArg(masm, k, i, j, simdRegisters.get("VARIABLEARG" + String.valueOf(k)));
             }
@@ -352,6 +362,31 @@ public final class GotoPackedKernel extends GotoKernel {
     }
   }
 
+  /**
+   * Vector registers the kernel needs for an {@code aLength x bVectors} tile: the broadcast of A,
+   * the vectors of B, twice as many when two rows are interleaved on AVX-512, the tile, the
+   * arguments and the program's scratch registers.
+   */
+  static int simdRegistersNeeded(
+      int arch,
+      GotoProgram program,
+      int aLength,
+      int bVectors,
+      int constArgCount,
+      int[] varArgProperties) {
+    boolean interleaved = arch == 2 && aLength % 2 == 0;
+    for (int property : varArgProperties) {
+      interleaved &= property != 3;
+    }
+    int bRegisters = interleaved ? 2 * bVectors : bVectors;
+    return 1
+        + bRegisters
+        + aLength * bVectors
+        + argumentRegisters(program, constArgCount, new int[0], 0, false)
+        + argumentRegisters(program, 0, varArgProperties, bRegisters, false)
+        + program.scratchRegisters();
+  }
+
   protected void emitKernelCode(AMD64MacroAssembler masm, int aLength, int bLength) {
     // if kernel height is odd or if cpu does not support AVX512, do not emit kernel with
     // interleaved calculations.
@@ -409,8 +444,7 @@ public final class GotoPackedKernel extends GotoKernel {
     }
 
     for (int i = 0; i < constArgs.length; i++) {
-      availableValues.put(
-          GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i), registerIndex++);
+      bind(GotoOpCode.operand(GotoOpCode.CONSTARG, i), registerIndex++);
     }
     for (int i = 0; i < varArgProperties.length; i++) {
       if (varArgProperties[i] == 2) {
@@ -430,10 +464,7 @@ public final class GotoPackedKernel extends GotoKernel {
       }
     }
 
-    int remainingSimdRegisterNum = totalSimdRegisterNum - registerIndex;
-    for (int i = 0; i < remainingSimdRegisterNum; i++) {
-      availableValues.put(GotoOpCode.REG + GotoOpCode.toOpLengthBinaryString(i), registerIndex++);
-    }
+    bindScratchRegisters(registerIndex);
 
     /*
     varArgAddresses = new HashMap<Integer, Register>();
@@ -463,10 +494,11 @@ public final class GotoPackedKernel extends GotoKernel {
     */
 
     for (int i = 0; i < constArgs.length; i++) {
-      masm.vbroadcastsd(
-          xmmRegistersAVX512[
-              availableValues.get(GotoOpCode.CONSTARG + GotoOpCode.toOpLengthBinaryString(i))],
-          new AMD64Address(rsp, stackOffsetToConstArgs + constArgStackSlotSize * i));
+      loadConstArg(
+          masm,
+          xmmRegistersAVX512[registerOf(GotoOpCode.operand(GotoOpCode.CONSTARG, i))],
+          i,
+          tempArrayAddressReg);
     }
 
     AMD64Address resultAddress, aAddress, bAddress;
@@ -616,7 +648,9 @@ public final class GotoPackedKernel extends GotoKernel {
     masm.addq(bPtr, bAlignmentOffset);
 
     int unrollFactor = 4;
-    int prefetchDistance = 480;
+    // Bytes of B to prefetch ahead; an explicit policy counts k steps of kernelWidth elements.
+    int prefetchDistance =
+        prefetch == null ? 480 : prefetchDistance(0, PREFETCH_A | PREFETCH_B) * kernelWidth * 8;
     masm.movq(temp, kernelWidth);
     masm.imull(temp, temp, unrollFactor);
     masm.subq(loopEndReg, temp);
@@ -750,14 +784,8 @@ public final class GotoPackedKernel extends GotoKernel {
       Register resultPtr0 = availableGenRegs.poll();
       Register resultPtr1 = availableGenRegs.poll();
       for (int i = 0; i < aLength; i += 2) {
-        masm.movq(
-            resultPtr0,
-            new AMD64Address(
-                temp, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (i * 8)));
-        masm.movq(
-            resultPtr1,
-            new AMD64Address(
-                temp, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + ((i + 1) * 8)));
+        emitResultRow(masm, resultPtr0, temp, i);
+        emitResultRow(masm, resultPtr1, temp, i + 1);
         for (int j = 0; j < bLength * 2; j++) {
           if (j % 2 == 0) {
             masm.vunpcklpd(
@@ -795,10 +823,7 @@ public final class GotoPackedKernel extends GotoKernel {
       }
     } else {
       for (int i = 0; i < aLength; i++) {
-        resultAddress =
-            new AMD64Address(
-                temp, iPos, OBJECT_ARRAY_INDEX_SCALE, OBJECT_ARRAY_BASE_OFFSET + (i * 8));
-        masm.movq(temp2, resultAddress);
+        emitResultRow(masm, temp2, temp, i);
         for (int j = 0; j < bLength; j++) {
           resultAddress =
               new AMD64Address(
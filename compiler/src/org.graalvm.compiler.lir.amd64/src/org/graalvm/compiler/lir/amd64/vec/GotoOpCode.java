@@ -1,46 +1,71 @@
 package org.graalvm.compiler.lir.amd64.vec;
 
+/**
+ * The 5-bit tokens of a Goto program. The top two bits of a token are its type ({@link #OP},
+ * {@link #MASKOP}, {@link #ARGOP} or {@link #CMPOP}), the low three bits select the op or operand.
+ *
+ * <p>An operand is identified by an int key, see {@link #operand}: the token itself for operands
+ * without an index, so {@link #A}, {@link #B} and {@link #C} are their own keys.
+ */
 public final class GotoOpCode {
   public static final int INDEXLENGTH = 5;
+  private static final int TYPE_SHIFT = 3;
 
-  public static final String OP = "00";
-  public static final String MASKOP = "01";
-  public static final String ARGOP = "10";
-  public static final String CMPOP = "11";
-
-  public static final String MUL = OP + "000";
-  public static final String ADD = OP + "001";
-  public static final String FMADD = OP + "010";
-  public static final String SUB = OP + "011";
-  public static final String DIV = OP + "100";
-  public static final String LOAD = OP + "101";
-
-  public static final String MASKMUL = MASKOP + "000";
-  public static final String MASKADD = MASKOP + "001";
-  public static final String MASKFMADD = MASKOP + "010";
-  public static final String MASKSUB = MASKOP + "011";
-  public static final String MASKDIV = MASKOP + "100";
-
-  public static final String GT = CMPOP + "000";
-  public static final String GE = CMPOP + "001";
-  public static final String LT = CMPOP + "010";
-  public static final String LE = CMPOP + "011";
-  public static final String EQ = CMPOP + "100";
-  public static final String NEQ = CMPOP + "101";
-
-  public static final String A = ARGOP + "000";
-  public static final String B = ARGOP + "001";
-  public static final String C = ARGOP + "010";
-  public static final String CONSTARG = ARGOP + "011";
-  public static final String VARIABLEARG = ARGOP + "100";
-  public static final String REG = ARGOP + "101";
-  public static final String MASKREG = ARGOP + "110";
-
-  public static String toOpLengthBinaryString(int value) {
-    String indexString = Integer.toBinaryString(value);
-    indexString =
-        String.format("%" + String.valueOf(GotoOpCode.INDEXLENGTH) + "s", indexString)
-            .replaceAll(" ", "0");
-    return indexString;
+  public static final int OP = 0b00;
+  public static final int MASKOP = 0b01;
+  public static final int ARGOP = 0b10;
+  public static final int CMPOP = 0b11;
+
+  public static final int MUL = OP << TYPE_SHIFT | 0b000;
+  public static final int ADD = OP << TYPE_SHIFT | 0b001;
+  public static final int FMADD = OP << TYPE_SHIFT | 0b010;
+  public static final int SUB = OP << TYPE_SHIFT | 0b011;
+  public static final int DIV = OP << TYPE_SHIFT | 0b100;
+  public static final int LOAD = OP << TYPE_SHIFT | 0b101;
+  public static final int MAX = OP << TYPE_SHIFT | 0b110;
+  public static final int MIN = OP << TYPE_SHIFT | 0b111;
+
+  public static final int MASKMUL = MASKOP << TYPE_SHIFT | 0b000;
+  public static final int MASKADD = MASKOP << TYPE_SHIFT | 0b001;
+  public static final int MASKFMADD = MASKOP << TYPE_SHIFT | 0b010;
+  public static final int MASKSUB = MASKOP << TYPE_SHIFT | 0b011;
+  public static final int MASKDIV = MASKOP << TYPE_SHIFT | 0b100;
+  public static final int SELECT = MASKOP << TYPE_SHIFT | 0b101;
+
+  public static final int GT = CMPOP << TYPE_SHIFT | 0b000;
+  public static final int GE = CMPOP << TYPE_SHIFT | 0b001;
+  public static final int LT = CMPOP << TYPE_SHIFT | 0b010;
+  public static final int LE = CMPOP << TYPE_SHIFT | 0b011;
+  public static final int EQ = CMPOP << TYPE_SHIFT | 0b100;
+  public static final int NEQ = CMPOP << TYPE_SHIFT | 0b101;
+
+  public static final int A = ARGOP << TYPE_SHIFT | 0b000;
+  public static final int B = ARGOP << TYPE_SHIFT | 0b001;
+  public static final int C = ARGOP << TYPE_SHIFT | 0b010;
+  public static final int CONSTARG = ARGOP << TYPE_SHIFT | 0b011;
+  public static final int VARIABLEARG = ARGOP << TYPE_SHIFT | 0b100;
+  public static final int REG = ARGOP << TYPE_SHIFT | 0b101;
+  public static final int MASKREG = ARGOP << TYPE_SHIFT | 0b110;
+  // The value of C stored before the call; only read by the epilogue.
+  public static final int STOREDC = ARGOP << TYPE_SHIFT | 0b111;
+
+  /** Upper bound of the operand keys, for tables indexed by {@link #operand}. */
+  public static final int OPERAND_KEYS = 1 << (2 * INDEXLENGTH);
+
+  private GotoOpCode() {}
+
+  /** {@link #OP}, {@link #MASKOP}, {@link #ARGOP} or {@link #CMPOP}. */
+  public static int type(int token) {
+    return token >>> TYPE_SHIFT;
+  }
+
+  /** Whether operand {@code token} is followed by an index token. */
+  public static boolean hasIndex(int token) {
+    return token == REG || token == MASKREG || token == CONSTARG || token == VARIABLEARG;
+  }
+
+  /** The key of operand {@code token} with {@code index}, which is 0 for unindexed operands. */
+  public static int operand(int token, int index) {
+    return index << INDEXLENGTH | token;
   }
 }
@@ -0,0 +1,249 @@
+package org.graalvm.compiler.lir.amd64.vec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.graalvm.compiler.debug.CounterKey;
+import org.graalvm.compiler.debug.DebugContext;
+import org.graalvm.compiler.debug.GraalError;
+
+/**
+ * Decoded Goto kernel expression program.
+ *
+ * <p>The descriptor packs the program as 5-bit {@link GotoOpCode} tokens, up to 12 per long behind
+ * a leading marker bit. The tokens are unpacked into an {@code int[]} and then into {@link
+ * Instruction}s once per program, so emitting a kernel walks the instruction array instead of
+ * re-parsing a bit string for every subiteration.
+ *
+ * <p>A word holding no tokens separates the instructions run for every k step from the epilogue,
+ * which is run once per tile after the last k step; see {@link #getEpilogue()}.
+ *
+ * <p>Decoded programs are cached by the identity of the packed {@code calc} array. {@code
+ * GotoKernelDescriptor} hands out the same array for every call site that shares a descriptor, so
+ * repeat compilations skip the decoding; entries go away once the descriptor is dropped.
+ */
+public final class GotoProgram {
+  private static final int OPS_PER_LONG = 12;
+  private static final int TOKEN_MASK = (1 << GotoOpCode.INDEXLENGTH) - 1;
+  private static final long EPILOGUE_SEPARATOR = 1;
+
+  private static final Map<long[], GotoProgram> CACHE =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private static final CounterKey CACHE_HITS = DebugContext.counter("GotoProgram_Hits");
+  private static final CounterKey CACHE_MISSES = DebugContext.counter("GotoProgram_Misses");
+
+  /**
+   * A single operation. {@link #op} is one of the {@link GotoOpCode} op tokens and the operands
+   * are {@link GotoOpCode#operand} keys, so kernels map them to registers by array lookups.
+   */
+  public static final class Instruction {
+    public final int op;
+    /** {@link GotoOpCode#OP}, {@link GotoOpCode#MASKOP} or {@link GotoOpCode#CMPOP}. */
+    public final int opType;
+    /** Written operand, or -1 for compares, which write the mask register only. */
+    public final int dst;
+    public final int src0;
+    /** Second source operand, or -1 for loads. */
+    public final int src1;
+    /** Mask operand of compare and masked ops, otherwise -1. */
+    public final int mask;
+    /** Index of the loaded variable argument, or -1. */
+    public final int varArgIndex;
+
+    Instruction(int op, int mask, int dst, int src0, int src1, int varArgIndex) {
+      this.op = op;
+      this.opType = GotoOpCode.type(op);
+      this.mask = mask;
+      this.dst = dst;
+      this.src0 = src0;
+      this.src1 = src1;
+      this.varArgIndex = varArgIndex;
+    }
+  }
+
+  private final int[] tokens;
+  private final Instruction[] instructions;
+  private final Instruction[] epilogue;
+  private final boolean[] loads;
+  private final int scratchRegisters;
+
+  private GotoProgram(long[] calc) {
+    int separator = calc.length;
+    for (int i = 0; i < calc.length; i++) {
+      if (calc[i] == EPILOGUE_SEPARATOR) {
+        separator = i;
+        break;
+      }
+    }
+    boolean[] epilogueLoads = new boolean[GotoOpCode.OPERAND_KEYS];
+    int epilogueStart = Math.min(separator + 1, calc.length);
+    int[] epilogueTokens = unpack(Arrays.copyOfRange(calc, epilogueStart, calc.length));
+    this.epilogue = decode(epilogueTokens, epilogueLoads);
+    for (boolean load : epilogueLoads) {
+      GraalError.guarantee(!load, "the epilogue of a Goto program cannot load operands");
+    }
+    this.tokens = unpack(Arrays.copyOf(calc, separator));
+    this.loads = new boolean[GotoOpCode.OPERAND_KEYS];
+    this.instructions = decode(tokens, loads);
+    this.scratchRegisters =
+        Math.max(scratchRegisters(instructions), scratchRegisters(epilogue));
+  }
+
+  private static int scratchRegisters(Instruction[] instructions) {
+    int count = 0;
+    for (Instruction inst : instructions) {
+      for (int key : new int[] {inst.dst, inst.src0, inst.src1}) {
+        if (key >= 0 && (key & TOKEN_MASK) == GotoOpCode.REG) {
+          count = Math.max(count, (key >>> GotoOpCode.INDEXLENGTH) + 1);
+        }
+      }
+    }
+    return count;
+  }
+
+  private static Instruction[] decode(int[] tokens, boolean[] loads) {
+    List<Instruction> decoded = new ArrayList<>();
+    int pos = 0;
+    while (pos < tokens.length) {
+      int op = tokens[pos++];
+      int opType = GotoOpCode.type(op);
+      int mask = -1;
+      if (opType == GotoOpCode.CMPOP || opType == GotoOpCode.MASKOP) {
+        mask = operandKey(tokens, pos);
+        pos += operandLength(tokens, pos);
+      }
+      if (opType == GotoOpCode.CMPOP) {
+        // Compares write the mask register only.
+        int src0 = operandKey(tokens, pos);
+        pos += operandLength(tokens, pos);
+        int src1 = operandKey(tokens, pos);
+        pos += operandLength(tokens, pos);
+        decoded.add(new Instruction(op, mask, -1, src0, src1, -1));
+        continue;
+      }
+      int dst = operandKey(tokens, pos);
+      pos += operandLength(tokens, pos);
+      if (op == GotoOpCode.LOAD) {
+        int src = operandKey(tokens, pos);
+        int varArgIndex = tokens[pos] == GotoOpCode.VARIABLEARG ? tokens[pos + 1] : -1;
+        pos += operandLength(tokens, pos);
+        loads[src] = true;
+        decoded.add(new Instruction(op, -1, dst, src, -1, varArgIndex));
+        continue;
+      }
+      int src0 = operandKey(tokens, pos);
+      pos += operandLength(tokens, pos);
+      int src1 = operandKey(tokens, pos);
+      pos += operandLength(tokens, pos);
+      decoded.add(new Instruction(op, mask, dst, src0, src1, -1));
+    }
+    return decoded.toArray(new Instruction[0]);
+  }
+
+  private static int[] unpack(long[] calc) {
+    int[] buffer = new int[calc.length * OPS_PER_LONG];
+    int count = 0;
+    for (long word : calc) {
+      // Everything below the leading marker bit is a sequence of whole tokens.
+      int tokenCount = (63 - Long.numberOfLeadingZeros(word)) / GotoOpCode.INDEXLENGTH;
+      for (int t = tokenCount - 1; t >= 0; t--) {
+        buffer[count++] = (int) (word >>> (t * GotoOpCode.INDEXLENGTH)) & TOKEN_MASK;
+      }
+    }
+    int[] result = new int[count];
+    System.arraycopy(buffer, 0, result, 0, count);
+    return result;
+  }
+
+  /** Number of tokens taken by the operand starting at {@code pos}. */
+  private static int operandLength(int[] tokens, int pos) {
+    return GotoOpCode.hasIndex(tokens[pos]) ? 2 : 1;
+  }
+
+  private static int operandKey(int[] tokens, int pos) {
+    int operand = tokens[pos];
+    return GotoOpCode.operand(operand, GotoOpCode.hasIndex(operand) ? tokens[pos + 1] : 0);
+  }
+
+  public static GotoProgram get(long[] calc, DebugContext debug) {
+    GotoProgram program = CACHE.get(calc);
+    if (program != null) {
+      CACHE_HITS.increment(debug);
+      return program;
+    }
+    CACHE_MISSES.increment(debug);
+    program = new GotoProgram(calc);
+    CACHE.put(calc, program);
+    return program;
+  }
+
+  /** The unpacked 5-bit tokens, without the epilogue. */
+  public int[] getTokens() {
+    return tokens.clone();
+  }
+
+  /** The instructions run for every k step. */
+  public Instruction[] getInstructions() {
+    return instructions;
+  }
+
+  /**
+   * The instructions run once per tile after the last k step, before the tile is stored; empty if
+   * the program has no epilogue. There {@link GotoOpCode#C} is the tile's result, including the
+   * value stored before the call, which is also available as {@link GotoOpCode#STOREDC}, and the
+   * final value of {@link GotoOpCode#C} overwrites C.
+   */
+  public Instruction[] getEpilogue() {
+    return epilogue;
+  }
+
+  public boolean hasEpilogue() {
+    return epilogue.length > 0;
+  }
+
+  /** Whether the instructions run for every k step are just {@code C += A * B}. */
+  public boolean isFmadd() {
+    if (instructions.length != 1) {
+      return false;
+    }
+    Instruction inst = instructions[0];
+    return inst.op == GotoOpCode.FMADD
+        && inst.dst == GotoOpCode.C
+        && inst.src0 == GotoOpCode.A
+        && inst.src1 == GotoOpCode.B;
+  }
+
+  /** Whether any part of the program compares or runs masked ops. */
+  public boolean usesMask() {
+    return usesMask(instructions) || usesMask(epilogue);
+  }
+
+  private static boolean usesMask(Instruction[] instructions) {
+    for (Instruction inst : instructions) {
+      if (inst.mask >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Number of {@link GotoOpCode#REG} scratch registers the program uses, one more than the highest
+   * index; the kernels bind them to the vector registers left over by the tile.
+   */
+  public int scratchRegisters() {
+    return scratchRegisters;
+  }
+
+  /**
+   * Whether the program loads operand {@code key} itself, so the kernel must not preload it. Keys
+   * are {@link GotoOpCode#operand} keys; A and B have no index.
+   */
+  public boolean loads(int key) {
+    return loads[key];
+  }
+}
@@ -0,0 +1,421 @@
+package org.graalvm.compiler.lir.amd64.vec;
+
+import static jdk.vm.ci.amd64.AMD64.k0;
+import static jdk.vm.ci.amd64.AMD64.k1;
+import static jdk.vm.ci.code.ValueUtil.asRegister;
+import static org.graalvm.compiler.lir.LIRInstruction.OperandFlag.ILLEGAL;
+import static org.graalvm.compiler.lir.LIRInstruction.OperandFlag.REG;
+
+import java.util.Objects;
+import jdk.vm.ci.amd64.AMD64Kind;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.Value;
+import org.graalvm.compiler.asm.Label;
+import org.graalvm.compiler.asm.amd64.AMD64Address;
+import org.graalvm.compiler.asm.amd64.AMD64Address.Scale;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler;
+import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
+import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
+import org.graalvm.compiler.core.common.LIRKind;
+import org.graalvm.compiler.debug.GraalError;
+import org.graalvm.compiler.lir.LIRInstructionClass;
+import org.graalvm.compiler.lir.Opcode;
+import org.graalvm.compiler.lir.amd64.AMD64LIRInstruction;
+import org.graalvm.compiler.lir.asm.CompilationResultBuilder;
+import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
+
+/**
+ * {@code output[keys[i]] = op(output[keys[i]], values[i])} for {@code i} in {@code [from, to)},
+ * with {@code op} one of {@link #SUM}, {@link #MIN} and {@link #MAX} over int, long or double
+ * values. Without values it is a histogram, {@code output[keys[i]] += 1}.
+ *
+ * <p>The loop handles one vector of keys at a time: 16 for int values and 8 for long and double
+ * values, whose keys are sign-extended to qwords. Keys that occur more than once in a vector are
+ * resolved with the {@code vpconflictd} permute loop: each lane repeatedly combines the partial
+ * result of the closest earlier lane with the same key, so the last lane of every key ends up with
+ * the combination of all of them. The current outputs are then gathered, combined with the partial
+ * results and scattered back; the scatter writes lanes in order, so the last lane of a key wins.
+ * The remaining elements are combined one at a time. No bounds are checked.
+ *
+ * <p>Off heap, {@code keys} and {@code values} are the native addresses of the first element; the
+ * output is always an array.
+ */
+@Opcode("VEC_SCATTER_REDUCE")
+public final class ScatterReduceOp extends AMD64LIRInstruction {
+  public static final LIRInstructionClass<ScatterReduceOp> TYPE =
+      LIRInstructionClass.create(ScatterReduceOp.class);
+
+  public static final int SUM = 0;
+  public static final int MIN = 1;
+  public static final int MAX = 2;
+
+  private static final int CMP_NEQ = 4;
+
+  private final int op;
+  private final JavaKind valueKind;
+  private final boolean histogram;
+  private final boolean wide;
+  private final int lanes;
+
+  private final int keysBaseOffset;
+  private final Scale keysScale;
+  private final int valuesBaseOffset;
+  private final Scale valuesScale;
+  private final int outputBaseOffset;
+
+  @Alive({REG})
+  private Value keysPtr;
+
+  @Alive({REG, ILLEGAL})
+  private Value valuesPtr;
+
+  @Use({REG})
+  private Value fromValue;
+
+  @Alive({REG})
+  private Value toValue;
+
+  @Alive({REG})
+  private Value outputPtr;
+
+  @Temp({REG})
+  private Value positionValue;
+
+  @Temp({REG})
+  private Value scratchValue;
+
+  @Temp({REG})
+  private Value keyValue;
+
+  @Temp({REG})
+  private Value valueValue;
+
+  @Temp({REG})
+  private Value currentValue;
+
+  @Temp({REG})
+  private Value indexValue;
+
+  @Temp({REG})
+  private Value conflictValue;
+
+  @Temp({REG})
+  private Value mergedValue;
+
+  @Temp({REG})
+  private Value tempValue;
+
+  @Temp({REG})
+  private Value resultValue;
+
+  @Temp({REG})
+  private Value lastLaneValue;
+
+  @Temp({REG})
+  private Value allNegativeOneValue;
+
+  @Temp({REG, ILLEGAL})
+  private Value allPositiveOneValue;
+
+  /**
+   * @param values the values array, or {@link Value#ILLEGAL} for a histogram ({@link #SUM} of ones
+   *     into an int array)
+   * @param offHeap whether {@code keys} and {@code values} are native addresses
+   */
+  public ScatterReduceOp(
+      LIRGeneratorTool tool,
+      int op,
+      JavaKind valueKind,
+      Value keys,
+      Value values,
+      Value from,
+      Value to,
+      Value output,
+      boolean offHeap) {
+    super(TYPE);
+    GraalError.guarantee(op == SUM || op == MIN || op == MAX, "unknown scatter-reduce op %d", op);
+    GraalError.guarantee(
+        valueKind == JavaKind.Int || valueKind == JavaKind.Long || valueKind == JavaKind.Double,
+        "unsupported scatter-reduce kind %s",
+        valueKind);
+    this.op = op;
+    this.valueKind = valueKind;
+    this.histogram = Value.ILLEGAL.equals(values);
+    GraalError.guarantee(
+        !histogram || (op == SUM && valueKind == JavaKind.Int), "histograms count into int[]");
+    this.wide = valueKind != JavaKind.Int;
+    this.lanes = wide ? 8 : 16;
+
+    keysBaseOffset =
+        offHeap ? 0 : tool.getProviders().getMetaAccess().getArrayBaseOffset(JavaKind.Int);
+    keysScale =
+        Objects.requireNonNull(
+            Scale.fromInt(tool.getProviders().getMetaAccess().getArrayIndexScale(JavaKind.Int)));
+    outputBaseOffset = tool.getProviders().getMetaAccess().getArrayBaseOffset(valueKind);
+    valuesBaseOffset = offHeap ? 0 : outputBaseOffset;
+    valuesScale =
+        Objects.requireNonNull(
+            Scale.fromInt(tool.getProviders().getMetaAccess().getArrayIndexScale(valueKind)));
+
+    keysPtr = keys;
+    valuesPtr = values;
+    fromValue = from;
+    toValue = to;
+    outputPtr = output;
+
+    AMD64Kind scalarKind = wide ? AMD64Kind.QWORD : AMD64Kind.DWORD;
+    AMD64Kind vectorKind = wide ? AMD64Kind.V512_QWORD : AMD64Kind.V512_DWORD;
+    positionValue = tool.newVariable(LIRKind.value(AMD64Kind.QWORD));
+    scratchValue = tool.newVariable(LIRKind.value(AMD64Kind.QWORD));
+    keyValue = tool.newVariable(LIRKind.value(AMD64Kind.QWORD));
+    valueValue = tool.newVariable(LIRKind.value(scalarKind));
+    currentValue = tool.newVariable(LIRKind.value(scalarKind));
+
+    indexValue = tool.newVariable(LIRKind.value(vectorKind));
+    conflictValue = tool.newVariable(LIRKind.value(vectorKind));
+    mergedValue = tool.newVariable(LIRKind.value(vectorKind));
+    tempValue = tool.newVariable(LIRKind.value(vectorKind));
+    resultValue = tool.newVariable(LIRKind.value(vectorKind));
+    lastLaneValue = tool.newVariable(LIRKind.value(vectorKind));
+    allNegativeOneValue = tool.newVariable(LIRKind.value(vectorKind));
+    allPositiveOneValue =
+        histogram ? tool.newVariable(LIRKind.value(vectorKind)) : Value.ILLEGAL;
+  }
+
+  @Override
+  public void emitCode(CompilationResultBuilder crb, AMD64MacroAssembler masm) {
+    Register position = asRegister(positionValue);
+    Register scratch = asRegister(scratchValue);
+    Register to = asRegister(toValue);
+
+    Label vectorLoop = new Label();
+    Label scalarLoop = new Label();
+    Label done = new Label();
+
+    masm.movslq(position, asRegister(fromValue));
+
+    // Loop invariants. All ones is -1 for dwords and qwords alike.
+    masm.movl(scratch, wide ? 63 : 31);
+    if (wide) {
+      masm.vpbroadcastq(asRegister(lastLaneValue), scratch);
+    } else {
+      masm.vpbroadcastd(asRegister(lastLaneValue), scratch);
+    }
+    masm.movl(scratch, -1);
+    masm.vpbroadcastd(asRegister(allNegativeOneValue), scratch);
+    if (histogram) {
+      masm.movl(scratch, 1);
+      masm.vpbroadcastd(asRegister(allPositiveOneValue), scratch);
+    }
+
+    masm.bind(vectorLoop);
+    masm.movl(scratch, to);
+    masm.subl(scratch, position);
+    masm.cmpl(scratch, lanes);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, scalarLoop);
+    emitVector(masm, position);
+    masm.addq(position, lanes);
+    masm.jmp(vectorLoop);
+
+    masm.bind(scalarLoop);
+    masm.cmpl(position, to);
+    masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, done);
+    emitScalar(masm, position);
+    masm.incq(position);
+    masm.jmp(scalarLoop);
+
+    masm.bind(done);
+  }
+
+  private void emitVector(AMD64MacroAssembler masm, Register position) {
+    Register keys = asRegister(keysPtr);
+    Register output = asRegister(outputPtr);
+    Register index = asRegister(indexValue);
+    Register conflict = asRegister(conflictValue);
+    Register merged = asRegister(mergedValue);
+    Register temp = asRegister(tempValue);
+    Register result = asRegister(resultValue);
+
+    Label conflictLoop = new Label();
+    Label update = new Label();
+
+    // Load the keys.
+    AMD64Address keyAddress = new AMD64Address(keys, position, keysScale, keysBaseOffset);
+    if (wide) {
+      masm.vpmovsxdq(index, keyAddress);
+    } else {
+      masm.vmovdqu32(index, keyAddress);
+    }
+
+    // Detect conflicts.
+    if (wide) {
+      masm.vpconflictq(conflict, index);
+    } else {
+      masm.vpconflictd(conflict, index);
+    }
+
+    // Gather the current outputs.
+    AMD64Address vsib = new AMD64Address(output, index, valuesScale, outputBaseOffset);
+    masm.kxnorw(k1, k0, k0);
+    if (wide) {
+      masm.vpgatherqq(result, k1, vsib);
+    } else {
+      masm.vpgatherdd(result, k1, vsib);
+    }
+
+    // Prepare the partial results.
+    if (histogram) {
+      masm.vmovdqa32(merged, asRegister(allPositiveOneValue));
+    } else {
+      AMD64Address valueAddress =
+          new AMD64Address(asRegister(valuesPtr), position, valuesScale, valuesBaseOffset);
+      if (wide) {
+        masm.vmovupd(merged, valueAddress);
+      } else {
+        masm.vmovdqu32(merged, valueAddress);
+      }
+    }
+
+    // Compute mask from conflicts.
+    if (wide) {
+      masm.vptestmq(k1, conflict, conflict);
+    } else {
+      masm.vptestmd(k1, conflict, conflict);
+    }
+    masm.kortestw(k1, k1);
+    masm.jcc(AMD64Assembler.ConditionFlag.Zero, update);
+
+    // The permute control is the closest earlier lane with the same key, or -1.
+    Register control = conflict;
+    if (wide) {
+      masm.vplzcntq(control, conflict);
+      masm.vpsubq(control, asRegister(lastLaneValue), control);
+    } else {
+      masm.vplzcntd(control, conflict);
+      masm.vpsubd(control, asRegister(lastLaneValue), control);
+    }
+
+    // Resolve conflicts in a loop.
+    masm.bind(conflictLoop);
+    if (wide) {
+      masm.vpermq(temp, k1, /* z */ 1, control, merged);
+    } else {
+      masm.vpermd(temp, k1, /* z */ 1, control, merged);
+    }
+    emitReduce(masm, merged, temp, k1);
+    if (wide) {
+      masm.vpermq(control, k1, /* z */ 0, control, control);
+      masm.vpcmpq(k1, control, asRegister(allNegativeOneValue), CMP_NEQ);
+    } else {
+      masm.vpermd(control, k1, /* z */ 0, control, control);
+      masm.vpcmpd(k1, control, asRegister(allNegativeOneValue), CMP_NEQ);
+    }
+    masm.kortestw(k1, k1);
+    masm.jcc(AMD64Assembler.ConditionFlag.NotZero, conflictLoop);
+
+    // Update the outputs.
+    masm.bind(update);
+    emitReduce(masm, result, merged, Register.None);
+    masm.kxnorw(k1, k0, k0);
+    if (wide) {
+      masm.vpscatterqq(vsib, k1, result);
+    } else {
+      masm.vpscatterdd(vsib, k1, result);
+    }
+  }
+
+  /** {@code dst = op(dst, src)} in the lanes selected by {@code mask}, or all lanes. */
+  private void emitReduce(AMD64MacroAssembler masm, Register dst, Register src, Register mask) {
+    switch (valueKind) {
+      case Int:
+        if (op == SUM) {
+          masm.vpaddd(dst, dst, src, mask);
+        } else if (op == MIN) {
+          masm.vpminsd(dst, dst, src, mask);
+        } else {
+          masm.vpmaxsd(dst, dst, src, mask);
+        }
+        break;
+      case Long:
+        if (op == SUM) {
+          masm.vpaddq(dst, dst, src, mask);
+        } else if (op == MIN) {
+          masm.vpminsq(dst, dst, src, mask);
+        } else {
+          masm.vpmaxsq(dst, dst, src, mask);
+        }
+        break;
+      default:
+        if (op == SUM) {
+          masm.vaddpd(dst, dst, src, mask);
+        } else if (op == MIN) {
+          masm.vminpd(dst, dst, src, mask);
+        } else {
+          masm.vmaxpd(dst, dst, src, mask);
+        }
+        break;
+    }
+  }
+
+  private void emitScalar(AMD64MacroAssembler masm, Register position) {
+    Register key = asRegister(keyValue);
+    masm.movslq(key, new AMD64Address(asRegister(keysPtr), position, keysScale, keysBaseOffset));
+    AMD64Address slot = new AMD64Address(asRegister(outputPtr), key, valuesScale, outputBaseOffset);
+    if (histogram) {
+      masm.addl(slot, 1);
+      return;
+    }
+    AMD64Address valueAddress =
+        new AMD64Address(asRegister(valuesPtr), position, valuesScale, valuesBaseOffset);
+    Register value = asRegister(valueValue);
+    Register current = asRegister(currentValue);
+    switch (valueKind) {
+      case Int:
+        masm.movl(value, valueAddress);
+        masm.movl(current, slot);
+        if (op == SUM) {
+          masm.addl(current, value);
+        } else {
+          masm.cmpl(current, value);
+          masm.cmovl(
+              op == MIN
+                  ? AMD64Assembler.ConditionFlag.Greater
+                  : AMD64Assembler.ConditionFlag.Less,
+              current,
+              value);
+        }
+        masm.movl(slot, current);
+        break;
+      case Long:
+        masm.movq(value, valueAddress);
+        masm.movq(current, slot);
+        if (op == SUM) {
+          masm.addq(current, value);
+        } else {
+          masm.cmpq(current, value);
+          masm.cmovq(
+              op == MIN
+                  ? AMD64Assembler.ConditionFlag.Greater
+                  : AMD64Assembler.ConditionFlag.Less,
+              current,
+              value);
+        }
+        masm.movq(slot, current);
+        break;
+      default:
+        // Same operand order as the vector update, so NaNs and signed zeros resolve alike.
+        Register xValue = asRegister(tempValue);
+        Register xCurrent = asRegister(resultValue);
+        AMD64Assembler.VexMoveOp.VMOVSD.emit(masm, AVXSize.XMM, xValue, valueAddress);
+        AMD64Assembler.VexMoveOp.VMOVSD.emit(masm, AVXSize.XMM, xCurrent, slot);
+        AMD64Assembler.VexRVMOp reduce =
+            op == SUM
+                ? AMD64Assembler.VexRVMOp.VADDSD
+                : op == MIN ? AMD64Assembler.VexRVMOp.VMINSD : AMD64Assembler.VexRVMOp.VMAXSD;
+        reduce.emit(masm, AVXSize.XMM, xCurrent, xCurrent, xValue);
+        AMD64Assembler.VexMoveOp.VMOVSD.emit(masm, AVXSize.XMM, slot, xCurrent);
+        break;
+    }
+  }
+}
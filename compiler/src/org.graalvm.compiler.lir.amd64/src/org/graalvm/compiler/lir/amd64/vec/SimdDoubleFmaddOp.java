@@ -1,6 +1,10 @@
 package org.graalvm.compiler.lir.amd64.vec;
 
+import static jdk.vm.ci.amd64.AMD64.k1;
 import static jdk.vm.ci.code.ValueUtil.asRegister;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.B0;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.Z0;
+import static org.graalvm.compiler.asm.amd64.AMD64BaseAssembler.EVEXPrefixConfig.Z1;
 import static org.graalvm.compiler.lir.LIRInstruction.OperandFlag.REG;
 
 import java.util.Objects;
@@ -13,6 +17,7 @@ import org.graalvm.compiler.asm.amd64.AMD64Address;
 import org.graalvm.compiler.asm.amd64.AMD64Address.Scale;
 import org.graalvm.compiler.asm.amd64.AMD64Assembler;
 import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
+import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
 import org.graalvm.compiler.core.common.LIRKind;
 import org.graalvm.compiler.lir.LIRInstructionClass;
 import org.graalvm.compiler.lir.Opcode;
@@ -20,15 +25,38 @@ import org.graalvm.compiler.lir.amd64.AMD64LIRInstruction;
 import org.graalvm.compiler.lir.asm.CompilationResultBuilder;
 import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
 
+/**
+ * {@code output[i] += input[i] * multVal} for {@code i} in {@code [0, length)}, with a fused
+ * multiply-add.
+ *
+ * <p>The main loop is unrolled {@value #UNROLL} times into independent registers, followed by a
+ * loop over single vectors and a tail for the last {@code length % lanes} elements: one masked
+ * vector with AVX-512, otherwise one element at a time. ZMM vectors are used with AVX-512 and YMM
+ * vectors with AVX2.
+ *
+ * <p>With non-temporal stores the output goes around the caches, which pays off when it is larger
+ * than the last-level cache. Those stores need aligned addresses, so elements are done one at a
+ * time until the output is vector aligned, and the op ends with an {@code sfence}.
+ *
+ * <p>Off heap, {@code input} and {@code output} are the native addresses of the first element.
+ */
 @Opcode("SIMDDOUBLEFMADD")
 public final class SimdDoubleFmaddOp extends AMD64LIRInstruction {
   public static final LIRInstructionClass<SimdDoubleFmaddOp> TYPE =
       LIRInstructionClass.create(SimdDoubleFmaddOp.class);
 
-  private final int DOUBLE_ARRAY_BASE_OFFSET;
+  private static final int UNROLL = 4;
+
+  // Offset of element 0 from the operand pointer: the array base offset, or 0 for native addresses.
+  private final int baseOffset;
   private final Scale DOUBLE_ARRAY_INDEX_SCALE;
 
-  @Use({REG})
+  private final AVXSize simdSize;
+  private final int lanes;
+  private final boolean maskedTail;
+  private final boolean nonTemporal;
+
+  @Alive({REG})
   private Value lengthValue;
 
   @Use({REG})
@@ -41,7 +69,7 @@ public final class SimdDoubleFmaddOp extends AMD64LIRInstruction {
   private Value outputPtr;
 
   @Temp({REG})
-  private Value tempValue;
+  private Value[] accumulatorValues;
 
   @Temp({REG})
   private Value broadcastMultValValue;
@@ -49,58 +77,207 @@ public final class SimdDoubleFmaddOp extends AMD64LIRInstruction {
   @Temp({REG})
   private Value loopIndexValue;
 
+  @Temp({REG})
+  private Value scratchValue;
+
+  /**
+   * @param avx512 whether to use ZMM vectors, otherwise YMM vectors (AVX2 and FMA)
+   * @param maskedTail whether the tail is a masked vector, which needs AVX-512 and BMI2
+   * @param nonTemporal whether to store the output with non-temporal stores
+   * @param offHeap whether {@code input} and {@code output} are native addresses
+   */
   public SimdDoubleFmaddOp(
-      LIRGeneratorTool tool, Value length, Value multVal, Value input, Value output) {
+      LIRGeneratorTool tool,
+      Value length,
+      Value multVal,
+      Value input,
+      Value output,
+      boolean avx512,
+      boolean maskedTail,
+      boolean nonTemporal,
+      boolean offHeap) {
     super(TYPE);
-    DOUBLE_ARRAY_BASE_OFFSET =
-        tool.getProviders().getMetaAccess().getArrayBaseOffset(JavaKind.Double);
+    baseOffset =
+        offHeap ? 0 : tool.getProviders().getMetaAccess().getArrayBaseOffset(JavaKind.Double);
     DOUBLE_ARRAY_INDEX_SCALE =
         Objects.requireNonNull(
             Scale.fromInt(tool.getProviders().getMetaAccess().getArrayIndexScale(JavaKind.Double)));
+    this.simdSize = avx512 ? AVXSize.ZMM : AVXSize.YMM;
+    this.lanes = simdSize.getBytes() / Double.BYTES;
+    this.maskedTail = avx512 && maskedTail;
+    this.nonTemporal = nonTemporal;
 
     lengthValue = length;
     multValValue = multVal;
     inputPtr = input;
     outputPtr = output;
 
-    tempValue = tool.newVariable(LIRKind.value(AMD64Kind.V512_QWORD));
-    broadcastMultValValue = tool.newVariable(LIRKind.value(AMD64Kind.V512_QWORD));
-    loopIndexValue = tool.newVariable(LIRKind.value(AMD64Kind.DWORD));
+    AMD64Kind vectorKind = avx512 ? AMD64Kind.V512_QWORD : AMD64Kind.V256_QWORD;
+    accumulatorValues = new Value[UNROLL];
+    for (int u = 0; u < UNROLL; u++) {
+      accumulatorValues[u] = tool.newVariable(LIRKind.value(vectorKind));
+    }
+    broadcastMultValValue = tool.newVariable(LIRKind.value(vectorKind));
+    loopIndexValue = tool.newVariable(LIRKind.value(AMD64Kind.QWORD));
+    scratchValue = tool.newVariable(LIRKind.value(AMD64Kind.QWORD));
   }
 
   @Override
   public void emitCode(CompilationResultBuilder crb, AMD64MacroAssembler masm) {
     Register length = asRegister(lengthValue);
-    Register multVal = asRegister(multValValue);
-    Register input = asRegister(inputPtr);
     Register output = asRegister(outputPtr);
-
-    Register temp = asRegister(tempValue);
     Register loopIndex = asRegister(loopIndexValue);
+    Register scratch = asRegister(scratchValue);
     Register broadcastMultVal = asRegister(broadcastMultValValue);
 
-    Label loopLabel = new Label();
+    Label unrolledLoop = new Label();
+    Label vectorLoop = new Label();
+    Label tail = new Label();
+    Label done = new Label();
 
     // Make a vector of multVal
-    masm.vbroadcastsd(broadcastMultVal, multVal);
+    if (simdSize == AVXSize.ZMM) {
+      masm.vbroadcastsd(broadcastMultVal, asRegister(multValValue));
+    } else {
+      AMD64Assembler.VexRMOp.VBROADCASTSD.emit(
+          masm, simdSize, broadcastMultVal, asRegister(multValValue));
+    }
 
-    // Initialize loop index
     masm.movl(loopIndex, 0);
 
-    // Start iterating through arrays and update output array
-    masm.bind(loopLabel);
-    AMD64Address inputAddress =
-        new AMD64Address(input, loopIndex, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET);
-    masm.vmovupd(temp, inputAddress);
-    AMD64Address outputAddress =
-        new AMD64Address(output, loopIndex, DOUBLE_ARRAY_INDEX_SCALE, DOUBLE_ARRAY_BASE_OFFSET);
-    // temp = (temp * multValVector) + (values in outputAddress)
-    masm.vfmadd213pd(temp, broadcastMultVal, outputAddress);
-    // Store result to output
-    masm.vmovupd(outputAddress, temp);
-    // Increment loopIndex by 8
-    masm.addl(loopIndex, 8);
-    masm.cmpl(loopIndex, length);
-    masm.jcc(AMD64Assembler.ConditionFlag.Less, loopLabel);
+    if (nonTemporal) {
+      // Peel elements until the output is aligned for the non-temporal stores.
+      Label peelLoop = new Label();
+      masm.bind(peelLoop);
+      masm.cmpl(loopIndex, length);
+      masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, done);
+      masm.leaq(scratch, outputAddress(output, loopIndex, 0));
+      masm.testl(scratch, simdSize.getBytes() - 1);
+      masm.jcc(AMD64Assembler.ConditionFlag.Zero, unrolledLoop);
+      emitScalar(masm, loopIndex);
+      masm.incl(loopIndex);
+      masm.jmp(peelLoop);
+    }
+
+    // Unrolled loop; the accumulators are independent of each other.
+    masm.bind(unrolledLoop);
+    emitRemaining(masm, scratch, length, loopIndex);
+    masm.cmpl(scratch, UNROLL * lanes);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, vectorLoop);
+    for (int u = 0; u < UNROLL; u++) {
+      AMD64Assembler.VexMoveOp.VMOVUPD.emit(
+          masm,
+          simdSize,
+          asRegister(accumulatorValues[u]),
+          outputAddress(output, loopIndex, u * simdSize.getBytes()));
+    }
+    for (int u = 0; u < UNROLL; u++) {
+      // accumulator += multVal * input
+      AMD64Assembler.VexRVMOp.VFMADD231PD.emit(
+          masm,
+          simdSize,
+          asRegister(accumulatorValues[u]),
+          broadcastMultVal,
+          inputAddress(loopIndex, u * simdSize.getBytes()));
+    }
+    for (int u = 0; u < UNROLL; u++) {
+      emitStore(
+          masm,
+          outputAddress(output, loopIndex, u * simdSize.getBytes()),
+          asRegister(accumulatorValues[u]));
+    }
+    masm.addl(loopIndex, UNROLL * lanes);
+    masm.jmp(unrolledLoop);
+
+    // Single vectors.
+    masm.bind(vectorLoop);
+    emitRemaining(masm, scratch, length, loopIndex);
+    masm.cmpl(scratch, lanes);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, tail);
+    Register accumulator = asRegister(accumulatorValues[0]);
+    AMD64Assembler.VexMoveOp.VMOVUPD.emit(
+        masm, simdSize, accumulator, outputAddress(output, loopIndex, 0));
+    AMD64Assembler.VexRVMOp.VFMADD231PD.emit(
+        masm, simdSize, accumulator, broadcastMultVal, inputAddress(loopIndex, 0));
+    emitStore(masm, outputAddress(output, loopIndex, 0), accumulator);
+    masm.addl(loopIndex, lanes);
+    masm.jmp(vectorLoop);
+
+    masm.bind(tail);
+    if (maskedTail) {
+      // Fewer than lanes elements are left; scratch holds their count, which is negative when
+      // length is. BZHI would turn a negative count into a full mask.
+      masm.testl(scratch, scratch);
+      masm.jcc(AMD64Assembler.ConditionFlag.LessEqual, done);
+      // Keep the low scratch bits.
+      masm.movl(loopIndex, (1 << lanes) - 1);
+      AMD64Assembler.VexGeneralPurposeRMVOp.BZHI.emit(
+          masm, AVXSize.DWORD, loopIndex, loopIndex, scratch);
+      masm.kmovw(k1, loopIndex);
+      // The loop index is the length minus the remaining count.
+      masm.movl(loopIndex, length);
+      masm.subl(loopIndex, scratch);
+      AMD64Address outputAddress = outputAddress(output, loopIndex, 0);
+      AMD64Assembler.VexMoveOp.VMOVUPD.emit(masm, simdSize, accumulator, outputAddress, k1, Z1, B0);
+      AMD64Assembler.VexRVMOp.VFMADD231PD.emit(
+          masm, simdSize, accumulator, broadcastMultVal, inputAddress(loopIndex, 0), k1);
+      // Masked non-temporal stores do not exist; a single partial line is stored normally.
+      AMD64Assembler.VexMoveOp.VMOVUPD.emit(masm, simdSize, outputAddress, accumulator, k1);
+    } else {
+      Label scalarLoop = new Label();
+      masm.bind(scalarLoop);
+      masm.cmpl(loopIndex, length);
+      masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, done);
+      emitScalar(masm, loopIndex);
+      masm.incl(loopIndex);
+      masm.jmp(scalarLoop);
+    }
+
+    masm.bind(done);
+    if (nonTemporal) {
+      // Order the weakly ordered stores before anything that follows.
+      masm.sfence();
+    }
+  }
+
+  /** {@code scratch = length - loopIndex}. */
+  private static void emitRemaining(
+      AMD64MacroAssembler masm, Register scratch, Register length, Register loopIndex) {
+    masm.movl(scratch, length);
+    masm.subl(scratch, loopIndex);
+  }
+
+  private void emitStore(AMD64MacroAssembler masm, AMD64Address dst, Register src) {
+    if (nonTemporal) {
+      AMD64Assembler.VexMROp.VMOVNTPD.emit(masm, simdSize, dst, src, Register.None, Z0, B0);
+    } else {
+      AMD64Assembler.VexMoveOp.VMOVUPD.emit(masm, simdSize, dst, src);
+    }
+  }
+
+  private void emitScalar(AMD64MacroAssembler masm, Register loopIndex) {
+    Register accumulator = asRegister(accumulatorValues[0]);
+    AMD64Address outputAddress = outputAddress(asRegister(outputPtr), loopIndex, 0);
+    AMD64Assembler.VexMoveOp.VMOVSD.emit(masm, AVXSize.XMM, accumulator, outputAddress);
+    AMD64Assembler.VexRVMOp.VFMADD231SD.emit(
+        masm,
+        AVXSize.XMM,
+        accumulator,
+        asRegister(broadcastMultValValue),
+        inputAddress(loopIndex, 0));
+    AMD64Assembler.VexMoveOp.VMOVSD.emit(masm, AVXSize.XMM, outputAddress, accumulator);
+  }
+
+  private AMD64Address inputAddress(Register loopIndex, int displacement) {
+    return new AMD64Address(
+        asRegister(inputPtr),
+        loopIndex,
+        DOUBLE_ARRAY_INDEX_SCALE,
+        baseOffset + displacement);
+  }
+
+  private AMD64Address outputAddress(Register output, Register loopIndex, int displacement) {
+    return new AMD64Address(
+        output, loopIndex, DOUBLE_ARRAY_INDEX_SCALE, baseOffset + displacement);
   }
 }
@@ -0,0 +1,307 @@
+package org.graalvm.compiler.lir.amd64.vec;
+
+import static jdk.vm.ci.code.ValueUtil.asRegister;
+import static org.graalvm.compiler.lir.LIRInstruction.OperandFlag.REG;
+
+import java.util.Objects;
+import jdk.vm.ci.amd64.AMD64Kind;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.Value;
+import org.graalvm.compiler.asm.Label;
+import org.graalvm.compiler.asm.amd64.AMD64Address;
+import org.graalvm.compiler.asm.amd64.AMD64Address.Scale;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler.VexMoveOp;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler.VexRVMOp;
+import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
+import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
+import org.graalvm.compiler.core.common.LIRKind;
+import org.graalvm.compiler.debug.GraalError;
+import org.graalvm.compiler.lir.LIRInstructionClass;
+import org.graalvm.compiler.lir.Opcode;
+import org.graalvm.compiler.lir.amd64.AMD64LIRInstruction;
+import org.graalvm.compiler.lir.asm.CompilationResultBuilder;
+import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
+
+/**
+ * The vector part of an element-wise loop {@code arrays[0][i] = f(arrays[1][i], ..., scalars)} for
+ * {@code i} in {@code [from, to)}, where {@code f} is a postfix program of {@link #LOAD}, {@link
+ * #SCALAR} and lane-wise binary ops. The result is the index of the first element that was not
+ * done, {@code to - (to - from) % lanes}, or {@code from} if {@code from} is negative or not below
+ * {@code to}; the scalar loop that follows does the rest.
+ *
+ * <p>Each iteration evaluates the program on one vector: loads and stores are unaligned, scalars
+ * are broadcast once before the loop, and every op writes the lower of its two stack slots. Lanes
+ * are computed in isolation, so a store to an array that is also loaded is safe as long as every
+ * access uses the loop index, which is how the vectorizer builds the program. ZMM vectors are used
+ * with AVX-512 and YMM vectors with AVX2. No bounds are checked.
+ */
+@Opcode("VECTOR_MAP")
+public final class VectorMapOp extends AMD64LIRInstruction {
+  public static final LIRInstructionClass<VectorMapOp> TYPE =
+      LIRInstructionClass.create(VectorMapOp.class);
+
+  public static final int LOAD = 0;
+  public static final int SCALAR = 1;
+  public static final int ADD = 2;
+  public static final int SUB = 3;
+  public static final int MUL = 4;
+  public static final int DIV = 5;
+  public static final int AND = 6;
+  public static final int OR = 7;
+  public static final int XOR = 8;
+  public static final int MIN = 9;
+  public static final int MAX = 10;
+
+  private final JavaKind elementKind;
+  private final int[] program;
+  private final AVXSize simdSize;
+  private final int lanes;
+  private final int baseOffset;
+  private final Scale scale;
+
+  @Def({REG})
+  private Value resultValue;
+
+  @Alive({REG})
+  private Value fromValue;
+
+  @Alive({REG})
+  private Value toValue;
+
+  @Alive({REG})
+  private Value[] arrayPtrs;
+
+  @Alive({REG})
+  private Value[] scalarValues;
+
+  @Temp({REG})
+  private Value[] stackValues;
+
+  @Temp({REG})
+  private Value[] broadcastValues;
+
+  @Temp({REG})
+  private Value endValue;
+
+  /**
+   * @param avx512 whether to use ZMM vectors, otherwise YMM vectors (AVX2)
+   * @param arrays the stored array followed by the loaded arrays
+   */
+  public VectorMapOp(
+      LIRGeneratorTool tool,
+      JavaKind elementKind,
+      int[] program,
+      Value result,
+      Value from,
+      Value to,
+      Value[] arrays,
+      Value[] scalars,
+      boolean avx512) {
+    super(TYPE);
+    GraalError.guarantee(
+        elementKind == JavaKind.Int
+            || elementKind == JavaKind.Long
+            || elementKind == JavaKind.Float
+            || elementKind == JavaKind.Double,
+        "unsupported vector map kind %s",
+        elementKind);
+    this.elementKind = elementKind;
+    this.program = program;
+    this.simdSize = avx512 ? AVXSize.ZMM : AVXSize.YMM;
+    this.lanes = simdSize.getBytes() / elementKind.getByteCount();
+    baseOffset = tool.getProviders().getMetaAccess().getArrayBaseOffset(elementKind);
+    scale =
+        Objects.requireNonNull(
+            Scale.fromInt(tool.getProviders().getMetaAccess().getArrayIndexScale(elementKind)));
+
+    resultValue = result;
+    fromValue = from;
+    toValue = to;
+    arrayPtrs = arrays;
+    scalarValues = scalars;
+
+    AMD64Kind vectorKind = avx512 ? AMD64Kind.V512_QWORD : AMD64Kind.V256_QWORD;
+    stackValues = new Value[maxStackDepth(program, arrays.length, scalars.length)];
+    for (int s = 0; s < stackValues.length; s++) {
+      stackValues[s] = tool.newVariable(LIRKind.value(vectorKind));
+    }
+    broadcastValues = new Value[scalars.length];
+    for (int s = 0; s < scalars.length; s++) {
+      broadcastValues[s] = tool.newVariable(LIRKind.value(vectorKind));
+    }
+    endValue = tool.newVariable(LIRKind.value(AMD64Kind.DWORD));
+  }
+
+  /** Checks the program and returns how many stack slots it needs. */
+  static int maxStackDepth(int[] program, int arrayCount, int scalarCount) {
+    int depth = 0;
+    int maxDepth = 0;
+    for (int instruction : program) {
+      int op = instruction & 0xff;
+      int operand = instruction >>> 8;
+      if (op == LOAD) {
+        GraalError.guarantee(operand < arrayCount, "bad array %d", operand);
+        depth++;
+      } else if (op == SCALAR) {
+        GraalError.guarantee(operand < scalarCount, "bad scalar %d", operand);
+        depth++;
+      } else {
+        GraalError.guarantee(op <= MAX && depth >= 2, "bad vector map op %d", op);
+        depth--;
+      }
+      maxDepth = Math.max(maxDepth, depth);
+    }
+    GraalError.guarantee(depth == 1, "vector map program leaves %d values", depth);
+    return maxDepth;
+  }
+
+  @Override
+  public void emitCode(CompilationResultBuilder crb, AMD64MacroAssembler masm) {
+    Register index = asRegister(resultValue);
+    Register from = asRegister(fromValue);
+    Register end = asRegister(endValue);
+
+    Label loop = new Label();
+    Label done = new Label();
+
+    masm.movl(index, from);
+    masm.testl(from, from);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, done);
+    masm.movl(end, asRegister(toValue));
+    masm.subl(end, from);
+    masm.jcc(AMD64Assembler.ConditionFlag.LessEqual, done);
+    // Whole vectors only.
+    masm.andl(end, -lanes);
+    masm.jcc(AMD64Assembler.ConditionFlag.Zero, done);
+    masm.addl(end, from);
+
+    for (int s = 0; s < scalarValues.length; s++) {
+      emitBroadcast(
+          masm, simdSize, elementKind, asRegister(broadcastValues[s]), asRegister(scalarValues[s]));
+    }
+
+    masm.bind(loop);
+    Register[] stack = new Register[stackValues.length];
+    int depth = 0;
+    for (int instruction : program) {
+      int op = instruction & 0xff;
+      int operand = instruction >>> 8;
+      if (op == LOAD) {
+        stack[depth] = asRegister(stackValues[depth]);
+        moveOp(elementKind).emit(masm, simdSize, stack[depth], elementAddress(operand, index));
+        depth++;
+      } else if (op == SCALAR) {
+        stack[depth++] = asRegister(broadcastValues[operand]);
+      } else {
+        depth--;
+        Register dst = asRegister(stackValues[depth - 1]);
+        binaryOp(elementKind, op).emit(masm, simdSize, dst, stack[depth - 1], stack[depth]);
+        stack[depth - 1] = dst;
+      }
+    }
+    moveOp(elementKind).emit(masm, simdSize, elementAddress(0, index), stack[0]);
+    masm.addl(index, lanes);
+    masm.cmpl(index, end);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, loop);
+
+    masm.bind(done);
+  }
+
+  /** Copies {@code scalar} to every lane of {@code dst}. */
+  static void emitBroadcast(
+      AMD64MacroAssembler masm,
+      AVXSize simdSize,
+      JavaKind elementKind,
+      Register dst,
+      Register scalar) {
+    boolean zmm = simdSize == AVXSize.ZMM;
+    switch (elementKind) {
+      case Int:
+        if (zmm) {
+          masm.vpbroadcastd(dst, scalar);
+        } else {
+          masm.movdl(dst, scalar);
+          AMD64Assembler.VexRMOp.VPBROADCASTD.emit(masm, simdSize, dst, dst);
+        }
+        break;
+      case Long:
+        if (zmm) {
+          masm.vpbroadcastq(dst, scalar);
+        } else {
+          masm.movdq(dst, scalar);
+          AMD64Assembler.VexRMOp.VPBROADCASTQ.emit(masm, simdSize, dst, dst);
+        }
+        break;
+      case Float:
+        AMD64Assembler.VexRMOp.VBROADCASTSS.emit(masm, simdSize, dst, scalar);
+        break;
+      default:
+        if (zmm) {
+          masm.vbroadcastsd(dst, scalar);
+        } else {
+          AMD64Assembler.VexRMOp.VBROADCASTSD.emit(masm, simdSize, dst, scalar);
+        }
+        break;
+    }
+  }
+
+  static VexMoveOp moveOp(JavaKind elementKind) {
+    switch (elementKind) {
+      case Int:
+        return VexMoveOp.VMOVDQU32;
+      case Long:
+        return VexMoveOp.VMOVDQU64;
+      case Float:
+        return VexMoveOp.VMOVUPS;
+      default:
+        return VexMoveOp.VMOVUPD;
+    }
+  }
+
+  /** The lane-wise instruction of {@code op} on vectors of {@code elementKind}. */
+  public static VexRVMOp binaryOp(JavaKind elementKind, int op) {
+    boolean integer = elementKind == JavaKind.Int || elementKind == JavaKind.Long;
+    boolean wide = elementKind == JavaKind.Long || elementKind == JavaKind.Double;
+    switch (op) {
+      case ADD:
+        return integer
+            ? (wide ? VexRVMOp.VPADDQ : VexRVMOp.VPADDD)
+            : (wide ? VexRVMOp.VADDPD : VexRVMOp.VADDPS);
+      case SUB:
+        return integer
+            ? (wide ? VexRVMOp.VPSUBQ : VexRVMOp.VPSUBD)
+            : (wide ? VexRVMOp.VSUBPD : VexRVMOp.VSUBPS);
+      case MUL:
+        // There is no packed 64-bit multiply below AVX512DQ.
+        GraalError.guarantee(elementKind != JavaKind.Long, "no packed long multiply");
+        return integer ? VexRVMOp.VPMULLD : (wide ? VexRVMOp.VMULPD : VexRVMOp.VMULPS);
+      case DIV:
+        GraalError.guarantee(!integer, "no packed integer divide");
+        return wide ? VexRVMOp.VDIVPD : VexRVMOp.VDIVPS;
+      case AND:
+        GraalError.guarantee(integer, "no packed floating-point and");
+        return VexRVMOp.VPAND;
+      case OR:
+        GraalError.guarantee(integer, "no packed floating-point or");
+        return VexRVMOp.VPOR;
+      case XOR:
+        GraalError.guarantee(integer, "no packed floating-point xor");
+        return VexRVMOp.VPXOR;
+      case MIN:
+        // There is no packed 64-bit minimum below AVX-512.
+        GraalError.guarantee(elementKind != JavaKind.Long, "no packed long minimum");
+        return integer ? VexRVMOp.VPMINSD : (wide ? VexRVMOp.VMINPD : VexRVMOp.VMINPS);
+      case MAX:
+        GraalError.guarantee(elementKind != JavaKind.Long, "no packed long maximum");
+        return integer ? VexRVMOp.VPMAXSD : (wide ? VexRVMOp.VMAXPD : VexRVMOp.VMAXPS);
+      default:
+        throw GraalError.shouldNotReachHere("vector map op " + op);
+    }
+  }
+
+  private AMD64Address elementAddress(int array, Register index) {
+    return new AMD64Address(asRegister(arrayPtrs[array]), index, scale, baseOffset);
+  }
+}
@@ -0,0 +1,273 @@
+package org.graalvm.compiler.lir.amd64.vec;
+
+import static jdk.vm.ci.code.ValueUtil.asRegister;
+import static org.graalvm.compiler.lir.LIRInstruction.OperandFlag.REG;
+
+import java.util.Objects;
+import jdk.vm.ci.amd64.AMD64Kind;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.Value;
+import org.graalvm.compiler.asm.Label;
+import org.graalvm.compiler.asm.amd64.AMD64Address;
+import org.graalvm.compiler.asm.amd64.AMD64Address.Scale;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler.VexMoveOp;
+import org.graalvm.compiler.asm.amd64.AMD64Assembler.VexRVMOp;
+import org.graalvm.compiler.asm.amd64.AMD64MacroAssembler;
+import org.graalvm.compiler.asm.amd64.AVXKind.AVXSize;
+import org.graalvm.compiler.core.common.LIRKind;
+import org.graalvm.compiler.debug.GraalError;
+import org.graalvm.compiler.lir.LIRInstructionClass;
+import org.graalvm.compiler.lir.Opcode;
+import org.graalvm.compiler.lir.amd64.AMD64LIRInstruction;
+import org.graalvm.compiler.lir.asm.CompilationResultBuilder;
+import org.graalvm.compiler.lir.gen.LIRGeneratorTool;
+
+/**
+ * The vector part of a reduction loop {@code for (i = from; i < end; i++) acc = acc op
+ * f(arrays[0][i], ..., scalars)}, where {@code f} is a {@link VectorMapOp} program and {@code op}
+ * is one of {@link VectorMapOp#ADD}, {@link VectorMapOp#AND}, {@link VectorMapOp#OR}, {@link
+ * VectorMapOp#XOR}, {@link VectorMapOp#MIN} or {@link VectorMapOp#MAX}. {@code end - from} must be
+ * a multiple of the lanes and is not checked; an empty range or a negative {@code from} does
+ * nothing.
+ *
+ * <p>The result is a vector of partial results whose lanes, reduced with {@code op}, give {@code
+ * acc}; the caller folds it. To hide the latency of {@code op}, the main loop keeps {@value
+ * #ACCUMULATORS} accumulators and does as many vectors per iteration, and a second loop does the
+ * remaining vectors into the first one. The initial {@code acc} goes into lane 0 of the first
+ * accumulator for {@code ADD} and {@code XOR}, with zeroes everywhere else, and into every lane of
+ * every accumulator for the idempotent ops, so no identity constants are needed.
+ *
+ * <p>The reduction is reassociated, which is exact for the integer ops but not for floating-point
+ * sums; the vectorizer only asks for those when relaxed floating-point semantics are enabled.
+ */
+@Opcode("VECTOR_REDUCE")
+public final class VectorReduceOp extends AMD64LIRInstruction {
+  public static final LIRInstructionClass<VectorReduceOp> TYPE =
+      LIRInstructionClass.create(VectorReduceOp.class);
+
+  public static final int ACCUMULATORS = 4;
+
+  private final JavaKind elementKind;
+  private final int reduceOp;
+  private final int[] program;
+  private final AVXSize simdSize;
+  private final int lanes;
+  private final int baseOffset;
+  private final Scale scale;
+
+  @Def({REG})
+  private Value resultValue;
+
+  @Alive({REG})
+  private Value fromValue;
+
+  @Alive({REG})
+  private Value endValue;
+
+  @Alive({REG})
+  private Value initValue;
+
+  @Alive({REG})
+  private Value[] arrayPtrs;
+
+  @Alive({REG})
+  private Value[] scalarValues;
+
+  @Temp({REG})
+  private Value[] accumulatorValues;
+
+  @Temp({REG})
+  private Value[] stackValues;
+
+  @Temp({REG})
+  private Value[] broadcastValues;
+
+  @Temp({REG})
+  private Value indexValue;
+
+  @Temp({REG})
+  private Value limitValue;
+
+  /**
+   * @param result a vector of the element kind, of the size chosen by {@code avx512}
+   * @param avx512 whether to use ZMM vectors, otherwise YMM vectors (AVX2)
+   */
+  public VectorReduceOp(
+      LIRGeneratorTool tool,
+      JavaKind elementKind,
+      int reduceOp,
+      int[] program,
+      Value result,
+      Value from,
+      Value end,
+      Value init,
+      Value[] arrays,
+      Value[] scalars,
+      boolean avx512) {
+    super(TYPE);
+    GraalError.guarantee(
+        reduceOp == VectorMapOp.ADD || reduceOp >= VectorMapOp.AND && reduceOp <= VectorMapOp.MAX,
+        "unsupported reduction %d",
+        reduceOp);
+    // Checks the op against the kind.
+    VectorMapOp.binaryOp(elementKind, reduceOp);
+    this.elementKind = elementKind;
+    this.reduceOp = reduceOp;
+    this.program = program;
+    this.simdSize = avx512 ? AVXSize.ZMM : AVXSize.YMM;
+    this.lanes = simdSize.getBytes() / elementKind.getByteCount();
+    baseOffset = tool.getProviders().getMetaAccess().getArrayBaseOffset(elementKind);
+    scale =
+        Objects.requireNonNull(
+            Scale.fromInt(tool.getProviders().getMetaAccess().getArrayIndexScale(elementKind)));
+
+    resultValue = result;
+    fromValue = from;
+    endValue = end;
+    initValue = init;
+    arrayPtrs = arrays;
+    scalarValues = scalars;
+
+    LIRKind vectorKind = result.getValueKind(LIRKind.class);
+    accumulatorValues = new Value[ACCUMULATORS - 1];
+    for (int a = 0; a < accumulatorValues.length; a++) {
+      accumulatorValues[a] = tool.newVariable(vectorKind);
+    }
+    stackValues = new Value[VectorMapOp.maxStackDepth(program, arrays.length, scalars.length)];
+    for (int s = 0; s < stackValues.length; s++) {
+      stackValues[s] = tool.newVariable(vectorKind);
+    }
+    broadcastValues = new Value[scalars.length];
+    for (int s = 0; s < scalars.length; s++) {
+      broadcastValues[s] = tool.newVariable(vectorKind);
+    }
+    indexValue = tool.newVariable(LIRKind.value(AMD64Kind.DWORD));
+    limitValue = tool.newVariable(LIRKind.value(AMD64Kind.DWORD));
+  }
+
+  @Override
+  public void emitCode(CompilationResultBuilder crb, AMD64MacroAssembler masm) {
+    Register index = asRegister(indexValue);
+    Register limit = asRegister(limitValue);
+    Register end = asRegister(endValue);
+    Register[] accumulators = new Register[ACCUMULATORS];
+    accumulators[0] = asRegister(resultValue);
+    for (int a = 1; a < ACCUMULATORS; a++) {
+      accumulators[a] = asRegister(accumulatorValues[a - 1]);
+    }
+    VexRVMOp op = VectorMapOp.binaryOp(elementKind, reduceOp);
+
+    emitInit(masm, accumulators);
+    for (int s = 0; s < scalarValues.length; s++) {
+      VectorMapOp.emitBroadcast(
+          masm, simdSize, elementKind, asRegister(broadcastValues[s]), asRegister(scalarValues[s]));
+    }
+
+    Label unrolled = new Label();
+    Label single = new Label();
+    Label singleCheck = new Label();
+    Label done = new Label();
+
+    masm.movl(index, asRegister(fromValue));
+    masm.testl(index, index);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, done);
+    // The last index at which all accumulators still get a whole vector.
+    masm.movl(limit, end);
+    masm.subl(limit, ACCUMULATORS * lanes);
+    masm.cmpl(index, limit);
+    masm.jcc(AMD64Assembler.ConditionFlag.Greater, singleCheck);
+    masm.bind(unrolled);
+    for (int a = 0; a < ACCUMULATORS; a++) {
+      Register value = emitProgram(masm, index, a * lanes);
+      op.emit(masm, simdSize, accumulators[a], accumulators[a], value);
+    }
+    masm.addl(index, ACCUMULATORS * lanes);
+    masm.cmpl(index, limit);
+    masm.jcc(AMD64Assembler.ConditionFlag.LessEqual, unrolled);
+
+    masm.bind(singleCheck);
+    masm.cmpl(index, end);
+    masm.jcc(AMD64Assembler.ConditionFlag.GreaterEqual, done);
+    masm.bind(single);
+    Register value = emitProgram(masm, index, 0);
+    op.emit(masm, simdSize, accumulators[0], accumulators[0], value);
+    masm.addl(index, lanes);
+    masm.cmpl(index, end);
+    masm.jcc(AMD64Assembler.ConditionFlag.Less, single);
+
+    masm.bind(done);
+    // Pairwise, so the two halves are independent.
+    op.emit(masm, simdSize, accumulators[0], accumulators[0], accumulators[1]);
+    op.emit(masm, simdSize, accumulators[2], accumulators[2], accumulators[3]);
+    op.emit(masm, simdSize, accumulators[0], accumulators[0], accumulators[2]);
+  }
+
+  private void emitInit(AMD64MacroAssembler masm, Register[] accumulators) {
+    Register init = asRegister(initValue);
+    Register first = accumulators[0];
+    if (reduceOp == VectorMapOp.ADD || reduceOp == VectorMapOp.XOR) {
+      for (Register accumulator : accumulators) {
+        VexRVMOp.VPXOR.emit(masm, simdSize, accumulator, accumulator, accumulator);
+      }
+      // VEX and EVEX writes of an XMM register clear the rest of the vector.
+      switch (elementKind) {
+        case Int:
+          VexMoveOp.VMOVD.emit(masm, AVXSize.XMM, first, init);
+          break;
+        case Long:
+          VexMoveOp.VMOVQ.emit(masm, AVXSize.XMM, first, init);
+          break;
+        case Float:
+          // 0.0 + init, which only differs from init in the sign of zero.
+          VexRVMOp.VADDSS.emit(masm, AVXSize.XMM, first, first, init);
+          break;
+        default:
+          VexRVMOp.VADDSD.emit(masm, AVXSize.XMM, first, first, init);
+          break;
+      }
+    } else {
+      VectorMapOp.emitBroadcast(masm, simdSize, elementKind, first, init);
+      for (int a = 1; a < accumulators.length; a++) {
+        VectorMapOp.moveOp(elementKind).emit(masm, simdSize, accumulators[a], first);
+      }
+    }
+  }
+
+  /**
+   * Evaluates the program on the vector {@code offset} elements after the index and returns the
+   * register holding the value.
+   */
+  private Register emitProgram(AMD64MacroAssembler masm, Register index, int offset) {
+    Register[] stack = new Register[stackValues.length];
+    int depth = 0;
+    for (int instruction : program) {
+      int op = instruction & 0xff;
+      int operand = instruction >>> 8;
+      if (op == VectorMapOp.LOAD) {
+        stack[depth] = asRegister(stackValues[depth]);
+        VectorMapOp.moveOp(elementKind)
+            .emit(masm, simdSize, stack[depth], elementAddress(operand, index, offset));
+        depth++;
+      } else if (op == VectorMapOp.SCALAR) {
+        stack[depth++] = asRegister(broadcastValues[operand]);
+      } else {
+        depth--;
+        Register dst = asRegister(stackValues[depth - 1]);
+        VectorMapOp.binaryOp(elementKind, op)
+            .emit(masm, simdSize, dst, stack[depth - 1], stack[depth]);
+        stack[depth - 1] = dst;
+      }
+    }
+    return stack[0];
+  }
+
+  private AMD64Address elementAddress(int array, Register index, int offset) {
+    return new AMD64Address(
+        asRegister(arrayPtrs[array]),
+        index,
+        scale,
+        baseOffset + offset * elementKind.getByteCount());
+  }
+}
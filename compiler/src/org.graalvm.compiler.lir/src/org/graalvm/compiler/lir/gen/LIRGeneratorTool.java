@@ -320,13 +320,22 @@ public interface LIRGeneratorTool extends DiagnosticLIRGeneratorTool, ValueKindF
         throw GraalError.unimplemented("Bulk zeroing is not implemented on this architecture");
     }
 
+    /**
+     * Emits {@code output[keys[i]] = op(output[keys[i]], values[i])} for {@code i} in
+     * {@code [from, to)}. {@code values} is {@link Value#ILLEGAL} for a histogram. With
+     * {@code offHeap}, {@code keys} and {@code values} are native addresses instead of arrays.
+     */
     @SuppressWarnings("unused")
-    default void emitVecAggregate(Value inputOffset, Value input, Value output) {
+    default void emitVecScatterReduce(int op, JavaKind valueKind, Value keys, Value values, Value from, Value to, Value output, boolean offHeap) {
         throw GraalError.unimplemented("AMD64 specific instruction.");
     }
 
+    /**
+     * Emits {@code output[i] += input[i] * multVal} for {@code i} in {@code [0, length)}. With
+     * {@code offHeap}, {@code input} and {@code output} are native addresses instead of arrays.
+     */
     @SuppressWarnings("unused")
-    default void emitSimdDoubleFmadd(Value length, Value multVal, Value input, Value output) {
+    default void emitSimdDoubleFmadd(Value length, Value multVal, Value input, Value output, boolean nonTemporal, boolean offHeap) {
         throw GraalError.unimplemented("AMD64 specific instruction.");
     }
 
@@ -350,15 +359,46 @@ public interface LIRGeneratorTool extends DiagnosticLIRGeneratorTool, ValueKindF
 
     @SuppressWarnings("unused")
     default void emitGotoKernel(Value arrs, Value kPanelSize,
-                                    Value i, Value k, Value j, int arch, int kernelType, int aLength, int bLength, int mLength, int kLength, int nLength, long[] calc, double[] constArgs, int[] varArgProperties, int[] miscArgs) {
+                                    Value i, Value k, Value j, int arch, int kernelType, int aLength, int bLength, int mLength, int kLength, int nLength, long[] calc, double[] constArgs, int[] varArgProperties, int[] miscArgs, int[] flatLayout, int[] prefetch, int[] batch,
+                                    JavaKind elementKind, boolean offHeap) {
+        throw GraalError.unimplemented("AMD64 specific instruction.");
+    }
+
+    @SuppressWarnings("unused")
+    default void emitGotoPack(Value src, Value ld, Value dst, Value dstOffset,
+                                    Value row, Value col, Value depth, int width, boolean transpose, boolean flat) {
         throw GraalError.unimplemented("AMD64 specific instruction.");
     }
 
+    /**
+     * {@code geometry} is {@code {imgHeight, imgWidth, kernelHeight, kernelWidth, strideH, strideW,
+     * padH, padW, dilationH, dilationW}}.
+     */
     @SuppressWarnings("unused")
     default void emitConvKernel(Value arrs, Value kPanelSize,
-                                    Value i, Value k, Value j, int kernelType, int aLength, int bLength, int outChannels, int inChannels, int imgLength, int kernelLength, long[] calc, double[] constArgs, int[] varArgProperties) {
+                                    Value i, Value k, Value j, int aLength, int bLength, int outChannels, int inChannels, int[] geometry) {
         throw GraalError.unimplemented("AMD64 specific instruction.");
     }
+
+    /**
+     * Emits the vector part of an element-wise loop over {@code [from, to)}; see
+     * {@code VectorMapNode}. Returns the index of the first element left to the scalar loop.
+     */
+    @SuppressWarnings("unused")
+    default Variable emitVectorMap(JavaKind elementKind, int[] program, Value from, Value to, Value[] arrays, Value[] scalars) {
+        throw GraalError.unimplemented("AMD64 specific instruction.");
+    }
+
+    /**
+     * Emits the vector part of a reduction loop over {@code [from, end)}, a whole number of
+     * vectors; see {@code VectorReduceNode}. Returns the reduction of {@code init} and all
+     * elements.
+     */
+    @SuppressWarnings("unused")
+    default Variable emitVectorReduce(JavaKind elementKind, int reduceOp, int[] program, Value from, Value end, Value init, Value[] arrays, Value[] scalars) {
+        throw GraalError.unimplemented("AMD64 specific instruction.");
+    }
+
     /**
      * Emits instruction(s) to flush an individual cache line that starts at {@code address}.
      */
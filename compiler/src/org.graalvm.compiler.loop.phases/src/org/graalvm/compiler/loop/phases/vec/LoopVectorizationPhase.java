@@ -0,0 +1,555 @@
+package org.graalvm.compiler.loop.phases.vec;
+
+import java.util.ArrayList;
+import java.util.List;
+import jdk.vm.ci.meta.JavaKind;
+import org.graalvm.compiler.core.common.GraalOptions;
+import org.graalvm.compiler.core.common.type.IntegerStamp;
+import org.graalvm.compiler.core.common.type.Stamp;
+import org.graalvm.compiler.graph.Node;
+import org.graalvm.compiler.graph.NodeBitMap;
+import org.graalvm.compiler.nodes.AbstractEndNode;
+import org.graalvm.compiler.nodes.ConstantNode;
+import org.graalvm.compiler.nodes.FixedNode;
+import org.graalvm.compiler.nodes.FixedWithNextNode;
+import org.graalvm.compiler.nodes.IfNode;
+import org.graalvm.compiler.nodes.LogicNode;
+import org.graalvm.compiler.nodes.LoopBeginNode;
+import org.graalvm.compiler.nodes.LoopEndNode;
+import org.graalvm.compiler.nodes.LoopExitNode;
+import org.graalvm.compiler.nodes.NamedLocationIdentity;
+import org.graalvm.compiler.nodes.NodeView;
+import org.graalvm.compiler.nodes.PhiNode;
+import org.graalvm.compiler.nodes.PiNode;
+import org.graalvm.compiler.nodes.StructuredGraph;
+import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.ValuePhiNode;
+import org.graalvm.compiler.nodes.VirtualState;
+import org.graalvm.compiler.nodes.calc.AddNode;
+import org.graalvm.compiler.nodes.calc.AndNode;
+import org.graalvm.compiler.nodes.calc.BinaryNode;
+import org.graalvm.compiler.nodes.calc.CompareNode;
+import org.graalvm.compiler.nodes.calc.ConditionalNode;
+import org.graalvm.compiler.nodes.calc.FloatDivNode;
+import org.graalvm.compiler.nodes.calc.FloatLessThanNode;
+import org.graalvm.compiler.nodes.calc.IntegerConvertNode;
+import org.graalvm.compiler.nodes.calc.IntegerLessThanNode;
+import org.graalvm.compiler.nodes.calc.LeftShiftNode;
+import org.graalvm.compiler.nodes.calc.MulNode;
+import org.graalvm.compiler.nodes.calc.OrNode;
+import org.graalvm.compiler.nodes.calc.SignExtendNode;
+import org.graalvm.compiler.nodes.calc.SubNode;
+import org.graalvm.compiler.nodes.calc.XorNode;
+import org.graalvm.compiler.nodes.calc.ZeroExtendNode;
+import org.graalvm.compiler.nodes.extended.GuardingNode;
+import org.graalvm.compiler.nodes.loop.BasicInductionVariable;
+import org.graalvm.compiler.nodes.loop.CountedLoopInfo;
+import org.graalvm.compiler.nodes.loop.InductionVariable;
+import org.graalvm.compiler.nodes.loop.InductionVariable.Direction;
+import org.graalvm.compiler.nodes.loop.LoopEx;
+import org.graalvm.compiler.nodes.loop.LoopsData;
+import org.graalvm.compiler.nodes.memory.FloatingReadNode;
+import org.graalvm.compiler.nodes.memory.GuardedMemoryAccess;
+import org.graalvm.compiler.nodes.memory.MemoryKill;
+import org.graalvm.compiler.nodes.memory.MemoryPhiNode;
+import org.graalvm.compiler.nodes.memory.OnHeapMemoryAccess.BarrierType;
+import org.graalvm.compiler.nodes.memory.ReadNode;
+import org.graalvm.compiler.nodes.memory.WriteNode;
+import org.graalvm.compiler.nodes.memory.address.AddressNode;
+import org.graalvm.compiler.nodes.memory.address.OffsetAddressNode;
+import org.graalvm.compiler.nodes.spi.CoreProviders;
+import org.graalvm.compiler.nodes.vec.VectorMapNode;
+import org.graalvm.compiler.nodes.vec.VectorReduceNode;
+import org.graalvm.compiler.options.OptionValues;
+import org.graalvm.compiler.phases.BasePhase;
+import org.graalvm.word.LocationIdentity;
+
+/**
+ * Vectorizes innermost counted loops {@code for (i = init; i < limit; i++) a[i] = f(b[i], ..., s)}
+ * whose body is a single store of an expression over loads at {@code i}, loop invariants and
+ * lane-wise ops, all of one element kind (int, long, float or double), and reductions {@code for
+ * (...) s = s op f(b[i], ...)} without a store, where {@code op} is {@code +}, {@code &}, {@code
+ * |}, {@code ^} or a minimum or maximum written as a conditional. Floating-point reductions are
+ * only vectorized with {@link GraalOptions#VectorizeFloatReductions}, since reassociating them
+ * changes the result.
+ *
+ * <p>A {@link VectorMapNode} is inserted in front of the loop and does whole vectors of the range;
+ * the loop itself starts where the vectors stopped and becomes the scalar post loop, so partial
+ * unrolling leaves it alone. A reduction becomes a {@link VectorReduceNode} whose result is the
+ * accumulator the scalar loop starts with. Loads and the store all use the same index, so every
+ * element only depends on elements of its own lane and the arrays may alias. The vector part uses
+ * unaligned moves and needs no alignment peeling. Bounds checks must have been moved out of the
+ * loop; a loop with anything else in its body, including a guard, is left alone.
+ */
+public class LoopVectorizationPhase extends BasePhase<CoreProviders> {
+
+  // Bounds that keep the vector op within the general-purpose and vector registers.
+  private static final int MAX_ARRAYS = 4;
+  private static final int MAX_SCALARS = 3;
+  private static final int MAX_STACK = 6;
+  private static final int MAX_OPS = 16;
+
+  private static final JavaKind[] KINDS = {
+    JavaKind.Int, JavaKind.Long, JavaKind.Float, JavaKind.Double
+  };
+
+  @Override
+  protected void run(StructuredGraph graph, CoreProviders context) {
+    if (!graph.hasLoops()) {
+      return;
+    }
+    LoopsData data = context.getLoopsDataProvider().getLoopsData(graph);
+    data.detectedCountedLoops();
+    for (LoopEx loop : data.countedLoops()) {
+      Candidate candidate = Candidate.match(loop, context);
+      if (candidate != null) {
+        candidate.vectorize();
+      }
+    }
+  }
+
+  /** A loop that matched, with the program of its store or reduction. */
+  private static final class Candidate {
+    private final LoopEx loop;
+    private final CoreProviders context;
+    private final NodeBitMap matched;
+
+    private ValuePhiNode phi;
+    private MemoryPhiNode memoryPhi;
+    private ValuePhiNode accumulator;
+    private int reduceOp;
+    private JavaKind kind;
+    private int lanes;
+    private LocationIdentity location;
+    private final List<Integer> program = new ArrayList<>();
+    private final List<ValueNode> arrays = new ArrayList<>();
+    private final List<ValueNode> scalars = new ArrayList<>();
+    private int ops;
+
+    private Candidate(LoopEx loop, CoreProviders context) {
+      this.loop = loop;
+      this.context = context;
+      this.matched = loop.loopBegin().graph().createNodeBitMap();
+    }
+
+    static Candidate match(LoopEx loop, CoreProviders context) {
+      Candidate candidate = new Candidate(loop, context);
+      return candidate.matchLoop() ? candidate : null;
+    }
+
+    private boolean matchLoop() {
+      LoopBeginNode loopBegin = loop.loopBegin();
+      CountedLoopInfo counted = loop.counted();
+      if (!loop.loop().getChildren().isEmpty()
+          || loop.loop().getBlocks().size() != 2
+          || !loopBegin.isSimpleLoop()
+          || loopBegin.forwardEndCount() != 1
+          || loopBegin.getLoopEndCount() != 1
+          || counted.isInverted()
+          || counted.isLimitIncluded()) {
+        return false;
+      }
+
+      // for (i = init; i < limit; i++), with a signed int i.
+      InductionVariable bodyIV = counted.getBodyIV();
+      if (!(bodyIV instanceof BasicInductionVariable) || counted.getLimitCheckedIV() != bodyIV) {
+        return false;
+      }
+      BasicInductionVariable iv = (BasicInductionVariable) bodyIV;
+      phi = iv.valueNode();
+      Stamp phiStamp = phi.stamp(NodeView.DEFAULT);
+      if (!iv.isConstantStride()
+          || iv.constantStride() != 1
+          || iv.direction() != Direction.Up
+          || !(phiStamp instanceof IntegerStamp)
+          || ((IntegerStamp) phiStamp).getBits() != 32) {
+        return false;
+      }
+      IfNode limitTest = counted.getLimitTest();
+      if (loopBegin.next() != limitTest
+          || limitTest.trueSuccessor() != counted.getBody()
+          || !(limitTest.condition() instanceof IntegerLessThanNode)) {
+        return false;
+      }
+      IntegerLessThanNode condition = (IntegerLessThanNode) limitTest.condition();
+      if (condition.getX() != phi || condition.getY() != counted.getLimit()) {
+        return false;
+      }
+
+      // The body is at most one store and the fixed reads feeding it.
+      LoopEndNode loopEnd = loopBegin.getSingleLoopEnd();
+      WriteNode write = null;
+      FixedNode node = counted.getBody().next();
+      while (node != loopEnd) {
+        if (node.getClass() == WriteNode.class && write == null) {
+          write = (WriteNode) node;
+        } else if (node.getClass() != ReadNode.class) {
+          return false;
+        }
+        node = ((FixedWithNextNode) node).next();
+      }
+      if (write != null ? !matchStore(write, loopEnd) : !matchReduction(loopEnd)) {
+        return false;
+      }
+
+      matched.mark(loopBegin);
+      matched.mark(loopEnd);
+      matched.mark(limitTest);
+      matched.mark(condition);
+      matched.mark(counted.getBody());
+      matched.mark(phi);
+      matched.mark(iv.getOp());
+      for (LoopExitNode exit : loopBegin.loopExits()) {
+        matched.mark(exit);
+      }
+      // Anything else in the loop could observe the elements in between.
+      for (Node n : loop.whole().nodes()) {
+        if (!matched.isMarked(n) && !(n instanceof VirtualState)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** {@code a[i] = f(...)}, with all loads before the store. */
+    private boolean matchStore(WriteNode write, LoopEndNode loopEnd) {
+      if (write.getBarrierType() != BarrierType.NONE || write.getNullCheck()) {
+        return false;
+      }
+      location = write.getLocationIdentity();
+      for (JavaKind k : KINDS) {
+        if (NamedLocationIdentity.getArrayLocation(k).equals(location)) {
+          kind = k;
+        }
+      }
+      if (kind == null || !matchLanes()) {
+        return false;
+      }
+
+      for (PhiNode loopPhi : loop.loopBegin().phis()) {
+        if (loopPhi == phi) {
+          continue;
+        }
+        if (!(loopPhi instanceof MemoryPhiNode)
+            || memoryPhi != null
+            || !((MemoryPhiNode) loopPhi).getLocationIdentity().equals(location)
+            || loopPhi.valueAt(loopEnd) != write) {
+          return false;
+        }
+        memoryPhi = (MemoryPhiNode) loopPhi;
+      }
+
+      arrays.add(arrayOf(write.getAddress()));
+      if (arrays.get(0) == null
+          || write.value().getStackKind() != kind
+          || !matchValue(write.value(), 0)) {
+        return false;
+      }
+      matched.mark(write);
+      if (memoryPhi != null) {
+        matched.mark(memoryPhi);
+      }
+      return true;
+    }
+
+    /**
+     * {@code acc = acc op f(...)} or {@code acc = f(...) op acc} with an associative {@code op},
+     * and no stores. Floating-point reductions are only reassociated when allowed.
+     */
+    private boolean matchReduction(LoopEndNode loopEnd) {
+      for (PhiNode loopPhi : loop.loopBegin().phis()) {
+        if (loopPhi == phi) {
+          continue;
+        }
+        if (!(loopPhi instanceof ValuePhiNode) || accumulator != null) {
+          return false;
+        }
+        accumulator = (ValuePhiNode) loopPhi;
+      }
+      if (accumulator == null) {
+        return false;
+      }
+      for (JavaKind k : KINDS) {
+        if (accumulator.getStackKind() == k) {
+          kind = k;
+        }
+      }
+      if (kind == null
+          || (!isInteger() && !GraalOptions.VectorizeFloatReductions.getValue(options()))
+          || !matchLanes()) {
+        return false;
+      }
+      location = NamedLocationIdentity.getArrayLocation(kind);
+
+      ValueNode next = accumulator.valueAt(loopEnd);
+      reduceOp = opOf(next);
+      if (reduceOp != VectorMapNode.ADD
+          && reduceOp != VectorMapNode.AND
+          && reduceOp != VectorMapNode.OR
+          && reduceOp != VectorMapNode.XOR
+          && reduceOp != VectorMapNode.MIN
+          && reduceOp != VectorMapNode.MAX) {
+        return false;
+      }
+      ValueNode[] operands = operandsOf(next);
+      ValueNode element;
+      if (operands[0] == accumulator && operands[1] != accumulator) {
+        element = operands[1];
+      } else if (operands[1] == accumulator && operands[0] != accumulator) {
+        element = operands[0];
+      } else {
+        return false;
+      }
+      if (!matchValue(element, 0)) {
+        return false;
+      }
+      markOp(next);
+      matched.mark(accumulator);
+      return true;
+    }
+
+    private boolean matchLanes() {
+      CountedLoopInfo counted = loop.counted();
+      lanes = context.getLowerer().vectorLoopLanes(kind);
+      return lanes != 0
+          && !(counted.isConstantMaxTripCount()
+              && counted.constantMaxTripCount().isLessThan(lanes));
+    }
+
+    /** Appends the program computing {@code value}, which lands in stack slot {@code depth}. */
+    private boolean matchValue(ValueNode value, int depth) {
+      if (depth >= MAX_STACK || value.getStackKind() != kind) {
+        return false;
+      }
+      if (loop.isOutsideLoop(value)) {
+        int scalar = scalars.indexOf(value);
+        if (scalar < 0) {
+          if (scalars.size() == MAX_SCALARS) {
+            return false;
+          }
+          scalar = scalars.size();
+          scalars.add(value);
+        }
+        program.add(VectorMapNode.instruction(VectorMapNode.SCALAR, scalar));
+        return true;
+      }
+      if (value instanceof ReadNode || value instanceof FloatingReadNode) {
+        return matchLoad(value);
+      }
+      int op = opOf(value);
+      if (op < 0 || ++ops > MAX_OPS) {
+        return false;
+      }
+      ValueNode[] operands = operandsOf(value);
+      if (!matchValue(operands[0], depth) || !matchValue(operands[1], depth + 1)) {
+        return false;
+      }
+      program.add(VectorMapNode.instruction(op, 0));
+      markOp(value);
+      return true;
+    }
+
+    private int opOf(ValueNode value) {
+      boolean integer = isInteger();
+      if (value instanceof AddNode) {
+        return VectorMapNode.ADD;
+      } else if (value instanceof SubNode) {
+        return VectorMapNode.SUB;
+      } else if (value instanceof MulNode && kind != JavaKind.Long) {
+        // There is no packed 64-bit multiply below AVX512DQ.
+        return VectorMapNode.MUL;
+      } else if (value instanceof FloatDivNode && !integer) {
+        return VectorMapNode.DIV;
+      } else if (value instanceof AndNode && integer) {
+        return VectorMapNode.AND;
+      } else if (value instanceof OrNode && integer) {
+        return VectorMapNode.OR;
+      } else if (value instanceof XorNode && integer) {
+        return VectorMapNode.XOR;
+      } else if (value instanceof ConditionalNode && kind != JavaKind.Long) {
+        // x < y ? x : y and x < y ? y : x. There is no packed 64-bit minimum below AVX-512, and
+        // the floating-point ones differ from the comparison for NaN and -0.0.
+        ConditionalNode conditional = (ConditionalNode) value;
+        LogicNode condition = conditional.condition();
+        if (integer
+            ? condition instanceof IntegerLessThanNode
+            : condition instanceof FloatLessThanNode
+                && GraalOptions.VectorizeFloatReductions.getValue(options())) {
+          CompareNode compare = (CompareNode) condition;
+          if (conditional.trueValue() == compare.getX()
+              && conditional.falseValue() == compare.getY()) {
+            return VectorMapNode.MIN;
+          } else if (conditional.trueValue() == compare.getY()
+              && conditional.falseValue() == compare.getX()) {
+            return VectorMapNode.MAX;
+          }
+        }
+      }
+      return -1;
+    }
+
+    /** The two operands of a value for which {@link #opOf} found an op. */
+    private static ValueNode[] operandsOf(ValueNode value) {
+      if (value instanceof ConditionalNode) {
+        CompareNode compare = (CompareNode) ((ConditionalNode) value).condition();
+        return new ValueNode[] {compare.getX(), compare.getY()};
+      }
+      BinaryNode binary = (BinaryNode) value;
+      return new ValueNode[] {binary.getX(), binary.getY()};
+    }
+
+    private void markOp(ValueNode value) {
+      matched.mark(value);
+      if (value instanceof ConditionalNode) {
+        matched.mark(((ConditionalNode) value).condition());
+      }
+    }
+
+    private boolean isInteger() {
+      return kind == JavaKind.Int || kind == JavaKind.Long;
+    }
+
+    private OptionValues options() {
+      return loop.loopBegin().graph().getOptions();
+    }
+
+    /** A plain read of the element kind at {@code i}, before the store if there is one. */
+    private boolean matchLoad(ValueNode read) {
+      AddressNode address;
+      BarrierType barrierType;
+      if (read instanceof ReadNode) {
+        ReadNode fixedRead = (ReadNode) read;
+        if (fixedRead.getClass() != ReadNode.class || fixedRead.getNullCheck()) {
+          return false;
+        }
+        address = fixedRead.getAddress();
+        barrierType = fixedRead.getBarrierType();
+      } else {
+        FloatingReadNode floatingRead = (FloatingReadNode) read;
+        MemoryKill lastAccess = floatingRead.getLastLocationAccess();
+        if (memoryPhi != null
+            ? lastAccess != memoryPhi
+            : lastAccess != null && !loop.isOutsideLoop(lastAccess.asNode())) {
+          return false;
+        }
+        address = floatingRead.getAddress();
+        barrierType = floatingRead.getBarrierType();
+      }
+      GuardingNode guard = ((GuardedMemoryAccess) read).getGuard();
+      if (!((GuardedMemoryAccess) read).getLocationIdentity().equals(location)
+          || barrierType != BarrierType.NONE
+          || (guard != null
+              && guard.asNode() != loop.counted().getBody()
+              && !loop.isOutsideLoop(guard.asNode()))) {
+        return false;
+      }
+      ValueNode array = arrayOf(address);
+      if (array == null) {
+        return false;
+      }
+      int index = arrays.indexOf(array);
+      if (index < 0) {
+        if (arrays.size() == MAX_ARRAYS) {
+          return false;
+        }
+        index = arrays.size();
+        arrays.add(array);
+      }
+      program.add(VectorMapNode.instruction(VectorMapNode.LOAD, index));
+      matched.mark(read);
+      return true;
+    }
+
+    /**
+     * The loop-invariant array of {@code address} if it is element {@code i} of an array of the
+     * element kind: {@code array + ((long) i << shift) + base}, as lowered array accesses are.
+     */
+    private ValueNode arrayOf(AddressNode address) {
+      if (!(address instanceof OffsetAddressNode)) {
+        return null;
+      }
+      OffsetAddressNode offsetAddress = (OffsetAddressNode) address;
+      if (!(offsetAddress.getOffset() instanceof AddNode)) {
+        return null;
+      }
+      AddNode offset = (AddNode) offsetAddress.getOffset();
+      int base = context.getMetaAccess().getArrayBaseOffset(kind);
+      if (!isConstant(offset.getY(), base) || !(offset.getX() instanceof LeftShiftNode)) {
+        return null;
+      }
+      LeftShiftNode scaled = (LeftShiftNode) offset.getX();
+      int shift = Integer.numberOfTrailingZeros(context.getMetaAccess().getArrayIndexScale(kind));
+      if (!isConstant(scaled.getY(), shift)
+          || !(scaled.getX() instanceof SignExtendNode || scaled.getX() instanceof ZeroExtendNode)) {
+        return null;
+      }
+      ValueNode extended = scaled.getX();
+      ValueNode index = ((IntegerConvertNode<?, ?>) extended).getValue();
+      if (index instanceof PiNode) {
+        matched.mark(index);
+        index = ((PiNode) index).object();
+      }
+      ValueNode array = offsetAddress.getBase();
+      if (index != phi || !loop.isOutsideLoop(array)) {
+        return null;
+      }
+      matched.mark(address);
+      matched.mark(offset);
+      matched.mark(scaled);
+      matched.mark(extended);
+      return array;
+    }
+
+    private static boolean isConstant(ValueNode value, long expected) {
+      return value.isJavaConstant() && value.asJavaConstant().asLong() == expected;
+    }
+
+    void vectorize() {
+      LoopBeginNode loopBegin = loop.loopBegin();
+      StructuredGraph graph = loopBegin.graph();
+      AbstractEndNode forwardEnd = loopBegin.forwardEnd();
+      int forwardIndex = loopBegin.phiPredecessorIndex(forwardEnd);
+      int[] code = new int[program.size()];
+      for (int i = 0; i < code.length; i++) {
+        code[i] = program.get(i);
+      }
+      ValueNode from = phi.valueAt(forwardIndex);
+      ValueNode limit = loop.counted().getLimit();
+      if (accumulator == null) {
+        VectorMapNode vectors =
+            graph.add(new VectorMapNode(kind, code, from, limit, arrays, scalars));
+        graph.addBeforeFixed(forwardEnd, vectors);
+        phi.setValueAt(forwardIndex, vectors);
+        if (memoryPhi != null) {
+          memoryPhi.setValueAt(forwardIndex, vectors);
+        }
+      } else {
+        // The whole vectors, as a VectorMapNode would do them:
+        // end = from < 0 || from >= limit ? from : from + ((limit - from) & -lanes).
+        ValueNode whole = new AndNode(new SubNode(limit, from), ConstantNode.forInt(-lanes));
+        ValueNode end =
+            graph.addOrUniqueWithInputs(
+                new ConditionalNode(
+                    new IntegerLessThanNode(from, ConstantNode.forInt(0)),
+                    from,
+                    new ConditionalNode(
+                        new IntegerLessThanNode(from, limit), new AddNode(from, whole), from)));
+        VectorReduceNode vectors =
+            graph.add(
+                new VectorReduceNode(
+                    kind,
+                    reduceOp,
+                    code,
+                    from,
+                    end,
+                    accumulator.valueAt(forwardIndex),
+                    arrays,
+                    scalars));
+        graph.addBeforeFixed(forwardEnd, vectors);
+        phi.setValueAt(forwardIndex, end);
+        accumulator.setValueAt(forwardIndex, vectors);
+      }
+      loopBegin.setPostLoop();
+    }
+  }
+}
@@ -28,6 +28,7 @@ import org.graalvm.compiler.graph.Node;
 import org.graalvm.compiler.nodes.ValueNode;
 import org.graalvm.compiler.nodes.calc.RoundNode;
 import org.graalvm.compiler.nodes.memory.address.AddressNode;
+import org.graalvm.compiler.nodes.vec.VecKernelSupport;
 import org.graalvm.compiler.options.OptionValues;
 
 import jdk.vm.ci.meta.JavaKind;
@@ -70,4 +71,20 @@ public interface LoweringProvider {
      */
     boolean supportsRounding();
 
+    /**
+     * Returns how many {@code kind} elements a {@code VectorMapNode} processes at once on this
+     * target platform, or 0 if loops over {@code kind} arrays cannot be vectorized.
+     */
+    default int vectorLoopLanes(@SuppressWarnings("unused") JavaKind kind) {
+        return 0;
+    }
+
+    /**
+     * Returns the vector kernels this target platform can emit for the kernel directives, or
+     * {@code null} if it has none.
+     */
+    default VecKernelSupport getVecKernelSupport() {
+        return null;
+    }
+
 }
@@ -0,0 +1,110 @@
+package org.graalvm.compiler.nodes.vec;
+
+import jdk.vm.ci.meta.ConstantReflectionProvider;
+import jdk.vm.ci.meta.JavaConstant;
+
+/**
+ * Decoded form of the constant {@code long[]} descriptor passed to {@code
+ * CompilerDirectives.convKernel}: {@code aLength, bLength, numLongsInOpString, opString...,
+ * numConstArgs, constArgs..., numVarArgs, varArgProperties..., outChannels, inChannels, imgLength,
+ * kernelLength, kernelType, miscArgs...}. Kernel type 0 is a square image and kernel with stride 1
+ * and no padding or dilation; kernel type 1 appends {@code imgWidth, kernelWidth, strideH, strideW,
+ * padH, padW, dilationH, dilationW}. The op string and the argument sections are ignored.
+ */
+public final class ConvKernelDescriptor {
+  // Keep in sync with ConvKernelOp.MAX_B_VECTORS and ConvKernelOp.MAX_TILE_REGISTERS.
+  private static final int MAX_B_VECTORS = 5;
+  private static final int MAX_TILE_REGISTERS = 29;
+
+  private final int aLength;
+  private final int bLength;
+  private final int outChannels;
+  private final int inChannels;
+  private final int kernelType;
+  // {imgHeight, imgWidth, kernelHeight, kernelWidth, strideH, strideW, padH, padW, dilationH,
+  // dilationW}
+  private final int[] geometry;
+
+  private ConvKernelDescriptor(long[] raw) {
+    int curr = 0;
+    this.aLength = (int) raw[curr++];
+    this.bLength = (int) raw[curr++];
+    curr += 1 + (int) raw[curr]; // op string
+    curr += 1 + (int) raw[curr]; // constArgs
+    curr += 1 + (int) raw[curr]; // varArgProperties
+    this.outChannels = (int) raw[curr++];
+    this.inChannels = (int) raw[curr++];
+    int imgHeight = (int) raw[curr++];
+    int kernelHeight = (int) raw[curr++];
+    this.kernelType = (int) raw[curr++];
+    if (kernelType == 1) {
+      this.geometry =
+          new int[] {
+            imgHeight,
+            (int) raw[curr++],
+            kernelHeight,
+            (int) raw[curr++],
+            (int) raw[curr++],
+            (int) raw[curr++],
+            (int) raw[curr++],
+            (int) raw[curr++],
+            (int) raw[curr++],
+            (int) raw[curr++]
+          };
+    } else {
+      this.geometry = new int[] {imgHeight, imgHeight, kernelHeight, kernelHeight, 1, 1, 0, 0, 1, 1};
+    }
+  }
+
+  /** Returns the decoded form of the constant {@code long[]} {@code descriptor}. */
+  public static ConvKernelDescriptor get(
+      ConstantReflectionProvider constantReflection, JavaConstant descriptor) {
+    long[] raw = new long[constantReflection.readArrayLength(descriptor)];
+    for (int i = 0; i < raw.length; i++) {
+      raw[i] = constantReflection.readArrayElement(descriptor, i).asLong();
+    }
+    return new ConvKernelDescriptor(raw);
+  }
+
+  /**
+   * Whether the compiled kernel can handle this descriptor: a known kernel type and a register tile
+   * of whole vectors that fits next to the kernel's index and mask registers.
+   */
+  public boolean isSupported() {
+    int bVectors = bLength / 8;
+    return (kernelType == 0 || kernelType == 1)
+        && aLength > 0
+        && bVectors > 0
+        && bLength % 8 == 0
+        && bVectors <= MAX_B_VECTORS
+        && 1 + bVectors + aLength * bVectors <= MAX_TILE_REGISTERS;
+  }
+
+  public int getALength() {
+    return aLength;
+  }
+
+  public int getBLength() {
+    return bLength;
+  }
+
+  public int getOutChannels() {
+    return outChannels;
+  }
+
+  public int getInChannels() {
+    return inChannels;
+  }
+
+  public int getKernelType() {
+    return kernelType;
+  }
+
+  /**
+   * {@code {imgHeight, imgWidth, kernelHeight, kernelWidth, strideH, strideW, padH, padW,
+   * dilationH, dilationW}}. The array is shared and must not be modified.
+   */
+  public int[] getGeometry() {
+    return geometry;
+  }
+}
@@ -40,117 +40,10 @@ public final class ConvKernelNode extends FixedWithNextNode implements LIRLowera
 
   @Override
   public void generate(NodeLIRBuilderTool gen) {
-    // int calcJavaConstant = calc.asJavaConstant().asInt();
-    int arrLen =
-        gen.getLIRGeneratorTool()
-            .getProviders()
-            .getConstantReflection()
-            .readArrayLength(constArgs.asJavaConstant());
-    int curr = 0;
-
-    int aLength =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int bLength =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int numLongsInOpString =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    long[] argLong = new long[numLongsInOpString];
-    for (int i = 0; i < argLong.length; i++) {
-      argLong[i] =
-          gen.getLIRGeneratorTool()
-              .getProviders()
-              .getConstantReflection()
-              .readArrayElement(constArgs.asJavaConstant(), curr++)
-              .asLong();
-    }
-    int numConstantArgs =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    double[] constDoubleArgs = new double[numConstantArgs];
-    for (int i = 0; i < constDoubleArgs.length; i++) {
-      // constDoubleArgs[i] = (double)
-      // gen.getLIRGeneratorTool().getProviders().getConstantReflection().readArrayElement(constArgs.asJavaConstant(), curr++).asLong();
-      constDoubleArgs[i] =
-          Double.longBitsToDouble(
-              gen.getLIRGeneratorTool()
-                  .getProviders()
-                  .getConstantReflection()
-                  .readArrayElement(constArgs.asJavaConstant(), curr++)
-                  .asLong());
-    }
-    int numVarArgs =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int[] varArgProperties = new int[numVarArgs];
-    for (int i = 0; i < varArgProperties.length; i++) {
-      varArgProperties[i] =
-          (int)
-              gen.getLIRGeneratorTool()
-                  .getProviders()
-                  .getConstantReflection()
-                  .readArrayElement(constArgs.asJavaConstant(), curr++)
-                  .asLong();
-    }
-
-    int outChannels =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int inChannels =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int imgLength =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int kernelLength =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-
-    int kernelType =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
+    ConvKernelDescriptor descriptor =
+        ConvKernelDescriptor.get(
+            gen.getLIRGeneratorTool().getProviders().getConstantReflection(),
+            constArgs.asJavaConstant());
 
     gen.getLIRGeneratorTool()
         .emitConvKernel(
@@ -159,15 +52,10 @@ public final class ConvKernelNode extends FixedWithNextNode implements LIRLowera
             gen.operand(i),
             gen.operand(k),
             gen.operand(j),
-            kernelType,
-            aLength,
-            bLength,
-            outChannels,
-            inChannels,
-            imgLength,
-            kernelLength,
-            argLong,
-            constDoubleArgs,
-            varArgProperties);
+            descriptor.getALength(),
+            descriptor.getBLength(),
+            descriptor.getOutChannels(),
+            descriptor.getInChannels(),
+            descriptor.getGeometry());
   }
 }
@@ -0,0 +1,370 @@
+package org.graalvm.compiler.nodes.vec;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import jdk.vm.ci.meta.ConstantReflectionProvider;
+import jdk.vm.ci.meta.JavaConstant;
+import org.graalvm.compiler.debug.CounterKey;
+import org.graalvm.compiler.debug.DebugContext;
+
+/**
+ * Decoded form of the constant {@code long[]} descriptor passed to {@code
+ * CompilerDirectives.gotoKernel}: {@code arch, aLength, bLength, numLongsInOpString, opString...,
+ * numConstArgs, constArgs..., numVarArgs, varArgProperties..., mLength, kLength, nLength,
+ * kernelType, miscArgs...}. {@code kernelType} may carry the {@value #FLAT_LAYOUT} flag, in which
+ * case {@code miscArgs} continues with {@code lda, ldb, ldc, aOffset, bOffset, cOffset} (see {@link
+ * #getFlatLayout()}), the {@value #PREFETCH} flag, in which case it continues with {@code
+ * prefetchOperands, prefetchLevel, prefetchDistance} (see {@link #getPrefetch()}), and the {@value
+ * #BATCHED} flag, in which case it ends with {@code aBatchStride, bBatchStride, cBatchStride} (see
+ * {@link #getBatch()}).
+ *
+ * <p>Call sites usually share a handful of descriptors, so decoded descriptors are kept in a
+ * process-wide cache keyed by the descriptor's contents. A cache hit returns the same instance, and
+ * with it the same {@link #getCalc()} array, which lets later stages cache by identity. The
+ * returned arrays are shared and must not be modified. Since compiled code is specialized to the
+ * contents of a descriptor, a descriptor must not change once it has been passed to the directive;
+ * decoded descriptors are therefore also memoized per constant, so compiling another call site with
+ * the same array reads none of its elements.
+ */
+public final class GotoKernelDescriptor {
+  private static final int CACHE_LIMIT = 1024;
+  private static final int FLAT_LAYOUT = 0x10;
+  private static final int FLAT_LAYOUT_LENGTH = 6;
+  private static final int PREFETCH = 0x20;
+  private static final int PREFETCH_LENGTH = 3;
+  private static final int BATCHED = 0x40;
+  private static final int BATCH_LENGTH = 3;
+  // Opmask registers for the B vectors of a tile at the N edge.
+  private static final int MAX_MASKED_B_VECTORS = 5;
+  // Kernel types over quantized operands, accumulating into an int[].
+  private static final int KERNEL_INT8 = 6;
+  private static final int KERNEL_INT16 = 7;
+  // Program word between the instructions run for every k step and the epilogue.
+  private static final long EPILOGUE_SEPARATOR = 1;
+  // Variable argument properties of the vectors read by the epilogue.
+  private static final int EPILOGUE_ROW_VECTOR = 4;
+  private static final int EPILOGUE_COLUMN_VECTOR = 5;
+  // Tile rows or columns plus the unrolled and prefetched k steps a displacement may span.
+  private static final int MAX_DISPLACEMENT_STEPS = 64;
+  // Keeps the prefetched k steps within MAX_DISPLACEMENT_STEPS.
+  private static final int MAX_PREFETCH_DISTANCE = 32;
+  private static final ConcurrentHashMap<Key, GotoKernelDescriptor> CACHE =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<JavaConstant, GotoKernelDescriptor> BY_CONSTANT =
+      new ConcurrentHashMap<>();
+
+  private static final CounterKey CACHE_HITS = DebugContext.counter("GotoKernelDescriptor_Hits");
+  private static final CounterKey CACHE_MISSES =
+      DebugContext.counter("GotoKernelDescriptor_Misses");
+
+  private final int arch;
+  private final int aLength;
+  private final int bLength;
+  private final long[] calc;
+  private final double[] constArgs;
+  private final int[] varArgProperties;
+  private final int mLength;
+  private final int kLength;
+  private final int nLength;
+  private final int kernelType;
+  private final int[] miscArgs;
+  private final int[] flatLayout;
+  private final int[] prefetch;
+  private final int[] batch;
+
+  private GotoKernelDescriptor(long[] raw) {
+    int curr = 0;
+    this.arch = (int) raw[curr++];
+    this.aLength = (int) raw[curr++];
+    this.bLength = (int) raw[curr++];
+    this.calc = Arrays.copyOfRange(raw, curr + 1, curr + 1 + (int) raw[curr]);
+    curr += 1 + calc.length;
+    this.constArgs = new double[(int) raw[curr++]];
+    for (int i = 0; i < constArgs.length; i++) {
+      constArgs[i] = Double.longBitsToDouble(raw[curr++]);
+    }
+    this.varArgProperties = new int[(int) raw[curr++]];
+    for (int i = 0; i < varArgProperties.length; i++) {
+      varArgProperties[i] = (int) raw[curr++];
+    }
+    this.mLength = (int) raw[curr++];
+    this.kLength = (int) raw[curr++];
+    this.nLength = (int) raw[curr++];
+    int rawKernelType = (int) raw[curr++];
+    this.kernelType = rawKernelType & ~(FLAT_LAYOUT | PREFETCH | BATCHED);
+    if (kernelType == 4 || kernelType == 5) { // is packed kernel?
+      this.miscArgs = new int[3];
+      for (int i = 0; i < miscArgs.length; i++) {
+        miscArgs[i] = (int) raw[curr++];
+      }
+    } else {
+      this.miscArgs = null;
+    }
+    if ((rawKernelType & FLAT_LAYOUT) != 0) {
+      this.flatLayout = new int[FLAT_LAYOUT_LENGTH];
+      for (int i = 0; i < flatLayout.length; i++) {
+        flatLayout[i] = (int) raw[curr++];
+      }
+    } else {
+      this.flatLayout = null;
+    }
+    if ((rawKernelType & PREFETCH) != 0) {
+      this.prefetch = new int[PREFETCH_LENGTH];
+      for (int i = 0; i < prefetch.length; i++) {
+        prefetch[i] = (int) raw[curr++];
+      }
+    } else {
+      this.prefetch = null;
+    }
+    if ((rawKernelType & BATCHED) != 0) {
+      this.batch = new int[BATCH_LENGTH];
+      for (int i = 0; i < batch.length; i++) {
+        batch[i] = (int) raw[curr++];
+      }
+    } else {
+      this.batch = null;
+    }
+  }
+
+  /** Returns the decoded form of the constant {@code long[]} {@code descriptor}. */
+  public static GotoKernelDescriptor get(
+      ConstantReflectionProvider constantReflection, JavaConstant descriptor, DebugContext debug) {
+    GotoKernelDescriptor memoized = BY_CONSTANT.get(descriptor);
+    if (memoized != null) {
+      CACHE_HITS.increment(debug);
+      return memoized;
+    }
+    GotoKernelDescriptor decoded = decode(constantReflection, descriptor, debug);
+    if (BY_CONSTANT.size() >= CACHE_LIMIT) {
+      BY_CONSTANT.clear();
+    }
+    BY_CONSTANT.put(descriptor, decoded);
+    return decoded;
+  }
+
+  private static GotoKernelDescriptor decode(
+      ConstantReflectionProvider constantReflection, JavaConstant descriptor, DebugContext debug) {
+    long[] raw = new long[constantReflection.readArrayLength(descriptor)];
+    for (int i = 0; i < raw.length; i++) {
+      raw[i] = constantReflection.readArrayElement(descriptor, i).asLong();
+    }
+    Key key = new Key(raw);
+    GotoKernelDescriptor decoded = CACHE.get(key);
+    if (decoded != null) {
+      CACHE_HITS.increment(debug);
+      return decoded;
+    }
+    CACHE_MISSES.increment(debug);
+    if (CACHE.size() >= CACHE_LIMIT) {
+      CACHE.clear();
+    }
+    decoded = new GotoKernelDescriptor(raw);
+    GotoKernelDescriptor previous = CACHE.putIfAbsent(key, decoded);
+    return previous != null ? previous : decoded;
+  }
+
+  public int getArch() {
+    return arch;
+  }
+
+  public int getALength() {
+    return aLength;
+  }
+
+  public int getBLength() {
+    return bLength;
+  }
+
+  public long[] getCalc() {
+    return calc;
+  }
+
+  public double[] getConstArgs() {
+    return constArgs;
+  }
+
+  public int[] getVarArgProperties() {
+    return varArgProperties;
+  }
+
+  public int getMLength() {
+    return mLength;
+  }
+
+  public int getKLength() {
+    return kLength;
+  }
+
+  public int getNLength() {
+    return nLength;
+  }
+
+  /** The kernel type without the flat layout, prefetch and batch flags. */
+  public int getKernelType() {
+    return kernelType;
+  }
+
+  /**
+   * {@code lda, ldb, ldc, aOffset, bOffset, cOffset} in elements for flat row-major operands, or
+   * null if the operands are arrays of rows.
+   */
+  public int[] getFlatLayout() {
+    return flatLayout;
+  }
+
+  /**
+   * {@code operands, level, distance} of an explicit software prefetch policy, where {@code
+   * operands} is a set of A (1) and B (2), {@code level} 0 to 2 selects prefetcht0 to prefetcht2
+   * and {@code distance} counts k steps; null for the kernel type's built-in policy.
+   */
+  public int[] getPrefetch() {
+    return prefetch;
+  }
+
+  /**
+   * {@code aBatchStride, bBatchStride, cBatchStride} in elements between the operands of
+   * consecutive problems of a batched descriptor, or null if the descriptor is not batched.
+   */
+  public int[] getBatch() {
+    return batch;
+  }
+
+  /** Whether the program has an epilogue, run once per tile after the last k step. */
+  public boolean hasEpilogue() {
+    for (long word : calc) {
+      if (word == EPILOGUE_SEPARATOR) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Whether a variable argument other than an epilogue vector is read for every k step. */
+  private boolean hasMainVarArgs() {
+    for (int property : varArgProperties) {
+      if (property != EPILOGUE_ROW_VECTOR && property != EPILOGUE_COLUMN_VECTOR) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Whether the kernel type is one of the integer kernel types. */
+  public boolean isInteger() {
+    return kernelType == KERNEL_INT8 || kernelType == KERNEL_INT16;
+  }
+
+  /**
+   * Whether the floating-point kernel can be emitted. Flat operands are addressed with the leading
+   * dimensions and offsets folded into 32-bit immediates and displacements, which must not
+   * overflow; the prefetch distance is bounded for the same reason. Only the flat kernels run an
+   * epilogue. Batched descriptors are only emitted for {@code gotoKernelBatched}.
+   */
+  public boolean isSupported() {
+    return !isInteger() && batch == null && canAddress();
+  }
+
+  /**
+   * Whether the batched kernel can be emitted: a flat kernel that covers the whole of N of every
+   * problem, with masks for a tile at the N edge or with tiles that divide N, and whose batch
+   * strides in bytes fit 32-bit immediates. Below AVX-512 only the AB and ATB kernels without an
+   * epilogue have a (ymm) version.
+   */
+  public boolean supportsBatched(boolean isFloat) {
+    if (batch == null || flatLayout == null || kernelType > 3 || hasMainVarArgs()) {
+      return false;
+    }
+    if (isFloat && kernelType > 1) {
+      // Like supportsFloat(), only the kernel types that read B and C contiguously.
+      return false;
+    }
+    for (int stride : batch) {
+      if ((long) stride * Double.BYTES > Integer.MAX_VALUE) {
+        return false;
+      }
+    }
+    if (arch < 2) {
+      return kernelType <= 1 && !hasEpilogue() && nLength % bLength == 0 && canAddress();
+    }
+    // On AVX-512 the N edge is masked for the kernel types that do not gather B or C.
+    int lanes = isFloat ? 16 : 8;
+    boolean masked = kernelType <= 1 && bLength <= MAX_MASKED_B_VECTORS * lanes;
+    return (masked || nLength % bLength == 0) && canAddress();
+  }
+
+  /**
+   * Whether the integer kernel can be emitted: one of the integer kernel types over flat operands,
+   * without variable arguments or an epilogue.
+   */
+  public boolean supportsInteger() {
+    return isInteger()
+        && flatLayout != null
+        && batch == null
+        && varArgProperties.length == 0
+        && !hasEpilogue()
+        && canAddress();
+  }
+
+  private boolean canAddress() {
+    if (hasEpilogue() && (flatLayout == null || kernelType > 3)) {
+      return false;
+    }
+    if (prefetch != null
+        && (prefetch[1] < 0
+            || prefetch[1] > 2
+            || prefetch[2] < 0
+            || prefetch[2] > MAX_PREFETCH_DISTANCE)) {
+      return false;
+    }
+    if (flatLayout == null) {
+      return true;
+    }
+    long maxLd = Math.max(flatLayout[0], Math.max(flatLayout[1], flatLayout[2]));
+    long maxSpan = maxLd * Double.BYTES * MAX_DISPLACEMENT_STEPS;
+    long resultRowOffset = (flatLayout[5] + (long) aLength * flatLayout[2]) * Double.BYTES;
+    return maxSpan <= Integer.MAX_VALUE && resultRowOffset <= Integer.MAX_VALUE;
+  }
+
+  /**
+   * Whether the kernel has a float version. Only the plain AB kernel, and with flat operands also
+   * the ATB kernel, without variable arguments other than epilogue vectors is emitted for floats.
+   */
+  public boolean supportsFloat() {
+    boolean contiguous = kernelType == 0 || (flatLayout != null && kernelType == 1);
+    return isSupported() && contiguous && !hasMainVarArgs();
+  }
+
+  /**
+   * Whether the kernel has an off-heap version: operands at native addresses are only read through
+   * a flat layout, by the unpacked kernel types without variable arguments other than epilogue
+   * vectors, whose addresses follow those of A, B and C.
+   */
+  public boolean supportsOffHeap() {
+    return isSupported() && flatLayout != null && kernelType <= 3 && !hasMainVarArgs();
+  }
+
+  /** {@code kPack, aAlignmentOffset, bAlignmentOffset} for packed kernels, otherwise null. */
+  public int[] getMiscArgs() {
+    return miscArgs;
+  }
+
+  private static final class Key {
+    private final long[] raw;
+    private final int hash;
+
+    Key(long[] raw) {
+      this.raw = raw;
+      this.hash = Arrays.hashCode(raw);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && Arrays.equals(raw, ((Key) obj).raw);
+    }
+  }
+}
@@ -3,25 +3,37 @@ package org.graalvm.compiler.nodes.vec;
 import static org.graalvm.compiler.nodeinfo.NodeCycles.CYCLES_1;
 import static org.graalvm.compiler.nodeinfo.NodeSize.SIZE_1;
 
+import jdk.vm.ci.meta.JavaKind;
 import org.graalvm.compiler.core.common.type.StampFactory;
 import org.graalvm.compiler.graph.NodeClass;
 import org.graalvm.compiler.nodeinfo.NodeInfo;
 import org.graalvm.compiler.nodes.FixedWithNextNode;
+import org.graalvm.compiler.nodes.NamedLocationIdentity;
 import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.memory.SingleMemoryKill;
 import org.graalvm.compiler.nodes.spi.LIRLowerable;
 import org.graalvm.compiler.nodes.spi.NodeLIRBuilderTool;
+import org.graalvm.word.LocationIdentity;
 
 @NodeInfo(cycles = CYCLES_1, size = SIZE_1)
-public final class GotoKernelNode extends FixedWithNextNode implements LIRLowerable {
+public final class GotoKernelNode extends FixedWithNextNode
+    implements LIRLowerable, SingleMemoryKill {
   public static final NodeClass<GotoKernelNode> TYPE = NodeClass.create(GotoKernelNode.class);
 
   @Input ValueNode arrs;
+  // The number of problems for a batched descriptor, whose i, k and j are unused.
   @Input ValueNode kPanelSize;
   @Input ValueNode i;
   @Input ValueNode k;
   @Input ValueNode j;
   @Input ValueNode constArgs;
 
+  // Element type of A, B and C: JavaKind.Double, or JavaKind.Float for float[][] operands, or
+  // JavaKind.Int for the integer kernel types, which accumulate into an int[].
+  private final JavaKind elementKind;
+  // arrs is a long[] of native addresses instead of an Object[] of arrays.
+  private final boolean offHeap;
+
   public GotoKernelNode(
       ValueNode arrs,
       ValueNode kPanelSize,
@@ -29,6 +41,29 @@ public final class GotoKernelNode extends FixedWithNextNode implements LIRLowera
       ValueNode k,
       ValueNode j,
       ValueNode constArgs) {
+    this(arrs, kPanelSize, i, k, j, constArgs, JavaKind.Double);
+  }
+
+  public GotoKernelNode(
+      ValueNode arrs,
+      ValueNode kPanelSize,
+      ValueNode i,
+      ValueNode k,
+      ValueNode j,
+      ValueNode constArgs,
+      JavaKind elementKind) {
+    this(arrs, kPanelSize, i, k, j, constArgs, elementKind, false);
+  }
+
+  public GotoKernelNode(
+      ValueNode arrs,
+      ValueNode kPanelSize,
+      ValueNode i,
+      ValueNode k,
+      ValueNode j,
+      ValueNode constArgs,
+      JavaKind elementKind,
+      boolean offHeap) {
     super(TYPE, StampFactory.forVoid());
     this.arrs = arrs;
     this.kPanelSize = kPanelSize;
@@ -36,147 +71,26 @@ public final class GotoKernelNode extends FixedWithNextNode implements LIRLowera
     this.k = k;
     this.j = j;
     this.constArgs = constArgs;
+    this.elementKind = elementKind;
+    this.offHeap = offHeap;
   }
 
   @Override
-  public void generate(NodeLIRBuilderTool gen) {
-    // int calcJavaConstant = calc.asJavaConstant().asInt();
-    int arrLen =
-        gen.getLIRGeneratorTool()
-            .getProviders()
-            .getConstantReflection()
-            .readArrayLength(constArgs.asJavaConstant());
-    int curr = 0;
-
-    int arch =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-
-    int aLength =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int bLength =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int numLongsInOpString =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    long[] argLong = new long[numLongsInOpString];
-    for (int i = 0; i < argLong.length; i++) {
-      argLong[i] =
-          gen.getLIRGeneratorTool()
-              .getProviders()
-              .getConstantReflection()
-              .readArrayElement(constArgs.asJavaConstant(), curr++)
-              .asLong();
-    }
-    int numConstantArgs =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    double[] constDoubleArgs = new double[numConstantArgs];
-    for (int i = 0; i < constDoubleArgs.length; i++) {
-      // constDoubleArgs[i] = (double)
-      // gen.getLIRGeneratorTool().getProviders().getConstantReflection().readArrayElement(constArgs.asJavaConstant(), curr++).asLong();
-      constDoubleArgs[i] =
-          Double.longBitsToDouble(
-              gen.getLIRGeneratorTool()
-                  .getProviders()
-                  .getConstantReflection()
-                  .readArrayElement(constArgs.asJavaConstant(), curr++)
-                  .asLong());
+  public LocationIdentity getKilledLocationIdentity() {
+    if (offHeap || elementKind == JavaKind.Int) {
+      // An integer kernel may also write C dequantized to a float[].
+      return LocationIdentity.any();
     }
-    int numVarArgs =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int[] varArgProperties = new int[numVarArgs];
-    for (int i = 0; i < varArgProperties.length; i++) {
-      varArgProperties[i] =
-          (int)
-              gen.getLIRGeneratorTool()
-                  .getProviders()
-                  .getConstantReflection()
-                  .readArrayElement(constArgs.asJavaConstant(), curr++)
-                  .asLong();
-    }
-
-    int mLength =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int kLength =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int nLength =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
-    int kernelType =
-        (int)
-            gen.getLIRGeneratorTool()
-                .getProviders()
-                .getConstantReflection()
-                .readArrayElement(constArgs.asJavaConstant(), curr++)
-                .asLong();
+    return NamedLocationIdentity.getArrayLocation(elementKind);
+  }
 
-    int[] miscArgs = null;
-    if (kernelType == 4) { // is packed kernel?
-      miscArgs = new int[3];
-      miscArgs[0] =
-          (int)
-              gen.getLIRGeneratorTool()
-                  .getProviders()
-                  .getConstantReflection()
-                  .readArrayElement(constArgs.asJavaConstant(), curr++)
-                  .asLong();
-      miscArgs[1] =
-          (int)
-              gen.getLIRGeneratorTool()
-                  .getProviders()
-                  .getConstantReflection()
-                  .readArrayElement(constArgs.asJavaConstant(), curr++)
-                  .asLong();
-      miscArgs[2] =
-          (int)
-              gen.getLIRGeneratorTool()
-                  .getProviders()
-                  .getConstantReflection()
-                  .readArrayElement(constArgs.asJavaConstant(), curr++)
-                  .asLong();
-    }
+  @Override
+  public void generate(NodeLIRBuilderTool gen) {
+    GotoKernelDescriptor descriptor =
+        GotoKernelDescriptor.get(
+            gen.getLIRGeneratorTool().getProviders().getConstantReflection(),
+            constArgs.asJavaConstant(),
+            graph().getDebug());
 
     gen.getLIRGeneratorTool()
         .emitGotoKernel(
@@ -185,16 +99,21 @@ public final class GotoKernelNode extends FixedWithNextNode implements LIRLowera
             gen.operand(i),
             gen.operand(k),
             gen.operand(j),
-            arch,
-            kernelType,
-            aLength,
-            bLength,
-            mLength,
-            kLength,
-            nLength,
-            argLong,
-            constDoubleArgs,
-            varArgProperties,
-            miscArgs);
+            descriptor.getArch(),
+            descriptor.getKernelType(),
+            descriptor.getALength(),
+            descriptor.getBLength(),
+            descriptor.getMLength(),
+            descriptor.getKLength(),
+            descriptor.getNLength(),
+            descriptor.getCalc(),
+            descriptor.getConstArgs(),
+            descriptor.getVarArgProperties(),
+            descriptor.getMiscArgs(),
+            descriptor.getFlatLayout(),
+            descriptor.getPrefetch(),
+            descriptor.getBatch(),
+            elementKind,
+            offHeap);
   }
 }
@@ -0,0 +1,75 @@
+package org.graalvm.compiler.nodes.vec;
+
+import static org.graalvm.compiler.nodeinfo.NodeCycles.CYCLES_1;
+import static org.graalvm.compiler.nodeinfo.NodeSize.SIZE_1;
+
+import jdk.vm.ci.meta.ConstantReflectionProvider;
+import jdk.vm.ci.meta.JavaConstant;
+import org.graalvm.compiler.core.common.type.StampFactory;
+import org.graalvm.compiler.graph.NodeClass;
+import org.graalvm.compiler.nodeinfo.NodeInfo;
+import org.graalvm.compiler.nodes.FixedWithNextNode;
+import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.spi.LIRLowerable;
+import org.graalvm.compiler.nodes.spi.NodeLIRBuilderTool;
+
+/**
+ * Packs one panel of a GEMM operand for the packed Goto kernels. {@code constArgs} is the constant
+ * {@code {width, transpose, flat}} descriptor built by {@code GotoPacking}.
+ */
+@NodeInfo(cycles = CYCLES_1, size = SIZE_1)
+public final class GotoPackNode extends FixedWithNextNode implements LIRLowerable {
+  public static final NodeClass<GotoPackNode> TYPE = NodeClass.create(GotoPackNode.class);
+
+  @Input ValueNode src;
+  @Input ValueNode ld;
+  @Input ValueNode dst;
+  @Input ValueNode dstOffset;
+  @Input ValueNode row;
+  @Input ValueNode col;
+  @Input ValueNode depth;
+  @Input ValueNode constArgs;
+
+  public GotoPackNode(
+      ValueNode src,
+      ValueNode ld,
+      ValueNode dst,
+      ValueNode dstOffset,
+      ValueNode row,
+      ValueNode col,
+      ValueNode depth,
+      ValueNode constArgs) {
+    super(TYPE, StampFactory.forVoid());
+    this.src = src;
+    this.ld = ld;
+    this.dst = dst;
+    this.dstOffset = dstOffset;
+    this.row = row;
+    this.col = col;
+    this.depth = depth;
+    this.constArgs = constArgs;
+  }
+
+  @Override
+  public void generate(NodeLIRBuilderTool gen) {
+    ConstantReflectionProvider constantReflection =
+        gen.getLIRGeneratorTool().getProviders().getConstantReflection();
+    JavaConstant descriptor = constArgs.asJavaConstant();
+    int width = (int) constantReflection.readArrayElement(descriptor, 0).asLong();
+    boolean transpose = constantReflection.readArrayElement(descriptor, 1).asLong() != 0;
+    boolean flat = constantReflection.readArrayElement(descriptor, 2).asLong() != 0;
+
+    gen.getLIRGeneratorTool()
+        .emitGotoPack(
+            gen.operand(src),
+            gen.operand(ld),
+            gen.operand(dst),
+            gen.operand(dstOffset),
+            gen.operand(row),
+            gen.operand(col),
+            gen.operand(depth),
+            width,
+            transpose,
+            flat);
+  }
+}
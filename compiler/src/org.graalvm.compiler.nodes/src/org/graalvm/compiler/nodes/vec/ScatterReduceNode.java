@@ -0,0 +1,110 @@
+package org.graalvm.compiler.nodes.vec;
+
+import static org.graalvm.compiler.nodeinfo.NodeCycles.CYCLES_UNKNOWN;
+import static org.graalvm.compiler.nodeinfo.NodeSize.SIZE_64;
+
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.Value;
+import org.graalvm.compiler.core.common.type.StampFactory;
+import org.graalvm.compiler.graph.NodeClass;
+import org.graalvm.compiler.nodeinfo.NodeInfo;
+import org.graalvm.compiler.nodes.FixedWithNextNode;
+import org.graalvm.compiler.nodes.NamedLocationIdentity;
+import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.memory.SingleMemoryKill;
+import org.graalvm.compiler.nodes.spi.LIRLowerable;
+import org.graalvm.compiler.nodes.spi.NodeLIRBuilderTool;
+import org.graalvm.word.LocationIdentity;
+
+/**
+ * {@code output[keys[i]] = op(output[keys[i]], values[i])} for {@code i} in {@code [from, to)}; see
+ * {@code com.oracle.truffle.api.vec.ScatterReduce}. Without values it counts the keys into an int
+ * array. Off heap, keys and values are native addresses; the output is always an array.
+ */
+@NodeInfo(cycles = CYCLES_UNKNOWN, cyclesRationale = "loops over the range", size = SIZE_64)
+public final class ScatterReduceNode extends FixedWithNextNode
+    implements LIRLowerable, SingleMemoryKill {
+  public static final NodeClass<ScatterReduceNode> TYPE =
+      NodeClass.create(ScatterReduceNode.class);
+
+  public static final int SUM = 0;
+  public static final int MIN = 1;
+  public static final int MAX = 2;
+
+  @Input ValueNode keys;
+  @OptionalInput ValueNode values;
+  @Input ValueNode from;
+  @Input ValueNode to;
+  @Input ValueNode output;
+
+  private final int op;
+  // JavaKind.Int, JavaKind.Long or JavaKind.Double.
+  private final JavaKind valueKind;
+  private final boolean offHeap;
+
+  public ScatterReduceNode(
+      int op,
+      JavaKind valueKind,
+      ValueNode keys,
+      ValueNode values,
+      ValueNode from,
+      ValueNode to,
+      ValueNode output) {
+    this(op, valueKind, keys, values, from, to, output, false);
+  }
+
+  public ScatterReduceNode(
+      int op,
+      JavaKind valueKind,
+      ValueNode keys,
+      ValueNode values,
+      ValueNode from,
+      ValueNode to,
+      ValueNode output,
+      boolean offHeap) {
+    super(TYPE, StampFactory.forVoid());
+    this.op = op;
+    this.valueKind = valueKind;
+    this.keys = keys;
+    this.values = values;
+    this.from = from;
+    this.to = to;
+    this.output = output;
+    this.offHeap = offHeap;
+  }
+
+  /** Counts {@code keys[from..to-1]} into the int array {@code output}. */
+  public static ScatterReduceNode histogram(
+      ValueNode keys, ValueNode from, ValueNode to, ValueNode output) {
+    return new ScatterReduceNode(SUM, JavaKind.Int, keys, null, from, to, output);
+  }
+
+  /** Counts the int keys at the native address {@code keys} into the int array {@code output}. */
+  public static ScatterReduceNode offHeapHistogram(
+      ValueNode keys, ValueNode from, ValueNode to, ValueNode output) {
+    return new ScatterReduceNode(SUM, JavaKind.Int, keys, null, from, to, output, true);
+  }
+
+  public static boolean isValidOp(int op) {
+    return op == SUM || op == MIN || op == MAX;
+  }
+
+  @Override
+  public LocationIdentity getKilledLocationIdentity() {
+    return NamedLocationIdentity.getArrayLocation(valueKind);
+  }
+
+  @Override
+  public void generate(NodeLIRBuilderTool gen) {
+    gen.getLIRGeneratorTool()
+        .emitVecScatterReduce(
+            op,
+            valueKind,
+            gen.operand(keys),
+            values == null ? Value.ILLEGAL : gen.operand(values),
+            gen.operand(from),
+            gen.operand(to),
+            gen.operand(output),
+            offHeap);
+  }
+}
@@ -3,16 +3,21 @@ package org.graalvm.compiler.nodes.vec;
 import static org.graalvm.compiler.nodeinfo.NodeCycles.CYCLES_1;
 import static org.graalvm.compiler.nodeinfo.NodeSize.SIZE_1;
 
+import jdk.vm.ci.meta.JavaKind;
 import org.graalvm.compiler.core.common.type.StampFactory;
 import org.graalvm.compiler.graph.NodeClass;
 import org.graalvm.compiler.nodeinfo.NodeInfo;
 import org.graalvm.compiler.nodes.FixedWithNextNode;
+import org.graalvm.compiler.nodes.NamedLocationIdentity;
 import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.memory.SingleMemoryKill;
 import org.graalvm.compiler.nodes.spi.LIRLowerable;
 import org.graalvm.compiler.nodes.spi.NodeLIRBuilderTool;
+import org.graalvm.word.LocationIdentity;
 
 @NodeInfo(cycles = CYCLES_1, size = SIZE_1)
-public final class SimdDoubleFmaddNode extends FixedWithNextNode implements LIRLowerable {
+public final class SimdDoubleFmaddNode extends FixedWithNextNode
+    implements LIRLowerable, SingleMemoryKill {
   public static final NodeClass<SimdDoubleFmaddNode> TYPE =
       NodeClass.create(SimdDoubleFmaddNode.class);
 
@@ -21,19 +26,58 @@ public final class SimdDoubleFmaddNode extends FixedWithNextNode implements LIRL
   @Input ValueNode input;
   @Input ValueNode output;
 
+  // Store the output with non-temporal stores.
+  private final boolean nonTemporal;
+  // input and output are native addresses instead of double arrays.
+  private final boolean offHeap;
+
   public SimdDoubleFmaddNode(
       ValueNode length, ValueNode multVal, ValueNode input, ValueNode output) {
+    this(length, multVal, input, output, false);
+  }
+
+  public SimdDoubleFmaddNode(
+      ValueNode length,
+      ValueNode multVal,
+      ValueNode input,
+      ValueNode output,
+      boolean nonTemporal) {
+    this(length, multVal, input, output, nonTemporal, false);
+  }
+
+  public SimdDoubleFmaddNode(
+      ValueNode length,
+      ValueNode multVal,
+      ValueNode input,
+      ValueNode output,
+      boolean nonTemporal,
+      boolean offHeap) {
     super(TYPE, StampFactory.forVoid());
     this.length = length;
     this.multVal = multVal;
     this.input = input;
     this.output = output;
+    this.nonTemporal = nonTemporal;
+    this.offHeap = offHeap;
+  }
+
+  @Override
+  public LocationIdentity getKilledLocationIdentity() {
+    if (offHeap) {
+      return LocationIdentity.any();
+    }
+    return NamedLocationIdentity.getArrayLocation(JavaKind.Double);
   }
 
   @Override
   public void generate(NodeLIRBuilderTool gen) {
     gen.getLIRGeneratorTool()
         .emitSimdDoubleFmadd(
-            gen.operand(length), gen.operand(multVal), gen.operand(input), gen.operand(output));
+            gen.operand(length),
+            gen.operand(multVal),
+            gen.operand(input),
+            gen.operand(output),
+            nonTemporal,
+            offHeap);
   }
 }
@@ -0,0 +1,32 @@
+package org.graalvm.compiler.nodes.vec;
+
+import jdk.vm.ci.meta.JavaKind;
+import org.graalvm.compiler.debug.DebugContext;
+
+/**
+ * The vector kernels a target platform can emit, see {@code LoweringProvider#getVecKernelSupport}.
+ * The invocation plugins of the kernel directives ask it before they intrinsify a call, so a call
+ * the target cannot run stays a call of the Java reference implementation instead of bailing out
+ * of the compilation when its LIR is generated.
+ */
+public interface VecKernelSupport {
+  /** Whether the histogram and scatter-reduce kernels of {@link ScatterReduceNode} can be emitted. */
+  boolean supportsScatterReduce();
+
+  /** Whether the streaming multiply-add of {@link SimdDoubleFmaddNode} can be emitted. */
+  boolean supportsSimdDoubleFmadd();
+
+  /** Whether the panel copies of {@link GotoPackNode} can be emitted. */
+  boolean supportsGotoPack();
+
+  /** Whether the convolution kernel of {@link ConvKernelNode} can be emitted. */
+  boolean supportsConvKernel();
+
+  /**
+   * Whether the kernel of {@code descriptor} can be emitted over {@code elementKind} elements, as
+   * the batched kernel if {@code batched}: the target has a code path for its kernel type and its
+   * tile fits the vector registers of that code path.
+   */
+  boolean supportsGotoKernel(
+      GotoKernelDescriptor descriptor, JavaKind elementKind, boolean batched, DebugContext debug);
+}
@@ -0,0 +1,114 @@
+package org.graalvm.compiler.nodes.vec;
+
+import static org.graalvm.compiler.nodeinfo.InputType.Memory;
+import static org.graalvm.compiler.nodeinfo.NodeCycles.CYCLES_UNKNOWN;
+import static org.graalvm.compiler.nodeinfo.NodeSize.SIZE_64;
+
+import java.util.List;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.Value;
+import org.graalvm.compiler.graph.NodeClass;
+import org.graalvm.compiler.graph.NodeInputList;
+import org.graalvm.compiler.nodeinfo.NodeInfo;
+import org.graalvm.compiler.nodes.FixedWithNextNode;
+import org.graalvm.compiler.nodes.NamedLocationIdentity;
+import org.graalvm.compiler.nodes.NodeView;
+import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.memory.SingleMemoryKill;
+import org.graalvm.compiler.nodes.spi.LIRLowerable;
+import org.graalvm.compiler.nodes.spi.NodeLIRBuilderTool;
+import org.graalvm.word.LocationIdentity;
+
+/**
+ * The vector part of an element-wise loop {@code arrays[0][i] = f(arrays[1][i], ..., scalars)}
+ * over {@code i} in {@code [from, to)}, as vectorized by {@code LoopVectorizationPhase}. It does
+ * whole vectors only and returns the index of the first element it did not do, from which the
+ * original scalar loop finishes the range. If {@code from} is negative or not below {@code to} it
+ * does nothing and returns {@code from}.
+ *
+ * <p>{@code f} is a postfix program over a stack of vectors: {@link #LOAD} pushes the elements of
+ * {@code arrays[operand]} at the index and {@link #SCALAR} pushes {@code scalars[operand]} in every
+ * lane; the other ops pop two vectors and push the lane-wise result. The value left on the stack is
+ * stored to {@code arrays[0]}. All arrays and the result have the element kind. Floating-point
+ * {@link #MIN} and {@link #MAX} return the second operand if either is NaN and do not order
+ * {@code -0.0} below {@code 0.0}.
+ */
+@NodeInfo(
+    allowedUsageTypes = {Memory},
+    cycles = CYCLES_UNKNOWN,
+    cyclesRationale = "loops over the range",
+    size = SIZE_64)
+public final class VectorMapNode extends FixedWithNextNode
+    implements LIRLowerable, SingleMemoryKill {
+  public static final NodeClass<VectorMapNode> TYPE = NodeClass.create(VectorMapNode.class);
+
+  public static final int LOAD = 0;
+  public static final int SCALAR = 1;
+  public static final int ADD = 2;
+  public static final int SUB = 3;
+  public static final int MUL = 4;
+  public static final int DIV = 5;
+  public static final int AND = 6;
+  public static final int OR = 7;
+  public static final int XOR = 8;
+  public static final int MIN = 9;
+  public static final int MAX = 10;
+
+  @Input ValueNode from;
+  @Input ValueNode to;
+  @Input NodeInputList<ValueNode> arrays;
+  @Input NodeInputList<ValueNode> scalars;
+
+  // JavaKind.Int, JavaKind.Long, JavaKind.Float or JavaKind.Double.
+  private final JavaKind elementKind;
+  private final int[] program;
+
+  public VectorMapNode(
+      JavaKind elementKind,
+      int[] program,
+      ValueNode from,
+      ValueNode to,
+      List<ValueNode> arrays,
+      List<ValueNode> scalars) {
+    // The result is from or lies in [from, to].
+    super(TYPE, from.stamp(NodeView.DEFAULT).meet(to.stamp(NodeView.DEFAULT)));
+    this.elementKind = elementKind;
+    this.program = program;
+    this.from = from;
+    this.to = to;
+    this.arrays = new NodeInputList<>(this, arrays);
+    this.scalars = new NodeInputList<>(this, scalars);
+  }
+
+  /** An instruction of the program: {@code op} with the array or scalar index {@code operand}. */
+  public static int instruction(int op, int operand) {
+    return op | operand << 8;
+  }
+
+  @Override
+  public LocationIdentity getKilledLocationIdentity() {
+    return NamedLocationIdentity.getArrayLocation(elementKind);
+  }
+
+  @Override
+  public void generate(NodeLIRBuilderTool gen) {
+    Value[] arrayValues = new Value[arrays.size()];
+    for (int a = 0; a < arrayValues.length; a++) {
+      arrayValues[a] = gen.operand(arrays.get(a));
+    }
+    Value[] scalarValues = new Value[scalars.size()];
+    for (int s = 0; s < scalarValues.length; s++) {
+      scalarValues[s] = gen.operand(scalars.get(s));
+    }
+    gen.setResult(
+        this,
+        gen.getLIRGeneratorTool()
+            .emitVectorMap(
+                elementKind,
+                program,
+                gen.operand(from),
+                gen.operand(to),
+                arrayValues,
+                scalarValues));
+  }
+}
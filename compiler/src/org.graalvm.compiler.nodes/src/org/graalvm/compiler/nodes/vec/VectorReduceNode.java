@@ -0,0 +1,88 @@
+package org.graalvm.compiler.nodes.vec;
+
+import static org.graalvm.compiler.nodeinfo.NodeCycles.CYCLES_UNKNOWN;
+import static org.graalvm.compiler.nodeinfo.NodeSize.SIZE_64;
+
+import java.util.List;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.Value;
+import org.graalvm.compiler.core.common.type.StampFactory;
+import org.graalvm.compiler.graph.NodeClass;
+import org.graalvm.compiler.graph.NodeInputList;
+import org.graalvm.compiler.nodeinfo.NodeInfo;
+import org.graalvm.compiler.nodes.FixedWithNextNode;
+import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.spi.LIRLowerable;
+import org.graalvm.compiler.nodes.spi.NodeLIRBuilderTool;
+
+/**
+ * The vector part of a reduction loop {@code acc = acc op f(arrays[0][i], ..., scalars)} over
+ * {@code i} in {@code [from, end)}, as vectorized by {@code LoopVectorizationPhase}. {@code end -
+ * from} is a whole number of vectors, computed by the vectorizer, and the original scalar loop
+ * continues from {@code end} with the result as its accumulator. The range is empty if {@code from}
+ * is negative.
+ *
+ * <p>{@code f} is a {@link VectorMapNode} program and {@code op} is {@link VectorMapNode#ADD},
+ * {@link VectorMapNode#AND}, {@link VectorMapNode#OR}, {@link VectorMapNode#XOR}, {@link
+ * VectorMapNode#MIN} or {@link VectorMapNode#MAX}. The elements are combined in a different order
+ * than the loop's, so floating-point sums round differently. The node only reads the arrays.
+ */
+@NodeInfo(cycles = CYCLES_UNKNOWN, cyclesRationale = "loops over the range", size = SIZE_64)
+public final class VectorReduceNode extends FixedWithNextNode implements LIRLowerable {
+  public static final NodeClass<VectorReduceNode> TYPE = NodeClass.create(VectorReduceNode.class);
+
+  @Input ValueNode from;
+  @Input ValueNode end;
+  @Input ValueNode init;
+  @Input NodeInputList<ValueNode> arrays;
+  @Input NodeInputList<ValueNode> scalars;
+
+  // JavaKind.Int, JavaKind.Long, JavaKind.Float or JavaKind.Double.
+  private final JavaKind elementKind;
+  private final int reduceOp;
+  private final int[] program;
+
+  public VectorReduceNode(
+      JavaKind elementKind,
+      int reduceOp,
+      int[] program,
+      ValueNode from,
+      ValueNode end,
+      ValueNode init,
+      List<ValueNode> arrays,
+      List<ValueNode> scalars) {
+    super(TYPE, StampFactory.forKind(elementKind));
+    this.elementKind = elementKind;
+    this.reduceOp = reduceOp;
+    this.program = program;
+    this.from = from;
+    this.end = end;
+    this.init = init;
+    this.arrays = new NodeInputList<>(this, arrays);
+    this.scalars = new NodeInputList<>(this, scalars);
+  }
+
+  @Override
+  public void generate(NodeLIRBuilderTool gen) {
+    Value[] arrayValues = new Value[arrays.size()];
+    for (int a = 0; a < arrayValues.length; a++) {
+      arrayValues[a] = gen.operand(arrays.get(a));
+    }
+    Value[] scalarValues = new Value[scalars.size()];
+    for (int s = 0; s < scalarValues.length; s++) {
+      scalarValues[s] = gen.operand(scalars.get(s));
+    }
+    gen.setResult(
+        this,
+        gen.getLIRGeneratorTool()
+            .emitVectorReduce(
+                elementKind,
+                reduceOp,
+                program,
+                gen.operand(from),
+                gen.operand(end),
+                gen.operand(init),
+                arrayValues,
+                scalarValues));
+  }
+}
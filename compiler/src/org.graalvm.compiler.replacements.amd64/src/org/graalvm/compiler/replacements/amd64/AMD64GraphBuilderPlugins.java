@@ -63,6 +63,7 @@ import org.graalvm.compiler.replacements.nodes.BitCountNode;
 import org.graalvm.compiler.replacements.nodes.FusedMultiplyAddNode;
 import org.graalvm.compiler.replacements.nodes.UnaryMathIntrinsicNode;
 import org.graalvm.compiler.replacements.nodes.UnaryMathIntrinsicNode.UnaryOperation;
+import org.graalvm.compiler.replacements.vec.VecGraphBuilderPlugins;
 import org.graalvm.compiler.serviceprovider.JavaVersionUtil;
 
 import jdk.vm.ci.amd64.AMD64;
@@ -95,10 +96,21 @@ public class AMD64GraphBuilderPlugins implements TargetGraphBuilderPlugins {
                 }
                 registerMathPlugins(invocationPlugins, useFMAIntrinsics, arch, replacements);
                 registerArraysEqualsPlugins(invocationPlugins, replacements);
+                registerVecPlugins(invocationPlugins);
             }
         });
     }
 
+    private static void registerVecPlugins(InvocationPlugins plugins) {
+        /*
+         * A Truffle compilation that bails out leaves the call target interpreted, but a bailout in
+         * a host or image compilation loses the whole method. Every plugin asks the VecKernelSupport
+         * of the target before it intrinsifies a call, so kernels the target lacks stay calls of
+         * their Java reference instead.
+         */
+        VecGraphBuilderPlugins.register(new Registration(plugins, VecGraphBuilderPlugins.COMPILER_DIRECTIVES));
+    }
+
     private static void registerThreadPlugins(InvocationPlugins plugins, AMD64 arch) {
         if (JavaVersionUtil.JAVA_SPEC > 8) {
             // Pause instruction introduced with SSE2
@@ -0,0 +1,362 @@
+package org.graalvm.compiler.replacements.vec;
+
+import org.graalvm.compiler.nodes.ConstantNode;
+import org.graalvm.compiler.nodes.NodeView;
+import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.calc.AddNode;
+import org.graalvm.compiler.nodes.graphbuilderconf.GraphBuilderContext;
+import org.graalvm.compiler.nodes.graphbuilderconf.InvocationPlugin;
+import org.graalvm.compiler.nodes.graphbuilderconf.InvocationPlugin.Receiver;
+import org.graalvm.compiler.nodes.graphbuilderconf.InvocationPlugins;
+import org.graalvm.compiler.nodes.graphbuilderconf.InvocationPlugins.Registration;
+import org.graalvm.compiler.nodes.spi.LoweringProvider;
+import org.graalvm.compiler.nodes.vec.ConvKernelDescriptor;
+import org.graalvm.compiler.nodes.vec.ConvKernelNode;
+import org.graalvm.compiler.nodes.vec.GotoKernelDescriptor;
+import org.graalvm.compiler.nodes.vec.GotoKernelNode;
+import org.graalvm.compiler.nodes.vec.GotoPackNode;
+import org.graalvm.compiler.nodes.vec.MatmulKernel1D2x8Node;
+import org.graalvm.compiler.nodes.vec.MatmulKernel2x8Node;
+import org.graalvm.compiler.nodes.vec.MatmulKernel8x16Node;
+import org.graalvm.compiler.nodes.vec.ScatterReduceNode;
+import org.graalvm.compiler.nodes.vec.SimdDoubleFmaddNode;
+import org.graalvm.compiler.nodes.vec.VecKernelSupport;
+
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.ResolvedJavaMethod;
+import jdk.vm.ci.meta.ResolvedJavaType;
+
+/**
+ * Invocation plugins for the vector kernel directives of {@value #COMPILER_DIRECTIVES}. They do not
+ * depend on a Truffle runtime: the Truffle partial evaluator registers them for its own
+ * compilations, and the AMD64 target plugins register them for host and image compilations, so
+ * plain Java code calling the directives, or the drivers built on them such as {@code GotoGemm}, is
+ * intrinsified as well.
+ *
+ * <p>A plugin that cannot handle its call site returns false, which leaves the call to the Java
+ * reference implementation. That includes calls the target cannot run, as reported by the
+ * {@link VecKernelSupport} of its lowering provider, so that they never fail the compilation when
+ * their LIR is generated.
+ *
+ * <p>The kernels over {@code Object[]} operands and arrays of rows load object references with
+ * 64-bit moves, so their plugins also decline when references are compressed.
+ */
+public final class VecGraphBuilderPlugins {
+    /** The class declaring the directives, registered by name so it need not be on the classpath. */
+    public static final String COMPILER_DIRECTIVES = "com.oracle.truffle.api.CompilerDirectives";
+
+    private VecGraphBuilderPlugins() {
+    }
+
+    /**
+     * Whether {@code plugins}, or one of its parents, already has the vector kernel plugins for
+     * {@code directives}, the resolved {@value #COMPILER_DIRECTIVES}. A Truffle compilation on an
+     * AMD64 host inherits them from the host plugins and must not register them again.
+     */
+    public static boolean isRegistered(InvocationPlugins plugins, ResolvedJavaType directives) {
+        if (plugins == null) {
+            return false;
+        }
+        for (ResolvedJavaMethod method : directives.getDeclaredMethods()) {
+            if (method.getName().equals("gotoPack")) {
+                return plugins.lookupInvocation(method) != null;
+            }
+        }
+        return false;
+    }
+
+    /** Registers the vector kernel plugins with {@code r}, a registration for the directives. */
+    public static void register(Registration r) {
+        registerScatterReducePlugins(r);
+        registerFmaddPlugins(r);
+        registerMatmulKernelPlugins(r);
+        registerGotoKernelPlugins(r);
+        r.register8("gotoPack", Object.class, int.class, double[].class, int.class, int.class, int.class, int.class, long[].class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode src, ValueNode ld, ValueNode dst, ValueNode dstOffset, ValueNode row,
+                            ValueNode col, ValueNode depth, ValueNode constArgs) {
+                if (!constArgs.isJavaConstant()) {
+                    // The panel width has to be known to unroll the copy.
+                    return false;
+                }
+                if (!targetSupportsGotoPack(b) || (!isFlatPack(b, constArgs) && !uncompressedReferences(b))) {
+                    return false;
+                }
+                b.add(new GotoPackNode(src, ld, dst, dstOffset, row, col, depth, constArgs));
+                return true;
+            }
+        });
+        r.register6("convKernel", Object[].class, int.class, int.class, int.class, int.class, long[].class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode arrs, ValueNode kPanelSize, ValueNode i, ValueNode k, ValueNode j,
+                            ValueNode constArgs) {
+                if (!constArgs.isJavaConstant() || !ConvKernelDescriptor.get(b.getConstantReflection(), constArgs.asJavaConstant()).isSupported() || !targetSupportsConvKernel(b) ||
+                                !uncompressedReferences(b)) {
+                    // Fall back to the Java reference kernel.
+                    return false;
+                }
+                b.add(new ConvKernelNode(arrs, kPanelSize, i, k, j, constArgs));
+                return true;
+            }
+        });
+    }
+
+    /**
+     * The vector kernels of the target {@code b} compiles for, or null if it has none, in which case
+     * every plugin declines.
+     */
+    private static VecKernelSupport vecKernelSupport(GraphBuilderContext b) {
+        LoweringProvider lowerer = b.getLowerer();
+        return lowerer == null ? null : lowerer.getVecKernelSupport();
+    }
+
+    /** Whether object references are 8 bytes wide, as the kernels loading them assume. */
+    private static boolean uncompressedReferences(GraphBuilderContext b) {
+        return b.getMetaAccess().getArrayIndexScale(JavaKind.Object) == 8;
+    }
+
+    private static boolean targetSupportsGotoPack(GraphBuilderContext b) {
+        VecKernelSupport support = vecKernelSupport(b);
+        return support != null && support.supportsGotoPack();
+    }
+
+    private static boolean targetSupportsConvKernel(GraphBuilderContext b) {
+        VecKernelSupport support = vecKernelSupport(b);
+        return support != null && support.supportsConvKernel();
+    }
+
+    /** Whether the {@code gotoPack} descriptor {@code constArgs} packs a flat row-major source. */
+    private static boolean isFlatPack(GraphBuilderContext b, ValueNode constArgs) {
+        return b.getConstantReflection().readArrayElement(constArgs.asJavaConstant(), 2).asLong() != 0;
+    }
+
+    private static void registerScatterReducePlugins(Registration r) {
+        r.register3("vecAggregate", int.class, int[].class, int[].class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode inputOffset, ValueNode input, ValueNode output) {
+                if (!targetSupportsScatterReduce(b)) {
+                    return false;
+                }
+                ValueNode to = b.add(AddNode.create(inputOffset, ConstantNode.forInt(16), NodeView.DEFAULT));
+                b.add(ScatterReduceNode.histogram(input, inputOffset, to, output));
+                return true;
+            }
+        });
+        r.register4("vecHistogram", int[].class, int.class, int.class, int[].class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode keys, ValueNode from, ValueNode to, ValueNode output) {
+                if (!targetSupportsScatterReduce(b)) {
+                    return false;
+                }
+                b.add(ScatterReduceNode.histogram(keys, from, to, output));
+                return true;
+            }
+        });
+        r.register4("vecHistogram", long.class, int.class, int.class, int[].class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode keysAddress, ValueNode from, ValueNode to, ValueNode output) {
+                if (!targetSupportsScatterReduce(b)) {
+                    return false;
+                }
+                b.add(ScatterReduceNode.offHeapHistogram(keysAddress, from, to, output));
+                return true;
+            }
+        });
+        registerScatterReduce(r, JavaKind.Int, int[].class);
+        registerScatterReduce(r, JavaKind.Long, long[].class);
+        registerScatterReduce(r, JavaKind.Double, double[].class);
+    }
+
+    private static void registerScatterReduce(Registration r, JavaKind valueKind, Class<?> arrayClass) {
+        r.register6("vecScatterReduce", int.class, int[].class, arrayClass, int.class, int.class, arrayClass, new ScatterReducePlugin(valueKind, false));
+        r.register6("vecScatterReduce", int.class, long.class, long.class, int.class, int.class, arrayClass, new ScatterReducePlugin(valueKind, true));
+    }
+
+    private static boolean targetSupportsScatterReduce(GraphBuilderContext b) {
+        VecKernelSupport support = vecKernelSupport(b);
+        return support != null && support.supportsScatterReduce();
+    }
+
+    private static final class ScatterReducePlugin implements InvocationPlugin {
+        private final JavaKind valueKind;
+        // Keys and values are native addresses instead of arrays.
+        private final boolean offHeap;
+
+        ScatterReducePlugin(JavaKind valueKind, boolean offHeap) {
+            this.valueKind = valueKind;
+            this.offHeap = offHeap;
+        }
+
+        @Override
+        public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode op, ValueNode keys, ValueNode values, ValueNode from, ValueNode to,
+                        ValueNode output) {
+            if (!op.isJavaConstant() || !ScatterReduceNode.isValidOp(op.asJavaConstant().asInt()) || !targetSupportsScatterReduce(b)) {
+                // The op selects the code to emit; anything else runs the reference loop.
+                return false;
+            }
+            b.add(new ScatterReduceNode(op.asJavaConstant().asInt(), valueKind, keys, values, from, to, output, offHeap));
+            return true;
+        }
+    }
+
+    private static void registerFmaddPlugins(Registration r) {
+        r.register4("simdDoubleFmadd", int.class, double.class, double[].class, double[].class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode length, ValueNode multVal, ValueNode input, ValueNode output) {
+                if (!targetSupportsFmadd(b)) {
+                    return false;
+                }
+                b.add(new SimdDoubleFmaddNode(length, multVal, input, output));
+                return true;
+            }
+        });
+        r.register5("simdDoubleFmadd", int.class, double.class, double[].class, double[].class, boolean.class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode length, ValueNode multVal, ValueNode input, ValueNode output,
+                            ValueNode nonTemporal) {
+                if (!targetSupportsFmadd(b)) {
+                    return false;
+                }
+                // Non-temporal stores are only a hint; without a constant use regular stores.
+                boolean streaming = isTrue(nonTemporal);
+                b.add(new SimdDoubleFmaddNode(length, multVal, input, output, streaming));
+                return true;
+            }
+        });
+        r.register4("simdDoubleFmadd", int.class, double.class, long.class, long.class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode length, ValueNode multVal, ValueNode inputAddress,
+                            ValueNode outputAddress) {
+                if (!targetSupportsFmadd(b)) {
+                    return false;
+                }
+                b.add(new SimdDoubleFmaddNode(length, multVal, inputAddress, outputAddress, false, true));
+                return true;
+            }
+        });
+        r.register5("simdDoubleFmadd", int.class, double.class, long.class, long.class, boolean.class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode length, ValueNode multVal, ValueNode inputAddress,
+                            ValueNode outputAddress, ValueNode nonTemporal) {
+                if (!targetSupportsFmadd(b)) {
+                    return false;
+                }
+                boolean streaming = isTrue(nonTemporal);
+                b.add(new SimdDoubleFmaddNode(length, multVal, inputAddress, outputAddress, streaming, true));
+                return true;
+            }
+        });
+    }
+
+    private static boolean targetSupportsFmadd(GraphBuilderContext b) {
+        VecKernelSupport support = vecKernelSupport(b);
+        return support != null && support.supportsSimdDoubleFmadd();
+    }
+
+    private static boolean isTrue(ValueNode flag) {
+        return flag.isJavaConstant() && flag.asJavaConstant().asInt() != 0;
+    }
+
+    private static void registerMatmulKernelPlugins(Registration r) {
+        r.register7("matmulKernel8x16", double[][].class, double[][].class, double[][].class, int.class, int.class, int.class, int.class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode a, ValueNode bMat, ValueNode result, ValueNode kPanelSize, ValueNode i,
+                            ValueNode k, ValueNode j) {
+                if (!uncompressedReferences(b)) {
+                    return false;
+                }
+                b.add(new MatmulKernel8x16Node(a, bMat, result, kPanelSize, i, k, j));
+                return true;
+            }
+        });
+        r.register7("matmulKernel2x8", double[][].class, double[][].class, double[][].class, int.class, int.class, int.class, int.class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode a, ValueNode bMat, ValueNode result, ValueNode kPanelSize, ValueNode i,
+                            ValueNode k, ValueNode j) {
+                if (!uncompressedReferences(b)) {
+                    return false;
+                }
+                b.add(new MatmulKernel2x8Node(a, bMat, result, kPanelSize, i, k, j));
+                return true;
+            }
+        });
+        r.register7("matmulKernel1D2x8", double[].class, double[].class, double[].class, int[].class, int.class, int.class, int.class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode a, ValueNode bMat, ValueNode result, ValueNode constants, ValueNode i,
+                            ValueNode k, ValueNode j) {
+                b.add(new MatmulKernel1D2x8Node(a, bMat, result, constants, i, k, j));
+                return true;
+            }
+        });
+    }
+
+    private static void registerGotoKernelPlugins(Registration r) {
+        registerGotoKernel(r, "gotoKernel", Object[].class, JavaKind.Double, false);
+        registerGotoKernel(r, "gotoKernelFloat", Object[].class, JavaKind.Float, false);
+        registerGotoKernel(r, "gotoKernel", long[].class, JavaKind.Double, true);
+        registerGotoKernel(r, "gotoKernelFloat", long[].class, JavaKind.Float, true);
+        registerGotoKernel(r, "gotoKernelInt", Object[].class, JavaKind.Int, false);
+        for (JavaKind elementKind : new JavaKind[]{JavaKind.Double, JavaKind.Float}) {
+            String name = elementKind == JavaKind.Float ? "gotoKernelBatchedFloat" : "gotoKernelBatched";
+            r.register3(name, Object[].class, int.class, long[].class, new InvocationPlugin() {
+                @Override
+                public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode arrs, ValueNode batchCount, ValueNode constArgs) {
+                    GotoKernelDescriptor descriptor = descriptor(b, constArgs);
+                    if (descriptor == null || !descriptor.supportsBatched(elementKind == JavaKind.Float) || !targetSupports(b, descriptor, elementKind, true) || !uncompressedReferences(b)) {
+                        // Fall back to the Java reference kernel.
+                        return false;
+                    }
+                    ValueNode zero = ConstantNode.forInt(0, b.getGraph());
+                    b.add(new GotoKernelNode(arrs, batchCount, zero, zero, zero, constArgs, elementKind));
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Registers one tile-call entry point: {@code operands} is {@code Object[]} for heap operands or
+     * {@code long[]} for native addresses.
+     */
+    private static void registerGotoKernel(Registration r, String name, Class<?> operands, JavaKind elementKind, boolean offHeap) {
+        r.register6(name, operands, int.class, int.class, int.class, int.class, long[].class, new InvocationPlugin() {
+            @Override
+            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode arrs, ValueNode kPanelSize, ValueNode i, ValueNode k, ValueNode j,
+                            ValueNode constArgs) {
+                GotoKernelDescriptor descriptor = descriptor(b, constArgs);
+                if (descriptor == null || !supports(descriptor, elementKind, offHeap) || !targetSupports(b, descriptor, elementKind, false) || (!offHeap && !uncompressedReferences(b))) {
+                    // Fall back to the Java reference kernel.
+                    return false;
+                }
+                b.add(new GotoKernelNode(arrs, kPanelSize, i, k, j, constArgs, elementKind, offHeap));
+                return true;
+            }
+        });
+    }
+
+    private static GotoKernelDescriptor descriptor(GraphBuilderContext b, ValueNode constArgs) {
+        if (!constArgs.isJavaConstant()) {
+            return null;
+        }
+        return GotoKernelDescriptor.get(b.getConstantReflection(), constArgs.asJavaConstant(), b.getDebug());
+    }
+
+    private static boolean supports(GotoKernelDescriptor descriptor, JavaKind elementKind, boolean offHeap) {
+        if (offHeap && !descriptor.supportsOffHeap()) {
+            return false;
+        }
+        switch (elementKind) {
+            case Float:
+                return descriptor.supportsFloat();
+            case Int:
+                return descriptor.supportsInteger();
+            default:
+                return offHeap || descriptor.isSupported();
+        }
+    }
+
+    private static boolean targetSupports(GraphBuilderContext b, GotoKernelDescriptor descriptor, JavaKind elementKind, boolean batched) {
+        VecKernelSupport support = vecKernelSupport(b);
+        return support != null && support.supportsGotoKernel(descriptor, elementKind, batched, b.getDebug());
+    }
+}
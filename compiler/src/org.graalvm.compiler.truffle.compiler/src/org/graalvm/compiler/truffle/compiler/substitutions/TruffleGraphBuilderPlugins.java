@@ -83,16 +83,10 @@ import org.graalvm.compiler.nodes.java.MethodCallTargetNode;
 import org.graalvm.compiler.nodes.spi.LoweringProvider;
 import org.graalvm.compiler.nodes.spi.Replacements;
 import org.graalvm.compiler.nodes.type.StampTool;
-import org.graalvm.compiler.nodes.vec.AggregateNode;
-import org.graalvm.compiler.nodes.vec.SimdDoubleFmaddNode;
-import org.graalvm.compiler.nodes.vec.MatmulKernel8x16Node;
-import org.graalvm.compiler.nodes.vec.MatmulKernel2x8Node;
-import org.graalvm.compiler.nodes.vec.MatmulKernel1D2x8Node;
-import org.graalvm.compiler.nodes.vec.GotoKernelNode;
-import org.graalvm.compiler.nodes.vec.ConvKernelNode;
 import org.graalvm.compiler.nodes.virtual.EnsureVirtualizedNode;
 import org.graalvm.compiler.phases.util.Providers;
 import org.graalvm.compiler.replacements.nodes.arithmetic.UnsignedMulHighNode;
+import org.graalvm.compiler.replacements.vec.VecGraphBuilderPlugins;
 import org.graalvm.compiler.truffle.common.TruffleCompilerRuntime;
 import org.graalvm.compiler.truffle.common.TruffleDebugJavaMethod;
 import org.graalvm.compiler.truffle.compiler.PerformanceInformationHandler;
@@ -439,60 +433,9 @@ public class TruffleGraphBuilderPlugins {
                 return true;
             }
         });
-        r.register3("vecAggregate", int.class, int[].class, int[].class, new InvocationPlugin() {
-            @Override
-            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode inputOffset, ValueNode input, ValueNode output) {
-                b.add(new AggregateNode(inputOffset, input, output));
-                return true;
-            }
-        });
-        r.register4("simdDoubleFmadd", int.class, double.class, double[].class, double[].class, new InvocationPlugin() {
-            @Override
-            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode length, ValueNode multVal, ValueNode input, ValueNode output) {
-                b.add(new SimdDoubleFmaddNode(length, multVal, input, output));
-                return true;
-            }
-        });
-        r.register7("matmulKernel8x16", double[][].class, double[][].class, double[][].class, int.class, int.class, int.class, int.class, new InvocationPlugin() {
-            @Override
-            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode a, ValueNode bMat, ValueNode result, ValueNode kPanelSize,
-                                    ValueNode i, ValueNode k, ValueNode j) {
-                b.add(new MatmulKernel8x16Node(a, bMat, result, kPanelSize, i, k, j));
-                return true;
-            }
-        });
-        r.register7("matmulKernel2x8", double[][].class, double[][].class, double[][].class, int.class, int.class, int.class, int.class, new InvocationPlugin() {
-            @Override
-            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode a, ValueNode bMat, ValueNode result, ValueNode kPanelSize,
-                                    ValueNode i, ValueNode k, ValueNode j) {
-                b.add(new MatmulKernel2x8Node(a, bMat, result, kPanelSize, i, k, j));
-                return true;
-            }
-        });
-        r.register7("matmulKernel1D2x8", double[].class, double[].class, double[].class, int[].class, int.class, int.class, int.class, new InvocationPlugin() {
-            @Override
-            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode a, ValueNode bMat, ValueNode result, ValueNode constants,
-                                    ValueNode i, ValueNode k, ValueNode j) {
-                b.add(new MatmulKernel1D2x8Node(a, bMat, result, constants, i, k, j));
-                return true;
-            }
-        });
-        r.register6("gotoKernel", Object[].class, int.class, int.class, int.class, int.class, long[].class, new InvocationPlugin() {
-            @Override
-            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode arrs, ValueNode kPanelSize,
-                                    ValueNode i, ValueNode k, ValueNode j, ValueNode constArgs) {
-                b.add(new GotoKernelNode(arrs, kPanelSize, i, k, j, constArgs));
-                return true;
-            }
-        });
-        r.register6("convKernel", Object[].class, int.class, int.class, int.class, int.class, long[].class, new InvocationPlugin() {
-            @Override
-            public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode arrs, ValueNode kPanelSize,
-                                    ValueNode i, ValueNode k, ValueNode j, ValueNode constArgs) {
-                b.add(new ConvKernelNode(arrs, kPanelSize, i, k, j, constArgs));
-                return true;
-            }
-        });
+        if (!VecGraphBuilderPlugins.isRegistered(plugins.getParent(), compilerDirectivesType)) {
+            VecGraphBuilderPlugins.register(r);
+        }
         r.register2("isExact", Object.class, Class.class, new InvocationPlugin() {
             @Override
             public boolean apply(GraphBuilderContext b, ResolvedJavaMethod targetMethod, Receiver receiver, ValueNode object, ValueNode javaClass) {
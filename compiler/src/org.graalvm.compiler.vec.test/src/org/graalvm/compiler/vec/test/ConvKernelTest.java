@@ -0,0 +1,199 @@
+package org.graalvm.compiler.vec.test;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.vec.ConvKernelArgs;
+import com.oracle.truffle.api.vec.ConvKernelReference;
+import java.util.Arrays;
+
+import jdk.vm.ci.code.InstalledCode;
+import org.graalvm.compiler.nodes.vec.ConvKernelNode;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Differential test of {@code CompilerDirectives.convKernel} against {@link ConvKernelReference}.
+ * The cases draw channel counts, image and kernel shapes, strides, padding and dilation, so output
+ * rows end in partial tiles, the channels in a partial tile of A and the taps of a tile fall into
+ * the padding. The K loop is split into random panels that start in the middle of a channel or a
+ * kernel row.
+ */
+public class ConvKernelTest extends VecKernelTest {
+
+  public static void convKernelSnippet(Object[] arrs, int kc, long[] descriptor) {
+    ConvKernelArgs args = ConvKernelArgs.decode(descriptor);
+    int outWidth = args.getOutWidth();
+    int kLength = args.getKLength();
+    for (int pc = 0; pc < kLength; pc += kc) {
+      for (int oy = 0; oy < args.getOutHeight(); oy++) {
+        for (int ox = 0; ox < outWidth; ox += args.getBLength()) {
+          int j = oy * outWidth + ox;
+          for (int i = 0; i < args.getOutChannels(); i += args.getALength()) {
+            CompilerDirectives.convKernel(arrs, Math.min(kc, kLength - pc), i, pc, j, descriptor);
+          }
+        }
+      }
+    }
+  }
+
+  private static void reference(Object[] arrs, int kc, ConvKernelArgs args) {
+    int outWidth = args.getOutWidth();
+    int kLength = args.getKLength();
+    for (int pc = 0; pc < kLength; pc += kc) {
+      for (int oy = 0; oy < args.getOutHeight(); oy++) {
+        for (int ox = 0; ox < outWidth; ox += args.getBLength()) {
+          int j = oy * outWidth + ox;
+          for (int i = 0; i < args.getOutChannels(); i += args.getALength()) {
+            ConvKernelReference.convKernel(arrs, Math.min(kc, kLength - pc), i, pc, j, args);
+          }
+        }
+      }
+    }
+  }
+
+  @Before
+  public void checkReferences() {
+    assumeUncompressedReferences();
+    Assume.assumeTrue(
+        "skipping test that needs AVX-512 and BMI2", vecKernelSupport().supportsConvKernel());
+  }
+
+  @Test
+  public void testSquare() {
+    for (int index = 0; index < CASES; index++) {
+      int imgLength = nextInt(1, 24);
+      int kernelLength = nextInt(1, Math.min(imgLength, 5));
+      int bVectors = nextInt(1, 5);
+      runCase(
+          ConvKernelArgs.square(
+              randomALength(bVectors),
+              8 * bVectors,
+              nextInt(1, 20),
+              nextInt(1, 6),
+              imgLength,
+              kernelLength));
+    }
+  }
+
+  @Test
+  public void testGeneral() {
+    for (int index = 0; index < CASES; index++) {
+      runCase(randomArgs());
+    }
+  }
+
+  /** Output rows of 256 columns and more, so more than 255 columns remain at a row's first tile. */
+  @Test
+  public void testWideRows() {
+    for (int index = 0; index < CASES / 4 + 1; index++) {
+      int bVectors = nextInt(1, 5);
+      int kernelWidth = nextInt(1, 5);
+      int padW = nextInt(0, 2);
+      runCase(
+          new ConvKernelArgs(
+              randomALength(bVectors),
+              8 * bVectors,
+              nextInt(1, 4),
+              nextInt(1, 3),
+              nextInt(1, 3),
+              nextInt(256, 300) + kernelWidth - 1 - 2 * padW,
+              1,
+              kernelWidth,
+              1,
+              1,
+              0,
+              padW,
+              1,
+              1));
+    }
+  }
+
+  private ConvKernelArgs randomArgs() {
+    while (true) {
+      int bVectors = nextInt(1, 5);
+      int imgHeight = nextInt(1, 20);
+      int imgWidth = nextInt(1, 28);
+      int kernelHeight = nextInt(1, 5);
+      int kernelWidth = nextInt(1, 5);
+      int strideH = nextInt(1, 3);
+      int strideW = nextInt(1, 3);
+      int padH = nextInt(0, 2);
+      int padW = nextInt(0, 2);
+      int dilationH = nextInt(1, 2);
+      int dilationW = nextInt(1, 2);
+      // Draw again if the dilated kernel does not fit the padded image.
+      if ((kernelHeight - 1) * dilationH < imgHeight + 2 * padH
+          && (kernelWidth - 1) * dilationW < imgWidth + 2 * padW) {
+        return new ConvKernelArgs(
+            randomALength(bVectors),
+            8 * bVectors,
+            nextInt(1, 20),
+            nextInt(1, 6),
+            imgHeight,
+            imgWidth,
+            kernelHeight,
+            kernelWidth,
+            strideH,
+            strideW,
+            padH,
+            padW,
+            dilationH,
+            dilationW);
+      }
+    }
+  }
+
+  /** A tile height whose accumulators, B vectors and broadcast register fit in 29 registers. */
+  private int randomALength(int bVectors) {
+    return nextInt(1, (28 - bVectors) / bVectors);
+  }
+
+  private void runCase(ConvKernelArgs args) {
+    int kLength = args.getKLength();
+    int kc = random.nextBoolean() ? kLength : nextInt(1, kLength);
+    double[][][] img = new double[args.getInChannels()][][];
+    for (int c = 0; c < img.length; c++) {
+      img[c] = randomMatrix(args.getImgHeight(), args.getImgWidth());
+    }
+    double[][][][] kernel = new double[args.getOutChannels()][args.getInChannels()][][];
+    for (double[][][] filter : kernel) {
+      for (int c = 0; c < filter.length; c++) {
+        filter[c] = randomMatrix(args.getKernelHeight(), args.getKernelWidth());
+      }
+    }
+    double[][][] result = new double[args.getOutChannels()][][];
+    for (int c = 0; c < result.length; c++) {
+      result[c] = randomMatrix(args.getOutHeight(), args.getOutWidth());
+    }
+    Object[] arrs = {img, kernel, result};
+
+    long[] descriptor = args.toLongArray();
+    String description = args + ", kc " + kc;
+    Object[] expected = (Object[]) deepCopy(arrs);
+    reference(expected, kc, args);
+    InstalledCode code =
+        compile(
+            "convKernelSnippet",
+            ConvKernelNode.class,
+            new Object[] {null, null, descriptor},
+            description);
+    Object[] actual = (Object[]) deepCopy(arrs);
+    execute(code, actual, kc, descriptor);
+
+    assertTrue(
+        failure(description, "the image or the kernel was modified"),
+        Arrays.deepEquals(new Object[] {img, kernel}, new Object[] {actual[0], actual[1]}));
+    // Both sides round each product and sum once, in a different order.
+    double tolerance = ulps(2 * (kLength + 2), 1 + kLength);
+    double[][][] expectedResult = (double[][][]) expected[2];
+    double[][][] actualResult = (double[][][]) actual[2];
+    for (int c = 0; c < result.length; c++) {
+      double[][] tolerances = new double[args.getOutHeight()][args.getOutWidth()];
+      for (double[] row : tolerances) {
+        Arrays.fill(row, tolerance);
+      }
+      assertClose(
+          description, "result[" + c + "]", expectedResult[c], actualResult[c], tolerances);
+    }
+  }
+}
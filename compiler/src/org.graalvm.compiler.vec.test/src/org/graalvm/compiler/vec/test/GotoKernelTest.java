@@ -0,0 +1,1026 @@
+package org.graalvm.compiler.vec.test;
+
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.A;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.B;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.C;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.STORED_C;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.constArg;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.maskReg;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.reg;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.varArg;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.vec.GotoKernelArgs;
+import com.oracle.truffle.api.vec.GotoKernelReference;
+import com.oracle.truffle.api.vec.GotoPacking;
+import com.oracle.truffle.api.vec.GotoProgramBuilder;
+import com.oracle.truffle.api.vec.GotoProgramBuilder.Operand;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import jdk.vm.ci.amd64.AMD64.CPUFeature;
+import jdk.vm.ci.code.InstalledCode;
+import jdk.vm.ci.meta.JavaKind;
+import org.graalvm.compiler.nodes.vec.GotoKernelDescriptor;
+import org.graalvm.compiler.nodes.vec.GotoKernelNode;
+import org.graalvm.compiler.nodes.vec.VecKernelSupport;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Differential test of {@code CompilerDirectives.gotoKernel}. The cases cover the kernel types 0 to
+ * 5 over arrays of rows, flat operands with padded leading dimensions and offsets, and packed
+ * operands at random alignment offsets, with random register tiles, problem shapes that leave M, N
+ * and K remainders, prefetch policies and programs. The same cases run in single precision through
+ * {@code gotoKernelFloat}, and over flat operands in native memory through the {@code long[]}
+ * overloads. {@link #testInteger} covers {@code gotoKernelInt} and {@link #testBatched} covers
+ * {@code gotoKernelBatched} and {@code gotoKernelBatchedFloat}.
+ *
+ * <p>Every test draws arches the target can run, so an AVX2 host runs the packed, batched and
+ * integer kernels and skips the kernel types that only have an AVX-512 code path.
+ *
+ * <p>{@link GotoKernelReference} interprets the whole program. The main programs add a random term
+ * per K step, {@code A * B} written in several ways, scaled by a constant, or masked to its
+ * positive part; every K step rounds the term the same way on both sides, so only the fused
+ * multiply-adds of the kernel make the sums differ. The epilogues are random chains of steps that
+ * are each continuous in C, so a compare that rounding tips the other way changes the result by no
+ * more than the rounding did. The test tracks a bound on the magnitude of C and on the difference
+ * between the compiled and the reference C through the chain. Integer results must be exact.
+ */
+public class GotoKernelTest extends VecKernelTest {
+
+  public static void gotoKernelSnippet(
+      Object[] arrs, int m, int k, int n, int mr, int nr, int kc, long[] descriptor) {
+    for (int pc = 0; pc < k; pc += kc) {
+      int kPanelSize = Math.min(kc, k - pc);
+      for (int j = 0; j < n; j += nr) {
+        for (int i = 0; i < m; i += mr) {
+          CompilerDirectives.gotoKernel(arrs, kPanelSize, i, pc, j, descriptor);
+        }
+      }
+    }
+  }
+
+  public static void gotoKernelFloatSnippet(
+      Object[] arrs, int m, int k, int n, int mr, int nr, int kc, long[] descriptor) {
+    for (int pc = 0; pc < k; pc += kc) {
+      int kPanelSize = Math.min(kc, k - pc);
+      for (int j = 0; j < n; j += nr) {
+        for (int i = 0; i < m; i += mr) {
+          CompilerDirectives.gotoKernelFloat(arrs, kPanelSize, i, pc, j, descriptor);
+        }
+      }
+    }
+  }
+
+  public static void gotoKernelOffHeapSnippet(
+      long[] addresses, int m, int k, int n, int mr, int nr, int kc, long[] descriptor) {
+    for (int pc = 0; pc < k; pc += kc) {
+      int kPanelSize = Math.min(kc, k - pc);
+      for (int j = 0; j < n; j += nr) {
+        for (int i = 0; i < m; i += mr) {
+          CompilerDirectives.gotoKernel(addresses, kPanelSize, i, pc, j, descriptor);
+        }
+      }
+    }
+  }
+
+  public static void gotoKernelFloatOffHeapSnippet(
+      long[] addresses, int m, int k, int n, int mr, int nr, int kc, long[] descriptor) {
+    for (int pc = 0; pc < k; pc += kc) {
+      int kPanelSize = Math.min(kc, k - pc);
+      for (int j = 0; j < n; j += nr) {
+        for (int i = 0; i < m; i += mr) {
+          CompilerDirectives.gotoKernelFloat(addresses, kPanelSize, i, pc, j, descriptor);
+        }
+      }
+    }
+  }
+
+  public static void gotoKernelIntSnippet(
+      Object[] arrs, int m, int k, int n, int mr, int nr, int kc, long[] descriptor) {
+    for (int pc = 0; pc < k; pc += kc) {
+      int kPanelSize = Math.min(kc, k - pc);
+      for (int j = 0; j < n; j += nr) {
+        for (int i = 0; i < m; i += mr) {
+          CompilerDirectives.gotoKernelInt(arrs, kPanelSize, i, pc, j, descriptor);
+        }
+      }
+    }
+  }
+
+  public static void gotoKernelBatchedSnippet(Object[] arrs, int batchCount, long[] descriptor) {
+    CompilerDirectives.gotoKernelBatched(arrs, batchCount, descriptor);
+  }
+
+  public static void gotoKernelBatchedFloatSnippet(
+      Object[] arrs, int batchCount, long[] descriptor) {
+    CompilerDirectives.gotoKernelBatchedFloat(arrs, batchCount, descriptor);
+  }
+
+  private static void reference(Object[] arrs, int kc, GotoKernelArgs args, JavaKind elementKind) {
+    int k = args.getKLength();
+    for (int pc = 0; pc < k; pc += kc) {
+      int kPanelSize = Math.min(kc, k - pc);
+      for (int j = 0; j < args.getNLength(); j += args.getBLength()) {
+        for (int i = 0; i < args.getMLength(); i += args.getALength()) {
+          switch (elementKind) {
+            case Float:
+              GotoKernelReference.gotoKernelFloat(arrs, kPanelSize, i, pc, j, args);
+              break;
+            case Int:
+              GotoKernelReference.gotoKernelInt(arrs, kPanelSize, i, pc, j, args);
+              break;
+            default:
+              GotoKernelReference.gotoKernel(arrs, kPanelSize, i, pc, j, args);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testArraysOfRows() {
+    assumeUncompressedReferences();
+    assumeArch(GotoKernelArgs.ARCH_AVX512);
+    for (int index = 0; index < CASES; index++) {
+      runCase(random.nextInt(4), GotoKernelArgs.ARCH_AVX512, false, false, false, false);
+    }
+  }
+
+  @Test
+  public void testFlat() {
+    assumeUncompressedReferences();
+    assumeArch(GotoKernelArgs.ARCH_AVX512);
+    for (int index = 0; index < CASES; index++) {
+      runCase(random.nextInt(4), GotoKernelArgs.ARCH_AVX512, true, false, false, false);
+    }
+  }
+
+  @Test
+  public void testFlatEpilogue() {
+    assumeUncompressedReferences();
+    assumeArch(GotoKernelArgs.ARCH_AVX512);
+    for (int index = 0; index < CASES; index++) {
+      runCase(random.nextInt(4), GotoKernelArgs.ARCH_AVX512, true, true, false, false);
+    }
+  }
+
+  @Test
+  public void testPacked() {
+    assumeUncompressedReferences();
+    assumeArch(GotoKernelArgs.ARCH_AVX);
+    for (int index = 0; index < CASES; index++) {
+      boolean interleave = targetArch() == GotoKernelArgs.ARCH_AVX512 && random.nextBoolean();
+      // Only the packed kernel has AVX and AVX2 code paths; a wider arch is clamped to the target.
+      int arch = interleave ? GotoKernelArgs.ARCH_AVX512 : random.nextInt(3);
+      runCase(
+          interleave ? GotoKernelArgs.KERNEL_INTERLEAVE_PACKED : GotoKernelArgs.KERNEL_PACKED,
+          arch,
+          random.nextBoolean(),
+          false,
+          false,
+          false);
+    }
+  }
+
+  /** The AB kernel over arrays of rows and the flat AB and ATB kernels, in single precision. */
+  @Test
+  public void testFloat() {
+    assumeUncompressedReferences();
+    assumeArch(GotoKernelArgs.ARCH_AVX512);
+    for (int index = 0; index < CASES; index++) {
+      boolean flat = random.nextBoolean();
+      runCase(
+          flat ? random.nextInt(2) : GotoKernelArgs.KERNEL_AB,
+          GotoKernelArgs.ARCH_AVX512,
+          flat,
+          flat && random.nextBoolean(),
+          true,
+          false);
+    }
+  }
+
+  /**
+   * Flat operands in native memory, in double and single precision. The kernel reads no object
+   * references, so this also runs with compressed references.
+   */
+  @Test
+  public void testOffHeap() {
+    assumeArch(GotoKernelArgs.ARCH_AVX512);
+    for (int index = 0; index < CASES; index++) {
+      boolean isFloat = random.nextBoolean();
+      runCase(
+          random.nextInt(isFloat ? 2 : 4),
+          GotoKernelArgs.ARCH_AVX512,
+          true,
+          random.nextBoolean(),
+          isFloat,
+          true);
+    }
+  }
+
+  @Test
+  public void testInteger() {
+    assumeUncompressedReferences();
+    assumeArch(GotoKernelArgs.ARCH_AVX2);
+    for (int index = 0; index < CASES; index++) {
+      runIntCase();
+    }
+  }
+
+  @Test
+  public void testBatched() {
+    assumeUncompressedReferences();
+    assumeArch(GotoKernelArgs.ARCH_AVX2);
+    for (int index = 0; index < CASES; index++) {
+      runBatchedCase();
+    }
+  }
+
+  /**
+   * Runs one random case of {@code kernelType}, over {@code float} operands if {@code isFloat} and
+   * over flat operands in native memory if {@code offHeap}.
+   */
+  private void runCase(
+      int kernelType,
+      int arch,
+      boolean flat,
+      boolean withEpilogue,
+      boolean isFloat,
+      boolean offHeap) {
+    boolean packed = GotoKernelArgs.isPacked(kernelType);
+    JavaKind elementKind = isFloat ? JavaKind.Float : JavaKind.Double;
+    int m = nextInt(1, 40);
+    int k = nextInt(1, 48);
+
+    List<Double> constants = new ArrayList<>();
+    List<Integer> vectors = new ArrayList<>();
+    GotoProgramBuilder program = new GotoProgramBuilder();
+    double term = mainProgram(program, constants, kernelType, flat);
+    // Both sides round each term and sum once, in a different order.
+    double bound = 1 + k * term;
+    Epilogue epilogue =
+        new Epilogue(
+            program, constants, vectors, bound, ulps(2 * (k + 2), bound, isFloat), isFloat);
+    if (withEpilogue) {
+      program.epilogue();
+      for (int step = nextInt(1, 4); step > 0; step--) {
+        epilogue.step();
+      }
+    }
+    int kPack = nextInt(1, k);
+    int[] miscArgs =
+        packed ? new int[] {kPack, 8 * random.nextInt(16), 8 * random.nextInt(16)} : null;
+    GotoKernelArgs args =
+        new GotoKernelArgs(
+            arch,
+            kernelType,
+            1,
+            lanes(arch, elementKind),
+            m,
+            k,
+            1,
+            program.build(),
+            toDoubleArray(constants),
+            toIntArray(vectors),
+            miscArgs);
+    args = randomTile(args, elementKind, 1, flat, false);
+    int nr = args.getBLength();
+    // The flat ATB kernel masks the N tail too; the leading dimensions do not matter for that.
+    boolean masksNTail =
+        (flat ? args.withFlatLayout(1, 1, 1, 0, 0, 0) : args).masksNTail(isFloat);
+    int n = masksNTail ? nextInt(1, 3 * nr) : nr * nextInt(1, 3);
+    args = args.withDimensions(m, k, n);
+    int kc = packed ? kPack : args.epilogueReadsStoredC() ? k : nextInt(1, k);
+
+    boolean transposedA = kernelType == GotoKernelArgs.KERNEL_ATB;
+    boolean transposedB = kernelType == GotoKernelArgs.KERNEL_ABT;
+    boolean transposedC = kernelType == GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT;
+    int aRows = transposedA ? k : m;
+    int aColumns = transposedA ? m : k;
+    int bRows = transposedB ? n : k;
+    int bColumns = transposedB ? k : n;
+    int cRows = args.resultRows();
+    int cColumns = transposedC ? m : n;
+    if (flat) {
+      args =
+          args.withFlatLayout(
+              packed ? aColumns : aColumns + nextInt(0, 3),
+              packed ? bColumns : bColumns + nextInt(0, 3),
+              cColumns + nextInt(0, 3),
+              packed ? 0 : nextInt(0, 7),
+              packed ? 0 : nextInt(0, 7),
+              nextInt(0, 7));
+    }
+    if (random.nextInt(3) == 0) {
+      args =
+          args.withPrefetch(
+              random.nextInt(4),
+              random.nextInt(3),
+              random.nextInt(GotoKernelArgs.MAX_PREFETCH_DISTANCE + 1));
+    }
+
+    Object[] arrs = new Object[3 + vectors.size()];
+    if (packed) {
+      GotoPacking packing = new GotoPacking(args);
+      double[] aPacked = new double[GotoPacking.packedALength(args)];
+      double[] bPacked = new double[GotoPacking.packedBLength(args)];
+      packing.packA(randomArray(m * k), k, aPacked);
+      packing.packB(randomArray(k * n), n, bPacked);
+      arrs[0] = aPacked;
+      arrs[1] = bPacked;
+    } else if (flat) {
+      arrs[0] = randomOperand(args.getAOffset() + aRows * args.getLda() + nextInt(0, 8), isFloat);
+      arrs[1] = randomOperand(args.getBOffset() + bRows * args.getLdb() + nextInt(0, 8), isFloat);
+    } else {
+      arrs[0] = randomRows(aRows, aColumns, isFloat);
+      arrs[1] = randomRows(bRows, bColumns, isFloat);
+    }
+    arrs[2] =
+        flat
+            ? randomOperand(args.getCOffset() + cRows * args.getLdc() + nextInt(0, 8), isFloat)
+            : randomRows(cRows, cColumns, isFloat);
+    for (int index = 0; index < vectors.size(); index++) {
+      arrs[3 + index] =
+          randomOperand(
+              vectors.get(index) == GotoKernelArgs.EPILOGUE_ROW_VECTOR ? m : n, isFloat);
+    }
+
+    long[] descriptor = args.toLongArray();
+    String description =
+        args + ", kc " + kc + (isFloat ? ", float" : "") + (offHeap ? ", off heap" : "");
+    Object[] expected = (Object[]) deepCopy(arrs);
+    reference(expected, kc, args, elementKind);
+    String snippet =
+        "gotoKernel" + (isFloat ? "Float" : "") + (offHeap ? "OffHeap" : "") + "Snippet";
+    InstalledCode code =
+        compile(
+            snippet,
+            GotoKernelNode.class,
+            new Object[] {null, null, null, null, null, null, null, descriptor},
+            description);
+    Object[] actual = (Object[]) deepCopy(arrs);
+    if (offHeap) {
+      executeOffHeap(code, actual, m, k, n, args.getALength(), nr, kc, descriptor);
+    } else {
+      execute(code, actual, m, k, n, args.getALength(), nr, kc, descriptor);
+    }
+
+    assertOperandsUnchanged(description, arrs, actual);
+    double tolerance = epilogue.error;
+    if (flat) {
+      double[] tolerances = new double[Array.getLength(arrs[2])];
+      for (int row = 0; row < cRows; row++) {
+        int start = args.getCOffset() + row * args.getLdc();
+        Arrays.fill(tolerances, start, start + cColumns, tolerance);
+      }
+      assertClose(description, "C", toDoubles(expected[2]), toDoubles(actual[2]), tolerances);
+    } else {
+      double[][] tolerances = new double[cRows][cColumns];
+      for (double[] row : tolerances) {
+        Arrays.fill(row, tolerance);
+      }
+      assertClose(
+          description, "C", toDoubleRows(expected[2]), toDoubleRows(actual[2]), tolerances);
+    }
+  }
+
+  /**
+   * An int8 or int16 problem over flat operands at random offsets with padded leading dimensions,
+   * B in k groups, and half of the time a dequantized output. K, and the K position and panel size
+   * of every call, are multiples of the group size. The sums wrap on both sides and must be exact,
+   * and so must the dequantized output, which both sides round to float and scale the same way.
+   */
+  private void runIntCase() {
+    int arch = nextInt(GotoKernelArgs.ARCH_AVX2, targetArch());
+    if (!targetFeatures().contains(CPUFeature.AVX512BW)) {
+      // Without AVX512BW the integer kernels run on ymm, which have no masked N tail.
+      arch = GotoKernelArgs.ARCH_AVX2;
+    }
+    int kernelType =
+        random.nextBoolean() ? GotoKernelArgs.KERNEL_INT8 : GotoKernelArgs.KERNEL_INT16;
+    int group = GotoKernelArgs.kGroup(kernelType);
+    int m = nextInt(1, 40);
+    int k = group * nextInt(1, 12);
+    GotoKernelArgs args =
+        GotoKernelArgs.intMatmul(
+            arch, kernelType, 1, lanes(arch, JavaKind.Int), m, k, 1, k, group, 1);
+    boolean dequantize = random.nextBoolean();
+    if (dequantize) {
+      args = args.withDequantization(scale());
+    }
+    args = randomTile(args, JavaKind.Int, 1, true, false);
+    int nr = args.getBLength();
+    int n = args.masksNTail(false) ? nextInt(1, 3 * nr) : nr * nextInt(1, 3);
+    int kc = group * nextInt(1, k / group);
+    int lda = k + nextInt(0, 3);
+    int ldc = n + nextInt(0, 3);
+    // The layout first: B has to be wide enough for the k groups of N.
+    args =
+        args.withFlatLayout(
+                lda, n * group + nextInt(0, 3), ldc, nextInt(0, 7), nextInt(0, 7), nextInt(0, 7))
+            .withDimensions(m, k, n);
+
+    Object[] arrs = new Object[dequantize ? 4 : 3];
+    int aLength = args.getAOffset() + m * lda + nextInt(0, 8);
+    if (kernelType == GotoKernelArgs.KERNEL_INT8) {
+      byte[] a = new byte[aLength];
+      byte[] b = new byte[k * n];
+      random.nextBytes(a);
+      random.nextBytes(b);
+      arrs[0] = a;
+      arrs[1] = GotoPacking.packKGroups(b, n, args);
+    } else {
+      short[] a = new short[aLength];
+      short[] b = new short[k * n];
+      for (int index = 0; index < a.length; index++) {
+        a[index] = (short) random.nextInt();
+      }
+      for (int index = 0; index < b.length; index++) {
+        b[index] = (short) random.nextInt();
+      }
+      arrs[0] = a;
+      arrs[1] = GotoPacking.packKGroups(b, n, args);
+    }
+    int[] c = new int[args.getCOffset() + m * ldc + nextInt(0, 8)];
+    for (int index = 0; index < c.length; index++) {
+      c[index] = random.nextInt();
+    }
+    arrs[2] = c;
+    if (dequantize) {
+      arrs[3] = randomOperand(c.length, true);
+    }
+
+    long[] descriptor = args.toLongArray();
+    String description = args + ", kc " + kc;
+    Object[] expected = (Object[]) deepCopy(arrs);
+    reference(expected, kc, args, JavaKind.Int);
+    InstalledCode code =
+        compile(
+            "gotoKernelIntSnippet",
+            GotoKernelNode.class,
+            new Object[] {null, null, null, null, null, null, null, descriptor},
+            description);
+    Object[] actual = (Object[]) deepCopy(arrs);
+    execute(code, actual, m, k, n, args.getALength(), nr, kc, descriptor);
+
+    assertOperandsUnchanged(description, Arrays.copyOf(arrs, 3), Arrays.copyOf(actual, 3));
+    assertTrue(
+        failure(description, "C differs from the reference"),
+        Arrays.equals((int[]) expected[2], (int[]) actual[2]));
+    if (dequantize) {
+      assertClose(
+          description,
+          "the dequantized C",
+          toDoubles(expected[3]),
+          toDoubles(actual[3]),
+          new double[c.length]);
+    }
+  }
+
+  /**
+   * A batch of flat problems, in double or single precision, whose M is not a multiple of the tile
+   * height and whose N is wider than one tile, so every problem has several tile columns over a
+   * partial row block. Below AVX-512 the batched kernels only exist for the AB and ATB kernel
+   * types, without an epilogue and with tiles that divide N; in single precision only those two
+   * kernel types are batched at all.
+   */
+  private void runBatchedCase() {
+    int arch = nextInt(GotoKernelArgs.ARCH_AVX2, targetArch());
+    boolean isFloat = random.nextBoolean();
+    JavaKind elementKind = isFloat ? JavaKind.Float : JavaKind.Double;
+    int kernelType = random.nextInt(arch == GotoKernelArgs.ARCH_AVX512 && !isFloat ? 4 : 2);
+    int k = nextInt(1, 24);
+
+    List<Double> constants = new ArrayList<>();
+    List<Integer> vectors = new ArrayList<>();
+    GotoProgramBuilder program = new GotoProgramBuilder();
+    double bound = 1 + k * mainProgram(program, constants, kernelType, true);
+    Epilogue epilogue =
+        new Epilogue(
+            program, constants, vectors, bound, ulps(2 * (k + 2), bound, isFloat), isFloat);
+    if (arch == GotoKernelArgs.ARCH_AVX512 && random.nextBoolean()) {
+      program.epilogue();
+      for (int step = nextInt(1, 4); step > 0; step--) {
+        epilogue.step();
+      }
+    }
+    GotoKernelArgs args =
+        new GotoKernelArgs(
+            arch,
+            kernelType,
+            1,
+            lanes(arch, elementKind),
+            1,
+            k,
+            1,
+            program.build(),
+            toDoubleArray(constants),
+            toIntArray(vectors),
+            null);
+    args = randomTile(args, elementKind, 2, true, true);
+    int mr = args.getALength();
+    int nr = args.getBLength();
+    int m = mr * nextInt(0, 2) + nextInt(1, mr - 1);
+    boolean masksNTail = args.withFlatLayout(1, 1, 1, 0, 0, 0).masksNTail(isFloat);
+    int n = masksNTail ? nextInt(nr + 1, 3 * nr) : nr * nextInt(2, 3);
+
+    boolean transposedA = kernelType == GotoKernelArgs.KERNEL_ATB;
+    boolean transposedB = kernelType == GotoKernelArgs.KERNEL_ABT;
+    boolean transposedC = kernelType == GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT;
+    int aRows = transposedA ? k : m;
+    int bRows = transposedB ? n : k;
+    int cRows = transposedC ? n : m;
+    int lda = (transposedA ? m : k) + nextInt(0, 3);
+    int ldb = (transposedB ? k : n) + nextInt(0, 3);
+    int ldc = (transposedC ? m : n) + nextInt(0, 3);
+    int cColumns = transposedC ? m : n;
+    int aStride = aRows * lda + nextInt(0, 8);
+    int bStride = bRows * ldb + nextInt(0, 8);
+    int cStride = cRows * ldc + nextInt(0, 8);
+    args =
+        args.withDimensions(m, k, n)
+            .withFlatLayout(lda, ldb, ldc, nextInt(0, 7), nextInt(0, 7), nextInt(0, 7))
+            .withBatch(aStride, bStride, cStride);
+    int batchCount = nextInt(0, 4);
+
+    Object[] arrs = new Object[3 + vectors.size()];
+    arrs[0] = randomOperand(args.getAOffset() + batchCount * aStride, isFloat);
+    arrs[1] = randomOperand(args.getBOffset() + batchCount * bStride, isFloat);
+    arrs[2] = randomOperand(args.getCOffset() + batchCount * cStride, isFloat);
+    for (int index = 0; index < vectors.size(); index++) {
+      arrs[3 + index] =
+          randomOperand(
+              vectors.get(index) == GotoKernelArgs.EPILOGUE_ROW_VECTOR ? m : n, isFloat);
+    }
+
+    long[] descriptor = args.toLongArray();
+    String description = args + ", batch " + batchCount + (isFloat ? ", float" : "");
+    Object[] expected = (Object[]) deepCopy(arrs);
+    GotoKernelReference.gotoKernelBatched(expected, batchCount, args, isFloat);
+    InstalledCode code =
+        compile(
+            isFloat ? "gotoKernelBatchedFloatSnippet" : "gotoKernelBatchedSnippet",
+            GotoKernelNode.class,
+            new Object[] {null, null, descriptor},
+            description);
+    Object[] actual = (Object[]) deepCopy(arrs);
+    execute(code, actual, batchCount, descriptor);
+
+    assertOperandsUnchanged(description, arrs, actual);
+    double[] tolerances = new double[Array.getLength(arrs[2])];
+    for (int problem = 0; problem < batchCount; problem++) {
+      for (int row = 0; row < cRows; row++) {
+        int start = args.getCOffset() + problem * cStride + row * ldc;
+        Arrays.fill(tolerances, start, start + cColumns, epilogue.error);
+      }
+    }
+    assertClose(description, "C", toDoubles(expected[2]), toDoubles(actual[2]), tolerances);
+  }
+
+  /**
+   * Runs {@code code} on copies of the flat operands {@code arrs} in native memory, passing their
+   * addresses followed by {@code args}, and copies the operands back into {@code arrs}.
+   */
+  private static void executeOffHeap(InstalledCode code, Object[] arrs, Object... args) {
+    long[] addresses = new long[arrs.length];
+    try {
+      for (int index = 0; index < arrs.length; index++) {
+        addresses[index] = UNSAFE.allocateMemory(Math.max(byteLength(arrs[index]), 1));
+        UNSAFE.copyMemory(
+            arrs[index],
+            UNSAFE.arrayBaseOffset(arrs[index].getClass()),
+            null,
+            addresses[index],
+            byteLength(arrs[index]));
+      }
+      Object[] arguments = new Object[1 + args.length];
+      arguments[0] = addresses;
+      System.arraycopy(args, 0, arguments, 1, args.length);
+      execute(code, arguments);
+      for (int index = 0; index < arrs.length; index++) {
+        UNSAFE.copyMemory(
+            null,
+            addresses[index],
+            arrs[index],
+            UNSAFE.arrayBaseOffset(arrs[index].getClass()),
+            byteLength(arrs[index]));
+      }
+    } finally {
+      for (long address : addresses) {
+        if (address != 0) {
+          UNSAFE.freeMemory(address);
+        }
+      }
+    }
+  }
+
+  private static long byteLength(Object array) {
+    return (long) Array.getLength(array) * UNSAFE.arrayIndexScale(array.getClass());
+  }
+
+  /** Asserts that the kernel wrote no operand of {@code arrs} other than C. */
+  private static void assertOperandsUnchanged(String description, Object[] arrs, Object[] actual) {
+    for (int index = 0; index < arrs.length; index++) {
+      if (index != 2) {
+        assertTrue(
+            failure(description, "operand " + index + " was modified"),
+            Arrays.deepEquals(new Object[] {arrs[index]}, new Object[] {actual[index]}));
+      }
+    }
+  }
+
+  /**
+   * Appends a random program for every K step that adds a term computed from A and B to C, and
+   * returns a bound on the magnitude of the term. The interleaved packed kernel only computes
+   * {@code C += A * B}, and only the unpacked flat kernels and the AB kernels over arrays of rows
+   * load B where the program says so; the compiler declines other programs for them.
+   */
+  private double mainProgram(
+      GotoProgramBuilder program, List<Double> constants, int kernelType, boolean flat) {
+    if (kernelType == GotoKernelArgs.KERNEL_INTERLEAVE_PACKED) {
+      program.fmadd(C, A, B);
+      return 1;
+    }
+    boolean loadsOnDemand =
+        kernelType == GotoKernelArgs.KERNEL_AB
+            || kernelType == GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT
+            || (flat && !GotoKernelArgs.isPacked(kernelType));
+    switch (random.nextInt(6)) {
+      case 0:
+        program.fmadd(C, A, B);
+        return 1;
+      case 1:
+        program.fmadd(C, B, A);
+        return 1;
+      case 2:
+        program.mul(reg(0), A, B).add(C, C, reg(0));
+        return 1;
+      case 3:
+        if (loadsOnDemand) {
+          // B loaded by the program instead of once per tile.
+          program.load(reg(0), B).fmadd(C, A, reg(0));
+        } else {
+          program.fmadd(C, A, B);
+        }
+        return 1;
+      case 4:
+        {
+          double c = scale();
+          constants.add(c);
+          program.mul(reg(0), A, constArg(constants.size() - 1)).fmadd(C, reg(0), B);
+          return Math.abs(c);
+        }
+      default:
+        // C += max(A * B, 0), with a compare and a masked add in every K step.
+        constants.add(0.0);
+        program
+            .mul(reg(0), A, B)
+            .gt(maskReg(0), reg(0), constArg(constants.size() - 1))
+            .maskAdd(maskReg(0), C, C, reg(0));
+        return 1;
+    }
+  }
+
+  /** A constant of magnitude in [0.5, 2) and random sign. */
+  private double scale() {
+    double value = 0.5 + 1.5 * random.nextDouble();
+    return random.nextBoolean() ? value : -value;
+  }
+
+  /**
+   * A random register tile of at least {@code minALength} rows for which the target emits the
+   * kernel of {@code args} over {@code elementKind} elements. The kernel types need different
+   * numbers of vector registers for the same tile, so the test asks the target, as the plugins do,
+   * instead of estimating.
+   */
+  private GotoKernelArgs randomTile(
+      GotoKernelArgs args, JavaKind elementKind, int minALength, boolean flat, boolean batched) {
+    int lanes = lanes(args.getArch(), elementKind);
+    for (int attempt = 0; attempt < 64; attempt++) {
+      GotoKernelArgs tile = args.withTile(nextInt(minALength, 12), nextInt(1, 5) * lanes);
+      // N is not drawn yet; the leading dimensions do not change the registers a tile needs, but
+      // B has to be wide enough for the k groups of the integer kernels.
+      GotoKernelArgs probe = tile;
+      if (flat) {
+        probe = probe.withFlatLayout(1, 4 * tile.getBLength(), 1, 0, 0, 0);
+      }
+      probe = probe.withDimensions(args.getMLength(), args.getKLength(), tile.getBLength());
+      if (emitsGotoKernel(probe.toLongArray(), elementKind, batched)) {
+        return tile;
+      }
+    }
+    return args.withTile(minALength, lanes);
+  }
+
+  /**
+   * Whether the target emits the Goto kernel of {@code descriptor}, which the plugins check before
+   * they intrinsify a call.
+   */
+  protected boolean emitsGotoKernel(long[] descriptor, JavaKind elementKind, boolean batched) {
+    VecKernelSupport support = getLowerer().getVecKernelSupport();
+    GotoKernelDescriptor decoded =
+        GotoKernelDescriptor.get(
+            getConstantReflection(),
+            getSnippetReflection().forObject(descriptor),
+            getDebugContext());
+    return support != null
+        && support.supportsGotoKernel(decoded, elementKind, batched, getDebugContext());
+  }
+
+  /**
+   * Elements of {@code elementKind} per vector of {@code arch}; for the integer kernels, which keep
+   * 32-bit sums, {@link JavaKind#Int}.
+   */
+  private static int lanes(int arch, JavaKind elementKind) {
+    int bytes = arch == GotoKernelArgs.ARCH_AVX512 ? 64 : 32;
+    return bytes / elementKind.getByteCount();
+  }
+
+  /**
+   * The widest arch the target runs Goto kernels for, which the compiler clamps descriptors to, or
+   * -1 without AVX; the same rule as {@code AMD64VecKernelSupport.vecArch()}.
+   */
+  private int targetArch() {
+    EnumSet<CPUFeature> features = targetFeatures();
+    if (features.contains(CPUFeature.AVX512F)) {
+      return GotoKernelArgs.ARCH_AVX512;
+    } else if (features.contains(CPUFeature.AVX2) && features.contains(CPUFeature.FMA)) {
+      return GotoKernelArgs.ARCH_AVX2;
+    } else if (features.contains(CPUFeature.AVX)) {
+      return GotoKernelArgs.ARCH_AVX;
+    }
+    return -1;
+  }
+
+  private void assumeArch(int arch) {
+    Assume.assumeTrue(
+        "skipping test of kernels that need vector arch " + arch, targetArch() >= arch);
+  }
+
+  /** A tolerance of {@code ulps} units in the last place of {@code bound} as a float or double. */
+  private static double ulps(double ulps, double bound, boolean isFloat) {
+    return isFloat ? ulps * Math.ulp((float) bound) : ulps(ulps, bound);
+  }
+
+  /** A random {@code double[]}, or {@code float[]} if {@code isFloat}, of values in [-1, 1). */
+  private Object randomOperand(int length, boolean isFloat) {
+    double[] values = randomArray(length);
+    if (!isFloat) {
+      return values;
+    }
+    float[] floats = new float[length];
+    for (int index = 0; index < length; index++) {
+      floats[index] = (float) values[index];
+    }
+    return floats;
+  }
+
+  /** Rows of {@link #randomOperand}. */
+  private Object[] randomRows(int rows, int columns, boolean isFloat) {
+    Object[] matrix = isFloat ? new float[rows][] : new double[rows][];
+    for (int row = 0; row < rows; row++) {
+      matrix[row] = randomOperand(columns, isFloat);
+    }
+    return matrix;
+  }
+
+  /** {@code array}, a {@code double[]} or {@code float[]}, widened to doubles without rounding. */
+  private static double[] toDoubles(Object array) {
+    if (array instanceof double[]) {
+      return (double[]) array;
+    }
+    float[] floats = (float[]) array;
+    double[] doubles = new double[floats.length];
+    for (int index = 0; index < floats.length; index++) {
+      doubles[index] = floats[index];
+    }
+    return doubles;
+  }
+
+  private static double[][] toDoubleRows(Object rows) {
+    Object[] matrix = (Object[]) rows;
+    double[][] doubles = new double[matrix.length][];
+    for (int row = 0; row < matrix.length; row++) {
+      doubles[row] = toDoubles(matrix[row]);
+    }
+    return doubles;
+  }
+
+  /**
+   * Appends random steps to the epilogue of a program and keeps a bound on the magnitude of C and
+   * on the difference between the compiled and the reference C after them. Each step is Lipschitz
+   * continuous in C, also across the boundary of its compare, and multiplies the difference by its
+   * Lipschitz constant; both sides then round the new value, to a float if {@code isFloat}.
+   */
+  private final class Epilogue {
+    private final GotoProgramBuilder program;
+    private final List<Double> constants;
+    private final List<Integer> vectors;
+    private final boolean isFloat;
+    private double magnitude;
+    private double error;
+
+    Epilogue(
+        GotoProgramBuilder program,
+        List<Double> constants,
+        List<Integer> vectors,
+        double magnitude,
+        double error,
+        boolean isFloat) {
+      this.program = program;
+      this.constants = constants;
+      this.vectors = vectors;
+      this.magnitude = magnitude;
+      this.error = error;
+      this.isFloat = isFloat;
+    }
+
+    void step() {
+      double c = scale();
+      switch (random.nextInt(8)) {
+        case 0:
+          switch (random.nextInt(3)) {
+            case 0:
+              program.add(C, C, constant(c));
+              break;
+            case 1:
+              program.sub(C, C, constant(c));
+              break;
+            default:
+              program.sub(C, constant(c), C);
+          }
+          update(1, magnitude + Math.abs(c));
+          break;
+        case 1:
+          if (random.nextBoolean()) {
+            program.mul(C, constant(c), C);
+            update(Math.abs(c), magnitude * Math.abs(c));
+          } else {
+            program.div(C, C, constant(c));
+            update(1 / Math.abs(c), magnitude / Math.abs(c));
+          }
+          break;
+        case 2:
+          {
+            // Row and column vectors hold values in [-1, 1).
+            Operand vector =
+                vector(
+                    random.nextBoolean()
+                        ? GotoKernelArgs.EPILOGUE_ROW_VECTOR
+                        : GotoKernelArgs.EPILOGUE_COLUMN_VECTOR);
+            switch (random.nextInt(3)) {
+              case 0:
+                program.add(C, vector, C);
+                update(1, magnitude + 1);
+                break;
+              case 1:
+                program.mul(C, C, vector);
+                update(1, magnitude);
+                break;
+              default:
+                program.fmadd(C, vector, constant(c));
+                update(1, magnitude + Math.abs(c));
+            }
+            break;
+          }
+        case 3:
+          // The stored C holds values in [-1, 1).
+          switch (random.nextInt(3)) {
+            case 0:
+              program.add(C, C, STORED_C);
+              update(1, magnitude + 1);
+              break;
+            case 1:
+              program.sub(C, STORED_C, C);
+              update(1, magnitude + 1);
+              break;
+            default:
+              program.fmadd(C, STORED_C, constant(c));
+              update(1, magnitude + Math.abs(c));
+          }
+          break;
+        case 4:
+          if (random.nextBoolean()) {
+            program.max(C, C, constant(c));
+          } else {
+            program.min(C, constant(c), C);
+          }
+          update(1, Math.max(magnitude, Math.abs(c)));
+          break;
+        case 5:
+          {
+            // Clamps C to a threshold among its values; select keeps C where the mask is clear.
+            double threshold = nextValue() * Math.min(magnitude, 4);
+            Operand operand = constant(threshold);
+            compare(C, operand);
+            program.select(maskReg(0), C, operand, C);
+            update(1, Math.max(magnitude, Math.abs(threshold)));
+            break;
+          }
+        case 6:
+          {
+            // A masked op selected by the sign of C that maps 0 to 0, so it is continuous.
+            Operand zero = constant(0.0);
+            double lipschitz;
+            switch (random.nextInt(4)) {
+              case 0:
+                compare(C, zero);
+                program.maskMul(maskReg(0), C, C, constant(c));
+                lipschitz = Math.max(1, Math.abs(c));
+                break;
+              case 1:
+                compare(C, zero);
+                program.maskFmadd(maskReg(0), C, C, constant(c));
+                lipschitz = 1 + Math.abs(c);
+                break;
+              case 2:
+                compare(C, zero);
+                program.maskDiv(maskReg(0), C, C, constant(c));
+                lipschitz = Math.max(1, 1 / Math.abs(c));
+                break;
+              default:
+                program.mul(reg(0), C, constant(c));
+                compare(C, zero);
+                if (random.nextBoolean()) {
+                  program.maskAdd(maskReg(0), C, C, reg(0));
+                } else {
+                  program.maskSub(maskReg(0), C, C, reg(0));
+                }
+                lipschitz = 1 + Math.abs(c);
+            }
+            update(lipschitz, magnitude * lipschitz);
+            break;
+          }
+        default:
+          {
+            double d = scale();
+            program.mul(reg(0), C, constant(c)).fmadd(C, reg(0), constant(d));
+            double lipschitz = 1 + Math.abs(c * d);
+            update(lipschitz, magnitude * lipschitz);
+          }
+      }
+    }
+
+    private void compare(Operand src0, Operand src1) {
+      switch (random.nextInt(6)) {
+        case 0:
+          program.gt(maskReg(0), src0, src1);
+          break;
+        case 1:
+          program.ge(maskReg(0), src0, src1);
+          break;
+        case 2:
+          program.lt(maskReg(0), src0, src1);
+          break;
+        case 3:
+          program.le(maskReg(0), src0, src1);
+          break;
+        case 4:
+          program.eq(maskReg(0), src0, src1);
+          break;
+        default:
+          program.neq(maskReg(0), src0, src1);
+      }
+    }
+
+    /**
+     * Accounts for a step. The slack covers the few roundings of the step on both sides, of
+     * intermediate values at most twice the new magnitude.
+     */
+    private void update(double lipschitz, double newMagnitude) {
+      error = lipschitz * error + ulps(16, newMagnitude, isFloat);
+      magnitude = newMagnitude;
+    }
+
+    private Operand constant(double value) {
+      constants.add(value);
+      return constArg(constants.size() - 1);
+    }
+
+    private Operand vector(int property) {
+      vectors.add(property);
+      return varArg(vectors.size() - 1);
+    }
+  }
+
+  private static double[] toDoubleArray(List<Double> values) {
+    double[] array = new double[values.size()];
+    for (int index = 0; index < array.length; index++) {
+      array[index] = values.get(index);
+    }
+    return array;
+  }
+
+  private static int[] toIntArray(List<Integer> values) {
+    int[] array = new int[values.size()];
+    for (int index = 0; index < array.length; index++) {
+      array[index] = values.get(index);
+    }
+    return array;
+  }
+}
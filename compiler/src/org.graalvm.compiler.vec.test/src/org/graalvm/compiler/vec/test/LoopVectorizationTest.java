@@ -0,0 +1,720 @@
+package org.graalvm.compiler.vec.test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.ListIterator;
+import jdk.vm.ci.code.InstalledCode;
+import jdk.vm.ci.code.InvalidInstalledCodeException;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.ResolvedJavaMethod;
+import org.graalvm.compiler.core.common.GraalOptions;
+import org.graalvm.compiler.core.test.GraalCompilerTest;
+import org.graalvm.compiler.loop.phases.vec.LoopVectorizationPhase;
+import org.graalvm.compiler.nodes.StructuredGraph;
+import org.graalvm.compiler.nodes.spi.CoreProviders;
+import org.graalvm.compiler.nodes.spi.LoweringProvider;
+import org.graalvm.compiler.nodes.vec.VectorMapNode;
+import org.graalvm.compiler.nodes.vec.VectorReduceNode;
+import org.graalvm.compiler.options.OptionValues;
+import org.graalvm.compiler.phases.BasePhase;
+import org.graalvm.compiler.phases.tiers.MidTierContext;
+import org.graalvm.compiler.phases.tiers.Suites;
+import org.graalvm.compiler.phases.util.Providers;
+import org.junit.Test;
+
+/**
+ * Tests of {@link LoopVectorizationPhase}: compiled loops must compute what the reference run of
+ * the same snippet computes, for every trip count around the vector length, and the phase must
+ * vectorize exactly the loops it claims to. The reductions are also compared for odd trip counts,
+ * extreme and mixed-sign integers, and for floating-point NaN and -0.0, which {@link
+ * GraalOptions#VectorizeFloatReductions} may fold in another order. Whether a loop is expected to
+ * be vectorized also
+ * depends on the target, which reports its lanes through {@link
+ * LoweringProvider#vectorLoopLanes}; {@link #testScalarTarget} compiles for a target without
+ * vector loops on any host.
+ */
+public class LoopVectorizationTest extends GraalCompilerTest {
+  // Three whole AVX-512 vectors of ints and every remainder after them.
+  private static final int MAX_LENGTH = 3 * 16 + 15;
+
+  static volatile int volatileInt = 3;
+
+  // Vector nodes in the graph at the end of the last mid tier.
+  private int vectorNodes;
+  // Compile for a target that vectorizes no loops.
+  private boolean scalarTarget;
+
+  public static int[] intSnippet(int[] a, int[] b, int[] c, int s, int from, int to) {
+    for (int i = from; i < to; i++) {
+      a[i] = (b[i] + c[i]) * s ^ (b[i] - s);
+    }
+    return a;
+  }
+
+  public static long[] longSnippet(long[] a, long[] b, long[] c, long s, int from, int to) {
+    for (int i = from; i < to; i++) {
+      a[i] = (b[i] & c[i]) + s - (b[i] | c[i]);
+    }
+    return a;
+  }
+
+  public static float[] floatSnippet(float[] a, float[] b, float[] c, float s, int from, int to) {
+    for (int i = from; i < to; i++) {
+      a[i] = b[i] * s + c[i] / s;
+    }
+    return a;
+  }
+
+  public static double[] doubleSnippet(
+      double[] a, double[] b, double[] c, double s, int from, int to) {
+    for (int i = from; i < to; i++) {
+      a[i] = (b[i] - c[i]) / s + b[i] * c[i];
+    }
+    return a;
+  }
+
+  /** Stores to one of its inputs: {@code arrays} may hold the same array more than once. */
+  public static int[] aliasSnippet(int[][] arrays, int to) {
+    int[] a = arrays[0];
+    int[] b = arrays[1];
+    int[] c = arrays[2];
+    for (int i = 0; i < to; i++) {
+      a[i] = b[i] * 3 + c[i];
+    }
+    return a;
+  }
+
+  public static double[] aliasDoubleSnippet(double[][] arrays, int to) {
+    double[] a = arrays[0];
+    double[] b = arrays[1];
+    for (int i = 0; i < to; i++) {
+      a[i] = a[i] * b[i] - b[i];
+    }
+    return a;
+  }
+
+  // Each element depends on the one before, which a vector would read too early.
+  public static int[] carriedSnippet(int[] a, int to) {
+    for (int i = 0; i < to; i++) {
+      a[i + 1] = a[i] + 1;
+    }
+    return a;
+  }
+
+  public static int[] shiftedLoadSnippet(int[] a, int[] b, int to) {
+    for (int i = 0; i < to; i++) {
+      a[i] = b[i + 1] * 2;
+    }
+    return a;
+  }
+
+  public static int[] strideSnippet(int[] a, int[] b, int to) {
+    for (int i = 0; i < to; i += 2) {
+      a[i] = b[i] + 1;
+    }
+    return a;
+  }
+
+  // There is no packed 64-bit multiply below AVX512DQ.
+  public static long[] longMulSnippet(long[] a, long[] b, int to) {
+    for (int i = 0; i < to; i++) {
+      a[i] = b[i] * b[i];
+    }
+    return a;
+  }
+
+  public static int[] conversionSnippet(int[] a, double[] b, int to) {
+    for (int i = 0; i < to; i++) {
+      a[i] = (int) b[i];
+    }
+    return a;
+  }
+
+  public static int[] volatileSnippet(int[] a, int[] b, int to) {
+    for (int i = 0; i < to; i++) {
+      a[i] = b[i] + volatileInt;
+    }
+    return a;
+  }
+
+  public static int intDotSnippet(int[] a, int[] b, int init, int from, int to) {
+    int sum = init;
+    for (int i = from; i < to; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  public static int intXorSnippet(int[] a, int init, int from, int to) {
+    int bits = init;
+    for (int i = from; i < to; i++) {
+      bits ^= a[i] + 1;
+    }
+    return bits;
+  }
+
+  public static int intAndSnippet(int[] a, int init, int from, int to) {
+    int bits = init;
+    for (int i = from; i < to; i++) {
+      bits &= a[i] | 0x01010101;
+    }
+    return bits;
+  }
+
+  public static int intMinSnippet(int[] a, int init, int from, int to) {
+    int min = init;
+    for (int i = from; i < to; i++) {
+      min = min < a[i] ? min : a[i];
+    }
+    return min;
+  }
+
+  // The element is the first operand of the comparison.
+  public static int intMaxSnippet(int[] a, int init, int from, int to) {
+    int max = init;
+    for (int i = from; i < to; i++) {
+      max = a[i] < max ? max : a[i];
+    }
+    return max;
+  }
+
+  public static long longSumSnippet(long[] a, long[] b, long init, int from, int to) {
+    long sum = init;
+    for (int i = from; i < to; i++) {
+      sum += a[i] - b[i];
+    }
+    return sum;
+  }
+
+  public static long longOrSnippet(long[] a, long init, int from, int to) {
+    long bits = init;
+    for (int i = from; i < to; i++) {
+      bits |= a[i] & 0xF0F0F0F0F0F0F0F0L;
+    }
+    return bits;
+  }
+
+  // There is no packed 64-bit minimum below AVX-512, so this stays scalar.
+  public static long longMinSnippet(long[] a, long init, int from, int to) {
+    long min = init;
+    for (int i = from; i < to; i++) {
+      min = min < a[i] ? min : a[i];
+    }
+    return min;
+  }
+
+  public static double doubleSumSnippet(double[] a, double init, int from, int to) {
+    double sum = init;
+    for (int i = from; i < to; i++) {
+      sum += a[i];
+    }
+    return sum;
+  }
+
+  public static double doubleDotSnippet(double[] a, double[] b, double init, int from, int to) {
+    double sum = init;
+    for (int i = from; i < to; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  public static double doubleMinSnippet(double[] a, double init, int from, int to) {
+    double min = init;
+    for (int i = from; i < to; i++) {
+      min = min < a[i] ? min : a[i];
+    }
+    return min;
+  }
+
+  public static double doubleMaxSnippet(double[] a, double init, int from, int to) {
+    double max = init;
+    for (int i = from; i < to; i++) {
+      max = max < a[i] ? a[i] : max;
+    }
+    return max;
+  }
+
+  public static float floatSumSnippet(float[] a, float init, int from, int to) {
+    float sum = init;
+    for (int i = from; i < to; i++) {
+      sum += a[i];
+    }
+    return sum;
+  }
+
+  public static float floatMinSnippet(float[] a, float init, int from, int to) {
+    float min = init;
+    for (int i = from; i < to; i++) {
+      min = min < a[i] ? min : a[i];
+    }
+    return min;
+  }
+
+  @Override
+  protected void checkMidTierGraph(StructuredGraph graph) {
+    vectorNodes =
+        graph.getNodes().filter(VectorMapNode.class).count()
+            + graph.getNodes().filter(VectorReduceNode.class).count();
+  }
+
+  @Override
+  protected Suites createSuites(OptionValues opts) {
+    Suites suites = super.createSuites(opts);
+    if (scalarTarget) {
+      ListIterator<BasePhase<? super MidTierContext>> phase =
+          suites.getMidTier().findPhase(LoopVectorizationPhase.class);
+      if (phase != null) {
+        phase.set(new ScalarTargetPhase(getProviders()));
+      }
+    }
+    return suites;
+  }
+
+  @Test
+  public void testInt() {
+    for (int to = 0; to <= MAX_LENGTH; to++) {
+      for (int from = 0; from <= Math.min(to, 3); from++) {
+        test(
+            "intSnippet",
+            supply(() -> new int[MAX_LENGTH]),
+            ints(MAX_LENGTH),
+            ints(MAX_LENGTH),
+            7,
+            from,
+            to);
+      }
+    }
+    assertVectorized("intSnippet", JavaKind.Int, true);
+  }
+
+  @Test
+  public void testLong() {
+    for (int to = 0; to <= MAX_LENGTH; to++) {
+      test(
+          "longSnippet",
+          supply(() -> new long[MAX_LENGTH]),
+          longs(MAX_LENGTH),
+          longs(MAX_LENGTH),
+          -5L,
+          to % 3,
+          to);
+    }
+    assertVectorized("longSnippet", JavaKind.Long, true);
+  }
+
+  @Test
+  public void testFloat() {
+    for (int to = 0; to <= MAX_LENGTH; to++) {
+      test(
+          "floatSnippet",
+          supply(() -> new float[MAX_LENGTH]),
+          floats(MAX_LENGTH),
+          floats(MAX_LENGTH),
+          0.75f,
+          to % 3,
+          to);
+    }
+    assertVectorized("floatSnippet", JavaKind.Float, true);
+  }
+
+  @Test
+  public void testDouble() {
+    for (int to = 0; to <= MAX_LENGTH; to++) {
+      test(
+          "doubleSnippet",
+          supply(() -> new double[MAX_LENGTH]),
+          doubles(MAX_LENGTH),
+          doubles(MAX_LENGTH),
+          -1.5,
+          to % 3,
+          to);
+    }
+    assertVectorized("doubleSnippet", JavaKind.Double, true);
+  }
+
+  /** Ranges the loop does not run, or that fail, must behave as without the vector part. */
+  @Test
+  public void testEmptyAndFailingRanges() {
+    int[] b = ints(MAX_LENGTH);
+    int[] c = ints(MAX_LENGTH);
+    test("intSnippet", supply(() -> new int[MAX_LENGTH]), b, c, 7, 9, 4);
+    test("intSnippet", supply(() -> new int[MAX_LENGTH]), b, c, 7, MAX_LENGTH, MAX_LENGTH);
+    test("intSnippet", supply(() -> new int[MAX_LENGTH]), b, c, 7, 0, MAX_LENGTH + 1);
+    test("intSnippet", supply(() -> new int[MAX_LENGTH]), b, c, 7, -1, MAX_LENGTH);
+  }
+
+  @Test
+  public void testAliasing() {
+    for (int to = 0; to <= MAX_LENGTH; to++) {
+      // The store overwrites each input, and both inputs are one array.
+      test("aliasSnippet", supply(() -> same(ints(MAX_LENGTH), 3)), to);
+      test(
+          "aliasSnippet",
+          supply(
+              () -> {
+                int[] a = ints(MAX_LENGTH);
+                return new int[][] {a, a, ints(MAX_LENGTH)};
+              }),
+          to);
+      test(
+          "aliasSnippet",
+          supply(
+              () -> {
+                int[] a = ints(MAX_LENGTH);
+                return new int[][] {a, ints(MAX_LENGTH), a};
+              }),
+          to);
+      test(
+          "aliasDoubleSnippet",
+          supply(
+              () -> {
+                double[] a = doubles(MAX_LENGTH);
+                return new double[][] {a, a};
+              }),
+          to);
+    }
+    assertVectorized("aliasSnippet", JavaKind.Int, true);
+    assertVectorized("aliasDoubleSnippet", JavaKind.Double, true);
+  }
+
+  @Test
+  public void testRejected() {
+    for (int to = 0; to < MAX_LENGTH; to++) {
+      test("carriedSnippet", supply(() -> ints(MAX_LENGTH)), to);
+      test("shiftedLoadSnippet", supply(() -> new int[MAX_LENGTH]), ints(MAX_LENGTH), to);
+      test("strideSnippet", supply(() -> new int[MAX_LENGTH]), ints(MAX_LENGTH), to);
+      test("longMulSnippet", supply(() -> new long[MAX_LENGTH]), longs(MAX_LENGTH), to);
+      test("conversionSnippet", supply(() -> new int[MAX_LENGTH]), doubles(MAX_LENGTH), to);
+      test("volatileSnippet", supply(() -> new int[MAX_LENGTH]), ints(MAX_LENGTH), to);
+    }
+    assertVectorized("carriedSnippet", JavaKind.Int, false);
+    assertVectorized("shiftedLoadSnippet", JavaKind.Int, false);
+    assertVectorized("strideSnippet", JavaKind.Int, false);
+    assertVectorized("longMulSnippet", JavaKind.Long, false);
+    assertVectorized("conversionSnippet", JavaKind.Int, false);
+    assertVectorized("volatileSnippet", JavaKind.Int, false);
+  }
+
+  /** A target without AVX2 keeps every loop scalar and still computes the same. */
+  @Test
+  public void testScalarTarget() {
+    scalarTarget = true;
+    try {
+      assertVectorized("intSnippet", JavaKind.Int, false);
+      assertVectorized("doubleSnippet", JavaKind.Double, false);
+      ResolvedJavaMethod method = getResolvedJavaMethod("doubleSnippet");
+      for (int to = 0; to <= MAX_LENGTH; to++) {
+        double[] b = doubles(MAX_LENGTH);
+        double[] c = doubles(MAX_LENGTH);
+        Result expected = executeExpected(method, null, new double[MAX_LENGTH], b, c, 2.0, 0, to);
+        Object actual =
+            execute(getCode(method, null, true), new double[MAX_LENGTH], b, c, 2.0, 0, to);
+        assertDeepEquals(expected.returnValue, actual);
+      }
+    } finally {
+      scalarTarget = false;
+    }
+  }
+
+  @Test
+  public void testIntReductions() {
+    int[] a = ints(MAX_LENGTH);
+    int[] b = ints(MAX_LENGTH + 7);
+    for (int init : new int[] {0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+      for (int to = 0; to <= MAX_LENGTH; to++) {
+        // Odd start indices give odd trip counts and whole vectors that start anywhere.
+        int from = to % 5;
+        test("intDotSnippet", a, b, init, from, to);
+        test("intXorSnippet", a, init, from, to);
+        test("intAndSnippet", a, init, from, to);
+        test("intMinSnippet", a, init, from, to);
+        test("intMaxSnippet", a, init, from, to);
+      }
+    }
+    assertVectorized("intDotSnippet", JavaKind.Int, true);
+    assertVectorized("intXorSnippet", JavaKind.Int, true);
+    assertVectorized("intAndSnippet", JavaKind.Int, true);
+    assertVectorized("intMinSnippet", JavaKind.Int, true);
+    assertVectorized("intMaxSnippet", JavaKind.Int, true);
+  }
+
+  @Test
+  public void testLongReductions() {
+    long[] a = longs(MAX_LENGTH);
+    long[] b = longs(MAX_LENGTH + 3);
+    for (long init : new long[] {0, -1, Long.MIN_VALUE, Long.MAX_VALUE}) {
+      for (int to = 0; to <= MAX_LENGTH; to++) {
+        int from = to % 5;
+        test("longSumSnippet", a, b, init, from, to);
+        test("longOrSnippet", a, init, from, to);
+        test("longMinSnippet", a, init, from, to);
+      }
+    }
+    assertVectorized("longSumSnippet", JavaKind.Long, true);
+    assertVectorized("longOrSnippet", JavaKind.Long, true);
+    assertVectorized("longMinSnippet", JavaKind.Long, false);
+  }
+
+  /**
+   * Without {@link GraalOptions#VectorizeFloatReductions} floating-point reductions stay scalar and
+   * keep the bits of the reference, including NaN and the sign of zero.
+   */
+  @Test
+  public void testStrictFloatReductions() {
+    testFloatReductions(getInitialOptions(), false);
+  }
+
+  /**
+   * With {@link GraalOptions#VectorizeFloatReductions} sums may round differently and minimums and
+   * maximums may pick another NaN or zero, but only within the documented bounds.
+   */
+  @Test
+  public void testRelaxedFloatReductions() {
+    testFloatReductions(
+        new OptionValues(getInitialOptions(), GraalOptions.VectorizeFloatReductions, true), true);
+  }
+
+  private void testFloatReductions(OptionValues options, boolean relaxed) {
+    String[] doubleSnippets = {
+      "doubleSumSnippet", "doubleDotSnippet", "doubleMinSnippet", "doubleMaxSnippet"
+    };
+    String[] floatSnippets = {"floatSumSnippet", "floatMinSnippet"};
+    InstalledCode[] doubleCode = new InstalledCode[doubleSnippets.length];
+    for (int s = 0; s < doubleSnippets.length; s++) {
+      doubleCode[s] = assertVectorized(doubleSnippets[s], JavaKind.Double, relaxed, options);
+    }
+    InstalledCode[] floatCode = new InstalledCode[floatSnippets.length];
+    for (int s = 0; s < floatSnippets.length; s++) {
+      floatCode[s] = assertVectorized(floatSnippets[s], JavaKind.Float, relaxed, options);
+    }
+    for (int special = 0; special < 4; special++) {
+      double[] a = withSpecials(doubles(MAX_LENGTH), special);
+      double[] b = doubles(MAX_LENGTH + 5);
+      float[] f = new float[a.length];
+      for (int i = 0; i < a.length; i++) {
+        f[i] = (float) a[i];
+      }
+      for (double init : new double[] {0.0, -0.0, 1.5, Double.NaN}) {
+        for (int to = 0; to <= MAX_LENGTH; to++) {
+          int from = to % 5;
+          for (int s = 0; s < doubleSnippets.length; s++) {
+            Object[] args =
+                s == 1 ? new Object[] {a, b, init, from, to} : new Object[] {a, init, from, to};
+            double[] values = s == 1 ? products(a, b, from, to) : Arrays.copyOfRange(a, from, to);
+            checkFloatReduction(doubleSnippets[s], doubleCode[s], relaxed, init, values, args);
+          }
+          double[] values = new double[Math.max(0, to - from)];
+          for (int i = from; i < to; i++) {
+            values[i - from] = f[i];
+          }
+          for (int s = 0; s < floatSnippets.length; s++) {
+            checkFloatReduction(
+                floatSnippets[s], floatCode[s], relaxed, init, values, f, (float) init, from, to);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs {@code code} and the reference of {@code snippet}, which reduces {@code values} starting
+   * from {@code init}, and compares their results: bit for bit unless {@code relaxed}.
+   */
+  private void checkFloatReduction(
+      String snippet,
+      InstalledCode code,
+      boolean relaxed,
+      double init,
+      double[] values,
+      Object... args) {
+    Result expectedResult = executeExpected(getResolvedJavaMethod(snippet), null, args);
+    double expected = ((Number) expectedResult.returnValue).doubleValue();
+    double actual = ((Number) execute(code, args)).doubleValue();
+    // The initial value, from and to.
+    String description =
+        snippet + Arrays.toString(Arrays.copyOfRange(args, args.length - 3, args.length));
+    if (!relaxed) {
+      assertTrue(
+          description + " is " + actual + ", the reference computes " + expected,
+          Double.doubleToLongBits(expected) == Double.doubleToLongBits(actual));
+      return;
+    }
+    boolean hasNaN = Double.isNaN(init);
+    double magnitude = Math.abs(init);
+    for (double value : values) {
+      hasNaN |= Double.isNaN(value);
+      magnitude += Math.abs(value);
+    }
+    if (snippet.endsWith("SumSnippet") || snippet.endsWith("DotSnippet")) {
+      // A NaN anywhere makes any order of the sum NaN; otherwise each addition rounds once.
+      double ulp = snippet.startsWith("float") ? Math.ulp((float) magnitude) : Math.ulp(magnitude);
+      boolean close =
+          hasNaN
+              ? Double.isNaN(actual)
+              : Math.abs(expected - actual) <= (values.length + 1) * ulp;
+      assertTrue(
+          description + " is " + actual + ", the reference computes " + expected, close);
+    } else if (hasNaN) {
+      // Which NaN or value survives depends on the order, but nothing else may appear.
+      boolean candidate = Double.isNaN(actual) || actual == init;
+      for (double value : values) {
+        candidate |= actual == value;
+      }
+      assertTrue(description + " is " + actual + ", which is none of its inputs", candidate);
+    } else {
+      // Exact, but -0.0 and 0.0 compare equal and either may be picked.
+      assertTrue(
+          description + " is " + actual + ", the reference computes " + expected,
+          expected == actual);
+    }
+  }
+
+  private static double[] products(double[] a, double[] b, int from, int to) {
+    double[] products = new double[Math.max(0, to - from)];
+    for (int i = from; i < to; i++) {
+      products[i - from] = a[i] * b[i];
+    }
+    return products;
+  }
+
+  /**
+   * {@code array} with NaN ({@code special} 1), zeroes of both signs (2) or both (3) at
+   * positions that land in the unrolled vector loop, the single vector loop and the scalar tail.
+   */
+  private static double[] withSpecials(double[] array, int special) {
+    for (int i = 0; i < array.length; i++) {
+      if (i % 13 == 5 || i == array.length - 1) {
+        if ((special & 2) != 0) {
+          array[i] = i % 2 == 0 ? 0.0 : -0.0;
+        }
+        if ((special & 1) != 0 && i % 3 == 0) {
+          array[i] = Double.NaN;
+        }
+      }
+    }
+    return array;
+  }
+
+  /**
+   * Compiles {@code snippet} and checks that its loop was vectorized if {@code expected} and the
+   * target has vector loops over {@code kind}, and that it was left scalar otherwise. Returns the
+   * compiled code, which is not cached.
+   */
+  protected InstalledCode assertVectorized(String snippet, JavaKind kind, boolean expected) {
+    return assertVectorized(snippet, kind, expected, getInitialOptions());
+  }
+
+  protected InstalledCode assertVectorized(
+      String snippet, JavaKind kind, boolean expected, OptionValues options) {
+    boolean vectorLoops =
+        !scalarTarget
+            && GraalOptions.VectorizeLoops.getValue(options)
+            && getProviders().getLowerer().vectorLoopLanes(kind) != 0;
+    vectorNodes = -1;
+    InstalledCode code = getCode(getResolvedJavaMethod(snippet), null, true, false, options);
+    assertTrue("mid tier of " + snippet + " did not run", vectorNodes >= 0);
+    if (expected && vectorLoops) {
+      assertTrue(snippet + " was not vectorized", vectorNodes == 1);
+    } else {
+      assertTrue(snippet + " must not be vectorized", vectorNodes == 0);
+    }
+    return code;
+  }
+
+  protected static Object execute(InstalledCode code, Object... args) {
+    try {
+      return code.executeVarargs(args);
+    } catch (InvalidInstalledCodeException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static int[][] same(int[] array, int count) {
+    int[][] arrays = new int[count][];
+    for (int i = 0; i < count; i++) {
+      arrays[i] = array;
+    }
+    return arrays;
+  }
+
+  // Deterministic inputs with mixed signs, so every case is reproducible.
+  protected static int[] ints(int length) {
+    int[] array = new int[length];
+    for (int i = 0; i < length; i++) {
+      array[i] = (i * 0x9E3779B9) >> 7;
+    }
+    return array;
+  }
+
+  protected static long[] longs(int length) {
+    long[] array = new long[length];
+    for (int i = 0; i < length; i++) {
+      array[i] = (i * 0x9E3779B97F4A7C15L) >> 5;
+    }
+    return array;
+  }
+
+  protected static float[] floats(int length) {
+    int[] bits = ints(length);
+    float[] array = new float[length];
+    for (int i = 0; i < length; i++) {
+      array[i] = (bits[i] >> 8) / 1024f;
+    }
+    return array;
+  }
+
+  protected static double[] doubles(int length) {
+    long[] bits = longs(length);
+    double[] array = new double[length];
+    for (int i = 0; i < length; i++) {
+      array[i] = (bits[i] >> 20) / 4096.0;
+    }
+    return array;
+  }
+
+  /** Runs {@link LoopVectorizationPhase} with a lowerer that reports no vector lanes. */
+  private static final class ScalarTargetPhase extends BasePhase<CoreProviders> {
+    private final Providers providers;
+
+    ScalarTargetPhase(Providers providers) {
+      LoweringProvider lowerer = providers.getLowerer();
+      LoweringProvider scalarLowerer =
+          (LoweringProvider)
+              Proxy.newProxyInstance(
+                  LoweringProvider.class.getClassLoader(),
+                  new Class<?>[] {LoweringProvider.class},
+                  (proxy, method, args) -> {
+                    if (method.getName().equals("vectorLoopLanes")) {
+                      return 0;
+                    }
+                    try {
+                      return method.invoke(lowerer, args);
+                    } catch (InvocationTargetException e) {
+                      throw e.getCause();
+                    }
+                  });
+      this.providers =
+          new Providers(
+              providers.getMetaAccess(),
+              providers.getCodeCache(),
+              providers.getConstantReflection(),
+              providers.getConstantFieldProvider(),
+              providers.getForeignCalls(),
+              scalarLowerer,
+              providers.getReplacements(),
+              providers.getStampProvider(),
+              providers.getPlatformConfigurationProvider(),
+              providers.getMetaAccessExtensionProvider(),
+              providers.getSnippetReflection(),
+              providers.getWordTypes(),
+              providers.getLoopsDataProvider());
+    }
+
+    @Override
+    protected void run(StructuredGraph graph, CoreProviders context) {
+      new LoopVectorizationPhase().apply(graph, providers);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package org.graalvm.compiler.vec.test;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import java.util.Arrays;
+
+import jdk.vm.ci.code.InstalledCode;
+import org.graalvm.compiler.graph.Node;
+import org.graalvm.compiler.nodes.vec.MatmulKernel1D2x8Node;
+import org.graalvm.compiler.nodes.vec.MatmulKernel2x8Node;
+import org.graalvm.compiler.nodes.vec.MatmulKernel8x16Node;
+import org.junit.Test;
+
+/**
+ * Differential test of the fixed-tile matmul directives. Each snippet computes {@code C += A * B}
+ * tile by tile. All three kernels compute a 2x8 tile without bounds checks, so M is a multiple of 2
+ * and N of 8. They multiply and add without fusing, in K order, so the results must be exact. The
+ * Java reference of {@code matmulKernel2x8} walks an 8x16 tile, so the expected results of the
+ * kernels over arrays of rows come from {@link #multiplyAdd} rather than from the snippets.
+ */
+public class MatmulKernelTest extends VecKernelTest {
+
+  public static void matmul8x16Snippet(
+      double[][] a, double[][] b, double[][] c, int m, int k, int n, int kc) {
+    for (int pc = 0; pc < k; pc += kc) {
+      for (int j = 0; j < n; j += 8) {
+        for (int i = 0; i < m; i += 2) {
+          CompilerDirectives.matmulKernel8x16(a, b, c, Math.min(kc, k - pc), i, pc, j);
+        }
+      }
+    }
+  }
+
+  public static void matmul2x8Snippet(
+      double[][] a, double[][] b, double[][] c, int m, int k, int n, int kc) {
+    for (int pc = 0; pc < k; pc += kc) {
+      for (int j = 0; j < n; j += 8) {
+        for (int i = 0; i < m; i += 2) {
+          CompilerDirectives.matmulKernel2x8(a, b, c, Math.min(kc, k - pc), i, pc, j);
+        }
+      }
+    }
+  }
+
+  /** {@code A}, {@code B} and {@code C} are {@code len x len}, {@code constants} is scratch. */
+  public static void matmul1DSnippet(
+      double[] a, double[] b, double[] c, int len, int kc, int[] constants) {
+    constants[1] = len;
+    for (int pc = 0; pc < len; pc += kc) {
+      constants[0] = Math.min(kc, len - pc);
+      for (int j = 0; j < len; j += 8) {
+        for (int i = 0; i < len; i += 2) {
+          CompilerDirectives.matmulKernel1D2x8(a, b, c, constants, i, pc, j);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void test8x16() {
+    testArraysOfRows("matmul8x16Snippet", MatmulKernel8x16Node.class);
+  }
+
+  @Test
+  public void test2x8() {
+    testArraysOfRows("matmul2x8Snippet", MatmulKernel2x8Node.class);
+  }
+
+  private void testArraysOfRows(String snippet, Class<? extends Node> intrinsic) {
+    assumeUncompressedReferences();
+    InstalledCode code = compile(snippet, intrinsic, null, snippet);
+    for (int index = 0; index < CASES; index++) {
+      int m = 2 * nextInt(1, 12);
+      int k = nextInt(1, 40);
+      int n = 8 * nextInt(1, 4);
+      int kc = nextInt(1, k);
+      String description = snippet + " " + m + "x" + k + "x" + n + ", kc " + kc;
+      double[][] a = randomMatrix(m, k);
+      double[][] b = randomMatrix(k, n);
+      double[][] c = randomMatrix(m, n);
+      double[][] expected = (double[][]) deepCopy(c);
+      double[][] actual = (double[][]) deepCopy(c);
+      multiplyAdd(a, b, expected);
+      double[][] aCopy = (double[][]) deepCopy(a);
+      double[][] bCopy = (double[][]) deepCopy(b);
+      execute(code, aCopy, bCopy, actual, m, k, n, kc);
+      assertTrue(
+          failure(description, "A or B was modified"),
+          Arrays.deepEquals(a, aCopy) && Arrays.deepEquals(b, bCopy));
+      assertClose(description, "C", expected, actual, new double[m][n]);
+    }
+  }
+
+  /** {@code c += a * b}, accumulating each element of {@code c} in K order. */
+  private static void multiplyAdd(double[][] a, double[][] b, double[][] c) {
+    for (int kk = 0; kk < b.length; kk++) {
+      for (int ii = 0; ii < c.length; ii++) {
+        for (int jj = 0; jj < c[ii].length; jj++) {
+          c[ii][jj] += a[ii][kk] * b[kk][jj];
+        }
+      }
+    }
+  }
+
+  @Test
+  public void test1D2x8() {
+    InstalledCode code = compile("matmul1DSnippet", MatmulKernel1D2x8Node.class, null, "1D2x8");
+    for (int index = 0; index < CASES; index++) {
+      int len = 8 * nextInt(1, 4);
+      int kc = nextInt(1, len);
+      String description = "matmulKernel1D2x8 " + len + "x" + len + ", kc " + kc;
+      double[] a = randomArray(len * len);
+      double[] b = randomArray(len * len);
+      double[] c = randomArray(len * len);
+      double[] expected = c.clone();
+      double[] actual = c.clone();
+      matmul1DSnippet(a, b, expected, len, kc, new int[2]);
+      double[] aCopy = a.clone();
+      double[] bCopy = b.clone();
+      execute(code, aCopy, bCopy, actual, len, kc, new int[2]);
+      assertTrue(
+          failure(description, "A or B was modified"),
+          Arrays.equals(a, aCopy) && Arrays.equals(b, bCopy));
+      assertClose(description, "C", expected, actual, new double[len * len]);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package org.graalvm.compiler.vec.test;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.vec.ScatterReduce;
+import java.util.Arrays;
+
+import jdk.vm.ci.code.InstalledCode;
+import org.graalvm.compiler.nodes.vec.ScatterReduceNode;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Differential test of the histogram and scatter-reduce directives against {@link ScatterReduce}.
+ * The cases draw ranges that start and end in the middle of a vector, ranges shorter than one
+ * vector, few and many buckets and keys concentrated on a hot bucket, so one vector of keys holds
+ * many conflicts. Int and long results must be exact; a double sum may be reassociated and gets a
+ * tolerance of a few ULPs per value.
+ */
+public class ScatterReduceTest extends VecKernelTest {
+  private static final String[] OP_NAMES = {"SUM", "MIN", "MAX"};
+
+  @Before
+  public void checkScatterReduce() {
+    Assume.assumeTrue(
+        "skipping test that needs AVX-512 and AVX512CD",
+        vecKernelSupport().supportsScatterReduce());
+  }
+
+  public static void aggregateSnippet(int inputOffset, int[] input, int[] output) {
+    CompilerDirectives.vecAggregate(inputOffset, input, output);
+  }
+
+  public static void histogramSnippet(int[] keys, int from, int to, int[] output) {
+    CompilerDirectives.vecHistogram(keys, from, to, output);
+  }
+
+  public static void intSnippet(int op, int[] keys, int[] values, int from, int to, int[] output) {
+    CompilerDirectives.vecScatterReduce(op, keys, values, from, to, output);
+  }
+
+  public static void longSnippet(
+      int op, int[] keys, long[] values, int from, int to, long[] output) {
+    CompilerDirectives.vecScatterReduce(op, keys, values, from, to, output);
+  }
+
+  public static void doubleSnippet(
+      int op, int[] keys, double[] values, int from, int to, double[] output) {
+    CompilerDirectives.vecScatterReduce(op, keys, values, from, to, output);
+  }
+
+  @Test
+  public void testAggregate() {
+    InstalledCode code = compile("aggregateSnippet", ScatterReduceNode.class, null, "vecAggregate");
+    for (int index = 0; index < CASES; index++) {
+      int buckets = randomBuckets();
+      int[] input = randomKeys(nextInt(16, 80), buckets);
+      int inputOffset = nextInt(0, input.length - 16);
+      int[] expected = randomCounts(buckets);
+      int[] actual = expected.clone();
+      ScatterReduce.histogram(input, inputOffset, inputOffset + 16, expected);
+      execute(code, inputOffset, input, actual);
+      assertTrue(
+          failure("vecAggregate at " + inputOffset + " of " + Arrays.toString(input), "output"),
+          Arrays.equals(expected, actual));
+    }
+  }
+
+  @Test
+  public void testHistogram() {
+    InstalledCode code = compile("histogramSnippet", ScatterReduceNode.class, null, "vecHistogram");
+    for (int index = 0; index < CASES; index++) {
+      int buckets = randomBuckets();
+      int[] keys = randomKeys(nextInt(0, 100), buckets);
+      int from = nextInt(0, keys.length);
+      int to = nextInt(from, keys.length);
+      int[] expected = randomCounts(buckets);
+      int[] actual = expected.clone();
+      ScatterReduce.histogram(keys, from, to, expected);
+      execute(code, keys, from, to, actual);
+      assertTrue(
+          failure(describe("vecHistogram", keys, from, to), "output"),
+          Arrays.equals(expected, actual));
+    }
+  }
+
+  @Test
+  public void testInt() {
+    for (int op = ScatterReduce.SUM; op <= ScatterReduce.MAX; op++) {
+      InstalledCode code = compileOp("intSnippet", op);
+      for (int index = 0; index < CASES; index++) {
+        int buckets = randomBuckets();
+        int[] keys = randomKeys(nextInt(0, 100), buckets);
+        int[] values = new int[keys.length];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = random.nextInt();
+        }
+        int from = nextInt(0, keys.length);
+        int to = nextInt(from, keys.length);
+        int[] expected = new int[buckets];
+        for (int i = 0; i < buckets; i++) {
+          expected[i] = random.nextInt();
+        }
+        int[] actual = expected.clone();
+        ScatterReduce.scatterReduce(op, keys, values, from, to, expected);
+        execute(code, op, keys, values, from, to, actual);
+        assertTrue(
+            failure(describe("int " + OP_NAMES[op], keys, from, to), "output"),
+            Arrays.equals(expected, actual));
+      }
+    }
+  }
+
+  @Test
+  public void testLong() {
+    for (int op = ScatterReduce.SUM; op <= ScatterReduce.MAX; op++) {
+      InstalledCode code = compileOp("longSnippet", op);
+      for (int index = 0; index < CASES; index++) {
+        int buckets = randomBuckets();
+        int[] keys = randomKeys(nextInt(0, 100), buckets);
+        long[] values = new long[keys.length];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = random.nextLong();
+        }
+        int from = nextInt(0, keys.length);
+        int to = nextInt(from, keys.length);
+        long[] expected = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+          expected[i] = random.nextLong();
+        }
+        long[] actual = expected.clone();
+        ScatterReduce.scatterReduce(op, keys, values, from, to, expected);
+        execute(code, op, keys, values, from, to, actual);
+        assertTrue(
+            failure(describe("long " + OP_NAMES[op], keys, from, to), "output"),
+            Arrays.equals(expected, actual));
+      }
+    }
+  }
+
+  @Test
+  public void testDouble() {
+    for (int op = ScatterReduce.SUM; op <= ScatterReduce.MAX; op++) {
+      InstalledCode code = compileOp("doubleSnippet", op);
+      for (int index = 0; index < CASES; index++) {
+        int buckets = randomBuckets();
+        int[] keys = randomKeys(nextInt(0, 100), buckets);
+        double[] values = randomArray(keys.length);
+        int from = nextInt(0, keys.length);
+        int to = nextInt(from, keys.length);
+        double[] expected = randomArray(buckets);
+        double[] actual = expected.clone();
+        ScatterReduce.scatterReduce(op, keys, values, from, to, expected);
+        execute(code, op, keys, values, from, to, actual);
+        // Minimum and maximum are exact; each sum of count values in [-1, 1) rounds count times.
+        double[] tolerances = new double[buckets];
+        if (op == ScatterReduce.SUM) {
+          int[] counts = new int[buckets];
+          ScatterReduce.histogram(keys, from, to, counts);
+          for (int i = 0; i < buckets; i++) {
+            tolerances[i] = counts[i] == 0 ? 0 : ulps(2 * (counts[i] + 1), counts[i] + 1);
+          }
+        }
+        assertClose(
+            describe("double " + OP_NAMES[op], keys, from, to),
+            "output",
+            expected,
+            actual,
+            tolerances);
+      }
+    }
+  }
+
+  private InstalledCode compileOp(String snippet, int op) {
+    return compile(
+        snippet,
+        ScatterReduceNode.class,
+        new Object[] {op, null, null, null, null, null},
+        snippet + " " + OP_NAMES[op]);
+  }
+
+  private int randomBuckets() {
+    return random.nextBoolean() ? nextInt(1, 4) : nextInt(1, 64);
+  }
+
+  /** Keys in {@code [0, buckets)}, half of the time mostly one hot key. */
+  private int[] randomKeys(int length, int buckets) {
+    int[] keys = new int[length];
+    int hot = random.nextBoolean() ? random.nextInt(buckets) : -1;
+    for (int i = 0; i < length; i++) {
+      keys[i] = hot >= 0 && random.nextInt(4) != 0 ? hot : random.nextInt(buckets);
+    }
+    return keys;
+  }
+
+  private int[] randomCounts(int buckets) {
+    int[] counts = new int[buckets];
+    for (int i = 0; i < buckets; i++) {
+      counts[i] = random.nextInt(1000);
+    }
+    return counts;
+  }
+
+  private static String describe(String name, int[] keys, int from, int to) {
+    return name + " of [" + from + ", " + to + ") in " + Arrays.toString(keys);
+  }
+}
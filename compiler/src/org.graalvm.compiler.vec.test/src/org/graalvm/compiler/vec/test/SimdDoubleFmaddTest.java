@@ -0,0 +1,69 @@
+package org.graalvm.compiler.vec.test;
+
+import com.oracle.truffle.api.CompilerDirectives;
+
+import jdk.vm.ci.code.InstalledCode;
+import org.graalvm.compiler.nodes.vec.SimdDoubleFmaddNode;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Differential test of {@link CompilerDirectives#simdDoubleFmadd} against its Java loop. The
+ * lengths reach past the unrolled loop and end in every position of the tail, and include zero and
+ * negative lengths, for which nothing may be written. The output is longer than {@code length}, so
+ * a store past the end fails the test. The fused multiply-add rounds once where the loop rounds
+ * twice, which the tolerance allows for.
+ */
+public class SimdDoubleFmaddTest extends VecKernelTest {
+  public static void fmaddSnippet(int length, double multVal, double[] input, double[] output) {
+    CompilerDirectives.simdDoubleFmadd(length, multVal, input, output);
+  }
+
+  public static void nonTemporalSnippet(
+      int length, double multVal, double[] input, double[] output) {
+    CompilerDirectives.simdDoubleFmadd(length, multVal, input, output, true);
+  }
+
+  @Before
+  public void checkFmadd() {
+    Assume.assumeTrue(
+        "skipping test that needs AVX2 and FMA", vecKernelSupport().supportsSimdDoubleFmadd());
+  }
+
+  @Test
+  public void testFmadd() {
+    runCases("fmaddSnippet");
+  }
+
+  @Test
+  public void testNonTemporal() {
+    runCases("nonTemporalSnippet");
+  }
+
+  private void runCases(String snippet) {
+    InstalledCode code = compile(snippet, SimdDoubleFmaddNode.class, null, snippet);
+    for (int index = 0; index < CASES; index++) {
+      // A quarter of the cases have a length of zero or less.
+      int length = random.nextInt(4) == 0 ? nextInt(-20, 0) : nextInt(1, 80);
+      int size = Math.max(length, 0) + nextInt(0, 8);
+      double multVal = nextValue();
+      double[] input = randomArray(size);
+      double[] expected = randomArray(size);
+      double[] actual = expected.clone();
+      CompilerDirectives.simdDoubleFmadd(length, multVal, input, expected);
+      execute(code, length, multVal, input, actual);
+      // Each written element is a sum of two values in [-1, 1).
+      double[] tolerances = new double[size];
+      for (int i = 0; i < length; i++) {
+        tolerances[i] = ulps(2, 2);
+      }
+      assertClose(
+          snippet + " of length " + length + " into " + size + " elements",
+          "output",
+          expected,
+          actual,
+          tolerances);
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package org.graalvm.compiler.vec.test;
+
+import java.util.EnumSet;
+import java.util.Random;
+
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.amd64.AMD64.CPUFeature;
+import jdk.vm.ci.code.InstalledCode;
+import jdk.vm.ci.code.InvalidInstalledCodeException;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.ResolvedJavaMethod;
+import org.graalvm.compiler.core.test.GraalCompilerTest;
+import org.graalvm.compiler.graph.Node;
+import org.graalvm.compiler.nodes.StructuredGraph;
+import org.graalvm.compiler.nodes.StructuredGraph.AllowAssumptions;
+import org.graalvm.compiler.nodes.graphbuilderconf.GraphBuilderConfiguration;
+import org.graalvm.compiler.nodes.vec.VecKernelSupport;
+import org.graalvm.compiler.replacements.ConstantBindingParameterPlugin;
+import org.junit.Assume;
+import org.junit.Before;
+
+/**
+ * Base class of the randomized differential tests of the vector kernel intrinsics. A test draws
+ * random cases, compiles a snippet that calls a {@code CompilerDirectives} kernel directive with
+ * the descriptor of the case bound as a constant, checks that the directive was intrinsified, runs
+ * the compiled snippet and compares its result with the Java reference run on a copy of the same
+ * inputs.
+ *
+ * <p>The cases come from a {@link Random} seeded with {@code -Dtest.seed}, or with the current
+ * time; every failure message carries the seed that reproduces it. {@code -Dtest.vec.cases} sets
+ * the number of cases per test.
+ *
+ * <p>Floating-point results are compared with an absolute tolerance that the test derives from a
+ * bound on the magnitudes of the values involved, in ULPs of that bound. Elements the kernel must
+ * not write get a tolerance of zero, so a stray store fails the test.
+ */
+public abstract class VecKernelTest extends GraalCompilerTest {
+  protected static final long SEED = Long.getLong("test.seed", System.nanoTime());
+  protected static final int CASES = Integer.getInteger("test.vec.cases", 24);
+
+  // Every test method gets its own instance, so each one replays the same cases for a given seed.
+  protected final Random random = new Random(SEED);
+
+  // Arguments of the snippet being parsed that are bound as constants; null entries stay
+  // parameters.
+  private Object[] constantArgs;
+
+  @Before
+  public void checkTarget() {
+    Assume.assumeTrue("skipping AMD64 specific test", getTarget().arch instanceof AMD64);
+  }
+
+  /** The CPU features of the target. */
+  protected EnumSet<CPUFeature> targetFeatures() {
+    return ((AMD64) getTarget().arch).getFeatures();
+  }
+
+  /**
+   * The vector kernels the target can emit, which the plugins ask before they intrinsify a call.
+   * A test skips the kernels the target lacks instead of expecting them to be intrinsified.
+   */
+  protected VecKernelSupport vecKernelSupport() {
+    VecKernelSupport support = getLowerer().getVecKernelSupport();
+    Assume.assumeTrue("skipping test on a target without vector kernels", support != null);
+    return support;
+  }
+
+  /**
+   * Skips the test unless object references are 8 bytes wide. The kernels over {@code Object[]}
+   * operands and arrays of rows load the references with 64-bit moves, so their plugins decline
+   * with compressed references and the calls would not be intrinsified.
+   */
+  protected void assumeUncompressedReferences() {
+    Assume.assumeTrue(
+        "skipping test of a kernel that loads 8-byte object references",
+        getMetaAccess().getArrayIndexScale(JavaKind.Object) == 8);
+  }
+
+  @Override
+  protected GraphBuilderConfiguration editGraphBuilderConfiguration(
+      GraphBuilderConfiguration conf) {
+    if (constantArgs != null) {
+      conf.getPlugins()
+          .appendParameterPlugin(
+              new ConstantBindingParameterPlugin(
+                  constantArgs, getMetaAccess(), getSnippetReflection()));
+    }
+    return super.editGraphBuilderConfiguration(conf);
+  }
+
+  /**
+   * Compiles {@code snippet} with the non-null entries of {@code snippetConstants} bound as
+   * constants and checks that the graph contains {@code intrinsic}, i.e. that the directive was
+   * not left to the Java reference.
+   */
+  protected InstalledCode compile(
+      String snippet,
+      Class<? extends Node> intrinsic,
+      Object[] snippetConstants,
+      String description) {
+    ResolvedJavaMethod method = getResolvedJavaMethod(snippet);
+    constantArgs = snippetConstants;
+    StructuredGraph graph;
+    try {
+      graph = parseEager(method, AllowAssumptions.YES);
+    } finally {
+      constantArgs = null;
+    }
+    assertTrue(
+        failure(description, "the directive was not intrinsified"),
+        graph.getNodes().filter(intrinsic).isNotEmpty());
+    return getCode(method, graph, true);
+  }
+
+  protected static void execute(InstalledCode code, Object... args) {
+    try {
+      code.executeVarargs(args);
+    } catch (InvalidInstalledCodeException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /** The message of a failure in the case {@code description}, with the seed to reproduce it. */
+  protected static String failure(String description, String message) {
+    return description + ": " + message + " (reproduce with -Dtest.seed=" + SEED + ")";
+  }
+
+  /**
+   * Asserts that every element of {@code actual} is within {@code tolerance[index]} of {@code
+   * expected}; a tolerance of 0 requires the same bits.
+   */
+  protected static void assertClose(
+      String description, String name, double[] expected, double[] actual, double[] tolerance) {
+    assertTrue(
+        failure(description, name + " has length " + actual.length),
+        expected.length == actual.length);
+    for (int index = 0; index < expected.length; index++) {
+      double error = Math.abs(expected[index] - actual[index]);
+      boolean close =
+          tolerance[index] == 0
+              ? Double.doubleToRawLongBits(expected[index])
+                  == Double.doubleToRawLongBits(actual[index])
+              : error <= tolerance[index];
+      if (!close) {
+        fail(
+            "%s",
+            failure(
+                description,
+                name
+                    + "["
+                    + index
+                    + "] is "
+                    + actual[index]
+                    + ", the reference computes "
+                    + expected[index]
+                    + (tolerance[index] == 0
+                        ? " and the two must have the same bits"
+                        : " (error " + error + " > tolerance " + tolerance[index] + ")")));
+      }
+    }
+  }
+
+  /** {@link #assertClose(String, String, double[], double[], double[])} for arrays of rows. */
+  protected static void assertClose(
+      String description,
+      String name,
+      double[][] expected,
+      double[][] actual,
+      double[][] tolerance) {
+    for (int row = 0; row < expected.length; row++) {
+      assertClose(description, name + "[" + row + "]", expected[row], actual[row], tolerance[row]);
+    }
+  }
+
+  /** A tolerance of {@code ulps} units in the last place of {@code bound}. */
+  protected static double ulps(double ulps, double bound) {
+    return ulps * Math.ulp(bound);
+  }
+
+  /** A random double in {@code [-1, 1)}. */
+  protected double nextValue() {
+    return 2 * random.nextDouble() - 1;
+  }
+
+  protected double[] randomArray(int length) {
+    double[] array = new double[length];
+    for (int index = 0; index < length; index++) {
+      array[index] = nextValue();
+    }
+    return array;
+  }
+
+  protected double[][] randomMatrix(int rows, int columns) {
+    double[][] matrix = new double[rows][];
+    for (int row = 0; row < rows; row++) {
+      matrix[row] = randomArray(columns);
+    }
+    return matrix;
+  }
+
+  /** An int in {@code [min, max]}. */
+  protected int nextInt(int min, int max) {
+    return min + random.nextInt(max - min + 1);
+  }
+
+  /** A copy of {@code value} in which every array, at any depth, is a new array. */
+  protected static Object deepCopy(Object value) {
+    if (value instanceof Object[]) {
+      Object[] array = ((Object[]) value).clone();
+      for (int index = 0; index < array.length; index++) {
+        array[index] = deepCopy(array[index]);
+      }
+      return array;
+    }
+    if (value instanceof double[]) {
+      return ((double[]) value).clone();
+    }
+    if (value instanceof float[]) {
+      return ((float[]) value).clone();
+    }
+    if (value instanceof byte[]) {
+      return ((byte[]) value).clone();
+    }
+    if (value instanceof short[]) {
+      return ((short[]) value).clone();
+    }
+    if (value instanceof int[]) {
+      return ((int[]) value).clone();
+    }
+    if (value instanceof long[]) {
+      return ((long[]) value).clone();
+    }
+    return value;
+  }
+}
@@ -0,0 +1,227 @@
+package com.oracle.truffle.api.benchmark.vec;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.benchmark.TruffleBenchmark;
+import com.oracle.truffle.api.vec.Conv2d;
+import com.oracle.truffle.api.vec.ConvKernelArgs;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * 2D convolutions in the loop nest of {@link Conv2d}, swept over the image size, the kernel size
+ * and padding, which selects the square or the general kernel type. As in {@link
+ * GotoGemmBenchmark}, {@link #intrinsic} passes a descriptor held in a static final field so the
+ * {@code CompilerDirectives.convKernel} calls are intrinsified (with AVX-512), {@link #reference}
+ * runs the Java fallback in the same loop nest and {@link #naive} is a direct convolution loop.
+ * Every invocation starts from the same result, which is checked against the result of {@link
+ * Conv2d} after each iteration. FLOPs count every tap, including those that fall into the padding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConvBenchmark extends TruffleBenchmark {
+  private static final int A_LENGTH = 4;
+  private static final int B_LENGTH = 16;
+  private static final double TOLERANCE = 1e-9;
+
+  // The descriptor of this fork's parameters, read once by Intrinsic.
+  private static long[] forkDescriptor;
+
+  private static final class Intrinsic {
+    static final long[] DESCRIPTOR = forkDescriptor;
+  }
+
+  @Param({"32", "64"})
+  public int imgLength;
+
+  @Param({"3", "5"})
+  public int kernelLength;
+
+  /** 0 keeps the square kernel type; anything else needs the general one. */
+  @Param({"0", "1"})
+  public int padding;
+
+  @Param({"32"})
+  public int channels;
+
+  private ConvKernelArgs args;
+  private long[] referenceDescriptor;
+  private long flopsPerCall;
+
+  private double[][][] img;
+  private double[][][][] kernel;
+  private double[][][] initialResult;
+  private double[][][] result;
+  private double[][][] expected;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    args =
+        new ConvKernelArgs(
+            A_LENGTH,
+            B_LENGTH,
+            channels,
+            channels,
+            imgLength,
+            imgLength,
+            kernelLength,
+            kernelLength,
+            1,
+            1,
+            padding,
+            padding,
+            1,
+            1);
+    referenceDescriptor = args.toLongArray();
+    forkDescriptor = args.toLongArray();
+    if (!Arrays.equals(Intrinsic.DESCRIPTOR, referenceDescriptor)) {
+      throw new IllegalStateException(
+          "ConvBenchmark needs a fork per parameter set; do not run it with -f 0");
+    }
+    flopsPerCall =
+        2L * channels * args.getOutHeight() * args.getOutWidth() * args.getKLength();
+
+    Random random = new Random(42);
+    img = new double[channels][imgLength][imgLength];
+    kernel = new double[channels][channels][kernelLength][kernelLength];
+    initialResult = new double[channels][args.getOutHeight()][args.getOutWidth()];
+    for (double[][] plane : img) {
+      fill(random, plane);
+    }
+    for (double[][][] filter : kernel) {
+      for (double[][] plane : filter) {
+        fill(random, plane);
+      }
+    }
+    for (double[][] plane : initialResult) {
+      fill(random, plane);
+    }
+    result = copy(initialResult);
+    new Conv2d(args).forward(img, kernel, result);
+    expected = result;
+    result = copy(initialResult);
+  }
+
+  @TearDown(Level.Iteration)
+  public void verify(BenchmarkParams params) {
+    String method = VecCounters.method(params.getBenchmark());
+    for (int c = 0; c < channels; c++) {
+      for (int y = 0; y < args.getOutHeight(); y++) {
+        for (int x = 0; x < args.getOutWidth(); x++) {
+          if (result[c][y][x] != expected[c][y][x]) {
+            VecCounters.checkClose(
+                method + " " + args,
+                "result[" + c + "][" + y + "][" + x + "]",
+                expected[c][y][x],
+                result[c][y][x],
+                TOLERANCE);
+          }
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public void intrinsic(VecCounters.Flops flops) {
+    resetResult();
+    Object[] arrs = {img, kernel, result};
+    int outWidth = args.getOutWidth();
+    int kLength = args.getKLength();
+    // The kernel call must stay in this method to see the static final descriptor while parsed.
+    for (int oy = 0; oy < args.getOutHeight(); oy++) {
+      for (int ox = 0; ox < outWidth; ox += B_LENGTH) {
+        int j = oy * outWidth + ox;
+        for (int i = 0; i < channels; i += A_LENGTH) {
+          CompilerDirectives.convKernel(arrs, kLength, i, 0, j, Intrinsic.DESCRIPTOR);
+        }
+      }
+    }
+    flops.gflops += flopsPerCall;
+  }
+
+  @Benchmark
+  public void reference(VecCounters.Flops flops) {
+    resetResult();
+    Object[] arrs = {img, kernel, result};
+    int outWidth = args.getOutWidth();
+    int kLength = args.getKLength();
+    for (int oy = 0; oy < args.getOutHeight(); oy++) {
+      for (int ox = 0; ox < outWidth; ox += B_LENGTH) {
+        int j = oy * outWidth + ox;
+        for (int i = 0; i < channels; i += A_LENGTH) {
+          CompilerDirectives.convKernel(arrs, kLength, i, 0, j, referenceDescriptor);
+        }
+      }
+    }
+    flops.gflops += flopsPerCall;
+  }
+
+  @Benchmark
+  public void naive(VecCounters.Flops flops) {
+    resetResult();
+    int outHeight = args.getOutHeight();
+    int outWidth = args.getOutWidth();
+    for (int oc = 0; oc < channels; oc++) {
+      for (int oy = 0; oy < outHeight; oy++) {
+        for (int ox = 0; ox < outWidth; ox++) {
+          double sum = result[oc][oy][ox];
+          for (int ic = 0; ic < channels; ic++) {
+            for (int ky = 0; ky < kernelLength; ky++) {
+              int y = oy - padding + ky;
+              if (y < 0 || y >= imgLength) {
+                continue;
+              }
+              for (int kx = 0; kx < kernelLength; kx++) {
+                int x = ox - padding + kx;
+                if (x >= 0 && x < imgLength) {
+                  sum += kernel[oc][ic][ky][kx] * img[ic][y][x];
+                }
+              }
+            }
+          }
+          result[oc][oy][ox] = sum;
+        }
+      }
+    }
+    flops.gflops += flopsPerCall;
+  }
+
+  private void resetResult() {
+    for (int c = 0; c < channels; c++) {
+      for (int y = 0; y < initialResult[c].length; y++) {
+        System.arraycopy(initialResult[c][y], 0, result[c][y], 0, initialResult[c][y].length);
+      }
+    }
+  }
+
+  private static double[][][] copy(double[][][] planes) {
+    double[][][] copy = new double[planes.length][][];
+    for (int c = 0; c < planes.length; c++) {
+      copy[c] = new double[planes[c].length][];
+      for (int y = 0; y < planes[c].length; y++) {
+        copy[c][y] = planes[c][y].clone();
+      }
+    }
+    return copy;
+  }
+
+  private static void fill(Random random, double[][] plane) {
+    for (double[] row : plane) {
+      for (int x = 0; x < row.length; x++) {
+        row[x] = random.nextDouble() - 0.5;
+      }
+    }
+  }
+}
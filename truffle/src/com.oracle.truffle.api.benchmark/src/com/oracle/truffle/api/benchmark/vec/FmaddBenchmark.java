@@ -0,0 +1,103 @@
+package com.oracle.truffle.api.benchmark.vec;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.benchmark.TruffleBenchmark;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * {@code output[i] += input[i] * multVal} through {@link CompilerDirectives#simdDoubleFmadd}, with
+ * and without non-temporal stores, against the plain loop it replaces. The lengths range from L1
+ * resident to larger than most last-level caches. The {@code gflops} counter is the score to
+ * compare.
+ *
+ * <p>The output accumulates over the invocations of an iteration. The inputs are small integers and
+ * the multiplier is 0.5, so every sum is exact and after each iteration every element must equal
+ * its initial value plus the number of invocations times {@code input[i] * 0.5}, whether or not the
+ * multiply-add is fused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FmaddBenchmark extends TruffleBenchmark {
+  private static final double MULT_VAL = 0.5;
+
+  @Param({"1024", "65536", "4194304"})
+  public int length;
+
+  private double[] input;
+  private double[] initialOutput;
+  private double[] output;
+  private long invocations;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random random = new Random(42);
+    input = new double[length];
+    initialOutput = new double[length];
+    for (int i = 0; i < length; i++) {
+      input[i] = random.nextInt(1024);
+      initialOutput[i] = random.nextInt(1024);
+    }
+    output = new double[length];
+  }
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    System.arraycopy(initialOutput, 0, output, 0, length);
+    invocations = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void verify(BenchmarkParams params) {
+    for (int i = 0; i < length; i++) {
+      double expected = initialOutput[i] + invocations * (input[i] * MULT_VAL);
+      if (output[i] != expected) {
+        throw new AssertionError(
+            VecCounters.method(params.getBenchmark())
+                + ": output["
+                + i
+                + "] is "
+                + output[i]
+                + " after "
+                + invocations
+                + " invocations, expected "
+                + expected);
+      }
+    }
+  }
+
+  @Benchmark
+  public void intrinsic(VecCounters.Flops flops) {
+    CompilerDirectives.simdDoubleFmadd(length, MULT_VAL, input, output);
+    invocations++;
+    flops.gflops += 2L * length;
+  }
+
+  @Benchmark
+  public void nonTemporal(VecCounters.Flops flops) {
+    CompilerDirectives.simdDoubleFmadd(length, MULT_VAL, input, output, true);
+    invocations++;
+    flops.gflops += 2L * length;
+  }
+
+  @Benchmark
+  public void loop(VecCounters.Flops flops) {
+    for (int i = 0; i < length; i++) {
+      output[i] += input[i] * MULT_VAL;
+    }
+    invocations++;
+    flops.gflops += 2L * length;
+  }
+}
@@ -0,0 +1,442 @@
+package com.oracle.truffle.api.benchmark.vec;
+
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.A;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.B;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.C;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.STORED_C;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.constArg;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.reg;
+import static com.oracle.truffle.api.vec.GotoProgramBuilder.varArg;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.benchmark.TruffleBenchmark;
+import com.oracle.truffle.api.vec.GemmBlocking;
+import com.oracle.truffle.api.vec.GotoGemm;
+import com.oracle.truffle.api.vec.GotoKernelArgs;
+import com.oracle.truffle.api.vec.GotoPacking;
+import com.oracle.truffle.api.vec.GotoProgramBuilder;
+import com.oracle.truffle.api.vec.GotoTileTuner;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Square double-precision GEMMs in the loop nest of {@link GotoGemm}, swept over the matrix size,
+ * the kernel types 0 to 5, the arch of the descriptor, the op program and the operand layout. The
+ * {@code gflops} counter is the score to compare:
+ *
+ * <ul>
+ *   <li>{@link #intrinsic} passes a descriptor held in a static final field, so the kernel calls
+ *       are intrinsified;
+ *   <li>{@link #reference} passes the same descriptor from an instance field, so every tile runs
+ *       the {@code CompilerDirectives.gotoKernel} Java fallback;
+ *   <li>{@link #naive} is a plain triple loop over row-major arrays computing the same result.
+ * </ul>
+ *
+ * A host compilation only intrinsifies a kernel call whose descriptor is constant while the method
+ * containing the call is parsed, and the driver's methods are too large to be inlined that early,
+ * so the benchmark repeats the driver's loop nest instead of calling {@link GotoGemm}. The packed
+ * kernel types pack A and B on every invocation, as the driver does. If {@code intrinsic} scores
+ * the same as {@code reference}, the descriptor was not intrinsified, e.g. because the host CPU has
+ * no code path for the kernel type or program. Every invocation starts from the same C, and after
+ * each iteration the result of the last invocation is compared with the result of {@link GotoGemm}
+ * running the Java fallback during setup; a difference fails the run.
+ *
+ * <p>The program {@code fmadd} is {@code C += A * B} and {@code scaled} is {@code C += alpha * A *
+ * B}, scaled in every K step. {@code dgemm} is BLAS's {@code C = alpha * A * B + beta * C}, which
+ * reads the stored C and so keeps K in one panel, and {@code biasRelu} is {@code C = max(C + A * B
+ * + bias[j], 0)}; their fused parts run in the epilogue, which is only compiled for the flat
+ * layout. The interleaved packed kernel type only compiles {@code fmadd}. The Java fallback
+ * interprets every program, so the check after each iteration covers the fused ones too. The
+ * register tile is the largest of two vectors of B (three with AVX-512) that fits the register
+ * file of the arch.
+ *
+ * <p>The static descriptor is created from the parameters of the first setup in the JVM, which
+ * relies on JMH running every parameter set in a fork of its own; setup throws if it is run with
+ * {@code -f 0}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GotoGemmBenchmark extends TruffleBenchmark {
+  private static final double ALPHA = 0.5;
+  private static final double BETA = 2;
+  private static final int K_PACK = 192;
+  private static final double TOLERANCE = 1e-9;
+
+  // With parallelism 1 the driver computing the expected result runs on the calling thread.
+  private static final ForkJoinPool SEQUENTIAL = new ForkJoinPool(1);
+
+  // The descriptor of this fork's parameters, read once by Intrinsic.
+  private static long[] forkDescriptor;
+
+  private static final class Intrinsic {
+    static final long[] DESCRIPTOR = forkDescriptor;
+  }
+
+  /** M, K and N; multiples of every register tile used here. */
+  @Param({"96", "384", "960"})
+  public int size;
+
+  @Param({"0", "1", "2", "3", "4", "5"})
+  public int kernelType;
+
+  @Param({"0", "1", "2"})
+  public int arch;
+
+  @Param({"fmadd", "scaled", "dgemm", "biasRelu"})
+  public String program;
+
+  @Param({"flat", "nested"})
+  public String layout;
+
+  private long[] referenceDescriptor;
+  private GotoPacking packing;
+  private long flopsPerCall;
+
+  // Register tile and cache blocks, as the driver picks them.
+  private int mr;
+  private int nr;
+  private int kc;
+  private int mc;
+  private int nc;
+
+  // Operands as the kernel type stores them, flat or as arrays of rows.
+  private Object[] operands;
+  private Object initialC;
+
+  // Row-major A (m x k), B (k x n) and C (m x n) for the naive loop.
+  private double[] naiveA;
+  private double[] naiveB;
+  private double[] naiveInitialC;
+  private double[] naiveC;
+  private double[] bias;
+
+  // C(i, j) as computed by the Java fallback, row-major.
+  private double[] expected;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    GotoKernelArgs args = args();
+    referenceDescriptor = args.toLongArray();
+    forkDescriptor = args.toLongArray();
+    if (!Arrays.equals(Intrinsic.DESCRIPTOR, referenceDescriptor)) {
+      throw new IllegalStateException(
+          "GotoGemmBenchmark needs a fork per parameter set; do not run it with -f 0");
+    }
+    packing = GotoKernelArgs.isPacked(kernelType) ? new GotoPacking(args) : null;
+    GemmBlocking blocking = GemmBlocking.forHost(args, Double.BYTES);
+    mr = args.getALength();
+    nr = args.getBLength();
+    kc = args.epilogueReadsStoredC() ? size : blocking.getKc();
+    mc = blocking.getMc();
+    nc = blocking.getNc();
+    flopsPerCall = 2L * size * size * size;
+
+    Random random = new Random(42);
+    naiveA = randomMatrix(random, size * size);
+    naiveB = randomMatrix(random, size * size);
+    naiveInitialC = randomMatrix(random, size * size);
+    naiveC = naiveInitialC.clone();
+    bias = randomMatrix(random, size);
+    operands = new Object[program.equals("biasRelu") ? 4 : 3];
+    operands[0] = stored(naiveA, isTransposedA());
+    operands[1] = stored(naiveB, isTransposedB());
+    initialC = stored(naiveInitialC, isTransposedResult());
+    operands[2] = copy(initialC);
+    if (operands.length == 4) {
+      operands[3] = bias;
+    }
+
+    new GotoGemm(args, blocking, SEQUENTIAL).multiply(operands);
+    expected = new double[size * size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        expected[i * size + j] = resultAt(i, j);
+      }
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void verify(BenchmarkParams params) {
+    String method = VecCounters.method(params.getBenchmark());
+    boolean naive = method.equals("naive");
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        double actual = naive ? naiveC[i * size + j] : resultAt(i, j);
+        if (actual != expected[i * size + j]) {
+          VecCounters.checkClose(
+              method + " " + Arrays.toString(referenceDescriptor),
+              "C(" + i + ", " + j + ")",
+              expected[i * size + j],
+              actual,
+              TOLERANCE);
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public void intrinsic(VecCounters.Flops flops) {
+    resetC();
+    Object[] arrs = kernelOperands();
+    // The kernel call must stay in this method to see the static final descriptor while parsed.
+    for (int ic = 0; ic < size; ic += mc) {
+      int iEnd = Math.min(ic + mc, size);
+      for (int jc = 0; jc < size; jc += nc) {
+        int jEnd = Math.min(jc + nc, size);
+        for (int pc = 0; pc < size; pc += kc) {
+          int kPanelSize = Math.min(kc, size - pc);
+          for (int j = jc; j < jEnd; j += nr) {
+            for (int i = ic; i < iEnd; i += mr) {
+              CompilerDirectives.gotoKernel(arrs, kPanelSize, i, pc, j, Intrinsic.DESCRIPTOR);
+            }
+          }
+        }
+      }
+    }
+    flops.gflops += flopsPerCall;
+  }
+
+  @Benchmark
+  public void reference(VecCounters.Flops flops) {
+    resetC();
+    Object[] arrs = kernelOperands();
+    for (int ic = 0; ic < size; ic += mc) {
+      int iEnd = Math.min(ic + mc, size);
+      for (int jc = 0; jc < size; jc += nc) {
+        int jEnd = Math.min(jc + nc, size);
+        for (int pc = 0; pc < size; pc += kc) {
+          int kPanelSize = Math.min(kc, size - pc);
+          for (int j = jc; j < jEnd; j += nr) {
+            for (int i = ic; i < iEnd; i += mr) {
+              CompilerDirectives.gotoKernel(arrs, kPanelSize, i, pc, j, referenceDescriptor);
+            }
+          }
+        }
+      }
+    }
+    flops.gflops += flopsPerCall;
+  }
+
+  @Benchmark
+  public void naive(VecCounters.Flops flops) {
+    System.arraycopy(naiveInitialC, 0, naiveC, 0, naiveC.length);
+    int n = size;
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+          sum += naiveA[i * n + k] * naiveB[k * n + j];
+        }
+        naiveC[i * n + j] = applyProgram(naiveC[i * n + j], sum, j);
+      }
+    }
+    flops.gflops += flopsPerCall;
+  }
+
+  /** The operands of the kernel calls; the packed kernel types read A and B from pack buffers. */
+  private Object[] kernelOperands() {
+    if (packing == null) {
+      return operands;
+    }
+    Object[] arrs = operands.clone();
+    double[] a = GotoPacking.aBuffer(GotoPacking.packedALength(packing.getArgs()));
+    double[] b = GotoPacking.bBuffer(GotoPacking.packedBLength(packing.getArgs()));
+    if (operands[0] instanceof double[]) {
+      packing.packA((double[]) operands[0], size, 0, a);
+      packing.packB((double[]) operands[1], size, 0, b);
+    } else {
+      packing.packA((double[][]) operands[0], a);
+      packing.packB((double[][]) operands[1], b);
+    }
+    arrs[0] = a;
+    arrs[1] = b;
+    return arrs;
+  }
+
+  private double applyProgram(double c, double product, int j) {
+    switch (program) {
+      case "scaled":
+        return c + ALPHA * product;
+      case "dgemm":
+        return ALPHA * product + BETA * c;
+      case "biasRelu":
+        return Math.max(c + product + bias[j], 0);
+      default:
+        return c + product;
+    }
+  }
+
+  private GotoKernelArgs args() {
+    long[] ops;
+    double[] constArgs = new double[0];
+    int[] varArgProperties = new int[0];
+    switch (program) {
+      case "fmadd":
+        ops = GotoKernelArgs.FMADD_PROGRAM;
+        break;
+      case "scaled":
+        ops = new GotoProgramBuilder().mul(reg(0), A, constArg(0)).fmadd(C, reg(0), B).build();
+        constArgs = new double[] {ALPHA};
+        break;
+      case "dgemm":
+        // alpha * (C + A * B) + (beta - alpha) * C
+        ops =
+            new GotoProgramBuilder()
+                .fmadd(C, A, B)
+                .epilogue()
+                .mul(C, C, constArg(0))
+                .fmadd(C, STORED_C, constArg(1))
+                .build();
+        constArgs = new double[] {ALPHA, BETA - ALPHA};
+        break;
+      case "biasRelu":
+        ops =
+            new GotoProgramBuilder()
+                .fmadd(C, A, B)
+                .epilogue()
+                .add(C, C, varArg(0))
+                .max(C, C, constArg(0))
+                .build();
+        constArgs = new double[] {0};
+        varArgProperties = new int[] {GotoKernelArgs.EPILOGUE_COLUMN_VECTOR};
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown program " + program);
+    }
+    boolean packed = GotoKernelArgs.isPacked(kernelType);
+    GotoKernelArgs args =
+        new GotoKernelArgs(
+            arch,
+            kernelType,
+            1,
+            lanes(),
+            size,
+            size,
+            size,
+            ops,
+            constArgs,
+            varArgProperties,
+            packed ? new int[] {kPack(), 0, 0} : null);
+    if (layout.equals("flat")) {
+      // Dense rows: every leading dimension is the matrix size.
+      args = args.withFlatLayout(size, size, size, 0, 0, 0);
+    }
+    return withTile(args);
+  }
+
+  private int kPack() {
+    // dgemm reads the stored C, so all of K goes into one kernel call and so into one pack.
+    return program.equals("dgemm") ? size : Math.min(K_PACK, size);
+  }
+
+  private GotoKernelArgs withTile(GotoKernelArgs args) {
+    int registers = arch == GotoKernelArgs.ARCH_AVX512 ? 32 : 16;
+    if (arch == GotoKernelArgs.ARCH_AVX) {
+      // The separate multiply and add needs a register of its own.
+      registers--;
+    }
+    for (int bVectors = arch == GotoKernelArgs.ARCH_AVX512 ? 3 : 2; bVectors > 0; bVectors--) {
+      for (int aLength = 8; aLength > 0; aLength--) {
+        if (size % aLength == 0
+            && size % (bVectors * lanes()) == 0
+            && GotoTileTuner.registersNeeded(args, aLength, bVectors) <= registers) {
+          return args.withTile(aLength, bVectors * lanes());
+        }
+      }
+    }
+    throw new IllegalArgumentException("No register tile fits " + args);
+  }
+
+  private int lanes() {
+    return arch == GotoKernelArgs.ARCH_AVX512 ? 8 : 4;
+  }
+
+  private boolean isTransposedA() {
+    return kernelType == GotoKernelArgs.KERNEL_ATB;
+  }
+
+  private boolean isTransposedB() {
+    return kernelType == GotoKernelArgs.KERNEL_ABT;
+  }
+
+  private boolean isTransposedResult() {
+    return kernelType == GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT;
+  }
+
+  /** The square row-major {@code matrix} stored the way the kernel type reads it. */
+  private Object stored(double[] matrix, boolean transposed) {
+    double[] flat = matrix;
+    if (transposed) {
+      flat = new double[matrix.length];
+      for (int r = 0; r < size; r++) {
+        for (int c = 0; c < size; c++) {
+          flat[c * size + r] = matrix[r * size + c];
+        }
+      }
+    }
+    if (layout.equals("flat")) {
+      return flat.clone();
+    }
+    double[][] rows = new double[size][];
+    for (int r = 0; r < size; r++) {
+      rows[r] = Arrays.copyOfRange(flat, r * size, (r + 1) * size);
+    }
+    return rows;
+  }
+
+  private static Object copy(Object matrix) {
+    if (matrix instanceof double[]) {
+      return ((double[]) matrix).clone();
+    }
+    double[][] rows = ((double[][]) matrix).clone();
+    for (int r = 0; r < rows.length; r++) {
+      rows[r] = rows[r].clone();
+    }
+    return rows;
+  }
+
+  private void resetC() {
+    if (initialC instanceof double[]) {
+      double[] from = (double[]) initialC;
+      System.arraycopy(from, 0, operands[2], 0, from.length);
+    } else {
+      double[][] from = (double[][]) initialC;
+      double[][] to = (double[][]) operands[2];
+      for (int r = 0; r < from.length; r++) {
+        System.arraycopy(from[r], 0, to[r], 0, from[r].length);
+      }
+    }
+  }
+
+  private double resultAt(int i, int j) {
+    int row = isTransposedResult() ? j : i;
+    int col = isTransposedResult() ? i : j;
+    Object result = operands[2];
+    if (result instanceof double[]) {
+      return ((double[]) result)[row * size + col];
+    }
+    return ((double[][]) result)[row][col];
+  }
+
+  private static double[] randomMatrix(Random random, int length) {
+    double[] matrix = new double[length];
+    for (int index = 0; index < length; index++) {
+      matrix[index] = random.nextDouble() - 0.5;
+    }
+    return matrix;
+  }
+}
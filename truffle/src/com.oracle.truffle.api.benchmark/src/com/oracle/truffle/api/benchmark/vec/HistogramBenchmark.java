@@ -0,0 +1,103 @@
+package com.oracle.truffle.api.benchmark.vec;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.benchmark.TruffleBenchmark;
+import com.oracle.truffle.api.vec.ScatterReduce;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Histograms of uniformly distributed keys: {@link #vecAggregate} in 16-key chunks and {@link
+ * #vecHistogram} in one call, both intrinsified, against {@link ScatterReduce#histogram}, the Java
+ * fallback, which is also the plain loop. Few buckets mean many conflicting keys per vector. The
+ * {@code gelements} counter is the score to compare. The counts are not reset between invocations;
+ * after each iteration every bucket must hold the number of invocations times its expected count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistogramBenchmark extends TruffleBenchmark {
+  /** Number of keys; a multiple of 16 for {@link #vecAggregate}. */
+  @Param({"4096", "1048576"})
+  public int length;
+
+  @Param({"16", "1024", "65536"})
+  public int buckets;
+
+  private int[] keys;
+  private int[] expected;
+  private int[] output;
+  private long invocations;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random random = new Random(42);
+    keys = new int[length];
+    expected = new int[buckets];
+    for (int i = 0; i < length; i++) {
+      keys[i] = random.nextInt(buckets);
+      expected[keys[i]]++;
+    }
+    output = new int[buckets];
+  }
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    Arrays.fill(output, 0);
+    invocations = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void verify(BenchmarkParams params) {
+    for (int bucket = 0; bucket < buckets; bucket++) {
+      if (output[bucket] != invocations * expected[bucket]) {
+        throw new AssertionError(
+            VecCounters.method(params.getBenchmark())
+                + ": bucket "
+                + bucket
+                + " counts "
+                + output[bucket]
+                + " after "
+                + invocations
+                + " invocations of "
+                + expected[bucket]
+                + " keys");
+      }
+    }
+  }
+
+  @Benchmark
+  public void vecAggregate(VecCounters.Elements elements) {
+    for (int i = 0; i < length; i += 16) {
+      CompilerDirectives.vecAggregate(i, keys, output);
+    }
+    invocations++;
+    elements.gelements += length;
+  }
+
+  @Benchmark
+  public void vecHistogram(VecCounters.Elements elements) {
+    CompilerDirectives.vecHistogram(keys, 0, length, output);
+    invocations++;
+    elements.gelements += length;
+  }
+
+  @Benchmark
+  public void reference(VecCounters.Elements elements) {
+    ScatterReduce.histogram(keys, 0, length, output);
+    invocations++;
+    elements.gelements += length;
+  }
+}
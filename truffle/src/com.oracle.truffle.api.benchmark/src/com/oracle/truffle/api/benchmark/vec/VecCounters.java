@@ -0,0 +1,58 @@
+package com.oracle.truffle.api.benchmark.vec;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary results of the vec benchmarks. The benchmarks report their scores per nanosecond, so a
+ * counter of floating-point operations reads as GFLOP/s and a counter of elements as billions of
+ * elements per second.
+ */
+public final class VecCounters {
+  private VecCounters() {}
+
+  /** Floating-point operations, reported as GFLOP/s. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Flops {
+    public long gflops;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      gflops = 0;
+    }
+  }
+
+  /** Elements processed, reported in billions per second. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Elements {
+    public long gelements;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      gelements = 0;
+    }
+  }
+
+  /**
+   * Throws if {@code actual} differs from {@code expected} by more than {@code tolerance} relative
+   * to {@code max(1, |expected|)}, so a kernel that computes the wrong thing fails the run instead
+   * of reporting a score.
+   */
+  static void checkClose(
+      String benchmark, String what, double expected, double actual, double tolerance) {
+    if (!(Math.abs(expected - actual) <= tolerance * Math.max(1, Math.abs(expected)))) {
+      throw new AssertionError(
+          benchmark + ": " + what + " is " + actual + ", the reference computes " + expected);
+    }
+  }
+
+  /** The name of the benchmark method from the fully qualified name JMH passes to fixtures. */
+  static String method(String benchmark) {
+    return benchmark.substring(benchmark.lastIndexOf('.') + 1);
+  }
+}
@@ -47,6 +47,13 @@ import java.lang.annotation.Target;
 import java.util.Objects;
 import java.util.concurrent.Callable;
 
+import com.oracle.truffle.api.vec.ConvKernelReference;
+import com.oracle.truffle.api.vec.GemmBlocking;
+import com.oracle.truffle.api.vec.GotoKernelReference;
+import com.oracle.truffle.api.vec.GotoPacking;
+import com.oracle.truffle.api.vec.OffHeap;
+import com.oracle.truffle.api.vec.ScatterReduce;
+
 /**
  * Directives that influence the optimizations of the Truffle compiler. All of the operations have
  * no effect when executed in the Truffle interpreter.
@@ -566,19 +573,100 @@ public final class CompilerDirectives {
 
     }
 
+    /**
+     * Counts the 16 keys {@code input[inputOffset..inputOffset + 15]} into {@code output}. Same as
+     * {@code vecHistogram(input, inputOffset, inputOffset + 16, output)}.
+     */
     public static void vecAggregate(int inputOffset, int[] input, int[] output) {
-        // TODO:
-        for (int i = inputOffset; i < inputOffset + 16; ++i) {
-            output[input[i]] += 1;
-        }
+        ScatterReduce.histogram(input, inputOffset, inputOffset + 16, output);
+    }
+
+    /**
+     * Counts the keys in {@code [from, to)}: {@code output[keys[i]] += 1}. See
+     * {@link ScatterReduce} for the semantics of the compiled version.
+     */
+    public static void vecHistogram(int[] keys, int from, int to, int[] output) {
+        ScatterReduce.histogram(keys, from, to, output);
+    }
+
+    /**
+     * Combines {@code values[i]} into {@code output[keys[i]]} for every {@code i} in
+     * {@code [from, to)} with {@code op}, one of {@link ScatterReduce#SUM}, {@link ScatterReduce#MIN}
+     * and {@link ScatterReduce#MAX}. Only a constant {@code op} is intrinsified.
+     */
+    public static void vecScatterReduce(int op, int[] keys, int[] values, int from, int to, int[] output) {
+        ScatterReduce.scatterReduce(op, keys, values, from, to, output);
+    }
+
+    /** Long version of {@link #vecScatterReduce(int, int[], int[], int, int, int[])}. */
+    public static void vecScatterReduce(int op, int[] keys, long[] values, int from, int to, long[] output) {
+        ScatterReduce.scatterReduce(op, keys, values, from, to, output);
     }
 
+    /** Double version of {@link #vecScatterReduce(int, int[], int[], int, int, int[])}. */
+    public static void vecScatterReduce(int op, int[] keys, double[] values, int from, int to, double[] output) {
+        ScatterReduce.scatterReduce(op, keys, values, from, to, output);
+    }
+
+    /**
+     * Off-heap version of {@link #vecHistogram(int[], int, int, int[])}: the int keys are at the
+     * native address {@code keysAddress}; see {@link OffHeap}.
+     */
+    public static void vecHistogram(long keysAddress, int from, int to, int[] output) {
+        ScatterReduce.histogram(keysAddress, from, to, output);
+    }
+
+    /**
+     * Off-heap version of {@link #vecScatterReduce(int, int[], int[], int, int, int[])}: the int
+     * keys and the values are at native addresses; see {@link OffHeap}.
+     */
+    public static void vecScatterReduce(int op, long keysAddress, long valuesAddress, int from, int to, int[] output) {
+        ScatterReduce.scatterReduce(op, keysAddress, valuesAddress, from, to, output);
+    }
+
+    /** Long version of {@link #vecScatterReduce(int, long, long, int, int, int[])}. */
+    public static void vecScatterReduce(int op, long keysAddress, long valuesAddress, int from, int to, long[] output) {
+        ScatterReduce.scatterReduce(op, keysAddress, valuesAddress, from, to, output);
+    }
+
+    /** Double version of {@link #vecScatterReduce(int, long, long, int, int, int[])}. */
+    public static void vecScatterReduce(int op, long keysAddress, long valuesAddress, int from, int to, double[] output) {
+        ScatterReduce.scatterReduce(op, keysAddress, valuesAddress, from, to, output);
+    }
+
+    /**
+     * {@code output[i] += input[i] * multVal} for {@code i} in {@code [0, length)}. The compiled
+     * version uses a fused multiply-add, so it rounds once per element. It does not check bounds.
+     */
     public static void simdDoubleFmadd(int length, double multVal, double[] input, double[] output) {
         for(int i = 0; i < length; i++) {
             output[i] += input[i] * multVal;
         }
     }
 
+    /**
+     * Same as {@link #simdDoubleFmadd(int, double, double[], double[])}; if {@code nonTemporal} is
+     * a compilation constant {@code true}, the output is written with non-temporal stores that
+     * bypass the caches. That helps when {@code output} is larger than the last-level cache (see
+     * {@link GemmBlocking#lastLevelCacheSize()}) and hurts when it is about to be read again.
+     */
+    public static void simdDoubleFmadd(int length, double multVal, double[] input, double[] output, boolean nonTemporal) {
+        simdDoubleFmadd(length, multVal, input, output);
+    }
+
+    /**
+     * Off-heap version of {@link #simdDoubleFmadd(int, double, double[], double[])}: {@code input}
+     * and {@code output} are the native addresses of the first element; see {@link OffHeap}.
+     */
+    public static void simdDoubleFmadd(int length, double multVal, long inputAddress, long outputAddress) {
+        OffHeap.fmadd(length, multVal, inputAddress, outputAddress);
+    }
+
+    /** Off-heap version of {@link #simdDoubleFmadd(int, double, double[], double[], boolean)}. */
+    public static void simdDoubleFmadd(int length, double multVal, long inputAddress, long outputAddress, boolean nonTemporal) {
+        OffHeap.fmadd(length, multVal, inputAddress, outputAddress);
+    }
+
     public static void matmulKernel8x16(double[][] a, double[][] b, double[][] result, int kPanelSize, int i, int k, int j) {
         for(int kk = k; kk < k+kPanelSize; kk++) {
             for(int ii = i; ii < i+2; ii++) {
@@ -614,34 +702,66 @@ public final class CompilerDirectives {
     }
 
     public static void gotoKernel(Object[] arrs, int kPanelSize, int i, int k, int j, long[] constArgs) {
-        if(!(arrs[0] instanceof double[][])) {
-            return;
-        }
-        double[][] a = (double[][]) arrs[0];
-        double[][] b = (double[][]) arrs[1];
-        double[][] result = (double[][]) arrs[2];
-        int aLength = (int) constArgs[0];
-        int bLength = (int) constArgs[1];
-        int kernelType = (int) constArgs[constArgs.length-1];
-        for(int kk = k; kk < k+kPanelSize; kk++) {
-            for(int ii = i; ii < i+aLength; ii++) {
-                for(int jj = j; jj < j+bLength; jj++) {
-                    switch(kernelType) {
-                        case 0: result[ii][jj] += a[ii][kk]*b[kk][jj];
-                            break;
-                        case 1: result[ii][jj] += a[kk][ii]*b[kk][jj];
-                            break;
-                        case 2: result[ii][jj] += a[ii][kk]*b[jj][kk];
-                            break;
-                        case 3: result[jj][ii] += a[ii][kk]*b[kk][jj];
-                            break;
-                    }
-                }
-            }
-        }
+        GotoKernelReference.gotoKernel(arrs, kPanelSize, i, k, j, constArgs);
+    }
+
+    /**
+     * Single-precision version of {@link #gotoKernel} for {@code float[][]} operands. Only the AB
+     * kernel without variable arguments is intrinsified; everything else runs the reference code.
+     */
+    public static void gotoKernelFloat(Object[] arrs, int kPanelSize, int i, int k, int j, long[] constArgs) {
+        GotoKernelReference.gotoKernelFloat(arrs, kPanelSize, i, k, j, constArgs);
+    }
+
+    /**
+     * {@link #gotoKernel(Object[], int, int, int, int, long[])} for {@code addresses = {A, B, C}} in
+     * native memory; see {@link GotoKernelReference#gotoKernel(long[], int, int, int, int, long[])}.
+     * Only descriptors with a flat layout, no packing and no variable arguments are intrinsified.
+     */
+    public static void gotoKernel(long[] addresses, int kPanelSize, int i, int k, int j, long[] constArgs) {
+        GotoKernelReference.gotoKernel(addresses, kPanelSize, i, k, j, constArgs);
+    }
+
+    /** Single-precision version of {@link #gotoKernel(long[], int, int, int, int, long[])}. */
+    public static void gotoKernelFloat(long[] addresses, int kPanelSize, int i, int k, int j, long[] constArgs) {
+        GotoKernelReference.gotoKernelFloat(addresses, kPanelSize, i, k, j, constArgs);
     }
 
+    /**
+     * Integer version of {@link #gotoKernel(Object[], int, int, int, int, long[])} for the
+     * quantized kernel types {@code GotoKernelArgs.KERNEL_INT8} and {@code KERNEL_INT16}: {@code
+     * byte[]} or {@code short[]} A and B accumulate into an {@code int[]} C; see
+     * {@link GotoKernelReference#gotoKernelInt(Object[], int, int, int, int, long[])}.
+     */
+    public static void gotoKernelInt(Object[] arrs, int kPanelSize, int i, int k, int j, long[] constArgs) {
+        GotoKernelReference.gotoKernelInt(arrs, kPanelSize, i, k, j, constArgs);
+    }
+
+    /**
+     * Runs a {@code GotoKernelArgs.BATCHED} descriptor on {@code batchCount} independent problems
+     * of the same shape in flat {@code double[]} operands, each over all of its tiles and all of K,
+     * in one call; see
+     * {@link GotoKernelReference#gotoKernelBatched(Object[], int, long[])}.
+     */
+    public static void gotoKernelBatched(Object[] arrs, int batchCount, long[] constArgs) {
+        GotoKernelReference.gotoKernelBatched(arrs, batchCount, constArgs);
+    }
+
+    /** Single-precision version of {@link #gotoKernelBatched} for {@code float[]} operands. */
+    public static void gotoKernelBatchedFloat(Object[] arrs, int batchCount, long[] constArgs) {
+        GotoKernelReference.gotoKernelBatchedFloat(arrs, batchCount, constArgs);
+    }
+
+    public static void gotoPack(Object src, int ld, double[] dst, int dstOffset, int row, int col, int depth, long[] constArgs) {
+        GotoPacking.packPanel(src, ld, dst, dstOffset, row, col, depth, constArgs);
+    }
+
+    /**
+     * Convolution micro-kernel over {@code arrs = {img, kernel, result}} described by a {@code
+     * ConvKernelArgs} descriptor; see {@link ConvKernelReference} for the semantics. The intrinsic
+     * needs AVX-512 and a constant descriptor.
+     */
     public static void convKernel(Object[] arrs, int kPanelSize, int i, int k, int j, long[] constArgs) {
-        return;
+        ConvKernelReference.convKernel(arrs, kPanelSize, i, k, j, constArgs);
     }
 }
@@ -0,0 +1,58 @@
+package com.oracle.truffle.api.vec;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+
+/**
+ * Single-threaded 2D convolution driver around {@link CompilerDirectives#convKernel}.
+ *
+ * <p>For every output row the driver walks the row in {@code bLength} wide tiles, K in {@code
+ * kPanelSize} steps and the output channels in {@code aLength} steps; see {@link
+ * ConvKernelReference} for the tile semantics. The kernel clamps tiles at the row end and the last
+ * output channels itself.
+ *
+ * <p>The descriptor is a compilation final field, so when a driver instance is a constant the
+ * kernel call site sees constant arguments and is intrinsified.
+ */
+public final class Conv2d {
+  private final ConvKernelArgs args;
+
+  @CompilationFinal(dimensions = 1)
+  private final long[] constArgs;
+
+  private final int kPanelSize;
+
+  public Conv2d(ConvKernelArgs args) {
+    this(args, args.getKLength());
+  }
+
+  public Conv2d(ConvKernelArgs args, int kPanelSize) {
+    if (kPanelSize < 1) {
+      throw new IllegalArgumentException("kPanelSize must be positive: " + kPanelSize);
+    }
+    this.args = args;
+    this.constArgs = args.toLongArray();
+    this.kPanelSize = kPanelSize;
+  }
+
+  public ConvKernelArgs getArgs() {
+    return args;
+  }
+
+  /** Computes {@code result += conv(img, kernel)}. */
+  public void forward(double[][][] img, double[][][][] kernel, double[][][] result) {
+    Object[] arrs = {img, kernel, result};
+    int outWidth = args.getOutWidth();
+    int kLength = args.getKLength();
+    for (int oy = 0; oy < args.getOutHeight(); oy++) {
+      for (int ox = 0; ox < outWidth; ox += args.getBLength()) {
+        int j = oy * outWidth + ox;
+        for (int pc = 0; pc < kLength; pc += kPanelSize) {
+          for (int i = 0; i < args.getOutChannels(); i += args.getALength()) {
+            CompilerDirectives.convKernel(arrs, kPanelSize, i, pc, j, constArgs);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,289 @@
+package com.oracle.truffle.api.vec;
+
+import java.util.Arrays;
+
+/**
+ * Builds the {@code long[]} descriptor consumed by {@code CompilerDirectives.convKernel}.
+ *
+ * <p>The layout follows {@link GotoKernelArgs} without the leading {@code arch}: {@code aLength,
+ * bLength, numLongsInOpString, opString..., numConstArgs, constArgs..., numVarArgs,
+ * varArgProperties..., outChannels, inChannels, imgLength, kernelLength, kernelType, miscArgs...}.
+ * The convolution kernel always computes {@code C += A * B}, so the op string and the argument
+ * sections are written as {@link GotoKernelArgs#FMADD_PROGRAM} and empty lists, and ignored when
+ * decoding.
+ *
+ * <p>{@link #KERNEL_SQUARE} describes square images and kernels with stride 1, no padding and no
+ * dilation. {@link #KERNEL_GENERAL} appends {@code imgWidth, kernelWidth, strideH, strideW, padH,
+ * padW, dilationH, dilationW}; {@code imgLength} and {@code kernelLength} are then the heights.
+ */
+public final class ConvKernelArgs {
+  public static final int KERNEL_SQUARE = 0;
+  public static final int KERNEL_GENERAL = 1;
+
+  private static final int GENERAL_MISC_ARGS = 8;
+
+  private final int aLength;
+  private final int bLength;
+  private final int outChannels;
+  private final int inChannels;
+  private final int imgHeight;
+  private final int imgWidth;
+  private final int kernelHeight;
+  private final int kernelWidth;
+  private final int strideH;
+  private final int strideW;
+  private final int padH;
+  private final int padW;
+  private final int dilationH;
+  private final int dilationW;
+
+  private final long[] encoded;
+
+  public ConvKernelArgs(
+      int aLength,
+      int bLength,
+      int outChannels,
+      int inChannels,
+      int imgHeight,
+      int imgWidth,
+      int kernelHeight,
+      int kernelWidth,
+      int strideH,
+      int strideW,
+      int padH,
+      int padW,
+      int dilationH,
+      int dilationW) {
+    if (strideH < 1 || strideW < 1 || dilationH < 1 || dilationW < 1 || padH < 0 || padW < 0) {
+      throw new IllegalArgumentException("Strides and dilations must be positive, padding >= 0");
+    }
+    this.aLength = aLength;
+    this.bLength = bLength;
+    this.outChannels = outChannels;
+    this.inChannels = inChannels;
+    this.imgHeight = imgHeight;
+    this.imgWidth = imgWidth;
+    this.kernelHeight = kernelHeight;
+    this.kernelWidth = kernelWidth;
+    this.strideH = strideH;
+    this.strideW = strideW;
+    this.padH = padH;
+    this.padW = padW;
+    this.dilationH = dilationH;
+    this.dilationW = dilationW;
+    if (getOutHeight() < 1 || getOutWidth() < 1) {
+      throw new IllegalArgumentException("Kernel does not fit the padded image: " + this);
+    }
+    this.encoded = encode();
+  }
+
+  /** Square image and kernel, stride 1, no padding and no dilation. */
+  public static ConvKernelArgs square(
+      int aLength, int bLength, int outChannels, int inChannels, int imgLength, int kernelLength) {
+    return new ConvKernelArgs(
+        aLength,
+        bLength,
+        outChannels,
+        inChannels,
+        imgLength,
+        imgLength,
+        kernelLength,
+        kernelLength,
+        1,
+        1,
+        0,
+        0,
+        1,
+        1);
+  }
+
+  public int getKernelType() {
+    boolean square =
+        imgHeight == imgWidth
+            && kernelHeight == kernelWidth
+            && strideH == 1
+            && strideW == 1
+            && padH == 0
+            && padW == 0
+            && dilationH == 1
+            && dilationW == 1;
+    return square ? KERNEL_SQUARE : KERNEL_GENERAL;
+  }
+
+  private long[] encode() {
+    long[] program = GotoKernelArgs.FMADD_PROGRAM;
+    boolean general = getKernelType() == KERNEL_GENERAL;
+    long[] result = new long[2 + 1 + program.length + 2 + 5 + (general ? GENERAL_MISC_ARGS : 0)];
+    int curr = 0;
+    result[curr++] = aLength;
+    result[curr++] = bLength;
+    result[curr++] = program.length;
+    for (long op : program) {
+      result[curr++] = op;
+    }
+    result[curr++] = 0; // constArgs
+    result[curr++] = 0; // varArgProperties
+    result[curr++] = outChannels;
+    result[curr++] = inChannels;
+    result[curr++] = imgHeight;
+    result[curr++] = kernelHeight;
+    result[curr++] = getKernelType();
+    if (general) {
+      result[curr++] = imgWidth;
+      result[curr++] = kernelWidth;
+      result[curr++] = strideH;
+      result[curr++] = strideW;
+      result[curr++] = padH;
+      result[curr++] = padW;
+      result[curr++] = dilationH;
+      result[curr++] = dilationW;
+    }
+    return result;
+  }
+
+  /** Decodes a descriptor previously produced by {@link #toLongArray()}. */
+  public static ConvKernelArgs decode(long[] constArgs) {
+    int curr = 0;
+    int aLength = (int) constArgs[curr++];
+    int bLength = (int) constArgs[curr++];
+    curr += 1 + (int) constArgs[curr]; // op string
+    curr += 1 + (int) constArgs[curr]; // constArgs
+    curr += 1 + (int) constArgs[curr]; // varArgProperties
+    int outChannels = (int) constArgs[curr++];
+    int inChannels = (int) constArgs[curr++];
+    int imgHeight = (int) constArgs[curr++];
+    int kernelHeight = (int) constArgs[curr++];
+    int kernelType = (int) constArgs[curr++];
+    if (kernelType == KERNEL_SQUARE) {
+      return square(aLength, bLength, outChannels, inChannels, imgHeight, kernelHeight);
+    }
+    if (kernelType != KERNEL_GENERAL) {
+      throw new IllegalArgumentException("Unknown conv kernel type " + kernelType);
+    }
+    int[] misc = new int[GENERAL_MISC_ARGS];
+    for (int i = 0; i < misc.length; i++) {
+      misc[i] = (int) constArgs[curr++];
+    }
+    return new ConvKernelArgs(
+        aLength,
+        bLength,
+        outChannels,
+        inChannels,
+        imgHeight,
+        misc[0],
+        kernelHeight,
+        misc[1],
+        misc[2],
+        misc[3],
+        misc[4],
+        misc[5],
+        misc[6],
+        misc[7]);
+  }
+
+  /** Same descriptor with a different register tile. */
+  public ConvKernelArgs withTile(int newALength, int newBLength) {
+    return new ConvKernelArgs(
+        newALength,
+        newBLength,
+        outChannels,
+        inChannels,
+        imgHeight,
+        imgWidth,
+        kernelHeight,
+        kernelWidth,
+        strideH,
+        strideW,
+        padH,
+        padW,
+        dilationH,
+        dilationW);
+  }
+
+  /**
+   * Returns the encoded descriptor. The array is shared; callers must not modify it, since the
+   * compiler treats its contents as constants.
+   */
+  public long[] toLongArray() {
+    return encoded;
+  }
+
+  public int getALength() {
+    return aLength;
+  }
+
+  public int getBLength() {
+    return bLength;
+  }
+
+  public int getOutChannels() {
+    return outChannels;
+  }
+
+  public int getInChannels() {
+    return inChannels;
+  }
+
+  public int getImgHeight() {
+    return imgHeight;
+  }
+
+  public int getImgWidth() {
+    return imgWidth;
+  }
+
+  public int getKernelHeight() {
+    return kernelHeight;
+  }
+
+  public int getKernelWidth() {
+    return kernelWidth;
+  }
+
+  public int getStrideH() {
+    return strideH;
+  }
+
+  public int getStrideW() {
+    return strideW;
+  }
+
+  public int getPadH() {
+    return padH;
+  }
+
+  public int getPadW() {
+    return padW;
+  }
+
+  public int getDilationH() {
+    return dilationH;
+  }
+
+  public int getDilationW() {
+    return dilationW;
+  }
+
+  public int getOutHeight() {
+    return (imgHeight + 2 * padH - dilationH * (kernelHeight - 1) - 1) / strideH + 1;
+  }
+
+  public int getOutWidth() {
+    return (imgWidth + 2 * padW - dilationW * (kernelWidth - 1) - 1) / strideW + 1;
+  }
+
+  /** Length of the K dimension, {@code inChannels * kernelHeight * kernelWidth}. */
+  public int getKLength() {
+    return inChannels * kernelHeight * kernelWidth;
+  }
+
+  @Override
+  public String toString() {
+    return "ConvKernelArgs"
+        + Arrays.toString(
+            new int[] {
+              aLength, bLength, outChannels, inChannels, imgHeight, imgWidth, kernelHeight,
+              kernelWidth, strideH, strideW, padH, padW, dilationH, dilationW
+            });
+  }
+}
@@ -0,0 +1,59 @@
+package com.oracle.truffle.api.vec;
+
+/**
+ * Scalar reference semantics of {@code CompilerDirectives.convKernel}. This is what runs in the
+ * interpreter and whenever the intrinsic is not applied.
+ *
+ * <p>The convolution is computed as an implicit GEMM over {@code arrs = {img, kernel, result}} with
+ * {@code img} a {@code double[inChannels][imgHeight][imgWidth]}, {@code kernel} a {@code
+ * double[outChannels][inChannels][kernelHeight][kernelWidth]} and {@code result} a {@code
+ * double[outChannels][outHeight][outWidth]}. M runs over output channels, K over {@code (channel,
+ * ky, kx)} flattened in that order, and N over output pixels {@code oy * outWidth + ox}.
+ *
+ * <p>The tile at {@code (i, k, j)} covers output channels {@code [i, i + aLength)}, taps {@code [k,
+ * k + kPanelSize)} and the {@code bLength} output pixels starting at {@code j} within output row
+ * {@code j / outWidth}. The tile is clamped to the output channels, the taps and the end of that
+ * output row. Taps that fall into the padding contribute nothing.
+ */
+public final class ConvKernelReference {
+  private ConvKernelReference() {}
+
+  public static void convKernel(
+      Object[] arrs, int kPanelSize, int i, int k, int j, long[] constArgs) {
+    convKernel(arrs, kPanelSize, i, k, j, ConvKernelArgs.decode(constArgs));
+  }
+
+  public static void convKernel(
+      Object[] arrs, int kPanelSize, int i, int k, int j, ConvKernelArgs args) {
+    double[][][] img = (double[][][]) arrs[0];
+    double[][][][] kernel = (double[][][][]) arrs[1];
+    double[][][] result = (double[][][]) arrs[2];
+    int outWidth = args.getOutWidth();
+    int kernelArea = args.getKernelHeight() * args.getKernelWidth();
+    int oy = j / outWidth;
+    int ox0 = j % outWidth;
+    int iEnd = Math.min(i + args.getALength(), args.getOutChannels());
+    int kEnd = Math.min(k + kPanelSize, args.getKLength());
+    int oxEnd = Math.min(ox0 + args.getBLength(), outWidth);
+    for (int kk = k; kk < kEnd; kk++) {
+      int channel = kk / kernelArea;
+      int ky = kk % kernelArea / args.getKernelWidth();
+      int kx = kk % args.getKernelWidth();
+      int y = oy * args.getStrideH() - args.getPadH() + ky * args.getDilationH();
+      if (y < 0 || y >= args.getImgHeight()) {
+        continue;
+      }
+      double[] imgRow = img[channel][y];
+      for (int ii = i; ii < iEnd; ii++) {
+        double weight = kernel[ii][channel][ky][kx];
+        double[] resultRow = result[ii][oy];
+        for (int ox = ox0; ox < oxEnd; ox++) {
+          int x = ox * args.getStrideW() - args.getPadW() + kx * args.getDilationW();
+          if (x >= 0 && x < args.getImgWidth()) {
+            resultRow[ox] += weight * imgRow[x];
+          }
+        }
+      }
+    }
+  }
+}
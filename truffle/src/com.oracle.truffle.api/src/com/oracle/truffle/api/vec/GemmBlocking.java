@@ -0,0 +1,177 @@
+package com.oracle.truffle.api.vec;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Cache blocking parameters ({@code kc}, {@code mc}, {@code nc}) for the Goto GEMM loop nest.
+ *
+ * <p>Following Goto and van de Geijn, a {@code kc x nr} sliver of B should stay in L1 while it is
+ * reused against every row of the A block, a {@code mc x kc} block of A should stay in L2, and a
+ * {@code kc x nc} panel of B should stay in L3. Cache sizes come from {@code
+ * /sys/devices/system/cpu/cpu0/cache} when available and can be overridden with the {@code
+ * truffle.vec.L1CacheSize}, {@code truffle.vec.L2CacheSize} and {@code truffle.vec.L3CacheSize}
+ * system properties (in bytes).
+ */
+public final class GemmBlocking {
+  private static final long DEFAULT_L1_SIZE = 32 * 1024;
+  private static final long DEFAULT_L2_SIZE = 1024 * 1024;
+  private static final long DEFAULT_L3_SIZE = 8 * 1024 * 1024;
+
+  private static volatile long[] hostCacheSizes;
+
+  private final int kc;
+  private final int mc;
+  private final int nc;
+
+  public GemmBlocking(int kc, int mc, int nc) {
+    if (kc <= 0 || mc <= 0 || nc <= 0) {
+      throw new IllegalArgumentException("Block sizes must be positive");
+    }
+    this.kc = kc;
+    this.mc = mc;
+    this.nc = nc;
+  }
+
+  /** Block sizes for the given register tile, derived from the host's cache sizes. */
+  public static GemmBlocking forHost(GotoKernelArgs args, int elementBytes) {
+    long[] sizes = hostCacheSizes();
+    return forCaches(args, elementBytes, sizes[0], sizes[1], sizes[2]);
+  }
+
+  public static GemmBlocking forCaches(
+      GotoKernelArgs args, int elementBytes, long l1Size, long l2Size, long l3Size) {
+    int nr = args.getBLength();
+
+    int kc;
+    if (GotoKernelArgs.isPacked(args.getKernelType())) {
+      // The packed layout is fixed by the caller; a K block must not straddle two packs.
+      kc = args.getKPack();
+    } else {
+      kc = (int) (l1Size / 2 / ((long) nr * elementBytes));
+      kc = clamp(roundDown(kc, 8), 8, args.getKLength());
+    }
+    return withKc(args, elementBytes, kc, l2Size, l3Size);
+  }
+
+  /**
+   * Block sizes for a given {@code kc}, e.g. one picked by {@link GotoTileTuner}; {@code mc} and
+   * {@code nc} are still derived from the host's cache sizes.
+   */
+  public static GemmBlocking forHost(GotoKernelArgs args, int elementBytes, int kc) {
+    long[] sizes = hostCacheSizes();
+    return withKc(args, elementBytes, kc, sizes[1], sizes[2]);
+  }
+
+  private static GemmBlocking withKc(
+      GotoKernelArgs args, int elementBytes, int kc, long l2Size, long l3Size) {
+    int mr = args.getALength();
+    int nr = args.getBLength();
+
+    int mc = (int) (l2Size / 2 / ((long) kc * elementBytes));
+    mc = clamp(roundDown(mc, mr), mr, roundUp(args.getMLength(), mr));
+
+    int nc = (int) (l3Size / 2 / ((long) kc * elementBytes));
+    nc = clamp(roundDown(nc, nr), nr, roundUp(args.getNLength(), nr));
+
+    return new GemmBlocking(kc, mc, nc);
+  }
+
+  public int getKc() {
+    return kc;
+  }
+
+  public int getMc() {
+    return mc;
+  }
+
+  public int getNc() {
+    return nc;
+  }
+
+  private static int roundDown(int value, int multiple) {
+    return (value / multiple) * multiple;
+  }
+
+  private static int roundUp(int value, int multiple) {
+    return ((value + multiple - 1) / multiple) * multiple;
+  }
+
+  private static int clamp(int value, int min, int max) {
+    return Math.max(min, Math.min(value, Math.max(min, max)));
+  }
+
+  /** Returns the size of the host's L3 cache in bytes. */
+  public static long lastLevelCacheSize() {
+    return hostCacheSizes()[2];
+  }
+
+  /** Returns the L1 data, L2 and L3 cache sizes in bytes. */
+  static long[] hostCacheSizes() {
+    long[] sizes = hostCacheSizes;
+    if (sizes == null) {
+      sizes = new long[] {DEFAULT_L1_SIZE, DEFAULT_L2_SIZE, DEFAULT_L3_SIZE};
+      readSysfsCacheSizes(sizes);
+      sizes[0] = Long.getLong("truffle.vec.L1CacheSize", sizes[0]);
+      sizes[1] = Long.getLong("truffle.vec.L2CacheSize", sizes[1]);
+      sizes[2] = Long.getLong("truffle.vec.L3CacheSize", sizes[2]);
+      hostCacheSizes = sizes;
+    }
+    return sizes;
+  }
+
+  private static void readSysfsCacheSizes(long[] sizes) {
+    File cacheDir = new File("/sys/devices/system/cpu/cpu0/cache");
+    File[] indices = cacheDir.listFiles();
+    if (indices == null) {
+      return;
+    }
+    for (File index : indices) {
+      if (!index.getName().startsWith("index")) {
+        continue;
+      }
+      try {
+        int level = Integer.parseInt(readLine(new File(index, "level")));
+        String type = readLine(new File(index, "type"));
+        long size = parseSize(readLine(new File(index, "size")));
+        if (level == 1 && type.equals("Instruction")) {
+          continue;
+        }
+        if (level >= 1 && level <= 3 && size > 0) {
+          sizes[level - 1] = size;
+        }
+      } catch (IOException | NumberFormatException e) {
+        // Keep the defaults for anything we cannot read.
+      }
+    }
+  }
+
+  private static String readLine(File file) throws IOException {
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line = reader.readLine();
+      if (line == null) {
+        throw new IOException("Empty file " + file);
+      }
+      return line.trim();
+    }
+  }
+
+  private static long parseSize(String size) {
+    char unit = size.charAt(size.length() - 1);
+    switch (unit) {
+      case 'K':
+        return Long.parseLong(size.substring(0, size.length() - 1)) * 1024;
+      case 'M':
+        return Long.parseLong(size.substring(0, size.length() - 1)) * 1024 * 1024;
+      default:
+        return Long.parseLong(size);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "GemmBlocking[kc=" + kc + ", mc=" + mc + ", nc=" + nc + "]";
+  }
+}
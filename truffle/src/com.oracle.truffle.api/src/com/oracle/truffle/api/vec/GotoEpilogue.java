@@ -0,0 +1,78 @@
+package com.oracle.truffle.api.vec;
+
+/**
+ * Scalar reference semantics of the epilogue of a Goto kernel program (see {@link
+ * GotoProgramBuilder#epilogue()}). The epilogue works lane by lane, so {@link GotoKernelReference}
+ * runs it once per element of the tile.
+ */
+final class GotoEpilogue extends GotoInterpreter {
+  private final GotoKernelArgs args;
+
+  // The element the epilogue runs on.
+  private Object operands;
+  private int i;
+  private int j;
+  private double storedC;
+
+  private GotoEpilogue(int[] ops, GotoKernelArgs args, boolean isFloat) {
+    super(ops, args.getConstArgs(), isFloat);
+    this.args = args;
+  }
+
+  /**
+   * The epilogue to run after a call whose K panel ends at {@code kEnd}, or null if there is none
+   * or the panel is not the last one.
+   */
+  static GotoEpilogue forPanel(GotoKernelArgs args, int kEnd, boolean isFloat) {
+    if (kEnd < args.getKLength()) {
+      return null;
+    }
+    int[] ops = GotoKernelArgs.decodeEpilogue(args.getProgram());
+    return ops == null ? null : new GotoEpilogue(ops, args, isFloat);
+  }
+
+  /** Copies the stored values of the tile {@code [i, iEnd) x [j, jEnd)}, row by row. */
+  double[] storedTile(Object operands, int i, int j, int iEnd, int jEnd) {
+    double[] stored = new double[(iEnd - i) * (jEnd - j)];
+    int index = 0;
+    for (int ii = i; ii < iEnd; ii++) {
+      for (int jj = j; jj < jEnd; jj++) {
+        stored[index++] = GotoKernelReference.loadC(operands, args, ii, jj, isFloat);
+      }
+    }
+    return stored;
+  }
+
+  /** Runs the epilogue on every element of the tile and writes the results to C. */
+  void apply(Object operands, int i, int j, int iEnd, int jEnd, double[] stored) {
+    this.operands = operands;
+    int index = 0;
+    for (int ii = i; ii < iEnd; ii++) {
+      for (int jj = j; jj < jEnd; jj++) {
+        this.i = ii;
+        this.j = jj;
+        this.storedC = stored[index++];
+        double c = GotoKernelReference.loadC(operands, args, ii, jj, isFloat);
+        GotoKernelReference.storeC(operands, args, ii, jj, isFloat, run(c));
+      }
+    }
+  }
+
+  @Override
+  double operand(int operand, int index) {
+    switch (operand) {
+      case GotoProgramBuilder.OPERAND_STORED_C:
+        return storedC;
+      case GotoProgramBuilder.OPERAND_VARARG:
+        return loadVector(index);
+      default:
+        throw new IllegalArgumentException("The epilogue cannot read operand " + operand);
+    }
+  }
+
+  private double loadVector(int varArgIndex) {
+    int property = args.getVarArgProperties()[varArgIndex];
+    int index = property == GotoKernelArgs.EPILOGUE_ROW_VECTOR ? i : j;
+    return GotoKernelReference.loadVarArgElement(operands, varArgIndex, index, isFloat);
+  }
+}
@@ -0,0 +1,359 @@
+package com.oracle.truffle.api.vec;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Multi-threaded GEMM driver around {@link CompilerDirectives#gotoKernel}.
+ *
+ * <p>The result matrix is cut into {@code mc x nc} blocks which are distributed over a {@link
+ * ForkJoinPool}; blocks never share result rows or columns, so workers need no synchronization.
+ * Inside a block the driver walks K in {@code kc} steps and calls the micro-kernel once per {@code
+ * aLength x bLength} register tile. Columns that do not fill a whole register tile are computed
+ * with {@link GotoKernelReference}, unless the kernel masks the N edge itself, which only some
+ * AVX-512 kernels do (see {@link GotoKernelArgs#masksNTail}).
+ *
+ * <p>For the packed kernel types, {@link #multiply(double[][], double[][], double[][])} and {@link
+ * #multiply(double[], int, double[], int, double[][])} first pack A and B with {@link GotoPacking}
+ * into per-thread buffers; {@link #multiply(Object[])} also packs when it is handed unpacked
+ * {@code double[][]} operands, or flat operands if the descriptor has a flat layout.
+ *
+ * <p>Descriptors with {@link GotoKernelArgs#FLAT_LAYOUT} take flat row-major operands; see {@link
+ * #multiply(double[], double[], double[])} and {@link #multiply(float[], float[], float[])}, or
+ * the addresses of such operands in native memory; see {@link #multiply(long, long, long)} and
+ * {@link OffHeap}.
+ *
+ * <p>{@link #multiply(float[][], float[][], float[][])} runs the same loop nest with {@link
+ * CompilerDirectives#gotoKernelFloat}; it is not available for the packed kernel types.
+ *
+ * <p>The integer kernel types run {@link CompilerDirectives#gotoKernelInt}; see {@link
+ * #multiply(byte[], byte[], int[])}. Their K panels are kept to whole k groups.
+ *
+ * <p>A program epilogue runs with the last K panel of every tile. If it reads the stored C, K is not
+ * split into {@code kc} panels, since the stored C would otherwise include the earlier panels.
+ *
+ * <p>The descriptor is a compilation final field, so when a driver instance is a constant (e.g. a
+ * final field of a Truffle node) the kernel call sites see constant arguments and are intrinsified.
+ */
+public final class GotoGemm {
+  private static final int MIN_BLOCKS_FOR_PARALLEL = 2;
+
+  private final GotoKernelArgs args;
+
+  @CompilationFinal(dimensions = 1)
+  private final long[] constArgs;
+
+  private final GemmBlocking blocking;
+  private final ForkJoinPool pool;
+  private final GotoPacking packing;
+
+  private final int mBlocks;
+  private final int nBlocks;
+  private final int kc;
+
+  public GotoGemm(GotoKernelArgs args) {
+    this(args, GemmBlocking.forHost(args, Double.BYTES), ForkJoinPool.commonPool());
+  }
+
+  public GotoGemm(GotoKernelArgs args, GemmBlocking blocking, ForkJoinPool pool) {
+    this.args = args;
+    this.constArgs = args.toLongArray();
+    this.blocking = blocking;
+    this.pool = pool;
+    this.packing = GotoKernelArgs.isPacked(args.getKernelType()) ? new GotoPacking(args) : null;
+    this.mBlocks = (args.getMLength() + blocking.getMc() - 1) / blocking.getMc();
+    this.nBlocks = (args.getNLength() + blocking.getNc() - 1) / blocking.getNc();
+    int kc = args.epilogueReadsStoredC() ? Math.max(args.getKLength(), 1) : blocking.getKc();
+    if (GotoKernelArgs.isInteger(args.getKernelType())) {
+      int group = GotoKernelArgs.kGroup(args.getKernelType());
+      kc = Math.max(group, kc / group * group);
+    }
+    this.kc = kc;
+  }
+
+  /**
+   * Driver with the register tile and K panel size picked by {@link GotoTileTuner}. Uses a stored
+   * result if there is one, tunes now if {@link GotoTileTuner#isEnabled()}, and otherwise keeps
+   * {@code args} as given.
+   */
+  public static GotoGemm autotuned(GotoKernelArgs args, boolean isFloat) {
+    GotoTileTuner.Tuning tuning =
+        GotoTileTuner.isEnabled()
+            ? GotoTileTuner.tune(args, isFloat)
+            : GotoTileTuner.lookup(args, isFloat);
+    int elementBytes = isFloat ? Float.BYTES : Double.BYTES;
+    if (tuning == null) {
+      return new GotoGemm(
+          args, GemmBlocking.forHost(args, elementBytes), ForkJoinPool.commonPool());
+    }
+    GotoKernelArgs tuned = tuning.apply(args);
+    return new GotoGemm(tuned, tuning.blocking(tuned, elementBytes), ForkJoinPool.commonPool());
+  }
+
+  public GotoKernelArgs getArgs() {
+    return args;
+  }
+
+  public GemmBlocking getBlocking() {
+    return blocking;
+  }
+
+  /** Computes {@code C += op(A) * op(B)} for {@code arrs = {A, B, C, varArgs...}}. */
+  public void multiply(Object[] arrs) {
+    if (packing != null && arrs[0] instanceof double[][]) {
+      Object[] packedArrs = arrs.clone();
+      packedArrs[0] = packA((double[][]) arrs[0]);
+      packedArrs[1] = packB((double[][]) arrs[1]);
+      multiplyBlocks(packedArrs, false);
+    } else if (packing != null && args.isFlat()) {
+      Object[] packedArrs = arrs.clone();
+      packedArrs[0] = packA((double[]) arrs[0], args.getLda(), args.getAOffset());
+      packedArrs[1] = packB((double[]) arrs[1], args.getLdb(), args.getBOffset());
+      multiplyBlocks(packedArrs, false);
+    } else {
+      multiplyBlocks(arrs, false);
+    }
+  }
+
+  public void multiply(double[][] a, double[][] b, double[][] result) {
+    multiply(new Object[] {a, b, result});
+  }
+
+  /**
+   * Computes {@code C += A * B} for flat row-major operands with leading dimensions {@code lda} and
+   * {@code ldb} and a {@code double[][]} result. Only supported by the packed kernel types without
+   * a flat layout; the other kernels take flat operands through {@link GotoKernelArgs#FLAT_LAYOUT}.
+   */
+  public void multiply(double[] a, int lda, double[] b, int ldb, double[][] result) {
+    if (packing == null || args.isFlat()) {
+      throw new IllegalArgumentException("Needs a packed descriptor without a flat layout");
+    }
+    multiplyBlocks(new Object[] {packA(a, lda), packB(b, ldb), result}, false);
+  }
+
+  /**
+   * Computes {@code C += op(A) * op(B)} for flat operands laid out as the descriptor's {@link
+   * GotoKernelArgs#FLAT_LAYOUT} says.
+   */
+  public void multiply(double[] a, double[] b, double[] result) {
+    if (!args.isFlat()) {
+      throw new IllegalArgumentException("Descriptor has no flat layout: " + args);
+    }
+    multiply(new Object[] {a, b, result});
+  }
+
+  /**
+   * Computes {@code C += A * B} for the integer kernel type {@link GotoKernelArgs#KERNEL_INT8},
+   * with B in k groups (see {@link GotoPacking#packKGroups(byte[], int, GotoKernelArgs)}).
+   */
+  public void multiply(byte[] a, byte[] b, int[] result) {
+    multiplyInt(new Object[] {a, b, result}, GotoKernelArgs.KERNEL_INT8);
+  }
+
+  /** Like {@link #multiply(byte[], byte[], int[])}, also writing C dequantized. */
+  public void multiply(byte[] a, byte[] b, int[] result, float[] dequantized) {
+    multiplyInt(new Object[] {a, b, result, dequantized}, GotoKernelArgs.KERNEL_INT8);
+  }
+
+  /** {@link #multiply(byte[], byte[], int[])} for {@link GotoKernelArgs#KERNEL_INT16}. */
+  public void multiply(short[] a, short[] b, int[] result) {
+    multiplyInt(new Object[] {a, b, result}, GotoKernelArgs.KERNEL_INT16);
+  }
+
+  /** Like {@link #multiply(short[], short[], int[])}, also writing C dequantized. */
+  public void multiply(short[] a, short[] b, int[] result, float[] dequantized) {
+    multiplyInt(new Object[] {a, b, result, dequantized}, GotoKernelArgs.KERNEL_INT16);
+  }
+
+  private void multiplyInt(Object[] arrs, int kernelType) {
+    if (args.getKernelType() != kernelType || args.isDequantized() != (arrs.length == 4)) {
+      throw new IllegalArgumentException("Operands do not match the descriptor: " + args);
+    }
+    multiplyBlocks(arrs, false);
+  }
+
+  /** Computes {@code C += op(A) * op(B)} in single precision. */
+  public void multiply(float[][] a, float[][] b, float[][] result) {
+    if (packing != null) {
+      throw new IllegalArgumentException("Packed kernels have no float version");
+    }
+    multiplyBlocks(new Object[] {a, b, result}, true);
+  }
+
+  /** Single-precision {@link #multiply(double[], double[], double[])}. */
+  public void multiply(float[] a, float[] b, float[] result) {
+    if (packing != null || !args.isFlat()) {
+      throw new IllegalArgumentException(
+          "Needs an unpacked descriptor with a flat layout: " + args);
+    }
+    multiplyBlocks(new Object[] {a, b, result}, true);
+  }
+
+  /**
+   * {@link #multiply(double[], double[], double[])} for operands at native addresses, e.g. weights
+   * in a memory-mapped file. The descriptor must have a flat layout and no packing.
+   */
+  public void multiply(long aAddress, long bAddress, long resultAddress) {
+    multiplyBlocks(offHeapOperands(aAddress, bAddress, resultAddress), false);
+  }
+
+  /** Single-precision {@link #multiply(long, long, long)}. */
+  public void multiplyFloat(long aAddress, long bAddress, long resultAddress) {
+    multiplyBlocks(offHeapOperands(aAddress, bAddress, resultAddress), true);
+  }
+
+  private long[] offHeapOperands(long aAddress, long bAddress, long resultAddress) {
+    if (packing != null || !args.isFlat()) {
+      throw new IllegalArgumentException(
+          "Needs an unpacked descriptor with a flat layout: " + args);
+    }
+    return new long[] {aAddress, bAddress, resultAddress};
+  }
+
+  private double[] packA(double[][] a) {
+    double[] buffer = GotoPacking.aBuffer(GotoPacking.packedALength(args));
+    packing.packA(a, buffer);
+    return buffer;
+  }
+
+  private double[] packA(double[] a, int lda) {
+    return packA(a, lda, 0);
+  }
+
+  private double[] packA(double[] a, int lda, int aOffset) {
+    double[] buffer = GotoPacking.aBuffer(GotoPacking.packedALength(args));
+    packing.packA(a, lda, aOffset, buffer);
+    return buffer;
+  }
+
+  private double[] packB(double[][] b) {
+    double[] buffer = GotoPacking.bBuffer(GotoPacking.packedBLength(args));
+    packing.packB(b, buffer);
+    return buffer;
+  }
+
+  private double[] packB(double[] b, int ldb) {
+    return packB(b, ldb, 0);
+  }
+
+  private double[] packB(double[] b, int ldb, int bOffset) {
+    double[] buffer = GotoPacking.bBuffer(GotoPacking.packedBLength(args));
+    packing.packB(b, ldb, bOffset, buffer);
+    return buffer;
+  }
+
+  /** {@code operands} is either {@code Object[] arrs} or {@code long[] addresses}. */
+  private void multiplyBlocks(Object operands, boolean isFloat) {
+    int blocks = mBlocks * nBlocks;
+    if (blocks < MIN_BLOCKS_FOR_PARALLEL || pool.getParallelism() == 1) {
+      for (int block = 0; block < blocks; block++) {
+        computeBlock(operands, block, isFloat);
+      }
+    } else {
+      multiplyParallel(operands, blocks, isFloat);
+    }
+  }
+
+  @TruffleBoundary
+  private void multiplyParallel(Object operands, int blocks, boolean isFloat) {
+    pool.invoke(new BlockTask(operands, 0, blocks, isFloat));
+  }
+
+  private void computeBlock(Object operands, int block, boolean isFloat) {
+    int mr = args.getALength();
+    int nr = args.getBLength();
+    int m = args.getMLength();
+    int k = args.getKLength();
+    int n = args.getNLength();
+
+    int ic = (block / nBlocks) * blocking.getMc();
+    int jc = (block % nBlocks) * blocking.getNc();
+    int iEnd = Math.min(ic + blocking.getMc(), m);
+    int jEnd = Math.min(jc + blocking.getNc(), n);
+    // Last column at which the kernel can start a register tile.
+    int jFullEnd = args.masksNTail(isFloat) ? jEnd : jc + ((jEnd - jc) / nr) * nr;
+
+    for (int pc = 0; pc < k; pc += kc) {
+      int kPanelSize = Math.min(kc, k - pc);
+      for (int j = jc; j < jFullEnd; j += nr) {
+        for (int i = ic; i < iEnd; i += mr) {
+          callKernel(operands, kPanelSize, i, pc, j, isFloat);
+        }
+      }
+      if (jFullEnd < jEnd) {
+        computeColumnTail(operands, kPanelSize, ic, iEnd, pc, jFullEnd, isFloat);
+      }
+    }
+  }
+
+  private void callKernel(Object operands, int kPanelSize, int i, int k, int j, boolean isFloat) {
+    if (operands instanceof long[]) {
+      long[] addresses = (long[]) operands;
+      if (isFloat) {
+        CompilerDirectives.gotoKernelFloat(addresses, kPanelSize, i, k, j, constArgs);
+      } else {
+        CompilerDirectives.gotoKernel(addresses, kPanelSize, i, k, j, constArgs);
+      }
+    } else if (GotoKernelArgs.isInteger(args.getKernelType())) {
+      CompilerDirectives.gotoKernelInt((Object[]) operands, kPanelSize, i, k, j, constArgs);
+    } else {
+      Object[] arrs = (Object[]) operands;
+      if (isFloat) {
+        CompilerDirectives.gotoKernelFloat(arrs, kPanelSize, i, k, j, constArgs);
+      } else {
+        CompilerDirectives.gotoKernel(arrs, kPanelSize, i, k, j, constArgs);
+      }
+    }
+  }
+
+  @TruffleBoundary
+  private void computeColumnTail(
+      Object operands, int kPanelSize, int ic, int iEnd, int pc, int jStart, boolean isFloat) {
+    for (int i = ic; i < iEnd; i += args.getALength()) {
+      if (operands instanceof long[]) {
+        long[] addresses = (long[]) operands;
+        if (isFloat) {
+          GotoKernelReference.gotoKernelFloat(addresses, kPanelSize, i, pc, jStart, args);
+        } else {
+          GotoKernelReference.gotoKernel(addresses, kPanelSize, i, pc, jStart, args);
+        }
+      } else if (GotoKernelArgs.isInteger(args.getKernelType())) {
+        GotoKernelReference.gotoKernelInt((Object[]) operands, kPanelSize, i, pc, jStart, args);
+      } else if (isFloat) {
+        GotoKernelReference.gotoKernelFloat((Object[]) operands, kPanelSize, i, pc, jStart, args);
+      } else {
+        GotoKernelReference.gotoKernel((Object[]) operands, kPanelSize, i, pc, jStart, args);
+      }
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private final class BlockTask extends RecursiveAction {
+    private final Object operands;
+    private final int from;
+    private final int to;
+    private final boolean isFloat;
+
+    BlockTask(Object operands, int from, int to, boolean isFloat) {
+      this.operands = operands;
+      this.from = from;
+      this.to = to;
+      this.isFloat = isFloat;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        computeBlock(operands, from, isFloat);
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(
+          new BlockTask(operands, from, middle, isFloat),
+          new BlockTask(operands, middle, to, isFloat));
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package com.oracle.truffle.api.vec;
+
+/**
+ * Scalar interpreter of Goto kernel op codes (see {@link GotoProgramBuilder}) for one element of
+ * the tile at a time. {@link GotoKernelReference} runs the instructions of every K step with it and
+ * {@link GotoEpilogue} the epilogue; the subclasses read the operands that depend on the element.
+ *
+ * <p>{@code max} and {@code min} return the second operand if either operand is NaN, like {@code
+ * vmaxpd} and {@code vminpd}. Compares other than {@code neq} are false for NaN operands. Scratch
+ * registers and the mask keep their values from one element to the next, like the registers of
+ * the kernel.
+ */
+abstract class GotoInterpreter {
+  private static final int REGISTERS = 32;
+
+  private final int[] ops;
+  private final double[] constArgs;
+  final boolean isFloat;
+
+  private final double[] registers = new double[REGISTERS];
+  private boolean mask;
+  private double c;
+
+  GotoInterpreter(int[] ops, double[] constArgs, boolean isFloat) {
+    this.ops = ops;
+    this.constArgs = constArgs;
+    this.isFloat = isFloat;
+  }
+
+  /**
+   * Reads {@code operand}, other than C, a scratch register or a constant argument, for the current
+   * element; {@code index} is the operand's index, or -1 if it has none.
+   */
+  abstract double operand(int operand, int index);
+
+  /** Runs the ops on the accumulator {@code accumulator} and returns the value they leave in C. */
+  final double run(double accumulator) {
+    c = accumulator;
+    int pos = 0;
+    while (pos < ops.length) {
+      int op = ops[pos++];
+      int type = op & ~0b111;
+      int code = op & 0b111;
+      if (type == GotoProgramBuilder.CMPOP) {
+        pos = skipOperand(pos);
+        double src0 = read(pos);
+        pos = skipOperand(pos);
+        double src1 = read(pos);
+        pos = skipOperand(pos);
+        mask = compare(code, src0, src1);
+        continue;
+      }
+      if (type == GotoProgramBuilder.MASKOP) {
+        pos = skipOperand(pos);
+      }
+      int dst = pos;
+      pos = skipOperand(pos);
+      double src0 = read(pos);
+      pos = skipOperand(pos);
+      if (op == GotoProgramBuilder.LOAD_OP) {
+        write(dst, src0);
+        continue;
+      }
+      double src1 = read(pos);
+      pos = skipOperand(pos);
+      if (type == GotoProgramBuilder.MASKOP && code == GotoProgramBuilder.SELECT) {
+        write(dst, mask ? src0 : src1);
+      } else if (type != GotoProgramBuilder.MASKOP || mask) {
+        write(dst, arithmetic(code, read(dst), src0, src1));
+      }
+    }
+    return c;
+  }
+
+  private double arithmetic(int code, double dst, double src0, double src1) {
+    double result;
+    switch (code) {
+      case GotoProgramBuilder.MUL:
+        result = src0 * src1;
+        break;
+      case GotoProgramBuilder.ADD:
+        result = src0 + src1;
+        break;
+      case GotoProgramBuilder.FMADD:
+        result = dst + src0 * src1;
+        break;
+      case GotoProgramBuilder.SUB:
+        result = src0 - src1;
+        break;
+      case GotoProgramBuilder.DIV:
+        result = src0 / src1;
+        break;
+      case GotoProgramBuilder.MAX:
+        result = src0 > src1 ? src0 : src1;
+        break;
+      case GotoProgramBuilder.MIN:
+        result = src0 < src1 ? src0 : src1;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown op " + code);
+    }
+    return isFloat ? (float) result : result;
+  }
+
+  private static boolean compare(int code, double src0, double src1) {
+    switch (code) {
+      case GotoProgramBuilder.GT:
+        return src0 > src1;
+      case GotoProgramBuilder.GE:
+        return src0 >= src1;
+      case GotoProgramBuilder.LT:
+        return src0 < src1;
+      case GotoProgramBuilder.LE:
+        return src0 <= src1;
+      case GotoProgramBuilder.EQ:
+        return src0 == src1;
+      case GotoProgramBuilder.NEQ:
+        return src0 != src1;
+      default:
+        throw new IllegalArgumentException("Unknown compare " + code);
+    }
+  }
+
+  private int skipOperand(int pos) {
+    return pos + (GotoProgramBuilder.hasIndex(ops[pos]) ? 2 : 1);
+  }
+
+  private double read(int pos) {
+    int operand = ops[pos];
+    switch (operand) {
+      case GotoProgramBuilder.OPERAND_C:
+        return c;
+      case GotoProgramBuilder.OPERAND_REG:
+        return registers[ops[pos + 1]];
+      case GotoProgramBuilder.OPERAND_CONSTARG:
+        double constArg = constArgs[ops[pos + 1]];
+        return isFloat ? (float) constArg : constArg;
+      default:
+        return operand(operand, GotoProgramBuilder.hasIndex(operand) ? ops[pos + 1] : -1);
+    }
+  }
+
+  private void write(int pos, double value) {
+    switch (ops[pos]) {
+      case GotoProgramBuilder.OPERAND_C:
+        c = value;
+        break;
+      case GotoProgramBuilder.OPERAND_REG:
+        registers[ops[pos + 1]] = value;
+        break;
+      default:
+        throw new IllegalArgumentException("Cannot write operand " + ops[pos]);
+    }
+  }
+}
@@ -0,0 +1,1138 @@
+package com.oracle.truffle.api.vec;
+
+import java.util.Arrays;
+
+/**
+ * Builds the {@code long[]} descriptor consumed by {@code CompilerDirectives.gotoKernel}.
+ *
+ * <p>The layout mirrors what {@code GotoKernelNode} decodes at compile time: {@code arch, aLength,
+ * bLength, numLongsInOpString, opString..., numConstArgs, constArgs..., numVarArgs,
+ * varArgProperties..., mLength, kLength, nLength, kernelType, miscArgs...}. Constant arguments are
+ * stored as raw double bits. {@code miscArgs} starts with {@code kPack, aAlignmentOffset,
+ * bAlignmentOffset} for the packed kernel types, followed by {@code lda, ldb, ldc, aOffset,
+ * bOffset, cOffset} when {@link #FLAT_LAYOUT} is set in {@code kernelType}, followed by {@code
+ * prefetchOperands, prefetchLevel, prefetchDistance} when {@link #PREFETCH} is set, followed by
+ * {@code aBatchStride, bBatchStride, cBatchStride} when {@link #BATCHED} is set.
+ *
+ * <p>With {@link #FLAT_LAYOUT} the operands are flat row-major arrays instead of arrays of rows:
+ * element {@code (r, c)} of A is {@code a[aOffset + r * lda + c]}, and likewise for B and C, where
+ * A, B and C are stored the way the kernel type reads them (e.g. A is {@code k x m} for {@link
+ * #KERNEL_ATB}). The leading dimensions and offsets are compile-time constants, so a slice of a
+ * larger buffer gets its own descriptor. The packed kernel types read A and B from their pack
+ * buffers, so for them only {@code ldc} and {@code cOffset} affect the kernel; {@link GotoGemm}
+ * packs A and B from flat operands with the other four.
+ *
+ * <p>A program may end with an epilogue (see {@link GotoProgramBuilder#epilogue()}), which is
+ * packed after a separator word {@value #EPILOGUE_SEPARATOR} that holds no op codes. Variable
+ * arguments read by the epilogue are {@link #EPILOGUE_ROW_VECTOR}s or {@link
+ * #EPILOGUE_COLUMN_VECTOR}s, passed after A, B and C in {@code arrs}. Only the flat kernels run an
+ * epilogue in compiled code; other kernel types with an epilogue keep running {@link
+ * GotoKernelReference}. Likewise {@link #KERNEL_INTERLEAVE_PACKED} is only compiled for programs
+ * that compute {@code C += A * B} in every K step, and programs that load A or B themselves only
+ * for the unpacked kernel types with a flat layout and for {@link #KERNEL_AB} and {@link
+ * #KERNEL_AB_TRANSPOSED_RESULT}.
+ *
+ * <p>With {@link #PREFETCH} the descriptor fixes the software prefetches the kernel issues in its
+ * K loop: which operands ({@link #PREFETCH_A}, {@link #PREFETCH_B}), into which cache level
+ * ({@link #PREFETCH_T0}, {@link #PREFETCH_T1}, {@link #PREFETCH_T2}) and how many K steps ahead.
+ * Without it every kernel type keeps its built-in policy. A kernel type ignores the operands it
+ * cannot prefetch: over arrays of rows the AB and A^TB^T kernels only prefetch B and the AB^T
+ * kernel only A, and kernels that gather B only prefetch A. {@link GotoPrefetchSweep} times the
+ * settings on the host.
+ *
+ * <p>With {@link #BATCHED} the descriptor describes a batch of independent problems of the same
+ * shape for {@code CompilerDirectives.gotoKernelBatched}, problem {@code p} being the flat layout
+ * with every offset advanced by {@code p} times the operand's batch stride. One call computes all
+ * of each problem, every tile over the whole of K, so for batches of small matrices the setup a
+ * {@code gotoKernel} call pays per tile is paid once per batch; {@link #batchedMatmul} sizes the
+ * register tile for the problem. Batched descriptors need a flat layout, one of the kernel types 0
+ * to 3 and no variable arguments other than epilogue vectors, which all problems share.
+ *
+ * <p>The integer kernel types {@link #KERNEL_INT8} and {@link #KERNEL_INT16} multiply quantized
+ * operands into an {@code int[]} C; see {@link #intMatmul}. They need a flat layout and take no
+ * program beyond {@link #FMADD_PROGRAM} and no variable arguments. Their B is stored in groups of
+ * {@link #kGroup} consecutive k per column, which {@link GotoPacking#packKGroups(byte[], int,
+ * GotoKernelArgs)} produces from a row-major B: {@code B(k, j)} is {@code b[bOffset + (k / g) *
+ * ldb + j * g + k % g]}. kLength, and the K position and panel size of every call, must be
+ * multiples of the group size {@code g}. Arithmetic wraps like Java {@code int} arithmetic. With a
+ * single constant argument {@code scale} (see {@link #withDequantization}) the call on the last K
+ * panel also writes {@code (float) C(i, j) * scale} to a {@code float[]} passed after A, B and C,
+ * laid out like C.
+ *
+ * <p>{@code arch} is an upper bound: the compiler lowers it to the widest code path the target CPU
+ * supports. Kernel types without a code path for the target CPU, and tiles that need more vector
+ * registers than that code path has, are not compiled and keep running {@link
+ * GotoKernelReference}; tune the tile for the arch the kernel is meant to run on.
+ */
+public final class GotoKernelArgs {
+  public static final int ARCH_AVX = 0;
+  public static final int ARCH_AVX2 = 1;
+  public static final int ARCH_AVX512 = 2;
+
+  public static final int KERNEL_AB = 0;
+  public static final int KERNEL_ATB = 1;
+  public static final int KERNEL_ABT = 2;
+  public static final int KERNEL_AB_TRANSPOSED_RESULT = 3;
+  public static final int KERNEL_PACKED = 4;
+  public static final int KERNEL_INTERLEAVE_PACKED = 5;
+  /** {@code C += A * B} for unsigned 8-bit A, signed 8-bit B and an {@code int[]} C. */
+  public static final int KERNEL_INT8 = 6;
+  /** {@code C += A * B} for signed 16-bit A and B and an {@code int[]} C. */
+  public static final int KERNEL_INT16 = 7;
+
+  /** Flag or'ed into the kernel type for flat row-major operands. */
+  public static final int FLAT_LAYOUT = 0x10;
+
+  /** Flag or'ed into the kernel type for an explicit software prefetch policy. */
+  public static final int PREFETCH = 0x20;
+
+  /** Flag or'ed into the kernel type for a batch of problems; see the class comment. */
+  public static final int BATCHED = 0x40;
+
+  /** Prefetch operand bit for A. */
+  public static final int PREFETCH_A = 1;
+  /** Prefetch operand bit for B. */
+  public static final int PREFETCH_B = 2;
+
+  /** Prefetch into all cache levels, {@code prefetcht0}. */
+  public static final int PREFETCH_T0 = 0;
+  /** Prefetch into L2 and outer levels, {@code prefetcht1}. */
+  public static final int PREFETCH_T1 = 1;
+  /** Prefetch into L3 and outer levels, {@code prefetcht2}. */
+  public static final int PREFETCH_T2 = 2;
+
+  /**
+   * Largest prefetch distance in K steps. The flat kernels fold the distance into address
+   * displacements, which must stay within 32 bits.
+   */
+  public static final int MAX_PREFETCH_DISTANCE = 32;
+
+  /**
+   * Variable argument property of a vector read by the epilogue at the row of the tile element,
+   * e.g. a per-row bias: element {@code i} for {@code C(i, j)}.
+   */
+  public static final int EPILOGUE_ROW_VECTOR = 4;
+  /** Like {@link #EPILOGUE_ROW_VECTOR}, but element {@code j} for {@code C(i, j)}. */
+  public static final int EPILOGUE_COLUMN_VECTOR = 5;
+
+  /** Program word that separates the epilogue from the instructions run for every K step. */
+  public static final long EPILOGUE_SEPARATOR = 1;
+
+  private static final int PACKED_MISC_ARGS = 3;
+  private static final int FLAT_MISC_ARGS = 6;
+  private static final int PREFETCH_MISC_ARGS = 3;
+  private static final int BATCH_MISC_ARGS = 3;
+  private static final int FLAGS = FLAT_LAYOUT | PREFETCH | BATCHED;
+
+  // One opmask register per B vector of a tile at the N edge.
+  private static final int MAX_MASKED_B_VECTORS = 5;
+  // Widest register tile batchedMatmul picks, in vectors of B.
+  private static final int MAX_BATCH_B_VECTORS = 4;
+
+  private static final int OP_LENGTH = 5;
+  private static final int OPS_PER_LONG = 12;
+
+  /** {@code FMADD C A B}, i.e. {@code C += A * B}. */
+  public static final long[] FMADD_PROGRAM =
+      new GotoProgramBuilder()
+          .fmadd(GotoProgramBuilder.C, GotoProgramBuilder.A, GotoProgramBuilder.B)
+          .build();
+
+  private final int arch;
+  private final int kernelType;
+  private final boolean flat;
+  private final boolean prefetch;
+  private final boolean batched;
+  private final int aLength;
+  private final int bLength;
+  private final int mLength;
+  private final int kLength;
+  private final int nLength;
+  private final long[] program;
+  private final double[] constArgs;
+  private final int[] varArgProperties;
+  private final int[] miscArgs;
+
+  private final long[] encoded;
+
+  public GotoKernelArgs(
+      int arch,
+      int kernelType,
+      int aLength,
+      int bLength,
+      int mLength,
+      int kLength,
+      int nLength,
+      long[] program,
+      double[] constArgs,
+      int[] varArgProperties,
+      int[] miscArgs) {
+    int baseType = kernelType & ~FLAGS;
+    if (baseType < KERNEL_AB || baseType > KERNEL_INT16) {
+      throw new IllegalArgumentException("Unknown kernel type " + kernelType);
+    }
+    this.flat = (kernelType & FLAT_LAYOUT) != 0;
+    this.prefetch = (kernelType & PREFETCH) != 0;
+    this.batched = (kernelType & BATCHED) != 0;
+    int miscLength = miscLength(kernelType);
+    if (miscLength > 0 && (miscArgs == null || miscArgs.length != miscLength)) {
+      throw new IllegalArgumentException(
+          "Kernel type "
+              + kernelType
+              + " needs "
+              + (isPacked(baseType) ? "{kPack, aAlignmentOffset, bAlignmentOffset}" : "")
+              + (flat ? "{lda, ldb, ldc, aOffset, bOffset, cOffset}" : "")
+              + (prefetch ? "{prefetchOperands, prefetchLevel, prefetchDistance}" : "")
+              + (batched ? "{aBatchStride, bBatchStride, cBatchStride}" : ""));
+    }
+    this.arch = arch;
+    this.kernelType = baseType;
+    this.aLength = aLength;
+    this.bLength = bLength;
+    this.mLength = mLength;
+    this.kLength = kLength;
+    this.nLength = nLength;
+    this.program = program.clone();
+    this.constArgs = constArgs.clone();
+    this.varArgProperties = varArgProperties.clone();
+    this.miscArgs = miscLength > 0 ? miscArgs.clone() : new int[0];
+    checkProgram(this.program, this.varArgProperties);
+    if (isInteger(baseType)) {
+      checkInteger();
+    }
+    if (flat) {
+      int base = flatBase();
+      for (int index = 0; index < FLAT_MISC_ARGS; index++) {
+        int value = this.miscArgs[base + index];
+        if (index < 3 ? value < 1 : value < 0) {
+          throw new IllegalArgumentException(
+              "Leading dimensions must be positive, offsets >= 0: " + Arrays.toString(miscArgs));
+        }
+      }
+    }
+    if (prefetch) {
+      int base = prefetchBase();
+      int operands = this.miscArgs[base];
+      int level = this.miscArgs[base + 1];
+      int distance = this.miscArgs[base + 2];
+      if ((operands & ~(PREFETCH_A | PREFETCH_B)) != 0
+          || level < PREFETCH_T0
+          || level > PREFETCH_T2
+          || distance < 0
+          || distance > MAX_PREFETCH_DISTANCE) {
+        throw new IllegalArgumentException(
+            "Prefetch operands must be a set of PREFETCH_A and PREFETCH_B, the level one of"
+                + " PREFETCH_T0..T2 and the distance in [0, "
+                + MAX_PREFETCH_DISTANCE
+                + "]: "
+                + Arrays.toString(miscArgs));
+      }
+    }
+    if (batched) {
+      checkBatch();
+    }
+    this.encoded = encode();
+  }
+
+  /**
+   * Integer {@code C += A * B} for {@link #KERNEL_INT8} or {@link #KERNEL_INT16}, over a row-major
+   * A, a B in k groups and a row-major C with leading dimensions {@code lda}, {@code ldb} and
+   * {@code ldc}; see the class comment.
+   */
+  public static GotoKernelArgs intMatmul(
+      int arch,
+      int kernelType,
+      int aLength,
+      int bLength,
+      int mLength,
+      int kLength,
+      int nLength,
+      int lda,
+      int ldb,
+      int ldc) {
+    return new GotoKernelArgs(
+        arch,
+        kernelType | FLAT_LAYOUT,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        FMADD_PROGRAM,
+        new double[0],
+        new int[0],
+        new int[] {lda, ldb, ldc, 0, 0, 0});
+  }
+
+  /**
+   * Plain {@code C += op(A) * op(B)} for each of a batch of problems stored one after the other in
+   * flat row-major operands, with a register tile sized for the problem; see {@link #BATCHED}.
+   * Element {@code (r, c)} of problem {@code p} of A is {@code a[p * aRows * aColumns + r *
+   * aColumns + c]}, where A is stored the way the kernel type reads it, and likewise for B and C.
+   *
+   * <p>Rows exactly as wide as a ymm register get an {@link #ARCH_AVX2} descriptor: as zmm rows
+   * they would be masked, and the masked load of each row of C would wait for the masked store of
+   * the row before it, which shares its 64 bytes.
+   */
+  public static GotoKernelArgs batchedMatmul(
+      int arch, int kernelType, int mLength, int kLength, int nLength, boolean isFloat) {
+    boolean transposeA = kernelType == KERNEL_ATB;
+    boolean transposeB = kernelType == KERNEL_ABT;
+    boolean transposeC = kernelType == KERNEL_AB_TRANSPOSED_RESULT;
+    int lda = transposeA ? mLength : kLength;
+    int ldb = transposeB ? kLength : nLength;
+    int ldc = transposeC ? mLength : nLength;
+    int ymmLanes = 32 / (isFloat ? Float.BYTES : Double.BYTES);
+    int tileArch =
+        arch == ARCH_AVX512 && kernelType <= KERNEL_ATB && nLength == ymmLanes ? ARCH_AVX2 : arch;
+    int[] tile = batchTile(tileArch, kernelType, mLength, nLength, isFloat);
+    return matmul(tileArch, kernelType, tile[0], tile[1], mLength, kLength, nLength)
+        .withFlatLayout(lda, ldb, ldc, 0, 0, 0)
+        .withBatch(mLength * kLength, kLength * nLength, mLength * nLength);
+  }
+
+  /**
+   * {@code aLength, bLength} of a register tile for an {@code mLength x nLength} problem: the
+   * fewest vectors of B that cover N, at most {@value #MAX_BATCH_B_VECTORS}, and as many rows of A
+   * as fit the remaining vector registers, at most {@code mLength}. A small problem then takes one
+   * tile, or one row of tiles, instead of a ladder of edge tiles.
+   */
+  private static int[] batchTile(
+      int arch, int kernelType, int mLength, int nLength, boolean isFloat) {
+    int lanes = (arch == ARCH_AVX512 ? 64 : 32) / (isFloat ? Float.BYTES : Double.BYTES);
+    // Without a masked N tail, which only AVX-512 has, the tile has to divide N.
+    boolean masked = arch == ARCH_AVX512 && kernelType <= KERNEL_ATB;
+    int bVectors = Math.min((nLength + lanes - 1) / lanes, MAX_BATCH_B_VECTORS);
+    if (!masked) {
+      while (bVectors > 1 && nLength % (bVectors * lanes) != 0) {
+        bVectors--;
+      }
+    }
+    // A, B and C, plus a register for the program's scratch values.
+    int registers = arch == ARCH_AVX512 ? 32 : 16;
+    int aLength = Math.min(mLength, (registers - 2 - bVectors) / bVectors);
+    return new int[] {Math.max(aLength, 1), bVectors * lanes};
+  }
+
+  /** Plain {@code C += A * B} with no constant or variable arguments. */
+  public static GotoKernelArgs matmul(
+      int arch, int kernelType, int aLength, int bLength, int mLength, int kLength, int nLength) {
+    return new GotoKernelArgs(
+        arch,
+        kernelType,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        FMADD_PROGRAM,
+        new double[0],
+        new int[0],
+        null);
+  }
+
+  /**
+   * Plain {@code C += op(A) * op(B)} over flat row-major operands with leading dimensions {@code
+   * lda}, {@code ldb} and {@code ldc}.
+   */
+  public static GotoKernelArgs flatMatmul(
+      int arch,
+      int kernelType,
+      int aLength,
+      int bLength,
+      int mLength,
+      int kLength,
+      int nLength,
+      int lda,
+      int ldb,
+      int ldc) {
+    return matmul(arch, kernelType, aLength, bLength, mLength, kLength, nLength)
+        .withFlatLayout(lda, ldb, ldc, 0, 0, 0);
+  }
+
+  /** Plain {@code C += A * B} over operands packed into {@code kPack}-deep panels. */
+  public static GotoKernelArgs packedMatmul(
+      int arch,
+      boolean interleave,
+      int aLength,
+      int bLength,
+      int mLength,
+      int kLength,
+      int nLength,
+      int kPack) {
+    return new GotoKernelArgs(
+        arch,
+        interleave ? KERNEL_INTERLEAVE_PACKED : KERNEL_PACKED,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        FMADD_PROGRAM,
+        new double[0],
+        new int[0],
+        new int[] {kPack, 0, 0});
+  }
+
+  /**
+   * Packs 5-bit op codes into longs. Every long carries a leading marker bit followed by at most
+   * {@value #OPS_PER_LONG} op codes, so the compiler side can recover the bit string with {@code
+   * Long.toBinaryString(value).substring(1)}. Programs are usually built with {@link
+   * GotoProgramBuilder}.
+   */
+  public static long[] encodeProgram(int... ops) {
+    long[] result = new long[(ops.length + OPS_PER_LONG - 1) / OPS_PER_LONG];
+    for (int index = 0; index < result.length; index++) {
+      long value = 1;
+      int end = Math.min(ops.length, (index + 1) * OPS_PER_LONG);
+      for (int op = index * OPS_PER_LONG; op < end; op++) {
+        value = (value << OP_LENGTH) | (ops[op] & 0b11111);
+      }
+      result[index] = value;
+    }
+    return result;
+  }
+
+  /** Appends the epilogue {@code epilogueOps} to the packed {@code program}. */
+  public static long[] appendEpilogue(long[] program, int... epilogueOps) {
+    long[] epilogue = encodeProgram(epilogueOps);
+    long[] result = Arrays.copyOf(program, program.length + 1 + epilogue.length);
+    result[program.length] = EPILOGUE_SEPARATOR;
+    System.arraycopy(epilogue, 0, result, program.length + 1, epilogue.length);
+    return result;
+  }
+
+  /** Inverse of {@link #encodeProgram}; an epilogue is decoded as part of the program. */
+  public static int[] decodeProgram(long[] program) {
+    int[] ops = new int[program.length * OPS_PER_LONG];
+    int count = 0;
+    for (long value : program) {
+      int opCount = (63 - Long.numberOfLeadingZeros(value)) / OP_LENGTH;
+      for (int op = opCount - 1; op >= 0; op--) {
+        ops[count++] = (int) (value >>> (op * OP_LENGTH)) & 0b11111;
+      }
+    }
+    return Arrays.copyOf(ops, count);
+  }
+
+  private static int epilogueStart(long[] program) {
+    for (int index = 0; index < program.length; index++) {
+      if (program[index] == EPILOGUE_SEPARATOR) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /** The op codes of {@code program} run for every K step, i.e. without the epilogue. */
+  static int[] decodeMain(long[] program) {
+    int start = epilogueStart(program);
+    return decodeProgram(start < 0 ? program : Arrays.copyOf(program, start));
+  }
+
+  /** The op codes of the epilogue of {@code program}, or null if it has none. */
+  static int[] decodeEpilogue(long[] program) {
+    int start = epilogueStart(program);
+    return start < 0 ? null : decodeProgram(Arrays.copyOfRange(program, start + 1, program.length));
+  }
+
+  /**
+   * Rejects programs that read A, B or the stored C in the wrong section, or variable arguments
+   * with a property that does not match the section reading them.
+   */
+  private static void checkProgram(long[] program, int[] varArgProperties) {
+    checkSection(decodeMain(program), varArgProperties, false);
+    if (epilogueStart(program) >= 0) {
+      checkSection(decodeEpilogue(program), varArgProperties, true);
+    }
+  }
+
+  private static void checkSection(int[] ops, int[] varArgProperties, boolean epilogue) {
+    int pos = 0;
+    while (pos < ops.length) {
+      int op = ops[pos++];
+      if (epilogue && op == GotoProgramBuilder.LOAD_OP) {
+        throw new IllegalArgumentException("The epilogue cannot load operands");
+      }
+      int operandCount = GotoProgramBuilder.operandCount(op);
+      for (int operandIndex = 0; operandIndex < operandCount; operandIndex++) {
+        if (pos >= ops.length) {
+          throw new IllegalArgumentException("Truncated program: " + Arrays.toString(ops));
+        }
+        int operand = ops[pos++];
+        int index = GotoProgramBuilder.hasIndex(operand) ? ops[pos++] : -1;
+        boolean epilogueOnly =
+            operand == GotoProgramBuilder.OPERAND_STORED_C
+                || (operand == GotoProgramBuilder.OPERAND_VARARG
+                    && index < varArgProperties.length
+                    && isEpilogueVector(varArgProperties[index]));
+        boolean mainOnly =
+            operand == GotoProgramBuilder.OPERAND_A
+                || operand == GotoProgramBuilder.OPERAND_B
+                || (operand == GotoProgramBuilder.OPERAND_VARARG && !epilogueOnly);
+        if (epilogue ? mainOnly : epilogueOnly) {
+          throw new IllegalArgumentException(
+              (epilogue ? "The epilogue cannot read operand " : "Only the epilogue reads operand ")
+                  + operand
+                  + (index >= 0 ? " " + index : ""));
+        }
+      }
+    }
+  }
+
+  private static boolean isEpilogueVector(int varArgProperty) {
+    return varArgProperty == EPILOGUE_ROW_VECTOR || varArgProperty == EPILOGUE_COLUMN_VECTOR;
+  }
+
+  public static boolean isPacked(int kernelType) {
+    return kernelType == KERNEL_PACKED || kernelType == KERNEL_INTERLEAVE_PACKED;
+  }
+
+  public static boolean isInteger(int kernelType) {
+    return kernelType == KERNEL_INT8 || kernelType == KERNEL_INT16;
+  }
+
+  /**
+   * Number of consecutive k stored together per column of B by an integer kernel type: the
+   * elements that fill 32 bits, which the kernel multiplies and sums in one step.
+   */
+  public static int kGroup(int kernelType) {
+    return kernelType == KERNEL_INT8 ? 4 : 2;
+  }
+
+  private void checkInteger() {
+    int group = kGroup(kernelType);
+    if (!flat
+        || !Arrays.equals(program, FMADD_PROGRAM)
+        || varArgProperties.length > 0
+        || constArgs.length > 1) {
+      throw new IllegalArgumentException(
+          "Integer kernels need a flat layout, FMADD_PROGRAM, no variable arguments and at most a"
+              + " dequantization scale");
+    }
+    if (kLength % group != 0 || getLdb() < nLength * group) {
+      throw new IllegalArgumentException(
+          "Integer kernel type "
+              + kernelType
+              + " needs kLength in multiples of "
+              + group
+              + " and ldb >= "
+              + group
+              + " * nLength");
+    }
+  }
+
+  private void checkBatch() {
+    if (!flat || kernelType > KERNEL_AB_TRANSPOSED_RESULT || hasMainVarArgs()) {
+      throw new IllegalArgumentException(
+          "Batched kernels need a flat layout, one of the kernel types 0 to 3 and no variable"
+              + " arguments other than epilogue vectors");
+    }
+    // The kernel scales the problem index by the strides in bytes in 32-bit immediates.
+    for (int index = 0; index < BATCH_MISC_ARGS; index++) {
+      int stride = miscArgs[batchBase() + index];
+      if (stride < 0 || stride > Integer.MAX_VALUE / Double.BYTES) {
+        throw new IllegalArgumentException(
+            "Batch strides must be in [0, "
+                + Integer.MAX_VALUE / Double.BYTES
+                + "]: "
+                + Arrays.toString(miscArgs));
+      }
+    }
+  }
+
+  /** Number of {@code miscArgs} for the encoded kernel type {@code kernelType}, with its flags. */
+  private static int miscLength(int kernelType) {
+    return (isPacked(kernelType & ~FLAGS) ? PACKED_MISC_ARGS : 0)
+        + ((kernelType & FLAT_LAYOUT) != 0 ? FLAT_MISC_ARGS : 0)
+        + ((kernelType & PREFETCH) != 0 ? PREFETCH_MISC_ARGS : 0)
+        + ((kernelType & BATCHED) != 0 ? BATCH_MISC_ARGS : 0);
+  }
+
+  private long[] encode() {
+    long[] result =
+        new long
+            [3
+                + 1
+                + program.length
+                + 1
+                + constArgs.length
+                + 1
+                + varArgProperties.length
+                + 4
+                + miscArgs.length];
+    int curr = 0;
+    result[curr++] = arch;
+    result[curr++] = aLength;
+    result[curr++] = bLength;
+    result[curr++] = program.length;
+    for (long op : program) {
+      result[curr++] = op;
+    }
+    result[curr++] = constArgs.length;
+    for (double constArg : constArgs) {
+      result[curr++] = Double.doubleToRawLongBits(constArg);
+    }
+    result[curr++] = varArgProperties.length;
+    for (int property : varArgProperties) {
+      result[curr++] = property;
+    }
+    result[curr++] = mLength;
+    result[curr++] = kLength;
+    result[curr++] = nLength;
+    result[curr++] = encodedKernelType();
+    for (int misc : miscArgs) {
+      result[curr++] = misc;
+    }
+    return result;
+  }
+
+  /**
+   * {@link #decode} for the reference kernels, which are called once per tile with the same
+   * descriptor. The last descriptor decoded is kept with a copy of its contents and returned while
+   * calls pass an array with the same contents, so a tile loop decodes once.
+   */
+  static GotoKernelArgs decodeCached(long[] constArgs) {
+    Decoded last = lastDecoded;
+    if (last != null && Arrays.equals(last.descriptor, constArgs)) {
+      return last.args;
+    }
+    GotoKernelArgs args = decode(constArgs);
+    lastDecoded = new Decoded(constArgs.clone(), args);
+    return args;
+  }
+
+  private static volatile Decoded lastDecoded;
+
+  private static final class Decoded {
+    final long[] descriptor;
+    final GotoKernelArgs args;
+
+    Decoded(long[] descriptor, GotoKernelArgs args) {
+      this.descriptor = descriptor;
+      this.args = args;
+    }
+  }
+
+  /** Decodes a descriptor previously produced by {@link #toLongArray()}. */
+  public static GotoKernelArgs decode(long[] constArgs) {
+    int curr = 0;
+    int arch = (int) constArgs[curr++];
+    int aLength = (int) constArgs[curr++];
+    int bLength = (int) constArgs[curr++];
+    long[] program = new long[(int) constArgs[curr++]];
+    for (int i = 0; i < program.length; i++) {
+      program[i] = constArgs[curr++];
+    }
+    double[] doubleArgs = new double[(int) constArgs[curr++]];
+    for (int i = 0; i < doubleArgs.length; i++) {
+      doubleArgs[i] = Double.longBitsToDouble(constArgs[curr++]);
+    }
+    int[] varArgProperties = new int[(int) constArgs[curr++]];
+    for (int i = 0; i < varArgProperties.length; i++) {
+      varArgProperties[i] = (int) constArgs[curr++];
+    }
+    int mLength = (int) constArgs[curr++];
+    int kLength = (int) constArgs[curr++];
+    int nLength = (int) constArgs[curr++];
+    int kernelType = (int) constArgs[curr++];
+    int miscLength = miscLength(kernelType);
+    int[] miscArgs = null;
+    if (miscLength > 0) {
+      miscArgs = new int[miscLength];
+      for (int i = 0; i < miscArgs.length; i++) {
+        miscArgs[i] = (int) constArgs[curr++];
+      }
+    }
+    return new GotoKernelArgs(
+        arch,
+        kernelType,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        program,
+        doubleArgs,
+        varArgProperties,
+        miscArgs);
+  }
+
+  /** Same descriptor with a different register tile. */
+  public GotoKernelArgs withTile(int newALength, int newBLength) {
+    return new GotoKernelArgs(
+        arch,
+        encodedKernelType(),
+        newALength,
+        newBLength,
+        mLength,
+        kLength,
+        nLength,
+        program,
+        constArgs,
+        varArgProperties,
+        miscArgsOrNull());
+  }
+
+  /** Same packed descriptor with a different pack depth. */
+  public GotoKernelArgs withKPack(int newKPack) {
+    if (!isPacked(kernelType)) {
+      throw new IllegalArgumentException("Not a packed kernel: " + this);
+    }
+    int[] newMiscArgs = miscArgs.clone();
+    newMiscArgs[0] = newKPack;
+    return new GotoKernelArgs(
+        arch,
+        encodedKernelType(),
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        program,
+        constArgs,
+        varArgProperties,
+        newMiscArgs);
+  }
+
+  /** Same descriptor for a {@code mLength x kLength x nLength} problem. */
+  public GotoKernelArgs withDimensions(int newMLength, int newKLength, int newNLength) {
+    return new GotoKernelArgs(
+        arch,
+        encodedKernelType(),
+        aLength,
+        bLength,
+        newMLength,
+        newKLength,
+        newNLength,
+        program,
+        constArgs,
+        varArgProperties,
+        miscArgsOrNull());
+  }
+
+  /**
+   * Same descriptor for flat row-major operands; see {@link #FLAT_LAYOUT}. Replaces the layout if
+   * the descriptor already is flat.
+   */
+  public GotoKernelArgs withFlatLayout(
+      int lda, int ldb, int ldc, int aOffset, int bOffset, int cOffset) {
+    int packedLength = flatBase();
+    int tailLength = miscArgs.length - prefetchBase();
+    int[] newMiscArgs = new int[packedLength + FLAT_MISC_ARGS + tailLength];
+    System.arraycopy(miscArgs, 0, newMiscArgs, 0, packedLength);
+    newMiscArgs[packedLength] = lda;
+    newMiscArgs[packedLength + 1] = ldb;
+    newMiscArgs[packedLength + 2] = ldc;
+    newMiscArgs[packedLength + 3] = aOffset;
+    newMiscArgs[packedLength + 4] = bOffset;
+    newMiscArgs[packedLength + 5] = cOffset;
+    System.arraycopy(
+        miscArgs, prefetchBase(), newMiscArgs, packedLength + FLAT_MISC_ARGS, tailLength);
+    return new GotoKernelArgs(
+        arch,
+        encodedKernelType() | FLAT_LAYOUT,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        program,
+        constArgs,
+        varArgProperties,
+        newMiscArgs);
+  }
+
+  /**
+   * Same descriptor with an explicit software prefetch policy; see {@link #PREFETCH}. {@code
+   * operands} is a set of {@link #PREFETCH_A} and {@link #PREFETCH_B}, where the empty set turns
+   * prefetching off, and {@code distance} is in K steps. Replaces the policy if the descriptor
+   * already has one.
+   */
+  public GotoKernelArgs withPrefetch(int operands, int level, int distance) {
+    int base = prefetchBase();
+    int tailLength = miscArgs.length - batchBase();
+    int[] newMiscArgs = Arrays.copyOf(miscArgs, base + PREFETCH_MISC_ARGS + tailLength);
+    newMiscArgs[base] = operands;
+    newMiscArgs[base + 1] = level;
+    newMiscArgs[base + 2] = distance;
+    System.arraycopy(miscArgs, batchBase(), newMiscArgs, base + PREFETCH_MISC_ARGS, tailLength);
+    return new GotoKernelArgs(
+        arch,
+        encodedKernelType() | PREFETCH,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        program,
+        constArgs,
+        varArgProperties,
+        newMiscArgs);
+  }
+
+  /**
+   * Same integer descriptor that also writes C dequantized to floats, {@code (float) C(i, j) *
+   * scale}, once the last K panel is accumulated; see the class comment.
+   */
+  public GotoKernelArgs withDequantization(double scale) {
+    if (!isInteger(kernelType)) {
+      throw new IllegalArgumentException("Not an integer kernel: " + this);
+    }
+    return new GotoKernelArgs(
+        arch,
+        encodedKernelType(),
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        program,
+        new double[] {scale},
+        varArgProperties,
+        miscArgsOrNull());
+  }
+
+  /**
+   * Same flat descriptor for a batch of problems whose operands are {@code aStride}, {@code
+   * bStride} and {@code cStride} elements apart; see {@link #BATCHED}. Replaces the strides if the
+   * descriptor already is batched.
+   */
+  public GotoKernelArgs withBatch(int aStride, int bStride, int cStride) {
+    int base = batchBase();
+    int[] newMiscArgs = Arrays.copyOf(miscArgs, base + BATCH_MISC_ARGS);
+    newMiscArgs[base] = aStride;
+    newMiscArgs[base + 1] = bStride;
+    newMiscArgs[base + 2] = cStride;
+    return new GotoKernelArgs(
+        arch,
+        encodedKernelType() | BATCHED,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        program,
+        constArgs,
+        varArgProperties,
+        newMiscArgs);
+  }
+
+  /**
+   * The unbatched descriptor of problem {@code index} of a batched one, with a tile covering the
+   * whole problem.
+   */
+  GotoKernelArgs batchMember(int index) {
+    int[] newMiscArgs = Arrays.copyOf(miscArgs, batchBase());
+    for (int operand = 0; operand < 3; operand++) {
+      long offset = newMiscArgs[flatBase() + 3 + operand];
+      long stride = miscArgs[batchBase() + operand];
+      newMiscArgs[flatBase() + 3 + operand] = Math.toIntExact(offset + index * stride);
+    }
+    return new GotoKernelArgs(
+        arch,
+        encodedKernelType() & ~BATCHED,
+        mLength,
+        nLength,
+        mLength,
+        kLength,
+        nLength,
+        program,
+        constArgs,
+        varArgProperties,
+        newMiscArgs);
+  }
+
+  /** Same descriptor with the kernel type's built-in prefetch policy. */
+  public GotoKernelArgs withDefaultPrefetch() {
+    if (!prefetch) {
+      return this;
+    }
+    int[] newMiscArgs = new int[miscArgs.length - PREFETCH_MISC_ARGS];
+    System.arraycopy(miscArgs, 0, newMiscArgs, 0, prefetchBase());
+    System.arraycopy(
+        miscArgs,
+        batchBase(),
+        newMiscArgs,
+        prefetchBase(),
+        miscArgs.length - batchBase());
+    return new GotoKernelArgs(
+        arch,
+        encodedKernelType() & ~PREFETCH,
+        aLength,
+        bLength,
+        mLength,
+        kLength,
+        nLength,
+        program,
+        constArgs,
+        varArgProperties,
+        newMiscArgs.length > 0 ? newMiscArgs : null);
+  }
+
+  private int encodedKernelType() {
+    return kernelType
+        | (flat ? FLAT_LAYOUT : 0)
+        | (prefetch ? PREFETCH : 0)
+        | (batched ? BATCHED : 0);
+  }
+
+  private int[] miscArgsOrNull() {
+    return miscArgs.length > 0 ? miscArgs : null;
+  }
+
+  private int flatBase() {
+    return isPacked(kernelType) ? PACKED_MISC_ARGS : 0;
+  }
+
+  private int prefetchBase() {
+    return flatBase() + (flat ? FLAT_MISC_ARGS : 0);
+  }
+
+  private int batchBase() {
+    return prefetchBase() + (prefetch ? PREFETCH_MISC_ARGS : 0);
+  }
+
+  /**
+   * Returns the encoded descriptor. The array is shared; callers must not modify it, since the
+   * compiler treats its contents as constants.
+   */
+  public long[] toLongArray() {
+    return encoded;
+  }
+
+  public int getArch() {
+    return arch;
+  }
+
+  /**
+   * The kernel type without the {@link #FLAT_LAYOUT}, {@link #PREFETCH} and {@link #BATCHED}
+   * flags.
+   */
+  public int getKernelType() {
+    return kernelType;
+  }
+
+  public boolean isFlat() {
+    return flat;
+  }
+
+  public int getALength() {
+    return aLength;
+  }
+
+  public int getBLength() {
+    return bLength;
+  }
+
+  public int getMLength() {
+    return mLength;
+  }
+
+  public int getKLength() {
+    return kLength;
+  }
+
+  public int getNLength() {
+    return nLength;
+  }
+
+  public long[] getProgram() {
+    return program.clone();
+  }
+
+  public double[] getConstArgs() {
+    return constArgs.clone();
+  }
+
+  public int[] getVarArgProperties() {
+    return varArgProperties.clone();
+  }
+
+  /** Whether an integer descriptor writes C dequantized; see {@link #withDequantization}. */
+  public boolean isDequantized() {
+    return isInteger(kernelType) && constArgs.length == 1;
+  }
+
+  public boolean hasEpilogue() {
+    return epilogueStart(program) >= 0;
+  }
+
+  /**
+   * Whether the instructions run for every K step are {@link #FMADD_PROGRAM}, which {@link
+   * GotoKernelReference} runs without interpreting the program.
+   */
+  boolean hasFmaddProgram() {
+    int start = epilogueStart(program);
+    return Arrays.equals(start < 0 ? program : Arrays.copyOf(program, start), FMADD_PROGRAM);
+  }
+
+  /**
+   * Whether the epilogue reads {@link GotoProgramBuilder#STORED_C}, which is only the original C
+   * if one call covers all of K.
+   */
+  public boolean epilogueReadsStoredC() {
+    int[] ops = decodeEpilogue(program);
+    if (ops == null) {
+      return false;
+    }
+    int pos = 0;
+    while (pos < ops.length) {
+      int operandCount = GotoProgramBuilder.operandCount(ops[pos++]);
+      for (int operandIndex = 0; operandIndex < operandCount; operandIndex++) {
+        int operand = ops[pos++];
+        if (operand == GotoProgramBuilder.OPERAND_STORED_C) {
+          return true;
+        }
+        pos += GotoProgramBuilder.hasIndex(operand) ? 1 : 0;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether the program compares or runs masked ops. Without AVX-512 opmasks the kernels keep the
+   * mask and the masked result in two vector registers of their own.
+   */
+  public boolean usesMask() {
+    int[] ops = decodeProgram(program);
+    int pos = 0;
+    while (pos < ops.length) {
+      int op = ops[pos++];
+      int type = op & ~0b111;
+      if (type == GotoProgramBuilder.CMPOP || type == GotoProgramBuilder.MASKOP) {
+        return true;
+      }
+      int operandCount = GotoProgramBuilder.operandCount(op);
+      for (int operandIndex = 0; operandIndex < operandCount; operandIndex++) {
+        pos += GotoProgramBuilder.hasIndex(ops[pos]) ? 2 : 1;
+      }
+    }
+    return false;
+  }
+
+  /** Whether a variable argument is read by the instructions run for every K step. */
+  private boolean hasMainVarArgs() {
+    for (int property : varArgProperties) {
+      if (!isEpilogueVector(property)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Whether the descriptor has an explicit prefetch policy instead of the built-in one. */
+  public boolean hasPrefetchPolicy() {
+    return prefetch;
+  }
+
+  /** Set of {@link #PREFETCH_A} and {@link #PREFETCH_B}; -1 for the built-in policy. */
+  public int getPrefetchOperands() {
+    return prefetch ? miscArgs[prefetchBase()] : -1;
+  }
+
+  /**
+   * One of {@link #PREFETCH_T0}, {@link #PREFETCH_T1} and {@link #PREFETCH_T2}; -1 for the built-in
+   * policy.
+   */
+  public int getPrefetchLevel() {
+    return prefetch ? miscArgs[prefetchBase() + 1] : -1;
+  }
+
+  /** Prefetch distance in K steps; -1 for the built-in policy. */
+  public int getPrefetchDistance() {
+    return prefetch ? miscArgs[prefetchBase() + 2] : -1;
+  }
+
+  /** Whether the descriptor describes a batch of problems; see {@link #BATCHED}. */
+  public boolean isBatched() {
+    return batched;
+  }
+
+  /** Distance in elements between the A of consecutive problems of a batch; 0 if not batched. */
+  public int getABatchStride() {
+    return batched ? miscArgs[batchBase()] : 0;
+  }
+
+  public int getBBatchStride() {
+    return batched ? miscArgs[batchBase() + 1] : 0;
+  }
+
+  public int getCBatchStride() {
+    return batched ? miscArgs[batchBase() + 2] : 0;
+  }
+
+  public int getKPack() {
+    return isPacked(kernelType) ? miscArgs[0] : 0;
+  }
+
+  public int getAAlignmentOffset() {
+    return isPacked(kernelType) ? miscArgs[1] : 0;
+  }
+
+  public int getBAlignmentOffset() {
+    return isPacked(kernelType) ? miscArgs[2] : 0;
+  }
+
+  /** Leading dimension of flat A; 0 for arrays of rows. */
+  public int getLda() {
+    return flat ? miscArgs[flatBase()] : 0;
+  }
+
+  public int getLdb() {
+    return flat ? miscArgs[flatBase() + 1] : 0;
+  }
+
+  public int getLdc() {
+    return flat ? miscArgs[flatBase() + 2] : 0;
+  }
+
+  /** Index of the first element of flat A; 0 for arrays of rows. */
+  public int getAOffset() {
+    return flat ? miscArgs[flatBase() + 3] : 0;
+  }
+
+  public int getBOffset() {
+    return flat ? miscArgs[flatBase() + 4] : 0;
+  }
+
+  public int getCOffset() {
+    return flat ? miscArgs[flatBase() + 5] : 0;
+  }
+
+  /**
+   * Whether the compiled kernel masks a tile that hangs over the N edge itself, so callers need
+   * not pad N to a multiple of {@code bLength}. Only the AVX-512 kernels do, with opmasks: the AB
+   * kernel without variable arguments, and with a flat layout also the ATB kernel and the integer
+   * kernels without variable arguments other than epilogue vectors; all with at most {@value
+   * #MAX_MASKED_B_VECTORS} vectors of B. The AVX and AVX2 kernels have no masked N tail, so their
+   * callers cover the columns past the last whole tile with {@link GotoKernelReference}. Any tile
+   * hanging over the M edge is handled by all kernel types.
+   */
+  public boolean masksNTail(boolean isFloat) {
+    // The integer kernels keep 32-bit sums, as many per vector as floats.
+    int lanes = isFloat || isInteger(kernelType) ? 16 : 8;
+    boolean masked;
+    if (flat) {
+      masked =
+          (kernelType == KERNEL_AB || kernelType == KERNEL_ATB || isInteger(kernelType))
+              && !hasMainVarArgs();
+    } else {
+      // The unpacked AB kernel does not mask the loads of epilogue vectors.
+      masked =
+          (kernelType == KERNEL_AB && varArgProperties.length == 0)
+              || (isInteger(kernelType) && !hasMainVarArgs());
+    }
+    return masked && arch == ARCH_AVX512 && bLength <= MAX_MASKED_B_VECTORS * lanes;
+  }
+
+  /** Number of rows of the result matrix as it is laid out in memory. */
+  public int resultRows() {
+    return kernelType == KERNEL_AB_TRANSPOSED_RESULT ? nLength : mLength;
+  }
+
+  @Override
+  public String toString() {
+    return "GotoKernelArgs" + Arrays.toString(encoded);
+  }
+}
@@ -0,0 +1,592 @@
+package com.oracle.truffle.api.vec;
+
+/**
+ * Scalar reference semantics of {@code CompilerDirectives.gotoKernel}. This is what runs in the
+ * interpreter and whenever the intrinsic is not applied; it is also used by {@link GotoGemm} for
+ * edges the vector kernels do not cover.
+ *
+ * <p>The tile at {@code (i, k, j)} is clamped to the matrix bounds encoded in the descriptor, so a
+ * tile that hangs over the M, K or N edge only computes its in-bounds part.
+ *
+ * <p>The instructions of the program run for every K step are interpreted per element of the tile,
+ * K outermost, then the rows and the columns of the tile, as the kernels run them; see {@link
+ * GotoInterpreter}. A is {@code op(A)(i, k)}, B is {@code op(B)(k, j)} and C is {@code C(i, j)},
+ * which is written back after every step. Variable arguments read there are vectors indexed by the
+ * row ({@value #ROW_VARARG}) or the column ({@value #COLUMN_VARARG}) of the element, or arrays of
+ * rows ({@value #MATRIX_VARARG}). Programs that are just {@link GotoKernelArgs#FMADD_PROGRAM} take
+ * plain {@code C += op(A) * op(B)} loops. The epilogue of the program, if any, runs on the call
+ * whose K panel ends at {@code kLength}; see {@link GotoEpilogue}.
+ *
+ * <p>With {@link GotoKernelArgs#FLAT_LAYOUT} the operands are flat {@code double[]} (or {@code
+ * float[]}) arrays indexed as described there, or addresses of such operands in native memory.
+ *
+ * <p>{@link #gotoKernelBatched} runs each problem of a batched descriptor as one call covering the
+ * whole problem.
+ *
+ * <p>{@link #gotoKernelInt} is the integer version for {@link GotoKernelArgs#KERNEL_INT8} and
+ * {@link GotoKernelArgs#KERNEL_INT16}.
+ */
+public final class GotoKernelReference {
+  // Properties of the variable arguments read by the instructions run for every K step.
+  private static final int ROW_VARARG = 1;
+  private static final int COLUMN_VARARG = 2;
+  private static final int MATRIX_VARARG = 3;
+
+  private GotoKernelReference() {}
+
+  public static void gotoKernel(
+      Object[] arrs, int kPanelSize, int i, int k, int j, long[] constArgs) {
+    gotoKernel(arrs, kPanelSize, i, k, j, GotoKernelArgs.decodeCached(constArgs));
+  }
+
+  public static void gotoKernel(
+      Object[] arrs, int kPanelSize, int i, int k, int j, GotoKernelArgs args) {
+    int iEnd = Math.min(i + args.getALength(), args.getMLength());
+    int jEnd = Math.min(j + args.getBLength(), args.getNLength());
+    int kEnd = Math.min(k + kPanelSize, args.getKLength());
+    GotoEpilogue epilogue = GotoEpilogue.forPanel(args, kEnd, false);
+    double[] stored = epilogue == null ? null : epilogue.storedTile(arrs, i, j, iEnd, jEnd);
+    if (args.hasFmaddProgram()) {
+      accumulate(arrs, i, k, j, iEnd, kEnd, jEnd, args);
+    } else {
+      interpret(arrs, i, k, j, iEnd, kEnd, jEnd, args, false);
+    }
+    if (epilogue != null) {
+      epilogue.apply(arrs, i, j, iEnd, jEnd, stored);
+    }
+  }
+
+  private static void accumulate(
+      Object[] arrs, int i, int k, int j, int iEnd, int kEnd, int jEnd, GotoKernelArgs args) {
+    if (GotoKernelArgs.isPacked(args.getKernelType())) {
+      packedKernel((double[]) arrs[0], (double[]) arrs[1], arrs[2], i, k, j, iEnd, kEnd, jEnd, args);
+      return;
+    }
+    if (args.isFlat()) {
+      double[] a = (double[]) arrs[0];
+      double[] b = (double[]) arrs[1];
+      double[] result = (double[]) arrs[2];
+      for (int kk = k; kk < kEnd; kk++) {
+        for (int ii = i; ii < iEnd; ii++) {
+          for (int jj = j; jj < jEnd; jj++) {
+            result[flatCIndex(args, ii, jj)] +=
+                a[flatAIndex(args, ii, kk)] * b[flatBIndex(args, kk, jj)];
+          }
+        }
+      }
+      return;
+    }
+    double[][] a = (double[][]) arrs[0];
+    double[][] b = (double[][]) arrs[1];
+    double[][] result = (double[][]) arrs[2];
+    for (int kk = k; kk < kEnd; kk++) {
+      for (int ii = i; ii < iEnd; ii++) {
+        for (int jj = j; jj < jEnd; jj++) {
+          switch (args.getKernelType()) {
+            case GotoKernelArgs.KERNEL_AB:
+              result[ii][jj] += a[ii][kk] * b[kk][jj];
+              break;
+            case GotoKernelArgs.KERNEL_ATB:
+              result[ii][jj] += a[kk][ii] * b[kk][jj];
+              break;
+            case GotoKernelArgs.KERNEL_ABT:
+              result[ii][jj] += a[ii][kk] * b[jj][kk];
+              break;
+            case GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT:
+              result[jj][ii] += a[ii][kk] * b[kk][jj];
+              break;
+          }
+        }
+      }
+    }
+  }
+
+  /** Same as {@link #gotoKernel(Object[], int, int, int, int, long[])} for {@code float[][]}. */
+  public static void gotoKernelFloat(
+      Object[] arrs, int kPanelSize, int i, int k, int j, long[] constArgs) {
+    gotoKernelFloat(arrs, kPanelSize, i, k, j, GotoKernelArgs.decodeCached(constArgs));
+  }
+
+  public static void gotoKernelFloat(
+      Object[] arrs, int kPanelSize, int i, int k, int j, GotoKernelArgs args) {
+    if (GotoKernelArgs.isPacked(args.getKernelType())) {
+      throw new IllegalArgumentException("Packed kernels have no float version");
+    }
+    int iEnd = Math.min(i + args.getALength(), args.getMLength());
+    int jEnd = Math.min(j + args.getBLength(), args.getNLength());
+    int kEnd = Math.min(k + kPanelSize, args.getKLength());
+    GotoEpilogue epilogue = GotoEpilogue.forPanel(args, kEnd, true);
+    double[] stored = epilogue == null ? null : epilogue.storedTile(arrs, i, j, iEnd, jEnd);
+    if (args.hasFmaddProgram()) {
+      accumulateFloat(arrs, i, k, j, iEnd, kEnd, jEnd, args);
+    } else {
+      interpret(arrs, i, k, j, iEnd, kEnd, jEnd, args, true);
+    }
+    if (epilogue != null) {
+      epilogue.apply(arrs, i, j, iEnd, jEnd, stored);
+    }
+  }
+
+  private static void accumulateFloat(
+      Object[] arrs, int i, int k, int j, int iEnd, int kEnd, int jEnd, GotoKernelArgs args) {
+    if (args.isFlat()) {
+      float[] a = (float[]) arrs[0];
+      float[] b = (float[]) arrs[1];
+      float[] result = (float[]) arrs[2];
+      for (int kk = k; kk < kEnd; kk++) {
+        for (int ii = i; ii < iEnd; ii++) {
+          for (int jj = j; jj < jEnd; jj++) {
+            result[flatCIndex(args, ii, jj)] +=
+                a[flatAIndex(args, ii, kk)] * b[flatBIndex(args, kk, jj)];
+          }
+        }
+      }
+      return;
+    }
+    float[][] a = (float[][]) arrs[0];
+    float[][] b = (float[][]) arrs[1];
+    float[][] result = (float[][]) arrs[2];
+    for (int kk = k; kk < kEnd; kk++) {
+      for (int ii = i; ii < iEnd; ii++) {
+        for (int jj = j; jj < jEnd; jj++) {
+          switch (args.getKernelType()) {
+            case GotoKernelArgs.KERNEL_AB:
+              result[ii][jj] += a[ii][kk] * b[kk][jj];
+              break;
+            case GotoKernelArgs.KERNEL_ATB:
+              result[ii][jj] += a[kk][ii] * b[kk][jj];
+              break;
+            case GotoKernelArgs.KERNEL_ABT:
+              result[ii][jj] += a[ii][kk] * b[jj][kk];
+              break;
+            case GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT:
+              result[jj][ii] += a[ii][kk] * b[kk][jj];
+              break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Reference semantics of {@code CompilerDirectives.gotoKernelBatched}: the program, and the
+   * epilogue if any, for problems {@code 0} to {@code batchCount - 1} of a {@link
+   * GotoKernelArgs#BATCHED} descriptor.
+   */
+  public static void gotoKernelBatched(Object[] arrs, int batchCount, long[] constArgs) {
+    gotoKernelBatched(arrs, batchCount, GotoKernelArgs.decodeCached(constArgs), false);
+  }
+
+  /** Same as {@link #gotoKernelBatched(Object[], int, long[])} for {@code float[]} operands. */
+  public static void gotoKernelBatchedFloat(Object[] arrs, int batchCount, long[] constArgs) {
+    gotoKernelBatched(arrs, batchCount, GotoKernelArgs.decodeCached(constArgs), true);
+  }
+
+  public static void gotoKernelBatched(
+      Object[] arrs, int batchCount, GotoKernelArgs args, boolean isFloat) {
+    if (!args.isBatched()) {
+      throw new IllegalArgumentException("Not a batched descriptor: " + args);
+    }
+    for (int index = 0; index < batchCount; index++) {
+      GotoKernelArgs problem = args.batchMember(index);
+      if (isFloat) {
+        gotoKernelFloat(arrs, args.getKLength(), 0, 0, 0, problem);
+      } else {
+        gotoKernel(arrs, args.getKLength(), 0, 0, 0, problem);
+      }
+    }
+  }
+
+  /**
+   * {@link #gotoKernel(Object[], int, int, int, int, long[])} for operands in native memory: {@code
+   * addresses = {A, B, C}} are the addresses of flat operands laid out as the descriptor's {@link
+   * GotoKernelArgs#FLAT_LAYOUT} says (see {@link OffHeap}). Packed descriptors are not supported.
+   */
+  public static void gotoKernel(
+      long[] addresses, int kPanelSize, int i, int k, int j, long[] constArgs) {
+    offHeapKernel(addresses, kPanelSize, i, k, j, GotoKernelArgs.decodeCached(constArgs), false);
+  }
+
+  public static void gotoKernel(
+      long[] addresses, int kPanelSize, int i, int k, int j, GotoKernelArgs args) {
+    offHeapKernel(addresses, kPanelSize, i, k, j, args, false);
+  }
+
+  /** Single-precision {@link #gotoKernel(long[], int, int, int, int, long[])}. */
+  public static void gotoKernelFloat(
+      long[] addresses, int kPanelSize, int i, int k, int j, long[] constArgs) {
+    offHeapKernel(addresses, kPanelSize, i, k, j, GotoKernelArgs.decodeCached(constArgs), true);
+  }
+
+  public static void gotoKernelFloat(
+      long[] addresses, int kPanelSize, int i, int k, int j, GotoKernelArgs args) {
+    offHeapKernel(addresses, kPanelSize, i, k, j, args, true);
+  }
+
+  private static void offHeapKernel(
+      long[] addresses,
+      int kPanelSize,
+      int i,
+      int k,
+      int j,
+      GotoKernelArgs args,
+      boolean isFloat) {
+    if (!args.isFlat() || GotoKernelArgs.isPacked(args.getKernelType())) {
+      throw new IllegalArgumentException(
+          "Off-heap operands need an unpacked descriptor with a flat layout: " + args);
+    }
+    int iEnd = Math.min(i + args.getALength(), args.getMLength());
+    int jEnd = Math.min(j + args.getBLength(), args.getNLength());
+    int kEnd = Math.min(k + kPanelSize, args.getKLength());
+    GotoEpilogue epilogue = GotoEpilogue.forPanel(args, kEnd, isFloat);
+    double[] stored = epilogue == null ? null : epilogue.storedTile(addresses, i, j, iEnd, jEnd);
+    if (args.hasFmaddProgram()) {
+      accumulateOffHeap(addresses, i, k, j, iEnd, kEnd, jEnd, args, isFloat);
+    } else {
+      interpret(addresses, i, k, j, iEnd, kEnd, jEnd, args, isFloat);
+    }
+    if (epilogue != null) {
+      epilogue.apply(addresses, i, j, iEnd, jEnd, stored);
+    }
+  }
+
+  private static void accumulateOffHeap(
+      long[] addresses,
+      int i,
+      int k,
+      int j,
+      int iEnd,
+      int kEnd,
+      int jEnd,
+      GotoKernelArgs args,
+      boolean isFloat) {
+    long elementBytes = isFloat ? Float.BYTES : Double.BYTES;
+    for (int kk = k; kk < kEnd; kk++) {
+      for (int ii = i; ii < iEnd; ii++) {
+        long a = addresses[0] + flatAIndex(args, ii, kk) * elementBytes;
+        for (int jj = j; jj < jEnd; jj++) {
+          long b = addresses[1] + flatBIndex(args, kk, jj) * elementBytes;
+          long c = addresses[2] + flatCIndex(args, ii, jj) * elementBytes;
+          if (isFloat) {
+            float product = OffHeap.UNSAFE.getFloat(a) * OffHeap.UNSAFE.getFloat(b);
+            OffHeap.UNSAFE.putFloat(c, OffHeap.UNSAFE.getFloat(c) + product);
+          } else {
+            double product = OffHeap.UNSAFE.getDouble(a) * OffHeap.UNSAFE.getDouble(b);
+            OffHeap.UNSAFE.putDouble(c, OffHeap.UNSAFE.getDouble(c) + product);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * {@code C += A * B} over {@code arrs = {A, B, C}} for the integer kernel types, where A and B are
+   * {@code byte[]} ({@link GotoKernelArgs#KERNEL_INT8}, A read as unsigned) or {@code short[]}
+   * ({@link GotoKernelArgs#KERNEL_INT16}) and C is an {@code int[]}. A dequantized descriptor also
+   * takes the {@code float[]} output as {@code arrs[3]} and writes it on the last K panel.
+   */
+  public static void gotoKernelInt(
+      Object[] arrs, int kPanelSize, int i, int k, int j, long[] constArgs) {
+    gotoKernelInt(arrs, kPanelSize, i, k, j, GotoKernelArgs.decodeCached(constArgs));
+  }
+
+  public static void gotoKernelInt(
+      Object[] arrs, int kPanelSize, int i, int k, int j, GotoKernelArgs args) {
+    int kernelType = args.getKernelType();
+    if (!GotoKernelArgs.isInteger(kernelType)) {
+      throw new IllegalArgumentException("Not an integer kernel: " + args);
+    }
+    int group = GotoKernelArgs.kGroup(kernelType);
+    if (k % group != 0 || kPanelSize % group != 0) {
+      throw new IllegalArgumentException(
+          "K position and panel size must be multiples of " + group + ": " + k + ", " + kPanelSize);
+    }
+    int iEnd = Math.min(i + args.getALength(), args.getMLength());
+    int jEnd = Math.min(j + args.getBLength(), args.getNLength());
+    int kEnd = Math.min(k + kPanelSize, args.getKLength());
+    int[] result = (int[]) arrs[2];
+    for (int ii = i; ii < iEnd; ii++) {
+      for (int jj = j; jj < jEnd; jj++) {
+        int sum = 0;
+        for (int kk = k; kk < kEnd; kk++) {
+          int aIndex = flatAIndex(args, ii, kk);
+          int bIndex = flatBIndex(args, kk, jj);
+          if (kernelType == GotoKernelArgs.KERNEL_INT8) {
+            sum += (((byte[]) arrs[0])[aIndex] & 0xFF) * ((byte[]) arrs[1])[bIndex];
+          } else {
+            sum += ((short[]) arrs[0])[aIndex] * ((short[]) arrs[1])[bIndex];
+          }
+        }
+        result[flatCIndex(args, ii, jj)] += sum;
+      }
+    }
+    if (args.isDequantized() && kEnd >= args.getKLength()) {
+      float scale = (float) args.getConstArgs()[0];
+      float[] dequantized = (float[]) arrs[3];
+      for (int ii = i; ii < iEnd; ii++) {
+        for (int jj = j; jj < jEnd; jj++) {
+          int index = flatCIndex(args, ii, jj);
+          dequantized[index] = result[index] * scale;
+        }
+      }
+    }
+  }
+
+  /** Element {@code C(i, j)} of the arrays or, as a {@code long[]}, addresses {@code operands}. */
+  static double loadC(Object operands, GotoKernelArgs args, int i, int j, boolean isFloat) {
+    if (operands instanceof long[] || args.isFlat()) {
+      return loadFlat(operands, 2, flatCIndex(args, i, j), isFloat);
+    }
+    boolean transposed = args.getKernelType() == GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT;
+    return loadRows(((Object[]) operands)[2], transposed ? j : i, transposed ? i : j, isFloat);
+  }
+
+  static void storeC(
+      Object operands, GotoKernelArgs args, int i, int j, boolean isFloat, double value) {
+    if (operands instanceof long[]) {
+      long address = ((long[]) operands)[2] + elementOffset(flatCIndex(args, i, j), isFloat);
+      if (isFloat) {
+        OffHeap.UNSAFE.putFloat(address, (float) value);
+      } else {
+        OffHeap.UNSAFE.putDouble(address, value);
+      }
+      return;
+    }
+    Object result = ((Object[]) operands)[2];
+    if (args.isFlat()) {
+      int index = flatCIndex(args, i, j);
+      if (isFloat) {
+        ((float[]) result)[index] = (float) value;
+      } else {
+        ((double[]) result)[index] = value;
+      }
+      return;
+    }
+    boolean transposed = args.getKernelType() == GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT;
+    int row = transposed ? j : i;
+    int col = transposed ? i : j;
+    if (isFloat) {
+      ((float[][]) result)[row][col] = (float) value;
+    } else {
+      ((double[][]) result)[row][col] = value;
+    }
+  }
+
+  /** Element {@code index} of the vector passed as variable argument {@code varArgIndex}. */
+  static double loadVarArgElement(Object operands, int varArgIndex, int index, boolean isFloat) {
+    return loadFlat(operands, 3 + varArgIndex, index, isFloat);
+  }
+
+  /** Element {@code index} of flat operand {@code operand}, on the heap or in native memory. */
+  private static double loadFlat(Object operands, int operand, int index, boolean isFloat) {
+    if (operands instanceof long[]) {
+      long address = ((long[]) operands)[operand] + elementOffset(index, isFloat);
+      return isFloat ? OffHeap.UNSAFE.getFloat(address) : OffHeap.UNSAFE.getDouble(address);
+    }
+    Object array = ((Object[]) operands)[operand];
+    return isFloat ? ((float[]) array)[index] : ((double[]) array)[index];
+  }
+
+  private static double loadRows(Object rows, int row, int col, boolean isFloat) {
+    return isFloat ? ((float[][]) rows)[row][col] : ((double[][]) rows)[row][col];
+  }
+
+  private static long elementOffset(int index, boolean isFloat) {
+    return (long) index * (isFloat ? Float.BYTES : Double.BYTES);
+  }
+
+  /** Index of {@code A(i, k)} in flat A; A is stored transposed for the ATB kernel. */
+  static int flatAIndex(GotoKernelArgs args, int i, int k) {
+    boolean transposed = args.getKernelType() == GotoKernelArgs.KERNEL_ATB;
+    return args.getAOffset() + (transposed ? k * args.getLda() + i : i * args.getLda() + k);
+  }
+
+  /**
+   * Index of {@code B(k, j)} in flat B; B is stored transposed for the ABT kernel, and in groups of
+   * k for the integer kernels.
+   */
+  static int flatBIndex(GotoKernelArgs args, int k, int j) {
+    if (GotoKernelArgs.isInteger(args.getKernelType())) {
+      int group = GotoKernelArgs.kGroup(args.getKernelType());
+      return args.getBOffset() + (k / group) * args.getLdb() + j * group + k % group;
+    }
+    boolean transposed = args.getKernelType() == GotoKernelArgs.KERNEL_ABT;
+    return args.getBOffset() + (transposed ? j * args.getLdb() + k : k * args.getLdb() + j);
+  }
+
+  /** Index of {@code C(i, j)} in flat C, which is stored transposed for the transposed result. */
+  static int flatCIndex(GotoKernelArgs args, int i, int j) {
+    boolean transposed = args.getKernelType() == GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT;
+    return args.getCOffset() + (transposed ? j * args.getLdc() + i : i * args.getLdc() + j);
+  }
+
+  /**
+   * Packed layout: for every {@code kPack}-deep block of K, A holds {@code mLength x kPack} values
+   * as consecutive row panels of height {@code aLength} (k-major inside a panel, the last panel
+   * being only as high as the rows left), and B holds {@code kPack x nLength} values as consecutive
+   * column panels of width {@code bLength} (k-major inside a panel, the last panel being only as
+   * wide as the columns left). {@link GotoPacking} produces this layout. The result is a {@code
+   * double[][]}, or a flat {@code double[]} with a flat layout.
+   */
+  private static void packedKernel(
+      double[] aPacked,
+      double[] bPacked,
+      Object result,
+      int i,
+      int k,
+      int j,
+      int iEnd,
+      int kEnd,
+      int jEnd,
+      GotoKernelArgs args) {
+    int kPack = args.getKPack();
+    int panelHeight = iEnd - i;
+    int panelWidth = jEnd - j;
+    int aBase = args.getAAlignmentOffset() / 8;
+    int bBase = args.getBAlignmentOffset() / 8;
+    double[][] rows = args.isFlat() ? null : (double[][]) result;
+    double[] flatResult = args.isFlat() ? (double[]) result : null;
+    for (int kk = k; kk < kEnd; kk++) {
+      int kBlock = kk / kPack;
+      int kStart = kk % kPack;
+      int aIndex = aBase + kBlock * args.getMLength() * kPack + i * kPack + kStart * panelHeight;
+      int bIndex = bBase + kBlock * args.getNLength() * kPack + j * kPack + kStart * panelWidth;
+      for (int ii = i; ii < iEnd; ii++) {
+        double aValue = aPacked[aIndex + (ii - i)];
+        for (int jj = j; jj < jEnd; jj++) {
+          double product = aValue * bPacked[bIndex + (jj - j)];
+          if (flatResult != null) {
+            flatResult[flatCIndex(args, ii, jj)] += product;
+          } else {
+            rows[ii][jj] += product;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the instructions of the program for every K step on the tile {@code [i, iEnd) x [j,
+   * jEnd)} for K steps {@code [k, kEnd)}. {@code operands} are the arrays or, as a {@code long[]},
+   * the addresses of the operands.
+   */
+  private static void interpret(
+      Object operands,
+      int i,
+      int k,
+      int j,
+      int iEnd,
+      int kEnd,
+      int jEnd,
+      GotoKernelArgs args,
+      boolean isFloat) {
+    KStep step = new KStep(operands, args, i, j, iEnd, jEnd, isFloat);
+    for (int kk = k; kk < kEnd; kk++) {
+      for (int ii = i; ii < iEnd; ii++) {
+        for (int jj = j; jj < jEnd; jj++) {
+          step.i = ii;
+          step.k = kk;
+          step.j = jj;
+          storeC(operands, args, ii, jj, isFloat, step.run(loadC(operands, args, ii, jj, isFloat)));
+        }
+      }
+    }
+  }
+
+  /** The instructions run for every K step, on the element {@code (i, k, j)} of a tile. */
+  private static final class KStep extends GotoInterpreter {
+    private final Object operands;
+    private final GotoKernelArgs args;
+    private final int[] varArgProperties;
+    // The tile, which the packed kernel types read A and B by.
+    private final int tileI;
+    private final int tileJ;
+    private final int panelHeight;
+    private final int panelWidth;
+
+    int i;
+    int k;
+    int j;
+
+    KStep(Object operands, GotoKernelArgs args, int i, int j, int iEnd, int jEnd, boolean isFloat) {
+      super(GotoKernelArgs.decodeMain(args.getProgram()), args.getConstArgs(), isFloat);
+      this.operands = operands;
+      this.args = args;
+      this.varArgProperties = args.getVarArgProperties();
+      this.tileI = i;
+      this.tileJ = j;
+      this.panelHeight = iEnd - i;
+      this.panelWidth = jEnd - j;
+    }
+
+    @Override
+    double operand(int operand, int index) {
+      switch (operand) {
+        case GotoProgramBuilder.OPERAND_A:
+          return loadA();
+        case GotoProgramBuilder.OPERAND_B:
+          return loadB();
+        case GotoProgramBuilder.OPERAND_VARARG:
+          return loadVarArg(index);
+        default:
+          throw new IllegalArgumentException("A K step cannot read operand " + operand);
+      }
+    }
+
+    private double loadA() {
+      if (GotoKernelArgs.isPacked(args.getKernelType())) {
+        int kPack = args.getKPack();
+        int index =
+            args.getAAlignmentOffset() / 8
+                + (k / kPack) * args.getMLength() * kPack
+                + tileI * kPack
+                + (k % kPack) * panelHeight
+                + (i - tileI);
+        return ((double[]) ((Object[]) operands)[0])[index];
+      }
+      if (operands instanceof long[] || args.isFlat()) {
+        return loadFlat(operands, 0, flatAIndex(args, i, k), isFloat);
+      }
+      boolean transposed = args.getKernelType() == GotoKernelArgs.KERNEL_ATB;
+      return loadRows(((Object[]) operands)[0], transposed ? k : i, transposed ? i : k, isFloat);
+    }
+
+    private double loadB() {
+      if (GotoKernelArgs.isPacked(args.getKernelType())) {
+        int kPack = args.getKPack();
+        int index =
+            args.getBAlignmentOffset() / 8
+                + (k / kPack) * args.getNLength() * kPack
+                + tileJ * kPack
+                + (k % kPack) * panelWidth
+                + (j - tileJ);
+        return ((double[]) ((Object[]) operands)[1])[index];
+      }
+      if (operands instanceof long[] || args.isFlat()) {
+        return loadFlat(operands, 1, flatBIndex(args, k, j), isFloat);
+      }
+      boolean transposed = args.getKernelType() == GotoKernelArgs.KERNEL_ABT;
+      return loadRows(((Object[]) operands)[1], transposed ? j : k, transposed ? k : j, isFloat);
+    }
+
+    private double loadVarArg(int varArgIndex) {
+      switch (varArgProperties[varArgIndex]) {
+        case ROW_VARARG:
+          return loadVarArgElement(operands, varArgIndex, i, isFloat);
+        case COLUMN_VARARG:
+          return loadVarArgElement(operands, varArgIndex, j, isFloat);
+        case MATRIX_VARARG:
+          if (operands instanceof Object[]) {
+            return loadRows(((Object[]) operands)[3 + varArgIndex], i, j, isFloat);
+          }
+          // Fall through: there are no arrays of rows in native memory.
+        default:
+          throw new IllegalArgumentException(
+              "Unsupported variable argument property "
+                  + varArgProperties[varArgIndex]
+                  + " for "
+                  + args);
+      }
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package com.oracle.truffle.api.vec;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+
+/**
+ * Packs GEMM operands into the layout expected by the packed Goto kernels ({@link
+ * GotoKernelArgs#KERNEL_PACKED} and {@link GotoKernelArgs#KERNEL_INTERLEAVE_PACKED}).
+ *
+ * <p>For every {@code kPack}-deep block of K, A ({@code m x k}, row-major) becomes consecutive row
+ * panels of height {@code aLength} stored k-major, and B ({@code k x n}, row-major) becomes
+ * consecutive column panels of width {@code bLength} stored k-major. The last panel along M or N is
+ * only as wide as the rows or columns left. Each panel is copied by {@link
+ * CompilerDirectives#gotoPack}, which the compiler replaces with an unrolled vector copy.
+ *
+ * <p>Operands are either {@code double[][]} or flat row-major {@code double[]} with an explicit
+ * leading dimension and optionally an offset to the first element. Pack buffers are kept per thread and reused across calls; see {@link
+ * #aBuffer} and {@link #bBuffer}.
+ *
+ * <p>{@link #packKGroups(byte[], int, GotoKernelArgs)} lays out B for the integer kernel types.
+ */
+public final class GotoPacking {
+  private static final ThreadLocal<double[][]> BUFFERS =
+      ThreadLocal.withInitial(() -> new double[][] {new double[0], new double[0]});
+
+  private final GotoKernelArgs args;
+
+  /** Panel descriptors indexed by {@code 2 * flat + edge}. */
+  @CompilationFinal(dimensions = 1)
+  private final long[][] aPanelArgs;
+
+  @CompilationFinal(dimensions = 1)
+  private final long[][] bPanelArgs;
+
+  public GotoPacking(GotoKernelArgs args) {
+    if (!GotoKernelArgs.isPacked(args.getKernelType())) {
+      throw new IllegalArgumentException("Not a packed kernel: " + args);
+    }
+    this.args = args;
+    int aEdge = Math.max(1, args.getMLength() % args.getALength());
+    int bEdge = Math.max(1, args.getNLength() % args.getBLength());
+    this.aPanelArgs =
+        new long[][] {
+          panelArgs(args.getALength(), true, false),
+          panelArgs(aEdge, true, false),
+          panelArgs(args.getALength(), true, true),
+          panelArgs(aEdge, true, true)
+        };
+    this.bPanelArgs =
+        new long[][] {
+          panelArgs(args.getBLength(), false, false),
+          panelArgs(bEdge, false, false),
+          panelArgs(args.getBLength(), false, true),
+          panelArgs(bEdge, false, true)
+        };
+  }
+
+  /** Descriptor for a single {@link CompilerDirectives#gotoPack} call. */
+  public static long[] panelArgs(int width, boolean transpose, boolean flat) {
+    return new long[] {width, transpose ? 1 : 0, flat ? 1 : 0};
+  }
+
+  /**
+   * Scalar semantics of {@link CompilerDirectives#gotoPack}: {@code dst[dstOffset + kk * width + w]
+   * = S[row + kk][col + w]}, or {@code S[row + w][col + kk]} when transposing, for {@code kk <
+   * depth} and {@code w < width}.
+   */
+  public static void packPanel(
+      Object src,
+      int ld,
+      double[] dst,
+      int dstOffset,
+      int row,
+      int col,
+      int depth,
+      long[] constArgs) {
+    int width = (int) constArgs[0];
+    boolean transpose = constArgs[1] != 0;
+    boolean flat = constArgs[2] != 0;
+    for (int kk = 0; kk < depth; kk++) {
+      for (int w = 0; w < width; w++) {
+        int r = transpose ? row + w : row + kk;
+        int c = transpose ? col + kk : col + w;
+        dst[dstOffset + kk * width + w] =
+            flat ? ((double[]) src)[r * ld + c] : ((double[][]) src)[r][c];
+      }
+    }
+  }
+
+  /** Number of doubles needed for packed A, including the alignment offset. */
+  public static int packedALength(GotoKernelArgs args) {
+    return args.getAAlignmentOffset() / 8 + kBlocks(args) * args.getMLength() * args.getKPack();
+  }
+
+  /** Number of doubles needed for packed B, including the alignment offset. */
+  public static int packedBLength(GotoKernelArgs args) {
+    return args.getBAlignmentOffset() / 8 + kBlocks(args) * args.getNLength() * args.getKPack();
+  }
+
+  private static int kBlocks(GotoKernelArgs args) {
+    return (args.getKLength() + args.getKPack() - 1) / args.getKPack();
+  }
+
+  public GotoKernelArgs getArgs() {
+    return args;
+  }
+
+  public void packA(double[][] a, double[] dst) {
+    packA(a, 0, 0, 0, dst, 0);
+  }
+
+  public void packA(double[] a, int lda, double[] dst) {
+    packA(a, lda, 0, dst);
+  }
+
+  /** Packs the flat A whose element {@code (r, c)} is {@code a[aOffset + r * lda + c]}. */
+  public void packA(double[] a, int lda, int aOffset, double[] dst) {
+    // a[aOffset + r * lda + c] == a[(r + aOffset / lda) * lda + (c + aOffset % lda)]
+    packA(a, lda, aOffset / lda, aOffset % lda, dst, 1);
+  }
+
+  public void packB(double[][] b, double[] dst) {
+    packB(b, 0, 0, 0, dst, 0);
+  }
+
+  public void packB(double[] b, int ldb, double[] dst) {
+    packB(b, ldb, 0, dst);
+  }
+
+  /** Packs the flat B whose element {@code (r, c)} is {@code b[bOffset + r * ldb + c]}. */
+  public void packB(double[] b, int ldb, int bOffset, double[] dst) {
+    packB(b, ldb, bOffset / ldb, bOffset % ldb, dst, 1);
+  }
+
+  private void packA(Object a, int lda, int rowShift, int colShift, double[] dst, int flat) {
+    int mr = args.getALength();
+    int m = args.getMLength();
+    int k = args.getKLength();
+    int kPack = args.getKPack();
+    int base = args.getAAlignmentOffset() / 8;
+    for (int kStart = 0; kStart < k; kStart += kPack) {
+      int depth = Math.min(kPack, k - kStart);
+      for (int i = 0; i < m; i += mr) {
+        long[] panel = i + mr <= m ? aPanelArgs[2 * flat] : aPanelArgs[2 * flat + 1];
+        CompilerDirectives.gotoPack(
+            a, lda, dst, base + i * kPack, rowShift + i, colShift + kStart, depth, panel);
+      }
+      base += m * kPack;
+    }
+  }
+
+  private void packB(Object b, int ldb, int rowShift, int colShift, double[] dst, int flat) {
+    int nr = args.getBLength();
+    int n = args.getNLength();
+    int k = args.getKLength();
+    int kPack = args.getKPack();
+    int base = args.getBAlignmentOffset() / 8;
+    for (int kStart = 0; kStart < k; kStart += kPack) {
+      int depth = Math.min(kPack, k - kStart);
+      for (int j = 0; j < n; j += nr) {
+        long[] panel = j + nr <= n ? bPanelArgs[2 * flat] : bPanelArgs[2 * flat + 1];
+        CompilerDirectives.gotoPack(
+            b, ldb, dst, base + j * kPack, rowShift + kStart, colShift + j, depth, panel);
+      }
+      base += n * kPack;
+    }
+  }
+
+  /**
+   * Returns this thread's A pack buffer, grown to at least {@code length} doubles. The buffer is
+   * overwritten by the next call on the same thread.
+   */
+  @TruffleBoundary
+  /**
+   * Copies the row-major {@code kLength x nLength} matrix {@code b} (leading dimension {@code ld})
+   * into a new array in the k-group layout of the integer kernel type {@link
+   * GotoKernelArgs#KERNEL_INT8} described by {@code args}.
+   */
+  public static byte[] packKGroups(byte[] b, int ld, GotoKernelArgs args) {
+    byte[] dst = new byte[kGroupsLength(args)];
+    for (int k = 0; k < args.getKLength(); k++) {
+      for (int j = 0; j < args.getNLength(); j++) {
+        dst[GotoKernelReference.flatBIndex(args, k, j)] = b[k * ld + j];
+      }
+    }
+    return dst;
+  }
+
+  /** {@link #packKGroups(byte[], int, GotoKernelArgs)} for {@link GotoKernelArgs#KERNEL_INT16}. */
+  public static short[] packKGroups(short[] b, int ld, GotoKernelArgs args) {
+    short[] dst = new short[kGroupsLength(args)];
+    for (int k = 0; k < args.getKLength(); k++) {
+      for (int j = 0; j < args.getNLength(); j++) {
+        dst[GotoKernelReference.flatBIndex(args, k, j)] = b[k * ld + j];
+      }
+    }
+    return dst;
+  }
+
+  private static int kGroupsLength(GotoKernelArgs args) {
+    if (!GotoKernelArgs.isInteger(args.getKernelType())) {
+      throw new IllegalArgumentException("Not an integer kernel: " + args);
+    }
+    int groups = args.getKLength() / GotoKernelArgs.kGroup(args.getKernelType());
+    return args.getBOffset() + groups * args.getLdb();
+  }
+
+  public static double[] aBuffer(int length) {
+    return buffer(0, length);
+  }
+
+  /** Same as {@link #aBuffer} for B. */
+  @TruffleBoundary
+  public static double[] bBuffer(int length) {
+    return buffer(1, length);
+  }
+
+  private static double[] buffer(int index, int length) {
+    double[][] buffers = BUFFERS.get();
+    if (buffers[index].length < length) {
+      buffers[index] = new double[length];
+    }
+    return buffers[index];
+  }
+}
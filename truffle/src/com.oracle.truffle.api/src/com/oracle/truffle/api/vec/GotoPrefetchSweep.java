@@ -0,0 +1,131 @@
+package com.oracle.truffle.api.vec;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times the software prefetch settings of a Goto kernel descriptor on the host (see {@link
+ * GotoKernelArgs#PREFETCH}): the kernel type's built-in policy, no prefetching, and every set of
+ * prefetched operands with every cache level and every power of two distance up to {@value
+ * GotoKernelArgs#MAX_PREFETCH_DISTANCE} k steps.
+ *
+ * <p>Like {@link GotoTileTuner}, the sweep runs on a problem of at most 256 per dimension on a
+ * single thread, with the tuner's default {@link GotoTileTuner.Benchmark}, which calls the kernel
+ * with a static final descriptor per setting. The best setting depends on the tile and the K panel size, so tune those
+ * first and sweep the tuned descriptor. Results are not persisted.
+ */
+public final class GotoPrefetchSweep {
+  private static final int[] OPERANDS = {
+    GotoKernelArgs.PREFETCH_A,
+    GotoKernelArgs.PREFETCH_B,
+    GotoKernelArgs.PREFETCH_A | GotoKernelArgs.PREFETCH_B
+  };
+  private static final int[] LEVELS = {
+    GotoKernelArgs.PREFETCH_T0, GotoKernelArgs.PREFETCH_T1, GotoKernelArgs.PREFETCH_T2
+  };
+
+  /** The time of one prefetch setting. */
+  public static final class Result {
+    private final GotoKernelArgs args;
+    private final long nanos;
+
+    Result(GotoKernelArgs args, long nanos) {
+      this.args = args;
+      this.nanos = nanos;
+    }
+
+    /** The descriptor that was timed. */
+    public GotoKernelArgs getArgs() {
+      return args;
+    }
+
+    /** Best time of one GEMM in nanoseconds. */
+    public long getNanos() {
+      return nanos;
+    }
+
+    /** Returns {@code target} with the prefetch setting of this result. */
+    public GotoKernelArgs apply(GotoKernelArgs target) {
+      if (!args.hasPrefetchPolicy()) {
+        return target.withDefaultPrefetch();
+      }
+      return target.withPrefetch(
+          args.getPrefetchOperands(), args.getPrefetchLevel(), args.getPrefetchDistance());
+    }
+
+    @Override
+    public String toString() {
+      return describe(args) + ": " + nanos + " ns";
+    }
+  }
+
+  private GotoPrefetchSweep() {}
+
+  /** Times every setting for {@code args} with the host's default blocking, fastest first. */
+  public static List<Result> sweep(GotoKernelArgs args, boolean isFloat) {
+    GotoKernelArgs problem =
+        args.withDimensions(
+            Math.min(args.getMLength(), GotoTileTuner.TUNE_DIM),
+            Math.min(args.getKLength(), GotoTileTuner.TUNE_DIM),
+            Math.min(args.getNLength(), GotoTileTuner.TUNE_DIM));
+    if (problem.isFlat()) {
+      problem = GotoTileTuner.denseFlatLayout(problem);
+    }
+    GemmBlocking blocking = GemmBlocking.forHost(problem, isFloat ? Float.BYTES : Double.BYTES);
+    return sweep(problem, blocking, isFloat, GotoTileTuner::runGemm);
+  }
+
+  /**
+   * Times every setting for the problem {@code args} with {@code blocking}, fastest first. {@code
+   * args} is timed as it is, so it should be small enough to sweep.
+   */
+  @TruffleBoundary
+  public static List<Result> sweep(
+      GotoKernelArgs args,
+      GemmBlocking blocking,
+      boolean isFloat,
+      GotoTileTuner.Benchmark benchmark) {
+    List<Result> results = new ArrayList<>();
+    for (GotoKernelArgs candidate : candidates(args)) {
+      results.add(new Result(candidate, benchmark.run(candidate, blocking, isFloat)));
+    }
+    results.sort((r0, r1) -> Long.compare(r0.nanos, r1.nanos));
+    return results;
+  }
+
+  /** Returns {@code args} with the fastest prefetch setting. */
+  public static GotoKernelArgs fastest(GotoKernelArgs args, boolean isFloat) {
+    return sweep(args, isFloat).get(0).apply(args);
+  }
+
+  static List<GotoKernelArgs> candidates(GotoKernelArgs args) {
+    List<GotoKernelArgs> candidates = new ArrayList<>();
+    candidates.add(args.withDefaultPrefetch());
+    candidates.add(args.withPrefetch(0, GotoKernelArgs.PREFETCH_T0, 0));
+    for (int operands : OPERANDS) {
+      for (int level : LEVELS) {
+        for (int distance = 1; distance <= GotoKernelArgs.MAX_PREFETCH_DISTANCE; distance *= 2) {
+          candidates.add(args.withPrefetch(operands, level, distance));
+        }
+      }
+    }
+    return candidates;
+  }
+
+  private static String describe(GotoKernelArgs args) {
+    if (!args.hasPrefetchPolicy()) {
+      return "built-in";
+    }
+    int operands = args.getPrefetchOperands();
+    if (operands == 0) {
+      return "none";
+    }
+    return ((operands & GotoKernelArgs.PREFETCH_A) != 0 ? "A" : "")
+        + ((operands & GotoKernelArgs.PREFETCH_B) != 0 ? "B" : "")
+        + " t"
+        + args.getPrefetchLevel()
+        + " +"
+        + args.getPrefetchDistance();
+  }
+}
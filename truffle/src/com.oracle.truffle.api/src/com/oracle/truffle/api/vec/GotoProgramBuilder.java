@@ -0,0 +1,288 @@
+package com.oracle.truffle.api.vec;
+
+import java.util.Arrays;
+
+/**
+ * Builds the op program of a {@link GotoKernelArgs} descriptor.
+ *
+ * <p>The kernel evaluates the program once per element of the register tile. Operands are the
+ * current element of A, B and the accumulator C, constant and variable arguments, and scratch
+ * vector and mask registers. Instructions are emitted in order; for example {@code C += A * B} is
+ *
+ * <pre>
+ * long[] program = new GotoProgramBuilder().fmadd(GotoProgramBuilder.C, GotoProgramBuilder.A,
+ *                 GotoProgramBuilder.B).build();
+ * </pre>
+ *
+ * {@link #build()} packs the 5-bit op codes with {@link GotoKernelArgs#encodeProgram}.
+ *
+ * <p>Instructions emitted after {@link #epilogue()} form the epilogue, which the kernel runs once
+ * per tile after the last K step, while the accumulators are still in registers. There {@link #C}
+ * is the tile's result, i.e. the stored value of C plus everything accumulated by the call, and
+ * {@link #STORED_C} the value stored before the call; the value left in {@link #C} is written to
+ * C. A and B are not available in the epilogue. For example a dense layer {@code C = max(alpha *
+ * A * B + beta * C + bias[j], 0)}, with {@code constArgs = {alpha, beta - alpha, 0}} and {@code
+ * bias} passed as a {@link GotoKernelArgs#EPILOGUE_COLUMN_VECTOR}, is
+ *
+ * <pre>
+ * new GotoProgramBuilder().fmadd(C, A, B)
+ *     .epilogue()
+ *     .mul(C, C, constArg(0))
+ *     .fmadd(C, STORED_C, constArg(1))
+ *     .add(C, C, varArg(0))
+ *     .max(C, C, constArg(2))
+ *     .build();
+ * </pre>
+ *
+ * {@link #STORED_C} is the original C only if a single call covers all of K, so {@link GotoGemm}
+ * does not split K for programs whose epilogue reads it.
+ *
+ * <p>The kernels have a single mask register, which every compare writes and every masked op
+ * reads; the index of a {@link #maskReg} is ignored. Masked ops leave {@code dst} unchanged in the
+ * lanes the mask leaves out, and compares follow Java's operators, so only {@link #neq} holds for
+ * NaN operands.
+ */
+public final class GotoProgramBuilder {
+  static final int OP = 0b00000;
+  static final int MASKOP = 0b01000;
+  static final int ARGOP = 0b10000;
+  static final int CMPOP = 0b11000;
+
+  static final int MUL = 0b000;
+  static final int ADD = 0b001;
+  static final int FMADD = 0b010;
+  static final int SUB = 0b011;
+  static final int DIV = 0b100;
+  static final int LOAD = 0b101;
+  static final int MAX = 0b110;
+  static final int MIN = 0b111;
+  static final int SELECT = 0b101;
+
+  static final int GT = 0b000;
+  static final int GE = 0b001;
+  static final int LT = 0b010;
+  static final int LE = 0b011;
+  static final int EQ = 0b100;
+  static final int NEQ = 0b101;
+
+  private static final int MAX_INDEX = 0b11111;
+
+  static final int LOAD_OP = OP | LOAD;
+
+  static final int OPERAND_A = ARGOP | 0b000;
+  static final int OPERAND_B = ARGOP | 0b001;
+  static final int OPERAND_C = ARGOP | 0b010;
+  static final int OPERAND_CONSTARG = ARGOP | 0b011;
+  static final int OPERAND_VARARG = ARGOP | 0b100;
+  static final int OPERAND_REG = ARGOP | 0b101;
+  static final int OPERAND_MASKREG = ARGOP | 0b110;
+  static final int OPERAND_STORED_C = ARGOP | 0b111;
+
+  /** An operand; one op code, or two for indexed operands. */
+  public static final class Operand {
+    private final int[] codes;
+
+    private Operand(int... codes) {
+      this.codes = codes;
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(codes);
+    }
+  }
+
+  /** The current element of A, broadcast to all lanes. */
+  public static final Operand A = new Operand(OPERAND_A);
+  /** The current vector of B. */
+  public static final Operand B = new Operand(OPERAND_B);
+  /** The accumulator for the current tile element. */
+  public static final Operand C = new Operand(OPERAND_C);
+  /** In the epilogue, the value of the tile element stored in C before the call. */
+  public static final Operand STORED_C = new Operand(OPERAND_STORED_C);
+
+  private int[] ops = new int[16];
+  private int size;
+  // Number of op codes before the epilogue, or -1 while there is none.
+  private int epilogueStart = -1;
+
+  public static Operand constArg(int index) {
+    return new Operand(OPERAND_CONSTARG, checkIndex(index));
+  }
+
+  public static Operand varArg(int index) {
+    return new Operand(OPERAND_VARARG, checkIndex(index));
+  }
+
+  /** A scratch vector register. */
+  public static Operand reg(int index) {
+    return new Operand(OPERAND_REG, checkIndex(index));
+  }
+
+  public static Operand maskReg(int index) {
+    return new Operand(OPERAND_MASKREG, checkIndex(index));
+  }
+
+  private static int checkIndex(int index) {
+    if (index < 0 || index > MAX_INDEX) {
+      throw new IllegalArgumentException("Operand index out of range: " + index);
+    }
+    return index;
+  }
+
+  public GotoProgramBuilder add(Operand dst, Operand src0, Operand src1) {
+    return emit(OP | ADD, dst, src0, src1);
+  }
+
+  public GotoProgramBuilder sub(Operand dst, Operand src0, Operand src1) {
+    return emit(OP | SUB, dst, src0, src1);
+  }
+
+  public GotoProgramBuilder mul(Operand dst, Operand src0, Operand src1) {
+    return emit(OP | MUL, dst, src0, src1);
+  }
+
+  public GotoProgramBuilder div(Operand dst, Operand src0, Operand src1) {
+    return emit(OP | DIV, dst, src0, src1);
+  }
+
+  /** {@code dst += src0 * src1}. */
+  public GotoProgramBuilder fmadd(Operand dst, Operand src0, Operand src1) {
+    return emit(OP | FMADD, dst, src0, src1);
+  }
+
+  public GotoProgramBuilder max(Operand dst, Operand src0, Operand src1) {
+    return emit(OP | MAX, dst, src0, src1);
+  }
+
+  public GotoProgramBuilder min(Operand dst, Operand src0, Operand src1) {
+    return emit(OP | MIN, dst, src0, src1);
+  }
+
+  /**
+   * Loads {@code src} into {@code dst} at this point of the program instead of once per tile. Use
+   * it for A, B or variable arguments that are only needed conditionally.
+   */
+  public GotoProgramBuilder load(Operand dst, Operand src) {
+    return emit(OP | LOAD, dst, src);
+  }
+
+  public GotoProgramBuilder gt(Operand mask, Operand src0, Operand src1) {
+    return emit(CMPOP | GT, mask, src0, src1);
+  }
+
+  public GotoProgramBuilder ge(Operand mask, Operand src0, Operand src1) {
+    return emit(CMPOP | GE, mask, src0, src1);
+  }
+
+  public GotoProgramBuilder lt(Operand mask, Operand src0, Operand src1) {
+    return emit(CMPOP | LT, mask, src0, src1);
+  }
+
+  public GotoProgramBuilder le(Operand mask, Operand src0, Operand src1) {
+    return emit(CMPOP | LE, mask, src0, src1);
+  }
+
+  public GotoProgramBuilder eq(Operand mask, Operand src0, Operand src1) {
+    return emit(CMPOP | EQ, mask, src0, src1);
+  }
+
+  public GotoProgramBuilder neq(Operand mask, Operand src0, Operand src1) {
+    return emit(CMPOP | NEQ, mask, src0, src1);
+  }
+
+  /** {@code dst = src0 + src1} in the lanes selected by {@code mask}. */
+  public GotoProgramBuilder maskAdd(Operand mask, Operand dst, Operand src0, Operand src1) {
+    return emit(MASKOP | ADD, mask, dst, src0, src1);
+  }
+
+  /** {@code dst = src0 - src1} in the lanes selected by {@code mask}. */
+  public GotoProgramBuilder maskSub(Operand mask, Operand dst, Operand src0, Operand src1) {
+    return emit(MASKOP | SUB, mask, dst, src0, src1);
+  }
+
+  /** {@code dst = src0 * src1} in the lanes selected by {@code mask}. */
+  public GotoProgramBuilder maskMul(Operand mask, Operand dst, Operand src0, Operand src1) {
+    return emit(MASKOP | MUL, mask, dst, src0, src1);
+  }
+
+  /** {@code dst = src0 / src1} in the lanes selected by {@code mask}. */
+  public GotoProgramBuilder maskDiv(Operand mask, Operand dst, Operand src0, Operand src1) {
+    return emit(MASKOP | DIV, mask, dst, src0, src1);
+  }
+
+  /** {@code dst += src0 * src1} in the lanes selected by {@code mask}. */
+  public GotoProgramBuilder maskFmadd(Operand mask, Operand dst, Operand src0, Operand src1) {
+    return emit(MASKOP | FMADD, mask, dst, src0, src1);
+  }
+
+  /** {@code dst = mask ? src0 : src1} per lane. */
+  public GotoProgramBuilder select(Operand mask, Operand dst, Operand src0, Operand src1) {
+    return emit(MASKOP | SELECT, mask, dst, src0, src1);
+  }
+
+  /** Starts the epilogue; the instructions emitted so far run for every K step. */
+  public GotoProgramBuilder epilogue() {
+    if (epilogueStart >= 0) {
+      throw new IllegalStateException("The program already has an epilogue");
+    }
+    epilogueStart = size;
+    return this;
+  }
+
+  /** Number of operands taken by instruction {@code op}. */
+  static int operandCount(int op) {
+    switch (op & ~0b111) {
+      case OP:
+        return op == LOAD_OP ? 2 : 3;
+      case MASKOP:
+        return 4;
+      default:
+        return 3;
+    }
+  }
+
+  /** Whether {@code operand} is followed by an index. */
+  static boolean hasIndex(int operand) {
+    return operand == OPERAND_CONSTARG
+        || operand == OPERAND_VARARG
+        || operand == OPERAND_REG
+        || operand == OPERAND_MASKREG;
+  }
+
+  private GotoProgramBuilder emit(int op, Operand... operands) {
+    append(op);
+    for (Operand operand : operands) {
+      for (int code : operand.codes) {
+        append(code);
+      }
+    }
+    return this;
+  }
+
+  private void append(int code) {
+    if (size == ops.length) {
+      ops = Arrays.copyOf(ops, size * 2);
+    }
+    ops[size++] = code;
+  }
+
+  /** Returns the op codes emitted before the epilogue, one per element. */
+  public int[] toOpCodes() {
+    return Arrays.copyOf(ops, epilogueStart >= 0 ? epilogueStart : size);
+  }
+
+  /** Returns the op codes of the epilogue, which is empty if there is none. */
+  public int[] toEpilogueOpCodes() {
+    return epilogueStart >= 0 ? Arrays.copyOfRange(ops, epilogueStart, size) : new int[0];
+  }
+
+  /** Returns the packed program for {@link GotoKernelArgs}. */
+  public long[] build() {
+    long[] program = GotoKernelArgs.encodeProgram(toOpCodes());
+    if (epilogueStart < 0) {
+      return program;
+    }
+    return GotoKernelArgs.appendEpilogue(program, toEpilogueOpCodes());
+  }
+}
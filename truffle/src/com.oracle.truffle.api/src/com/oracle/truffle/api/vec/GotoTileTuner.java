@@ -0,0 +1,643 @@
+package com.oracle.truffle.api.vec;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Picks the register tile ({@code aLength x bLength}) and K panel size of a Goto kernel descriptor
+ * by timing candidates on the host.
+ *
+ * <p>A candidate tile must fit the vector register file of the descriptor's arch together with
+ * everything else the kernel keeps in registers: the broadcast A value, the B vectors, constant and
+ * variable arguments the program does not load itself, and the scratch registers the program uses
+ * (see {@link #registersNeeded}). The fitting tiles are ranked by FMAs per loaded A and B register,
+ * and the best {@value #MAX_TILES} are timed with the default K panel size, half of it and twice of
+ * it. For the packed kernel types the K panel size is the pack depth. Timing runs on a problem of at
+ * most {@value #TUNE_DIM} per dimension on a single thread.
+ *
+ * <p>Winners are kept for the process, keyed by arch, kernel type, flat or nested layout, element
+ * type and op program, so descriptors that only differ in their matrix sizes or leading dimensions
+ * share a result. {@link GotoGemm#autotuned} applies them and tunes on first use when the {@code
+ * truffle.vec.Autotune} system property is set. Only then, and only if the {@code
+ * truffle.vec.TuningFile} system property names a properties file, are winners also read from and
+ * written to that file, under keys that also name the host CPU and its features; otherwise the
+ * tuner does no file IO.
+ *
+ * <p>The default {@link Benchmark} runs the loop nest of {@link GotoGemm} on one thread in a copy
+ * of {@link StaticKernel} of its own per candidate, whose descriptor is a static final field, so
+ * the kernel calls are intrinsified once the loop is compiled. Languages can time through their own
+ * call target instead by passing a {@link Benchmark} to {@link #tune(GotoKernelArgs, boolean,
+ * Benchmark)}.
+ */
+public final class GotoTileTuner {
+  static final int TUNE_DIM = 256;
+  private static final int MAX_TILES = 6;
+  // Variable arguments indexed by i and j are staged 12 rows at a time.
+  private static final int MAX_A_LENGTH = 12;
+  private static final int MIN_KC = 8;
+  private static final int WARMUP_RUNS = 3;
+  private static final int MEASURE_RUNS = 5;
+
+  private static final ConcurrentHashMap<String, Tuning> RESULTS = new ConcurrentHashMap<>();
+  private static Properties persisted;
+  private static String hostKey;
+
+  /** Times one GEMM with the given descriptor and blocking; returns nanoseconds. */
+  public interface Benchmark {
+    long run(GotoKernelArgs args, GemmBlocking blocking, boolean isFloat);
+  }
+
+  /** A tuned register tile and K panel size. */
+  public static final class Tuning {
+    private final int aLength;
+    private final int bLength;
+    private final int kc;
+
+    public Tuning(int aLength, int bLength, int kc) {
+      this.aLength = aLength;
+      this.bLength = bLength;
+      this.kc = kc;
+    }
+
+    public int getALength() {
+      return aLength;
+    }
+
+    public int getBLength() {
+      return bLength;
+    }
+
+    /** K panel size; the pack depth for the packed kernel types. */
+    public int getKc() {
+      return kc;
+    }
+
+    /** Returns {@code args} with the tuned tile, and pack depth for packed kernels. */
+    public GotoKernelArgs apply(GotoKernelArgs args) {
+      GotoKernelArgs tuned = args.withTile(aLength, bLength);
+      return GotoKernelArgs.isPacked(args.getKernelType()) ? tuned.withKPack(kc) : tuned;
+    }
+
+    /** Blocking for descriptor {@code tunedArgs} as returned by {@link #apply}. */
+    public GemmBlocking blocking(GotoKernelArgs tunedArgs, int elementBytes) {
+      return GemmBlocking.forHost(tunedArgs, elementBytes, kc);
+    }
+
+    static Tuning parse(String value) {
+      String[] parts = value.split(",");
+      if (parts.length != 3) {
+        return null;
+      }
+      try {
+        return new Tuning(
+            Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    String format() {
+      return aLength + "," + bLength + "," + kc;
+    }
+
+    @Override
+    public String toString() {
+      return "Tuning[aLength=" + aLength + ", bLength=" + bLength + ", kc=" + kc + "]";
+    }
+  }
+
+  private GotoTileTuner() {}
+
+  public static boolean isEnabled() {
+    return Boolean.getBoolean("truffle.vec.Autotune");
+  }
+
+  /**
+   * Returns the stored result for {@code args}, or null if it has not been tuned. The tuning file
+   * is only read if tuning {@link #isEnabled() is enabled}.
+   */
+  @TruffleBoundary
+  public static Tuning lookup(GotoKernelArgs args, boolean isFloat) {
+    String key = key(args, isFloat);
+    Tuning tuning = RESULTS.get(key);
+    if (tuning == null && isEnabled() && tuningFile() != null) {
+      String value = persisted().getProperty(persistedKey(key));
+      tuning = value != null ? Tuning.parse(value) : null;
+      if (tuning != null) {
+        RESULTS.putIfAbsent(key, tuning);
+      }
+    }
+    return tuning;
+  }
+
+  /** Returns the stored result for {@code args}, timing the candidates first if there is none. */
+  public static Tuning tune(GotoKernelArgs args, boolean isFloat) {
+    return tune(args, isFloat, GotoTileTuner::runGemm);
+  }
+
+  @TruffleBoundary
+  public static Tuning tune(GotoKernelArgs args, boolean isFloat, Benchmark benchmark) {
+    Tuning tuning = lookup(args, isFloat);
+    if (tuning != null) {
+      return tuning;
+    }
+    GotoKernelArgs problem =
+        args.withDimensions(
+            Math.min(args.getMLength(), TUNE_DIM),
+            Math.min(args.getKLength(), TUNE_DIM),
+            Math.min(args.getNLength(), TUNE_DIM));
+    if (problem.isFlat()) {
+      problem = denseFlatLayout(problem);
+    }
+    int elementBytes = isFloat ? Float.BYTES : Double.BYTES;
+    long bestTime = Long.MAX_VALUE;
+    for (int[] tile : candidateTiles(args, isFloat)) {
+      for (int kc : candidateKcs(problem.withTile(tile[0], tile[1]), elementBytes)) {
+        Tuning candidate = new Tuning(tile[0], tile[1], kc);
+        GotoKernelArgs candidateArgs = candidate.apply(problem);
+        long time =
+            benchmark.run(
+                candidateArgs, candidate.blocking(candidateArgs, elementBytes), isFloat);
+        if (time < bestTime) {
+          bestTime = time;
+          tuning = candidate;
+        }
+      }
+    }
+    if (tuning == null) {
+      // Nothing fits, e.g. a program that needs every register; keep the caller's choice.
+      tuning = new Tuning(args.getALength(), args.getBLength(), defaultKc(args, elementBytes));
+    }
+    String key = key(args, isFloat);
+    RESULTS.put(key, tuning);
+    if (tuningFile() != null) {
+      persist(persistedKey(key), tuning);
+    }
+    return tuning;
+  }
+
+  /**
+   * Number of vector registers the kernel for {@code args} needs with a tile of {@code aLength}
+   * rows and {@code bVectors} vectors of B.
+   */
+  public static int registersNeeded(GotoKernelArgs args, int aLength, int bVectors) {
+    int[] ops = GotoKernelArgs.decodeProgram(args.getProgram());
+    boolean loadsA = false;
+    boolean loadsB = false;
+    int loadedConstArgs = 0;
+    int loadedVarArgs = 0;
+    int scratchRegisters = 0;
+    int pos = 0;
+    while (pos < ops.length) {
+      int op = ops[pos++];
+      int operandCount = GotoProgramBuilder.operandCount(op);
+      for (int operandIndex = 0; operandIndex < operandCount; operandIndex++) {
+        int operand = ops[pos++];
+        int index = GotoProgramBuilder.hasIndex(operand) ? ops[pos++] : 0;
+        if (operand == GotoProgramBuilder.OPERAND_REG) {
+          scratchRegisters = Math.max(scratchRegisters, index + 1);
+        }
+        if (op == GotoProgramBuilder.LOAD_OP && operandIndex == 1) {
+          loadsA |= operand == GotoProgramBuilder.OPERAND_A;
+          loadsB |= operand == GotoProgramBuilder.OPERAND_B;
+          if (operand == GotoProgramBuilder.OPERAND_CONSTARG) {
+            loadedConstArgs |= 1 << index;
+          } else if (operand == GotoProgramBuilder.OPERAND_VARARG) {
+            loadedVarArgs |= 1 << index;
+          }
+        }
+      }
+    }
+
+    int bRegisters =
+        args.getKernelType() == GotoKernelArgs.KERNEL_INTERLEAVE_PACKED ? 2 * bVectors : bVectors;
+    int registers = aLength * bVectors + scratchRegisters;
+    // The flat kernels gather B or C through a vector of lane offsets.
+    if (args.isFlat()
+        && (args.getKernelType() == GotoKernelArgs.KERNEL_ABT
+            || args.getKernelType() == GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT)) {
+      registers++;
+    }
+    // The epilogue reads the stored C into a register of its own.
+    registers += args.hasEpilogue() ? 1 : 0;
+    registers += loadsA ? 0 : 1;
+    registers += loadsB ? 0 : bRegisters;
+    registers += args.getConstArgs().length - Integer.bitCount(loadedConstArgs);
+    int[] varArgProperties = args.getVarArgProperties();
+    for (int i = 0; i < varArgProperties.length; i++) {
+      if ((loadedVarArgs & (1 << i)) == 0) {
+        registers += varArgProperties[i] == 2 ? bVectors : 1;
+      }
+    }
+    return registers;
+  }
+
+  /**
+   * Tiles that fit the register file, as {@code {aLength, bLength}} with {@code bLength} in
+   * elements, best first.
+   */
+  static List<int[]> candidateTiles(GotoKernelArgs args, boolean isFloat) {
+    int available = vectorRegisters(args);
+    int lanes = (args.getArch() == GotoKernelArgs.ARCH_AVX512 ? 64 : 32) / (isFloat ? 4 : 8);
+    List<int[]> tiles = new ArrayList<>();
+    for (int bVectors = 1; bVectors <= available; bVectors++) {
+      for (int aLength = 1; aLength <= MAX_A_LENGTH; aLength++) {
+        if (registersNeeded(args, aLength, bVectors) <= available) {
+          tiles.add(new int[] {aLength, bVectors});
+        }
+      }
+    }
+    // Most FMAs per loaded register first, then the larger tile.
+    tiles.sort(
+        (t0, t1) -> {
+          int cmp = Double.compare(intensity(t1), intensity(t0));
+          return cmp != 0 ? cmp : Integer.compare(t1[0] * t1[1], t0[0] * t0[1]);
+        });
+    List<int[]> result = new ArrayList<>();
+    for (int[] tile : tiles.subList(0, Math.min(MAX_TILES, tiles.size()))) {
+      result.add(new int[] {tile[0], tile[1] * lanes});
+    }
+    return result;
+  }
+
+  private static double intensity(int[] tile) {
+    return (double) (tile[0] * tile[1]) / (tile[0] + tile[1]);
+  }
+
+  private static int vectorRegisters(GotoKernelArgs args) {
+    // Without opmasks the mask and the masked result take two registers.
+    int maskRegisters = args.usesMask() ? 2 : 0;
+    switch (args.getArch()) {
+      case GotoKernelArgs.ARCH_AVX:
+        // The separate multiply and add shares its register with the masked result.
+        return 16 - Math.max(1, maskRegisters);
+      case GotoKernelArgs.ARCH_AVX2:
+        return 16 - maskRegisters;
+      default:
+        return 32;
+    }
+  }
+
+  private static List<Integer> candidateKcs(GotoKernelArgs args, int elementBytes) {
+    int base = defaultKc(args, elementBytes);
+    List<Integer> kcs = new ArrayList<>();
+    for (int kc : new int[] {base, base / 2, base * 2}) {
+      kc = Math.max(MIN_KC, Math.min(kc, Math.max(MIN_KC, args.getKLength())));
+      if (!kcs.contains(kc)) {
+        kcs.add(kc);
+      }
+    }
+    return kcs;
+  }
+
+  private static int defaultKc(GotoKernelArgs args, int elementBytes) {
+    return GemmBlocking.forHost(args, elementBytes).getKc();
+  }
+
+  /**
+   * The default {@link Benchmark}. A host compilation only intrinsifies a kernel call whose
+   * descriptor is constant while the calling method is parsed, which the descriptor field of a
+   * {@link GotoGemm} is not, so the candidate runs in a {@link StaticKernel} copy of its own. Where
+   * classes cannot be defined at run time, e.g. in a native image, it runs through {@link GotoGemm}
+   * and times whatever that is compiled to.
+   */
+  static long runGemm(GotoKernelArgs args, GemmBlocking blocking, boolean isFloat) {
+    Object[] arrs = operands(args, isFloat);
+    Method staticKernel = CandidateLoader.staticKernel(args.toLongArray());
+    if (staticKernel == null) {
+      return runDriver(args, blocking, isFloat, arrs);
+    }
+    if (GotoKernelArgs.isPacked(args.getKernelType())) {
+      arrs = pack(args, arrs);
+    }
+    int kc = args.epilogueReadsStoredC() ? Math.max(args.getKLength(), 1) : blocking.getKc();
+    long best = Long.MAX_VALUE;
+    for (int run = 0; run < WARMUP_RUNS + MEASURE_RUNS; run++) {
+      long start = System.nanoTime();
+      try {
+        staticKernel.invoke(null, arrs, args, kc, isFloat);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Cannot time " + args, e);
+      }
+      long elapsed = System.nanoTime() - start;
+      if (run >= WARMUP_RUNS) {
+        best = Math.min(best, elapsed);
+      }
+    }
+    return best;
+  }
+
+  private static long runDriver(
+      GotoKernelArgs args, GemmBlocking blocking, boolean isFloat, Object[] arrs) {
+    // A pool with parallelism 1 makes GotoGemm run on the calling thread.
+    GotoGemm gemm = new GotoGemm(args, blocking, SequentialPool.POOL);
+    long best = Long.MAX_VALUE;
+    for (int run = 0; run < WARMUP_RUNS + MEASURE_RUNS; run++) {
+      long start = System.nanoTime();
+      if (isFloat && args.isFlat()) {
+        gemm.multiply((float[]) arrs[0], (float[]) arrs[1], (float[]) arrs[2]);
+      } else if (isFloat) {
+        gemm.multiply((float[][]) arrs[0], (float[][]) arrs[1], (float[][]) arrs[2]);
+      } else {
+        gemm.multiply(arrs);
+      }
+      long elapsed = System.nanoTime() - start;
+      if (run >= WARMUP_RUNS) {
+        best = Math.min(best, elapsed);
+      }
+    }
+    return best;
+  }
+
+  /** {@code arrs} with A and B packed as {@link GotoGemm} packs them, once for all runs. */
+  private static Object[] pack(GotoKernelArgs args, Object[] arrs) {
+    GotoPacking packing = new GotoPacking(args);
+    double[] a = GotoPacking.aBuffer(GotoPacking.packedALength(args));
+    double[] b = GotoPacking.bBuffer(GotoPacking.packedBLength(args));
+    if (args.isFlat()) {
+      packing.packA((double[]) arrs[0], args.getLda(), args.getAOffset(), a);
+      packing.packB((double[]) arrs[1], args.getLdb(), args.getBOffset(), b);
+    } else {
+      packing.packA((double[][]) arrs[0], a);
+      packing.packB((double[][]) arrs[1], b);
+    }
+    Object[] packed = arrs.clone();
+    packed[0] = a;
+    packed[1] = b;
+    return packed;
+  }
+
+  private static Object[] operands(GotoKernelArgs args, boolean isFloat) {
+    Random random = new Random(42);
+    int m = args.getMLength();
+    int k = args.getKLength();
+    int n = args.getNLength();
+    int kernelType = args.getKernelType();
+    int[] varArgProperties = args.getVarArgProperties();
+    Object[] arrs = new Object[3 + varArgProperties.length];
+    boolean transposeA = kernelType == GotoKernelArgs.KERNEL_ATB;
+    boolean transposeB = kernelType == GotoKernelArgs.KERNEL_ABT;
+    boolean transposeResult = kernelType == GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT;
+    if (args.isFlat()) {
+      // denseFlatLayout: no offsets and leading dimensions equal to the stored row lengths.
+      arrs[0] = flatten(matrix(transposeA ? k : m, transposeA ? m : k, isFloat, random), isFloat);
+      arrs[1] = flatten(matrix(transposeB ? n : k, transposeB ? k : n, isFloat, random), isFloat);
+      arrs[2] = isFloat ? new float[m * n] : new double[m * n];
+    } else {
+      arrs[0] = matrix(transposeA ? k : m, transposeA ? m : k, isFloat, random);
+      arrs[1] = matrix(transposeB ? n : k, transposeB ? k : n, isFloat, random);
+      arrs[2] = matrix(transposeResult ? n : m, transposeResult ? m : n, isFloat, random);
+    }
+    for (int i = 0; i < varArgProperties.length; i++) {
+      switch (varArgProperties[i]) {
+        case 2:
+          arrs[3 + i] = matrix(1, n, false, random)[0];
+          break;
+        case 3:
+          arrs[3 + i] = matrix(m, n, false, random);
+          break;
+        default:
+          arrs[3 + i] = matrix(1, m, false, random)[0];
+      }
+    }
+    return arrs;
+  }
+
+  /** {@code args} with a flat layout whose rows are exactly as long as the stored matrices. */
+  static GotoKernelArgs denseFlatLayout(GotoKernelArgs args) {
+    int m = args.getMLength();
+    int k = args.getKLength();
+    int n = args.getNLength();
+    int kernelType = args.getKernelType();
+    return args.withFlatLayout(
+        kernelType == GotoKernelArgs.KERNEL_ATB ? m : k,
+        kernelType == GotoKernelArgs.KERNEL_ABT ? k : n,
+        kernelType == GotoKernelArgs.KERNEL_AB_TRANSPOSED_RESULT ? m : n,
+        0,
+        0,
+        0);
+  }
+
+  private static Object flatten(Object[] matrix, boolean isFloat) {
+    int cols = isFloat ? ((float[]) matrix[0]).length : ((double[]) matrix[0]).length;
+    Object flat = isFloat ? new float[matrix.length * cols] : new double[matrix.length * cols];
+    for (int row = 0; row < matrix.length; row++) {
+      System.arraycopy(matrix[row], 0, flat, row * cols, cols);
+    }
+    return flat;
+  }
+
+  private static Object[] matrix(int rows, int cols, boolean isFloat, Random random) {
+    if (isFloat) {
+      float[][] matrix = new float[rows][cols];
+      for (float[] row : matrix) {
+        for (int j = 0; j < cols; j++) {
+          row[j] = random.nextFloat();
+        }
+      }
+      return matrix;
+    }
+    double[][] matrix = new double[rows][cols];
+    for (double[] row : matrix) {
+      for (int j = 0; j < cols; j++) {
+        row[j] = random.nextDouble();
+      }
+    }
+    return matrix;
+  }
+
+  private static String key(GotoKernelArgs args, boolean isFloat) {
+    StringBuilder key = new StringBuilder();
+    key.append(args.getArch()).append('.').append(args.getKernelType());
+    if (args.isFlat()) {
+      key.append(".flat");
+    }
+    key.append(isFloat ? ".f" : ".d");
+    for (long op : args.getProgram()) {
+      key.append('.').append(Long.toHexString(op));
+    }
+    key.append(".c").append(args.getConstArgs().length);
+    key.append(".v");
+    for (int property : args.getVarArgProperties()) {
+      key.append(property);
+    }
+    return key.toString();
+  }
+
+  /** The file results are persisted to, or null if persisting is not enabled. */
+  private static File tuningFile() {
+    String path = System.getProperty("truffle.vec.TuningFile");
+    return path != null ? new File(path) : null;
+  }
+
+  /** {@code key} qualified with the host CPU, so a file shared between machines stays correct. */
+  private static String persistedKey(String key) {
+    return hostKey() + "." + key;
+  }
+
+  /**
+   * The architecture and a hash of the CPU model and feature flags in {@code /proc/cpuinfo}; just
+   * the architecture where that cannot be read.
+   */
+  private static synchronized String hostKey() {
+    if (hostKey == null) {
+      StringBuilder cpu = new StringBuilder();
+      try (BufferedReader reader = new BufferedReader(new FileReader("/proc/cpuinfo"))) {
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+          if (line.startsWith("model name") || line.startsWith("flags")) {
+            cpu.append(line.substring(line.indexOf(':') + 1).trim()).append(';');
+          }
+        }
+      } catch (IOException e) {
+        // Tell hosts apart by architecture only.
+      }
+      String arch = System.getProperty("os.arch");
+      hostKey =
+          cpu.length() == 0 ? arch : arch + "-" + Integer.toHexString(cpu.toString().hashCode());
+    }
+    return hostKey;
+  }
+
+  private static synchronized Properties persisted() {
+    if (persisted == null) {
+      persisted = new Properties();
+      File file = tuningFile();
+      if (file.isFile()) {
+        try (InputStream in = new FileInputStream(file)) {
+          persisted.load(in);
+        } catch (IOException e) {
+          // Start over; the file is rewritten on the next tuning run.
+        }
+      }
+    }
+    return persisted;
+  }
+
+  private static synchronized void persist(String key, Tuning tuning) {
+    Properties properties = persisted();
+    properties.setProperty(key, tuning.format());
+    try (OutputStream out = new FileOutputStream(tuningFile())) {
+      properties.store(out, "Goto kernel tiles picked by GotoTileTuner");
+    } catch (IOException e) {
+      // The result is still used for the rest of this process.
+    }
+  }
+
+  private static final class SequentialPool {
+    static final ForkJoinPool POOL = new ForkJoinPool(1);
+  }
+
+  /**
+   * Loads a copy of {@link StaticKernel} that reads {@code descriptor} into its static final
+   * field. The copy lives in a loader of its own, so it only uses public API.
+   */
+  private static final class CandidateLoader extends ClassLoader implements Supplier<long[]> {
+    private final long[] descriptor;
+
+    private CandidateLoader(long[] descriptor) {
+      super(GotoTileTuner.class.getClassLoader());
+      this.descriptor = descriptor;
+    }
+
+    /** {@link StaticKernel#multiply} of a new copy, or null if it cannot be loaded. */
+    static Method staticKernel(long[] descriptor) {
+      try {
+        Class<?> copy =
+            Class.forName(StaticKernel.class.getName(), true, new CandidateLoader(descriptor));
+        Method multiply =
+            copy.getDeclaredMethod(
+                "multiply", Object[].class, GotoKernelArgs.class, int.class, boolean.class);
+        multiply.setAccessible(true);
+        return multiply;
+      } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public long[] get() {
+      return descriptor;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!name.equals(StaticKernel.class.getName())) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> loaded = findLoadedClass(name);
+        if (loaded == null) {
+          String resource = name.substring(name.lastIndexOf('.') + 1) + ".class";
+          try (InputStream in = GotoTileTuner.class.getResourceAsStream(resource)) {
+            if (in == null) {
+              throw new ClassNotFoundException(name);
+            }
+            byte[] bytes = in.readAllBytes();
+            loaded = defineClass(name, bytes, 0, bytes.length);
+          } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+          }
+        }
+        return loaded;
+      }
+    }
+  }
+
+  /**
+   * The loop nest of {@link GotoGemm} on one thread, calling the kernel with a static final
+   * descriptor. This class is never initialized itself; {@link CandidateLoader} loads a copy per
+   * candidate, and the copy takes its descriptor from that loader.
+   */
+  static final class StaticKernel {
+    @SuppressWarnings("unchecked")
+    private static final long[] DESCRIPTOR =
+        ((Supplier<long[]>) StaticKernel.class.getClassLoader()).get();
+
+    private StaticKernel() {}
+
+    static void multiply(Object[] arrs, GotoKernelArgs args, int kc, boolean isFloat) {
+      int mr = args.getALength();
+      int nr = args.getBLength();
+      int m = args.getMLength();
+      int k = args.getKLength();
+      int n = args.getNLength();
+      int jFullEnd = args.masksNTail(isFloat) ? n : n / nr * nr;
+      for (int pc = 0; pc < k; pc += kc) {
+        int kPanelSize = Math.min(kc, k - pc);
+        for (int j = 0; j < jFullEnd; j += nr) {
+          for (int i = 0; i < m; i += mr) {
+            if (isFloat) {
+              CompilerDirectives.gotoKernelFloat(arrs, kPanelSize, i, pc, j, DESCRIPTOR);
+            } else {
+              CompilerDirectives.gotoKernel(arrs, kPanelSize, i, pc, j, DESCRIPTOR);
+            }
+          }
+        }
+        for (int i = 0; jFullEnd < n && i < m; i += mr) {
+          if (isFloat) {
+            GotoKernelReference.gotoKernelFloat(arrs, kPanelSize, i, pc, jFullEnd, args);
+          } else {
+            GotoKernelReference.gotoKernel(arrs, kPanelSize, i, pc, jFullEnd, args);
+          }
+        }
+      }
+    }
+  }
+}
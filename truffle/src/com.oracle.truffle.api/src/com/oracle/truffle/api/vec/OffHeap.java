@@ -0,0 +1,62 @@
+package com.oracle.truffle.api.vec;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import sun.misc.Unsafe;
+
+/**
+ * Raw memory operands for the vector intrinsics. The {@code long} overloads of {@code
+ * CompilerDirectives.simdDoubleFmadd}, {@code vecHistogram}, {@code vecScatterReduce}, {@code
+ * gotoKernel} and {@code gotoKernelFloat} take byte addresses of native memory instead of arrays,
+ * so that e.g. weights in a memory-mapped file can be used without copying them onto the heap.
+ *
+ * <p>Element {@code i} of an operand at {@code address} is at {@code address + i * elementBytes}
+ * and is read and written in native byte order; buffers must be filled with {@link
+ * java.nio.ByteOrder#nativeOrder()}. Nothing is bounds checked, and the memory must stay allocated
+ * while a kernel runs: keep the owning buffer reachable until the call returns.
+ *
+ * <p>This class also holds the scalar reference semantics of the off-heap {@code simdDoubleFmadd}.
+ */
+public final class OffHeap {
+  static final Unsafe UNSAFE = getUnsafe();
+
+  private static final long BUFFER_ADDRESS_OFFSET = bufferAddressOffset();
+
+  private OffHeap() {}
+
+  private static Unsafe getUnsafe() {
+    try {
+      Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      return (Unsafe) theUnsafe.get(null);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private static long bufferAddressOffset() {
+    try {
+      return UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+    } catch (NoSuchFieldException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /** Address of the element at the position of a direct (or memory-mapped) buffer. */
+  public static long address(ByteBuffer buffer) {
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException("Not a direct buffer: " + buffer);
+    }
+    return UNSAFE.getLong(buffer, BUFFER_ADDRESS_OFFSET) + buffer.position();
+  }
+
+  /** {@code output[i] += input[i] * multVal} for {@code i} in {@code [0, length)}. */
+  public static void fmadd(int length, double multVal, long inputAddress, long outputAddress) {
+    for (int i = 0; i < length; i++) {
+      long offset = (long) i * Double.BYTES;
+      double product = UNSAFE.getDouble(inputAddress + offset) * multVal;
+      UNSAFE.putDouble(outputAddress + offset, UNSAFE.getDouble(outputAddress + offset) + product);
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package com.oracle.truffle.api.vec;
+
+/**
+ * Scalar reference semantics of the {@code CompilerDirectives.vecHistogram} and {@code
+ * CompilerDirectives.vecScatterReduce} intrinsics: for every {@code i} in {@code [from, to)}, {@code
+ * output[keys[i]] = op(output[keys[i]], values[i])}.
+ *
+ * <p>The compiled versions resolve duplicate keys within a vector with {@code vpconflictd} and a
+ * permute loop, then gather, combine and scatter the vector; the elements that do not fill a whole
+ * vector are done one at a time. They do not check bounds, so every key in the range must be a
+ * valid index into {@code output}. The {@code long} overloads read the keys and values from native
+ * memory (see {@link OffHeap}); the output is always an array.
+ *
+ * <p>For doubles, {@link #MIN} and {@link #MAX} compare with {@code <} and {@code >} like {@code
+ * MINPD} and {@code MAXPD}, not like {@link Math#min}: {@code -0.0} and {@code 0.0} are equal and
+ * either may be kept, and the result is unspecified if any value is NaN. {@link #SUM} of doubles may
+ * be reassociated, so it can differ from the sequential sum by rounding.
+ */
+public final class ScatterReduce {
+  public static final int SUM = 0;
+  public static final int MIN = 1;
+  public static final int MAX = 2;
+
+  private ScatterReduce() {}
+
+  public static boolean isValidOp(int op) {
+    return op == SUM || op == MIN || op == MAX;
+  }
+
+  private static void checkOp(int op) {
+    if (!isValidOp(op)) {
+      throw new IllegalArgumentException("Unknown scatter-reduce op: " + op);
+    }
+  }
+
+  /** Counts the keys in {@code [from, to)}: {@code output[keys[i]] += 1}. */
+  public static void histogram(int[] keys, int from, int to, int[] output) {
+    for (int i = from; i < to; i++) {
+      output[keys[i]]++;
+    }
+  }
+
+  /** {@link #histogram(int[], int, int, int[])} with the keys at a native address. */
+  public static void histogram(long keysAddress, int from, int to, int[] output) {
+    for (int i = from; i < to; i++) {
+      output[key(keysAddress, i)]++;
+    }
+  }
+
+  public static void scatterReduce(
+      int op, int[] keys, int[] values, int from, int to, int[] output) {
+    checkOp(op);
+    for (int i = from; i < to; i++) {
+      output[keys[i]] = combine(op, output[keys[i]], values[i]);
+    }
+  }
+
+  public static void scatterReduce(
+      int op, int[] keys, long[] values, int from, int to, long[] output) {
+    checkOp(op);
+    for (int i = from; i < to; i++) {
+      output[keys[i]] = combine(op, output[keys[i]], values[i]);
+    }
+  }
+
+  public static void scatterReduce(
+      int op, int[] keys, double[] values, int from, int to, double[] output) {
+    checkOp(op);
+    for (int i = from; i < to; i++) {
+      output[keys[i]] = combine(op, output[keys[i]], values[i]);
+    }
+  }
+
+  /**
+   * {@link #scatterReduce(int, int[], int[], int, int, int[])} with the keys and values at native
+   * addresses; see {@link OffHeap}.
+   */
+  public static void scatterReduce(
+      int op, long keysAddress, long valuesAddress, int from, int to, int[] output) {
+    checkOp(op);
+    for (int i = from; i < to; i++) {
+      int key = key(keysAddress, i);
+      int value = OffHeap.UNSAFE.getInt(valuesAddress + (long) i * Integer.BYTES);
+      output[key] = combine(op, output[key], value);
+    }
+  }
+
+  public static void scatterReduce(
+      int op, long keysAddress, long valuesAddress, int from, int to, long[] output) {
+    checkOp(op);
+    for (int i = from; i < to; i++) {
+      int key = key(keysAddress, i);
+      long value = OffHeap.UNSAFE.getLong(valuesAddress + (long) i * Long.BYTES);
+      output[key] = combine(op, output[key], value);
+    }
+  }
+
+  public static void scatterReduce(
+      int op, long keysAddress, long valuesAddress, int from, int to, double[] output) {
+    checkOp(op);
+    for (int i = from; i < to; i++) {
+      int key = key(keysAddress, i);
+      double value = OffHeap.UNSAFE.getDouble(valuesAddress + (long) i * Double.BYTES);
+      output[key] = combine(op, output[key], value);
+    }
+  }
+
+  private static int key(long keysAddress, int i) {
+    return OffHeap.UNSAFE.getInt(keysAddress + (long) i * Integer.BYTES);
+  }
+
+  private static int combine(int op, int current, int value) {
+    switch (op) {
+      case SUM:
+        return current + value;
+      case MIN:
+        return Math.min(current, value);
+      default:
+        return Math.max(current, value);
+    }
+  }
+
+  private static long combine(int op, long current, long value) {
+    switch (op) {
+      case SUM:
+        return current + value;
+      case MIN:
+        return Math.min(current, value);
+      default:
+        return Math.max(current, value);
+    }
+  }
+
+  private static double combine(int op, double current, double value) {
+    switch (op) {
+      case SUM:
+        return current + value;
+      case MIN:
+        return current < value ? current : value;
+      default:
+        return current > value ? current : value;
+    }
+  }
+}